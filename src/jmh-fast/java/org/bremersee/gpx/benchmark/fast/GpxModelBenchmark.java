@@ -0,0 +1,117 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx.benchmark.fast;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+import org.bremersee.gpx.model.Gpx;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.TrksegType;
+import org.bremersee.gpx.model.WptType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of unmarshalling and marshalling a whole gpx document of different sizes with the
+ * fast model. They are the counterpart of {@code org.bremersee.gpx.benchmark.GpxModelBenchmark}
+ * with the same parameters, so the scores of both can be compared directly.
+ *
+ * @author Christian Bremer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GpxModelBenchmark {
+
+  @Param({"1000", "10000", "100000"})
+  private int points;
+
+  @Param({"false", "true"})
+  private boolean extensions;
+
+  private JAXBContext jaxbContext;
+
+  private byte[] xml;
+
+  private Gpx gpx;
+
+  /**
+   * Creates the input.
+   *
+   * @throws JAXBException the jaxb exception
+   */
+  @Setup
+  public void setup() throws JAXBException {
+    jaxbContext = GpxBenchmarkData.createJaxbContext();
+    xml = GpxBenchmarkData.toBytes(GpxBenchmarkData.createGpx(points, extensions), jaxbContext);
+    gpx = (Gpx) jaxbContext.createUnmarshaller().unmarshal(new ByteArrayInputStream(xml));
+  }
+
+  /**
+   * Unmarshal.
+   *
+   * @return the gpx
+   * @throws JAXBException the jaxb exception
+   */
+  @Benchmark
+  public Object unmarshal() throws JAXBException {
+    return jaxbContext.createUnmarshaller().unmarshal(new ByteArrayInputStream(xml));
+  }
+
+  /**
+   * Marshal.
+   *
+   * @return the size of the xml
+   * @throws JAXBException the jaxb exception
+   */
+  @Benchmark
+  public int marshal() throws JAXBException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(xml.length);
+    jaxbContext.createMarshaller().marshal(gpx, out);
+    return out.size();
+  }
+
+  /**
+   * Reads coordinates, elevation and time of all points.
+   *
+   * @return the sum of the values
+   */
+  @Benchmark
+  public double readPoints() {
+    double sum = 0.;
+    for (TrkType track : gpx.getTrks()) {
+      for (TrksegType segment : track.getTrksegs()) {
+        for (WptType point : segment.getTrkpts()) {
+          sum += point.getLat() + point.getLon() + point.getEle()
+              + point.getTime().toEpochMilli();
+        }
+      }
+    }
+    return sum;
+  }
+
+}
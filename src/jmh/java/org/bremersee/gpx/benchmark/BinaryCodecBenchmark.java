@@ -0,0 +1,164 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx.benchmark;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.bremersee.gpx.binary.GpxBinaryCodec;
+import org.bremersee.gpx.model.Gpx;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of the binary gpx format compared with xml and gzipped xml. The sizes of the three
+ * representations are printed by the setup.
+ *
+ * @author Christian Bremer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BinaryCodecBenchmark {
+
+  @Param({"1000", "100000"})
+  private int points;
+
+  @Param({"false", "true"})
+  private boolean extensions;
+
+  private JAXBContext jaxbContext;
+
+  private Gpx gpx;
+
+  private byte[] xml;
+
+  private byte[] gzippedXml;
+
+  private byte[] binary;
+
+  /**
+   * Creates the input.
+   *
+   * @throws IOException the io exception
+   */
+  @Setup
+  public void setup() throws IOException {
+    jaxbContext = GpxBenchmarkData.createJaxbContext();
+    gpx = GpxBenchmarkData.createGpx(points, extensions);
+    xml = GpxBenchmarkData.toBytes(gpx, jaxbContext);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(xml);
+    }
+    gzippedXml = out.toByteArray();
+    binary = GpxBinaryCodec.toBytes(gpx);
+    System.out.printf("%nSizes (points = %d, extensions = %b): xml = %d, gzipped xml = %d, "
+            + "binary = %d%n",
+        points, extensions, xml.length, gzippedXml.length, binary.length);
+  }
+
+  /**
+   * Encode binary.
+   *
+   * @return the size
+   */
+  @Benchmark
+  public int encodeBinary() {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(binary.length);
+    GpxBinaryCodec.encode(gpx, out);
+    return out.size();
+  }
+
+  /**
+   * Decode binary.
+   *
+   * @return the gpx
+   */
+  @Benchmark
+  public Object decodeBinary() {
+    return GpxBinaryCodec.fromBytes(binary);
+  }
+
+  /**
+   * Marshal xml.
+   *
+   * @return the size
+   * @throws JAXBException the jaxb exception
+   */
+  @Benchmark
+  public int marshalXml() throws JAXBException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(xml.length);
+    jaxbContext.createMarshaller().marshal(gpx, out);
+    return out.size();
+  }
+
+  /**
+   * Unmarshal xml.
+   *
+   * @return the gpx
+   * @throws JAXBException the jaxb exception
+   */
+  @Benchmark
+  public Object unmarshalXml() throws JAXBException {
+    return jaxbContext.createUnmarshaller().unmarshal(new ByteArrayInputStream(xml));
+  }
+
+  /**
+   * Marshal gzipped xml.
+   *
+   * @return the size
+   * @throws JAXBException the jaxb exception
+   * @throws IOException the io exception
+   */
+  @Benchmark
+  public int marshalGzippedXml() throws JAXBException, IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(gzippedXml.length);
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      jaxbContext.createMarshaller().marshal(gpx, gzip);
+    }
+    return out.size();
+  }
+
+  /**
+   * Unmarshal gzipped xml.
+   *
+   * @return the gpx
+   * @throws JAXBException the jaxb exception
+   * @throws IOException the io exception
+   */
+  @Benchmark
+  public Object unmarshalGzippedXml() throws JAXBException, IOException {
+    try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzippedXml))) {
+      return jaxbContext.createUnmarshaller().unmarshal(in);
+    }
+  }
+
+}
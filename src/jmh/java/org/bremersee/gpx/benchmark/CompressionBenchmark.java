@@ -0,0 +1,215 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx.benchmark;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.bremersee.gpx.io.GpxCompression;
+import org.bremersee.gpx.io.GpxFiles;
+import org.bremersee.gpx.model.Gpx;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of reading many small gzipped gpx files with the pooled inflaters and direct
+ * buffers of {@link GpxCompression} compared with a new {@link GZIPInputStream} per file. The
+ * score is the number of files per second.
+ *
+ * @author Christian Bremer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CompressionBenchmark {
+
+  private static final int FILES = 256;
+
+  @Param({"10", "100", "1000"})
+  private int points;
+
+  private JAXBContext jaxbContext;
+
+  private byte[][] compressed;
+
+  private Path directory;
+
+  private Path[] files;
+
+  private final byte[] sink = new byte[8 * 1024];
+
+  /**
+   * Creates the compressed documents in memory and in a temporary directory.
+   *
+   * @throws IOException the io exception
+   */
+  @Setup
+  public void setup() throws IOException {
+    jaxbContext = GpxBenchmarkData.createJaxbContext();
+    byte[] xml = GpxBenchmarkData.toBytes(GpxBenchmarkData.createGpx(points, false), jaxbContext);
+    directory = Files.createTempDirectory("gpx-compression-benchmark");
+    compressed = new byte[FILES][];
+    files = new Path[FILES];
+    for (int i = 0; i < FILES; i++) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try (OutputStream gzip = new GZIPOutputStream(out)) {
+        gzip.write(xml);
+      }
+      compressed[i] = out.toByteArray();
+      files[i] = Files.write(directory.resolve("track-" + i + ".gpx.gz"), compressed[i]);
+    }
+    System.out.printf("%nSizes (points = %d): xml = %d, gzipped xml = %d%n",
+        points, xml.length, compressed[0].length);
+  }
+
+  /**
+   * Deletes the temporary directory.
+   *
+   * @throws IOException the io exception
+   */
+  @TearDown
+  public void tearDown() throws IOException {
+    for (Path file : files) {
+      Files.deleteIfExists(file);
+    }
+    Files.deleteIfExists(directory);
+  }
+
+  private long drain(InputStream in) throws IOException {
+    try (InputStream stream = in) {
+      long size = 0L;
+      int n;
+      while ((n = stream.read(sink)) >= 0) {
+        size += n;
+      }
+      return size;
+    }
+  }
+
+  /**
+   * Decompress with a new gzip input stream per document.
+   *
+   * @return the decompressed size
+   * @throws IOException the io exception
+   */
+  @Benchmark
+  @OperationsPerInvocation(FILES)
+  public long decompressNaive() throws IOException {
+    long size = 0L;
+    for (byte[] bytes : compressed) {
+      size += drain(new GZIPInputStream(new ByteArrayInputStream(bytes)));
+    }
+    return size;
+  }
+
+  /**
+   * Decompress with the pooled inflaters and buffers.
+   *
+   * @return the decompressed size
+   * @throws IOException the io exception
+   */
+  @Benchmark
+  @OperationsPerInvocation(FILES)
+  public long decompressPooled() throws IOException {
+    long size = 0L;
+    for (byte[] bytes : compressed) {
+      size += drain(GpxCompression.decompress(new ByteArrayInputStream(bytes)));
+    }
+    return size;
+  }
+
+  /**
+   * Decompress files with a new gzip input stream per file.
+   *
+   * @return the decompressed size
+   * @throws IOException the io exception
+   */
+  @Benchmark
+  @OperationsPerInvocation(FILES)
+  public long decompressFilesNaive() throws IOException {
+    long size = 0L;
+    for (Path file : files) {
+      size += drain(new GZIPInputStream(Files.newInputStream(file)));
+    }
+    return size;
+  }
+
+  /**
+   * Decompress files with the pooled inflaters and direct buffers.
+   *
+   * @return the decompressed size
+   * @throws IOException the io exception
+   */
+  @Benchmark
+  @OperationsPerInvocation(FILES)
+  public long decompressFilesPooled() throws IOException {
+    long size = 0L;
+    for (Path file : files) {
+      size += drain(GpxCompression.decompress(file));
+    }
+    return size;
+  }
+
+  /**
+   * Read files with a new gzip input stream and a new unmarshaller per file.
+   *
+   * @param blackhole the blackhole
+   * @throws IOException the io exception
+   * @throws JAXBException the jaxb exception
+   */
+  @Benchmark
+  @OperationsPerInvocation(FILES)
+  public void readFilesNaive(Blackhole blackhole) throws IOException, JAXBException {
+    for (Path file : files) {
+      try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+        blackhole.consume((Gpx) jaxbContext.createUnmarshaller().unmarshal(in));
+      }
+    }
+  }
+
+  /**
+   * Read files with the pooled inflaters, buffers and unmarshallers.
+   *
+   * @param blackhole the blackhole
+   */
+  @Benchmark
+  @OperationsPerInvocation(FILES)
+  public void readFilesPooled(Blackhole blackhole) {
+    for (Path file : files) {
+      blackhole.consume(GpxFiles.read(file, jaxbContext));
+    }
+  }
+
+}
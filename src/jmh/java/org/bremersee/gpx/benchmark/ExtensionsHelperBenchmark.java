@@ -0,0 +1,124 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx.benchmark;
+
+import jakarta.xml.bind.JAXBContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.bremersee.garmin.creationtime.v1.model.ext.CreationTimeExtension;
+import org.bremersee.gpx.GpxJaxbContextHelper;
+import org.bremersee.gpx.ParsedExtensionsCache;
+import org.bremersee.gpx.model.ExtensionsType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.w3c.dom.Document;
+
+/**
+ * Benchmarks of the extension helpers on points with a realistic mix of garmin extensions.
+ *
+ * @author Christian Bremer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ExtensionsHelperBenchmark {
+
+  private static final int POINTS = 1000;
+
+  @Param({"false", "true"})
+  private boolean cached;
+
+  private JAXBContext jaxbContext;
+
+  private List<ExtensionsType> points;
+
+  /**
+   * Creates the extensions of the points.
+   */
+  @Setup
+  public void setup() {
+    jaxbContext = GpxBenchmarkData.createJaxbContext();
+    Document document = GpxBenchmarkData.createDocument();
+    points = new ArrayList<>(POINTS);
+    for (int i = 0; i < POINTS; i++) {
+      points.add(GpxBenchmarkData.createGarminExtensions(document));
+    }
+  }
+
+  /**
+   * Clears the cache.
+   */
+  @TearDown
+  public void tearDown() {
+    ParsedExtensionsCache.defaultCache().clear();
+  }
+
+  private Map<Class<?>, List<Object>> parse(ExtensionsType extensions) {
+    return cached
+        ? GpxJaxbContextHelper.parseExtensionsCached(extensions, jaxbContext)
+        : GpxJaxbContextHelper.parseExtensions(extensions, jaxbContext);
+  }
+
+  /**
+   * Parse extensions.
+   *
+   * @param blackhole the blackhole
+   */
+  @Benchmark
+  public void parseExtensions(Blackhole blackhole) {
+    for (ExtensionsType extensions : points) {
+      blackhole.consume(parse(extensions));
+    }
+  }
+
+  /**
+   * Find extensions.
+   *
+   * @param blackhole the blackhole
+   */
+  @Benchmark
+  public void findExtensions(Blackhole blackhole) {
+    for (ExtensionsType extensions : points) {
+      blackhole.consume(GpxJaxbContextHelper.findExtensions(
+          CreationTimeExtension.class, false, parse(extensions)));
+    }
+  }
+
+  /**
+   * Find first extension.
+   *
+   * @param blackhole the blackhole
+   */
+  @Benchmark
+  public void findFirstExtension(Blackhole blackhole) {
+    for (ExtensionsType extensions : points) {
+      blackhole.consume(GpxJaxbContextHelper.findFirstExtension(
+          CreationTimeExtension.class, false, extensions, jaxbContext));
+    }
+  }
+
+}
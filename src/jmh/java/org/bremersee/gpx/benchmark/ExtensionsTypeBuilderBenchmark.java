@@ -0,0 +1,103 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx.benchmark;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
+import java.util.concurrent.TimeUnit;
+import org.bremersee.garmin.gpx.v3.model.ext.AddressT;
+import org.bremersee.garmin.gpx.v3.model.ext.CategoriesT;
+import org.bremersee.garmin.gpx.v3.model.ext.WaypointExtension;
+import org.bremersee.gpx.ExtensionsTypeBuilder;
+import org.bremersee.gpx.model.ExtensionsType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of building extensions from jaxb objects.
+ *
+ * @author Christian Bremer
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ExtensionsTypeBuilderBenchmark {
+
+  @Param({"1", "5"})
+  private int elements;
+
+  private JAXBContext jaxbContext;
+
+  private Marshaller marshaller;
+
+  private WaypointExtension waypointExtension;
+
+  /**
+   * Creates the extension object.
+   *
+   * @throws JAXBException the jaxb exception
+   */
+  @Setup
+  public void setup() throws JAXBException {
+    jaxbContext = GpxBenchmarkData.createJaxbContext();
+    marshaller = jaxbContext.createMarshaller();
+
+    CategoriesT categories = new CategoriesT();
+    categories.getCategories().add("Benchmark");
+    AddressT address = new AddressT();
+    address.setCountry("Germany");
+    waypointExtension = new WaypointExtension();
+    waypointExtension.setCategories(categories);
+    waypointExtension.setAddress(address);
+  }
+
+  /**
+   * Add element with jaxb context.
+   *
+   * @return the extensions
+   */
+  @Benchmark
+  public ExtensionsType addElementWithJaxbContext() {
+    ExtensionsTypeBuilder builder = ExtensionsTypeBuilder.newInstance();
+    for (int i = 0; i < elements; i++) {
+      builder.addElement(waypointExtension, jaxbContext);
+    }
+    return builder.build(false);
+  }
+
+  /**
+   * Add element with marshaller.
+   *
+   * @return the extensions
+   */
+  @Benchmark
+  public ExtensionsType addElementWithMarshaller() {
+    ExtensionsTypeBuilder builder = ExtensionsTypeBuilder.newInstance();
+    for (int i = 0; i < elements; i++) {
+      builder.addElement(waypointExtension, marshaller);
+    }
+    return builder.build(false);
+  }
+
+}
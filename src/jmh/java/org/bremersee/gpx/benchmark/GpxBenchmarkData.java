@@ -0,0 +1,207 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx.benchmark;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ServiceLoader;
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.bremersee.gpx.model.ExtensionsType;
+import org.bremersee.gpx.model.Gpx;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.TrksegType;
+import org.bremersee.gpx.model.WptType;
+import org.bremersee.xml.JaxbContextBuilder;
+import org.bremersee.xml.JaxbContextDataProvider;
+import org.bremersee.xml.SchemaMode;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+/**
+ * Generates the synthetic input of the benchmarks, so that they run offline and with
+ * reproducible data.
+ *
+ * @author Christian Bremer
+ */
+public abstract class GpxBenchmarkData {
+
+  /**
+   * The number of points per track segment.
+   */
+  public static final int POINTS_PER_SEGMENT = 10_000;
+
+  /**
+   * A realistic mix of extensions of a track point, that was recorded by a Garmin device with
+   * heart rate, cadence and pressure sensors, plus an extension of an unknown vendor. The
+   * benchmarks of the fast model use the same extensions.
+   */
+  public static final String GARMIN_EXTENSIONS = "<extensions>"
+      + "<gpxtpx:TrackPointExtension"
+      + " xmlns:gpxtpx=\"http://www.garmin.com/xmlschemas/TrackPointExtension/v1\">"
+      + "<gpxtpx:atemp>21.5</gpxtpx:atemp>"
+      + "<gpxtpx:hr>142</gpxtpx:hr>"
+      + "<gpxtpx:cad>88</gpxtpx:cad>"
+      + "</gpxtpx:TrackPointExtension>"
+      + "<gpxx:TrackPointExtension"
+      + " xmlns:gpxx=\"http://www.garmin.com/xmlschemas/GpxExtensions/v3\">"
+      + "<gpxx:Temperature>21.5</gpxx:Temperature>"
+      + "</gpxx:TrackPointExtension>"
+      + "<prs:TrackPointExtension"
+      + " xmlns:prs=\"http://www.garmin.com/xmlschemas/PressureExtension/v1\">"
+      + "<prs:SensorPressure>101325</prs:SensorPressure>"
+      + "</prs:TrackPointExtension>"
+      + "<ctx:CreationTimeExtension"
+      + " xmlns:ctx=\"http://www.garmin.com/xmlschemas/CreationTimeExtension/v1\">"
+      + "<ctx:CreationTime>2012-11-24T13:49:38Z</ctx:CreationTime>"
+      + "</ctx:CreationTimeExtension>"
+      + "<vendor:Data xmlns:vendor=\"urn:example:vendor\">"
+      + "<vendor:battery>87</vendor:battery>"
+      + "</vendor:Data>"
+      + "</extensions>";
+
+  private GpxBenchmarkData() {
+  }
+
+  /**
+   * Creates the jaxb context with all jaxb context data providers of the class path (gpx and
+   * garmin).
+   *
+   * @return the jaxb context
+   */
+  public static JAXBContext createJaxbContext() {
+    return JaxbContextBuilder.newInstance()
+        .withSchemaMode(SchemaMode.NEVER)
+        .processAll(ServiceLoader.load(JaxbContextDataProvider.class))
+        .buildJaxbContext();
+  }
+
+  /**
+   * Creates a new empty document.
+   *
+   * @return the document
+   */
+  public static Document createDocument() {
+    try {
+      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+      factory.setNamespaceAware(true);
+      return factory.newDocumentBuilder().newDocument();
+    } catch (Exception e) {
+      throw new IllegalStateException("Creating document failed.", e);
+    }
+  }
+
+  /**
+   * Creates the garmin extensions of a track point.
+   *
+   * @param document the owner document of the extension elements
+   * @return the extensions
+   */
+  public static ExtensionsType createGarminExtensions(Document document) {
+    return importExtensions(parseTemplate(), document);
+  }
+
+  private static ExtensionsType importExtensions(Element template, Document document) {
+    ExtensionsType extensions = new ExtensionsType();
+    for (Node child = template.getFirstChild(); child != null; child = child.getNextSibling()) {
+      if (child instanceof Element) {
+        extensions.getAnies().add((Element) document.importNode(child, true));
+      }
+    }
+    return extensions;
+  }
+
+  private static Element parseTemplate() {
+    try {
+      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+      factory.setNamespaceAware(true);
+      return factory.newDocumentBuilder()
+          .parse(new InputSource(new StringReader(GARMIN_EXTENSIONS)))
+          .getDocumentElement();
+    } catch (Exception e) {
+      throw new IllegalStateException("Parsing extensions template failed.", e);
+    }
+  }
+
+  /**
+   * Creates a gpx with one track of the given number of points.
+   *
+   * @param points the number of points
+   * @param withExtensions specifies whether the points have garmin extensions
+   * @return the gpx
+   */
+  public static Gpx createGpx(int points, boolean withExtensions) {
+    DatatypeFactory datatypeFactory;
+    try {
+      datatypeFactory = DatatypeFactory.newInstance();
+    } catch (DatatypeConfigurationException e) {
+      throw new IllegalStateException(e);
+    }
+    Document document = createDocument();
+    Element template = withExtensions ? parseTemplate() : null;
+    TrkType track = new TrkType();
+    track.setName("Benchmark");
+    TrksegType segment = null;
+    long startMillis = 1_534_067_967_000L;
+    for (int i = 0; i < points; i++) {
+      if (i % POINTS_PER_SEGMENT == 0) {
+        segment = new TrksegType();
+        track.getTrksegs().add(segment);
+      }
+      WptType wpt = new WptType();
+      wpt.setLat(BigDecimal.valueOf(525_200_000L + 37L * i, 7));
+      wpt.setLon(BigDecimal.valueOf(134_050_000L + 53L * i, 7));
+      wpt.setEle(BigDecimal.valueOf(340 + (i % 200), 1));
+      wpt.setTime(datatypeFactory.newXMLGregorianCalendar(
+          Instant.ofEpochMilli(startMillis + 1000L * i).toString()));
+      if (template != null) {
+        wpt.setExtensions(importExtensions(template, document));
+      }
+      segment.getTrkpts().add(wpt);
+    }
+    Gpx gpx = new Gpx();
+    gpx.setVersion("1.1");
+    gpx.setCreator("GPX Model Benchmark");
+    gpx.getTrks().add(track);
+    return gpx;
+  }
+
+  /**
+   * Marshals the given gpx.
+   *
+   * @param gpx the gpx
+   * @param jaxbContext the jaxb context
+   * @return the xml bytes
+   */
+  public static byte[] toBytes(Gpx gpx, JAXBContext jaxbContext) {
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      jaxbContext.createMarshaller().marshal(gpx, out);
+      return out.toByteArray();
+    } catch (JAXBException e) {
+      throw new IllegalStateException("Marshalling gpx failed.", e);
+    }
+  }
+
+}
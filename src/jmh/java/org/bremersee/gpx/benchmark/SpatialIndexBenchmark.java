@@ -0,0 +1,190 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.bremersee.gpx.model.WptType;
+import org.bremersee.gpx.spatial.GeoHelper;
+import org.bremersee.gpx.spatial.GpxSpatialIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of building and querying the spatial index compared with a scan of all points.
+ * The points are distributed randomly over Europe.
+ *
+ * @author Christian Bremer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SpatialIndexBenchmark {
+
+  private static final int QUERIES = 1024;
+
+  @Param({"1000000"})
+  private int points;
+
+  private List<WptType> wpts;
+
+  private GpxSpatialIndex index;
+
+  private double[] queryLatitudes;
+
+  private double[] queryLongitudes;
+
+  private int query;
+
+  /**
+   * Creates the points and the index.
+   */
+  @Setup
+  public void setup() {
+    Random random = new Random(42L);
+    wpts = new ArrayList<>(points);
+    for (int i = 0; i < points; i++) {
+      WptType wpt = new WptType();
+      wpt.setLat(BigDecimal.valueOf(35. + random.nextDouble() * 35.));
+      wpt.setLon(BigDecimal.valueOf(-10. + random.nextDouble() * 40.));
+      wpts.add(wpt);
+    }
+    index = GpxSpatialIndex.builder(points).addAll(wpts.stream()).build();
+    queryLatitudes = new double[QUERIES];
+    queryLongitudes = new double[QUERIES];
+    for (int i = 0; i < QUERIES; i++) {
+      queryLatitudes[i] = 35. + random.nextDouble() * 35.;
+      queryLongitudes[i] = -10. + random.nextDouble() * 40.;
+    }
+  }
+
+  private int nextQuery() {
+    query = (query + 1) & (QUERIES - 1);
+    return query;
+  }
+
+  /**
+   * Build the index sequentially.
+   *
+   * @return the index
+   */
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public GpxSpatialIndex buildSequential() {
+    return GpxSpatialIndex.builder(points).addAll(wpts.stream()).build();
+  }
+
+  /**
+   * Build the index with the common pool.
+   *
+   * @return the index
+   */
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public GpxSpatialIndex buildParallel() {
+    return GpxSpatialIndex.builder(points)
+        .parallel(ForkJoinPool.commonPool())
+        .addAll(wpts.stream())
+        .build();
+  }
+
+  /**
+   * Bounding box query of about 20 km x 20 km.
+   *
+   * @return the result
+   */
+  @Benchmark
+  public int[] boundingBox() {
+    int q = nextQuery();
+    return index.search(queryLatitudes[q] - .1, queryLongitudes[q] - .1,
+        queryLatitudes[q] + .1, queryLongitudes[q] + .1);
+  }
+
+  /**
+   * Bounding box query by scanning all points.
+   *
+   * @param blackhole the blackhole
+   */
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public void boundingBoxScan(Blackhole blackhole) {
+    int q = nextQuery();
+    double minLat = queryLatitudes[q] - .1;
+    double maxLat = queryLatitudes[q] + .1;
+    double minLon = queryLongitudes[q] - .1;
+    double maxLon = queryLongitudes[q] + .1;
+    for (WptType wpt : wpts) {
+      double lat = wpt.getLat().doubleValue();
+      double lon = wpt.getLon().doubleValue();
+      if (lat >= minLat && lat <= maxLat && lon >= minLon && lon <= maxLon) {
+        blackhole.consume(wpt);
+      }
+    }
+  }
+
+  /**
+   * Radius query of 10 km.
+   *
+   * @return the result
+   */
+  @Benchmark
+  public int[] radius() {
+    int q = nextQuery();
+    return index.within(queryLatitudes[q], queryLongitudes[q], 10_000.);
+  }
+
+  /**
+   * Radius query by scanning all points.
+   *
+   * @param blackhole the blackhole
+   */
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public void radiusScan(Blackhole blackhole) {
+    int q = nextQuery();
+    for (WptType wpt : wpts) {
+      if (GeoHelper.distance(queryLatitudes[q], queryLongitudes[q],
+          wpt.getLat().doubleValue(), wpt.getLon().doubleValue()) <= 10_000.) {
+        blackhole.consume(wpt);
+      }
+    }
+  }
+
+  /**
+   * Ten nearest points.
+   *
+   * @return the result
+   */
+  @Benchmark
+  public int[] nearest() {
+    int q = nextQuery();
+    return index.nearest(queryLatitudes[q], queryLongitudes[q], 10);
+  }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx.benchmark;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.bremersee.gpx.model.TrksegType;
+import org.bremersee.gpx.model.WptType;
+import org.bremersee.gpx.track.TrackSimplifier;
+import org.bremersee.gpx.track.TrackSimplifier.Algorithm;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of simplifying one segment with millions of points with both algorithms of the
+ * track simplifier. The points are a random walk with about 3.5 meters between two points and
+ * a noise of about half a meter, like a track, that was recorded every second. The coordinates
+ * have seven decimal places like the coordinates of a gps device.
+ *
+ * @author Christian Bremer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TrackSimplifierBenchmark {
+
+  @Param({"2000000"})
+  private int points;
+
+  @Param({"DOUGLAS_PEUCKER", "VISVALINGAM_WHYATT"})
+  private Algorithm algorithm;
+
+  @Param({"1", "5", "20"})
+  private double tolerance;
+
+  private double[] latitudes;
+
+  private double[] longitudes;
+
+  private TrksegType segment;
+
+  private TrackSimplifier simplifier;
+
+  /**
+   * Creates the points.
+   */
+  @Setup
+  public void setup() {
+    Random random = new Random(42L);
+    latitudes = new double[points];
+    longitudes = new double[points];
+    segment = new TrksegType();
+    double latitude = 52.;
+    double longitude = 8.;
+    double heading = 0.;
+    for (int i = 0; i < points; i++) {
+      heading += random.nextGaussian() * .3;
+      latitude += Math.cos(heading) * .00003;
+      longitude += Math.sin(heading) * .00005;
+      BigDecimal lat = BigDecimal
+          .valueOf(Math.round((latitude + random.nextGaussian() * .000005) * 1e7), 7);
+      BigDecimal lon = BigDecimal
+          .valueOf(Math.round((longitude + random.nextGaussian() * .000005) * 1e7), 7);
+      latitudes[i] = lat.doubleValue();
+      longitudes[i] = lon.doubleValue();
+      WptType wpt = new WptType();
+      wpt.setLat(lat);
+      wpt.setLon(lon);
+      segment.getTrkpts().add(wpt);
+    }
+    simplifier = TrackSimplifier.newInstance(algorithm, tolerance);
+  }
+
+  /**
+   * Simplify the coordinates.
+   *
+   * @return the indices of the kept points
+   */
+  @Benchmark
+  public int[] simplifyCoordinates() {
+    return simplifier.simplify(latitudes, longitudes, points);
+  }
+
+  /**
+   * Simplify the segment.
+   *
+   * @return the simplified segment
+   */
+  @Benchmark
+  public TrksegType simplifySegment() {
+    return simplifier.simplify(segment);
+  }
+
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx;
+
+import jakarta.xml.bind.DataBindingException;
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import org.bremersee.gpx.model.ExtensionsType;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.TrksegType;
+import org.bremersee.gpx.model.WptType;
+import org.bremersee.xml.XmlDocumentBuilder;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.Element;
+
+/**
+ * Builds the extensions of many points at once and sets them directly on the points
+ * ({@link WptType#setExtensions(ExtensionsType)}).
+ *
+ * <p>The extension objects of a point are produced by a function. It may return
+ * {@code null} (the point gets no new extensions), a single extension object, an
+ * {@link Element} or a collection of them. One marshaller and one owner document are used for
+ * all points of a list or of a track segment; the segments of a track can be processed in
+ * parallel.
+ *
+ * @author Christian Bremer
+ */
+public interface BulkExtensionsBuilder {
+
+  /**
+   * Use document builder to create the owner documents.
+   *
+   * @param documentBuilder the document builder
+   * @return the bulk extensions builder
+   */
+  BulkExtensionsBuilder use(XmlDocumentBuilder documentBuilder);
+
+  /**
+   * Use a cache of marshalled elements. Extension objects, that are already in the cache, are
+   * not marshalled again, but copied into the owner document of the list or segment.
+   *
+   * @param cache the cache, may be {@code null} to disable caching
+   * @return the bulk extensions builder
+   */
+  BulkExtensionsBuilder use(MarshalledElementCache cache);
+
+  /**
+   * Specifies whether the new extensions are appended to the existing extensions of a point
+   * (default) or replace them.
+   *
+   * @param append {@code true} to append, {@code false} to replace
+   * @return the bulk extensions builder
+   */
+  BulkExtensionsBuilder append(boolean append);
+
+  /**
+   * Process the segments of a track in parallel with the given pool.
+   *
+   * @param pool the pool, if {@code null}, the segments are processed sequentially
+   * @return the bulk extensions builder
+   */
+  BulkExtensionsBuilder parallel(ForkJoinPool pool);
+
+  /**
+   * Builds and sets the extensions of the given points.
+   *
+   * @param points the points
+   * @param extensionsFunction the function, that produces the extension objects of a point
+   */
+  void apply(List<? extends WptType> points, Function<? super WptType, ?> extensionsFunction);
+
+  /**
+   * Builds and sets the extensions of the points of the given segment.
+   *
+   * @param segment the segment
+   * @param extensionsFunction the function, that produces the extension objects of a point
+   */
+  void apply(TrksegType segment, Function<? super WptType, ?> extensionsFunction);
+
+  /**
+   * Builds and sets the extensions of all points of the given track.
+   *
+   * @param track the track
+   * @param extensionsFunction the function, that produces the extension objects of a point
+   */
+  void apply(TrkType track, Function<? super WptType, ?> extensionsFunction);
+
+  /**
+   * Creates a new bulk extensions builder.
+   *
+   * @param jaxbContext the jaxb context to marshal the extension objects
+   * @return the bulk extensions builder
+   */
+  static BulkExtensionsBuilder newInstance(JAXBContext jaxbContext) {
+    return new DefaultBuilder(jaxbContext);
+  }
+
+  /**
+   * The default bulk extensions builder.
+   */
+  class DefaultBuilder implements BulkExtensionsBuilder {
+
+    private final JAXBContext jaxbContext;
+
+    private XmlDocumentBuilder documentBuilder = XmlDocumentBuilder.newInstance();
+
+    private MarshalledElementCache cache;
+
+    private boolean append = true;
+
+    private ForkJoinPool pool;
+
+    /**
+     * Instantiates a new default builder.
+     *
+     * @param jaxbContext the jaxb context
+     */
+    DefaultBuilder(JAXBContext jaxbContext) {
+      this.jaxbContext = Objects.requireNonNull(jaxbContext, "Jaxb context must be present.");
+    }
+
+    @Override
+    public BulkExtensionsBuilder use(XmlDocumentBuilder documentBuilder) {
+      if (documentBuilder != null) {
+        this.documentBuilder = documentBuilder;
+      }
+      return this;
+    }
+
+    @Override
+    public BulkExtensionsBuilder use(MarshalledElementCache cache) {
+      this.cache = cache;
+      return this;
+    }
+
+    @Override
+    public BulkExtensionsBuilder append(boolean append) {
+      this.append = append;
+      return this;
+    }
+
+    @Override
+    public BulkExtensionsBuilder parallel(ForkJoinPool pool) {
+      this.pool = pool;
+      return this;
+    }
+
+    @Override
+    public void apply(
+        List<? extends WptType> points,
+        Function<? super WptType, ?> extensionsFunction) {
+
+      Objects.requireNonNull(extensionsFunction, "Extensions function must be present.");
+      if (points == null || points.isEmpty()) {
+        return;
+      }
+      final Marshaller marshaller;
+      try {
+        marshaller = jaxbContext.createMarshaller();
+      } catch (JAXBException e) {
+        throw new DataBindingException("Creating marshaller failed.", e);
+      }
+      final DocumentFragment fragment = documentBuilder.buildDocument().createDocumentFragment();
+      for (WptType point : points) {
+        if (point != null) {
+          apply(point, extensionsFunction.apply(point), marshaller, fragment);
+        }
+      }
+    }
+
+    @Override
+    public void apply(TrksegType segment, Function<? super WptType, ?> extensionsFunction) {
+      if (segment != null) {
+        apply(segment.getTrkpts(), extensionsFunction);
+      }
+    }
+
+    @Override
+    public void apply(TrkType track, Function<? super WptType, ?> extensionsFunction) {
+      if (track == null || track.getTrksegs().isEmpty()) {
+        return;
+      }
+      if (pool == null || track.getTrksegs().size() == 1) {
+        for (TrksegType segment : track.getTrksegs()) {
+          apply(segment, extensionsFunction);
+        }
+      } else {
+        pool.submit(() -> track.getTrksegs()
+                .parallelStream()
+                .forEach(segment -> apply(segment, extensionsFunction)))
+            .join();
+      }
+    }
+
+    private void apply(
+        WptType point,
+        Object extensionObjects,
+        Marshaller marshaller,
+        DocumentFragment fragment) {
+
+      if (extensionObjects == null) {
+        if (!append) {
+          point.setExtensions(null);
+        }
+        return;
+      }
+      ExtensionsType extensions = append ? point.getExtensions() : null;
+      if (extensions == null) {
+        extensions = new ExtensionsType();
+      }
+      if (extensionObjects instanceof Collection) {
+        for (Object extensionObject : (Collection<?>) extensionObjects) {
+          add(extensions, extensionObject, marshaller, fragment);
+        }
+      } else {
+        add(extensions, extensionObjects, marshaller, fragment);
+      }
+      point.setExtensions(extensions.getAnies().isEmpty() ? null : extensions);
+    }
+
+    private void add(
+        ExtensionsType extensions,
+        Object extensionObject,
+        Marshaller marshaller,
+        DocumentFragment fragment) {
+
+      if (extensionObject == null) {
+        return;
+      }
+      if (extensionObject instanceof Element) {
+        extensions.getAnies().add((Element) extensionObject);
+        return;
+      }
+      if (cache != null) {
+        Element element = cache.getOrMarshal(extensionObject, fragment.getOwnerDocument(),
+            obj -> DomFragments.marshal(obj, marshaller, fragment, null));
+        if (element != null) {
+          extensions.getAnies().add(element);
+        }
+        return;
+      }
+      DomFragments.marshal(extensionObject, marshaller, fragment, extensions.getAnies());
+    }
+  }
+
+}
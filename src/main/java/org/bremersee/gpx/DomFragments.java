@@ -0,0 +1,75 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx;
+
+import jakarta.xml.bind.DataBindingException;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
+import java.util.List;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Marshals extension objects into a reusable document fragment.
+ *
+ * @author Christian Bremer
+ */
+class DomFragments {
+
+  private DomFragments() {
+  }
+
+  /**
+   * Marshals the object into the fragment and detaches all children of the fragment, so the
+   * fragment can be reused and the marshalled elements are owned by the document of the fragment.
+   *
+   * @param extensionObject the extension object
+   * @param marshaller the marshaller
+   * @param fragment the fragment
+   * @param elements the list, the marshalled elements are added to, may be {@code null}
+   * @return the first marshalled element or {@code null}
+   */
+  static Element marshal(
+      Object extensionObject,
+      Marshaller marshaller,
+      DocumentFragment fragment,
+      List<Element> elements) {
+
+    try {
+      marshaller.marshal(extensionObject, fragment);
+    } catch (JAXBException e) {
+      throw new DataBindingException("Marshalling extension element failed.", e);
+    }
+    Element element = null;
+    Node child;
+    while ((child = fragment.getFirstChild()) != null) {
+      fragment.removeChild(child);
+      if (child instanceof Element) {
+        if (element == null) {
+          element = (Element) child;
+        }
+        if (elements != null) {
+          elements.add((Element) child);
+        }
+      }
+    }
+    return element;
+  }
+
+}
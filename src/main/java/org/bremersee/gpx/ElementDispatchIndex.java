@@ -0,0 +1,303 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.SchemaOutputResolver;
+import jakarta.xml.bind.Unmarshaller;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.transform.dom.DOMResult;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * An index of the root elements, that a {@link JAXBContext} can unmarshal. It is used to decide
+ * by the qualified name of an extension element, whether the element is unmarshalled or returned
+ * as it is, without trying to unmarshal every element and catching the exception.
+ *
+ * <p>The known root elements are derived from the schema of the context (see
+ * {@link JAXBContext#generateSchema(SchemaOutputResolver)}). If the context cannot generate a
+ * schema, the index learns the names: an element, that cannot be unmarshalled, is tried once,
+ * afterwards all elements with the same name are returned as they are.
+ *
+ * @author Christian Bremer
+ */
+public interface ElementDispatchIndex {
+
+  /**
+   * The path, that an element took.
+   */
+  enum DispatchPath {
+
+    /**
+     * The element is known and was unmarshalled.
+     */
+    DECODED,
+
+    /**
+     * The element is unknown and was returned as it is without trying to unmarshal it.
+     */
+    SKIPPED,
+
+    /**
+     * The element was not yet known to be unmarshallable, so unmarshalling was tried and it
+     * succeeded (the index learned, that the element is known).
+     */
+    PROBED,
+
+    /**
+     * Unmarshalling was tried and failed, the element was returned as it is.
+     */
+    FAILED
+  }
+
+  /**
+   * Determines whether elements with the given name can be unmarshalled.
+   *
+   * @param element the element
+   * @return {@code true} if the element is known or was not tried yet, {@code false} if elements
+   *     with this name are returned as they are
+   */
+  boolean isCandidate(Element element);
+
+  /**
+   * Gets the class of the objects, that were unmarshalled from elements with the name of the
+   * given element.
+   *
+   * @param element the element
+   * @return the class or {@code null}, if no element with this name was unmarshalled yet or if
+   *     elements with this name were unmarshalled to different classes
+   */
+  Class<?> getDecodedClass(Element element);
+
+  /**
+   * Unmarshals the given element, if it is known, otherwise the element is returned.
+   *
+   * @param element the element
+   * @param unmarshaller the unmarshaller, may be {@code null} if the element is not a candidate
+   * @return the unmarshalled object or the element
+   */
+  Object decode(Element element, Unmarshaller unmarshaller);
+
+  /**
+   * Gets the number of elements, that took the given path.
+   *
+   * @return the counts of all paths
+   */
+  Map<DispatchPath, Long> getStatistics();
+
+  /**
+   * Gets the index of the given context.
+   *
+   * @param jaxbContext the jaxb context
+   * @return the element dispatch index
+   */
+  static ElementDispatchIndex of(JAXBContext jaxbContext) {
+    return DefaultIndex.of(jaxbContext);
+  }
+
+  /**
+   * Gets the name of the given element.
+   *
+   * @param element the element
+   * @return the name
+   */
+  static QName nameOf(Element element) {
+    String localName = element.getLocalName();
+    return new QName(
+        element.getNamespaceURI() != null
+            ? element.getNamespaceURI()
+            : XMLConstants.NULL_NS_URI,
+        localName != null ? localName : element.getNodeName());
+  }
+
+  /**
+   * The default element dispatch index.
+   */
+  class DefaultIndex implements ElementDispatchIndex {
+
+    private static final int MAX_LEARNED = 4096;
+
+    private static final Class<?> AMBIGUOUS = Void.class;
+
+    private static final Map<JAXBContext, ElementDispatchIndex> INDICES = new WeakHashMap<>();
+
+    private final Set<QName> derived;
+
+    private final Map<QName, Boolean> learned = new ConcurrentHashMap<>();
+
+    private final Map<QName, Class<?>> decodedClasses = new ConcurrentHashMap<>();
+
+    private final Map<DispatchPath, LongAdder> counters = new EnumMap<>(DispatchPath.class);
+
+    /**
+     * Instantiates a new default index.
+     *
+     * @param knownElements the known root elements or {@code null}, if they are unknown and
+     *     must be learned
+     */
+    protected DefaultIndex(Set<QName> knownElements) {
+      this.derived = knownElements != null ? Set.copyOf(knownElements) : null;
+      for (DispatchPath path : DispatchPath.values()) {
+        counters.put(path, new LongAdder());
+      }
+    }
+
+    private static ElementDispatchIndex of(JAXBContext jaxbContext) {
+      synchronized (INDICES) {
+        ElementDispatchIndex index = INDICES.get(jaxbContext);
+        if (index == null) {
+          index = new DefaultIndex(findRootElements(jaxbContext));
+          INDICES.put(jaxbContext, index);
+        }
+        return index;
+      }
+    }
+
+    /**
+     * Finds the root elements of the given context by generating its schema.
+     *
+     * @param jaxbContext the jaxb context
+     * @return the root elements or {@code null}, if the schema cannot be generated
+     */
+    static Set<QName> findRootElements(JAXBContext jaxbContext) {
+      List<DOMResult> results = new ArrayList<>();
+      try {
+        jaxbContext.generateSchema(new SchemaOutputResolver() {
+          @Override
+          public DOMResult createOutput(String namespaceUri, String suggestedFileName) {
+            DOMResult result = new DOMResult();
+            result.setSystemId(suggestedFileName);
+            results.add(result);
+            return result;
+          }
+        });
+      } catch (Exception | LinkageError e) {
+        return null;
+      }
+      if (results.isEmpty()) {
+        return null;
+      }
+      Set<QName> names = new HashSet<>();
+      for (DOMResult result : results) {
+        Node node = result.getNode();
+        Element schema = node instanceof Document
+            ? ((Document) node).getDocumentElement()
+            : node instanceof Element ? (Element) node : null;
+        if (schema == null) {
+          continue;
+        }
+        String targetNamespace = schema.getAttribute("targetNamespace");
+        for (Node child = schema.getFirstChild(); child != null; child = child.getNextSibling()) {
+          if (child instanceof Element
+              && XMLConstants.W3C_XML_SCHEMA_NS_URI.equals(child.getNamespaceURI())
+              && "element".equals(child.getLocalName())) {
+            names.add(new QName(targetNamespace, ((Element) child).getAttribute("name")));
+          }
+        }
+      }
+      return Collections.unmodifiableSet(names);
+    }
+
+    @Override
+    public boolean isCandidate(Element element) {
+      QName name = nameOf(element);
+      if (derived != null) {
+        return derived.contains(name);
+      }
+      return !Boolean.FALSE.equals(learned.get(name));
+    }
+
+    @Override
+    public Class<?> getDecodedClass(Element element) {
+      Class<?> cls = decodedClasses.get(nameOf(element));
+      return cls != AMBIGUOUS ? cls : null;
+    }
+
+    @Override
+    public Object decode(Element element, Unmarshaller unmarshaller) {
+      QName name = nameOf(element);
+      if (derived != null) {
+        if (!derived.contains(name)) {
+          counters.get(DispatchPath.SKIPPED).increment();
+          return element;
+        }
+        return unmarshal(element, unmarshaller, DispatchPath.DECODED);
+      }
+      Boolean known = learned.get(name);
+      if (Boolean.FALSE.equals(known)) {
+        counters.get(DispatchPath.SKIPPED).increment();
+        return element;
+      }
+      if (Boolean.TRUE.equals(known)) {
+        return unmarshal(element, unmarshaller, DispatchPath.DECODED);
+      }
+      Object result = unmarshal(element, unmarshaller, DispatchPath.PROBED);
+      if (unmarshaller != null && learned.size() < MAX_LEARNED) {
+        learned.putIfAbsent(name, result != element);
+      }
+      return result;
+    }
+
+    private Object unmarshal(Element element, Unmarshaller unmarshaller, DispatchPath path) {
+      if (unmarshaller != null) {
+        try {
+          Object result = unmarshaller.unmarshal(element);
+          counters.get(path).increment();
+          learnDecodedClass(nameOf(element), result.getClass());
+          return result;
+        } catch (Exception ignored) {
+          // returned as it is
+        }
+      }
+      counters.get(DispatchPath.FAILED).increment();
+      return element;
+    }
+
+    private void learnDecodedClass(QName name, Class<?> cls) {
+      Class<?> existing = decodedClasses.get(name);
+      if (existing == null) {
+        if (decodedClasses.size() < MAX_LEARNED) {
+          existing = decodedClasses.putIfAbsent(name, cls);
+        }
+      }
+      if (existing != null && existing != cls) {
+        decodedClasses.put(name, AMBIGUOUS);
+      }
+    }
+
+    @Override
+    public Map<DispatchPath, Long> getStatistics() {
+      Map<DispatchPath, Long> statistics = new EnumMap<>(DispatchPath.class);
+      counters.forEach((path, counter) -> statistics.put(path, counter.sum()));
+      return Collections.unmodifiableMap(statistics);
+    }
+  }
+
+}
@@ -16,13 +16,17 @@
 
 package org.bremersee.gpx;
 
+import jakarta.xml.bind.DataBindingException;
 import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
 import jakarta.xml.bind.Marshaller;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import org.bremersee.gpx.model.ExtensionsType;
 import org.bremersee.xml.XmlDocumentBuilder;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
 import org.w3c.dom.Element;
 
 /**
@@ -40,6 +44,46 @@ public interface ExtensionsTypeBuilder {
    */
   ExtensionsTypeBuilder use(XmlDocumentBuilder documentBuilder);
 
+  /**
+   * Marshal all added objects into one shared owner document instead of creating a new document
+   * for each object. The shared document is created by the document builder.
+   *
+   * <p>Sharing the document is an optimization only, so the default implementation does nothing
+   * and returns this builder.
+   *
+   * @return the extensions builder
+   */
+  default ExtensionsTypeBuilder useSharedDocument() {
+    return this;
+  }
+
+  /**
+   * Marshal all added objects into the given owner document instead of creating a new document
+   * for each object. The document can be shared by several builders, that are used by the same
+   * thread, e. g. by all builders of the points of a track segment.
+   *
+   * <p>The default implementation does nothing and returns this builder.
+   *
+   * @param document the owner document of the marshalled elements
+   * @return the extensions builder
+   */
+  default ExtensionsTypeBuilder useSharedDocument(Document document) {
+    return this;
+  }
+
+  /**
+   * Use a cache of marshalled elements. Extension objects, that are already in the cache, are
+   * not marshalled again, but copied into the document of this builder.
+   *
+   * <p>The default implementation does not use a cache and returns this builder.
+   *
+   * @param cache the cache, may be {@code null} to disable caching
+   * @return the extensions builder
+   */
+  default ExtensionsTypeBuilder use(MarshalledElementCache cache) {
+    return this;
+  }
+
   /**
    * Add element to the extensions.
    *
@@ -112,6 +156,16 @@ public interface ExtensionsTypeBuilder {
 
     private XmlDocumentBuilder documentBuilder = XmlDocumentBuilder.newInstance();
 
+    private boolean sharedDocument;
+
+    private DocumentFragment fragment;
+
+    private MarshalledElementCache cache;
+
+    private JAXBContext lastJaxbContext;
+
+    private Marshaller lastMarshaller;
+
     /**
      * Instantiates a new default builder.
      */
@@ -148,6 +202,25 @@ public interface ExtensionsTypeBuilder {
       return this;
     }
 
+    @Override
+    public ExtensionsTypeBuilder use(MarshalledElementCache cache) {
+      this.cache = cache;
+      return this;
+    }
+
+    @Override
+    public ExtensionsTypeBuilder useSharedDocument() {
+      this.sharedDocument = true;
+      return this;
+    }
+
+    @Override
+    public ExtensionsTypeBuilder useSharedDocument(Document document) {
+      this.sharedDocument = true;
+      this.fragment = document != null ? document.createDocumentFragment() : null;
+      return this;
+    }
+
     @Override
     public ExtensionsTypeBuilder addElement(Element extensionElement) {
       if (extensionElement != null) {
@@ -161,6 +234,13 @@ public interface ExtensionsTypeBuilder {
       if (extensionElement == null) {
         return this;
       }
+      if (cache != null) {
+        return addElement(cache.getOrMarshal(extensionElement, getFragment().getOwnerDocument(),
+            obj -> marshalShared(obj, getMarshaller(jaxbContext))));
+      }
+      if (sharedDocument) {
+        return addElement(marshalShared(extensionElement, getMarshaller(jaxbContext)));
+      }
       return addElement(
           documentBuilder.buildDocument(extensionElement, jaxbContext).getDocumentElement());
     }
@@ -170,10 +250,44 @@ public interface ExtensionsTypeBuilder {
       if (extensionElement == null) {
         return this;
       }
+      if (cache != null) {
+        return addElement(cache.getOrMarshal(extensionElement, getFragment().getOwnerDocument(),
+            obj -> marshalShared(obj, marshaller)));
+      }
+      if (sharedDocument) {
+        return addElement(marshalShared(extensionElement, marshaller));
+      }
       return addElement(
           documentBuilder.buildDocument(extensionElement, marshaller).getDocumentElement());
     }
 
+    private Marshaller getMarshaller(JAXBContext jaxbContext) {
+      if (lastMarshaller == null || lastJaxbContext != jaxbContext) {
+        try {
+          lastMarshaller = jaxbContext.createMarshaller();
+          lastJaxbContext = jaxbContext;
+        } catch (JAXBException e) {
+          throw new DataBindingException("Creating marshaller failed.", e);
+        }
+      }
+      return lastMarshaller;
+    }
+
+    private DocumentFragment getFragment() {
+      if (fragment == null) {
+        fragment = documentBuilder.buildDocument().createDocumentFragment();
+      }
+      return fragment;
+    }
+
+    /**
+     * Marshals the object into the fragment of the shared document and detaches the marshalled
+     * element, so the fragment can be reused and the element is owned by the shared document.
+     */
+    private Element marshalShared(Object extensionElement, Marshaller marshaller) {
+      return DomFragments.marshal(extensionElement, marshaller, getFragment(), null);
+    }
+
     @Override
     public ExtensionsType build(boolean returnNullIfEmpty) {
       if (returnNullIfEmpty && anies.isEmpty()) {
@@ -23,7 +23,9 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Stream;
 import org.bremersee.gpx.model.ExtensionsType;
 import org.w3c.dom.Element;
 
@@ -49,20 +51,84 @@ public abstract class GpxJaxbContextHelper {
    * map entry will be created with the class of the element as key and a list with all elements as
    * value.
    *
+   * <p>Only elements, that are known by the {@link ElementDispatchIndex} of the context, are
+   * unmarshalled, all others are returned as they are. The unmarshaller is taken from the
+   * {@link UnmarshallerPool#defaultPool()}.
+   *
    * @param extensions the GPX extension
    * @param jaxbContext the {@link JAXBContext} to parse the elements
    * @return an unmodifiable map with the unmarshalled objects (key is the class of the objects,
    *     value is a list with all unmarshalled objects of this class)
+   * @see #parseExtensionsCached(ExtensionsType, JAXBContext)
    */
   public static Map<Class<?>, List<Object>> parseExtensions(
       final ExtensionsType extensions,
       final JAXBContext jaxbContext) {
 
+    if (extensions == null || extensions.getAnies() == null || extensions.getAnies().isEmpty()) {
+      return Collections.emptyMap();
+    }
+    return Collections.unmodifiableMap(parsePooled(extensions, jaxbContext));
+  }
+
+  /**
+   * Parses the elements of the given GPX extensions like
+   * {@link #parseExtensions(ExtensionsType, JAXBContext)}, but caches the result in the
+   * {@link ParsedExtensionsCache#defaultCache()}. Calling this method again with the same
+   * (unchanged) extensions instance returns the same map, so the returned lists and the objects
+   * in them are shared between all callers and must not be modified.
+   *
+   * @param extensions the GPX extension
+   * @param jaxbContext the {@link JAXBContext} to parse the elements
+   * @return an unmodifiable map with unmodifiable lists of the unmarshalled objects (key is the
+   *     class of the objects, value is a list with all unmarshalled objects of this class)
+   */
+  public static Map<Class<?>, List<Object>> parseExtensionsCached(
+      final ExtensionsType extensions,
+      final JAXBContext jaxbContext) {
+
+    if (extensions == null || extensions.getAnies() == null || extensions.getAnies().isEmpty()) {
+      return Collections.emptyMap();
+    }
+    return ParsedExtensionsCache.defaultCache()
+        .computeIfAbsent(extensions, jaxbContext, (ext, ctx) -> {
+          final Map<Class<?>, List<Object>> map = parsePooled(ext, ctx);
+          map.replaceAll((cls, values) -> Collections.unmodifiableList(values));
+          return Collections.unmodifiableMap(map);
+        });
+  }
+
+  private static Map<Class<?>, List<Object>> parsePooled(
+      final ExtensionsType extensions,
+      final JAXBContext jaxbContext) {
+
+    final ElementDispatchIndex index = ElementDispatchIndex.of(jaxbContext);
+    final UnmarshallerPool pool = UnmarshallerPool.defaultPool();
+    Unmarshaller unmarshaller = null;
+    boolean borrowed = false;
+    final Map<Class<?>, List<Object>> map = new HashMap<>();
     try {
-      return parseExtensions(extensions, jaxbContext.createUnmarshaller());
-    } catch (final Exception ignored) {
-      return parseExtensions(extensions, (Unmarshaller) null);
+      for (final Element element : extensions.getAnies()) {
+        if (element != null) {
+          if (!borrowed && index.isCandidate(element)) {
+            borrowed = true;
+            try {
+              unmarshaller = pool.borrow(jaxbContext);
+            } catch (final Exception ignored) {
+              // the elements are returned as they are
+            }
+          }
+          final Object strictElement = index.decode(element, unmarshaller);
+          map.computeIfAbsent(strictElement.getClass(), k -> new ArrayList<>())
+              .add(strictElement);
+        }
+      }
+    } finally {
+      if (unmarshaller != null) {
+        pool.release(jaxbContext, unmarshaller);
+      }
     }
+    return map;
   }
 
   /**
@@ -169,6 +235,98 @@ public abstract class GpxJaxbContextHelper {
     return findExtensions(cls, instancesOf, parseExtensions(extensions, jaxbContext));
   }
 
+  /**
+   * Find all extensions of the given type. The extensions are parsed with
+   * {@link #parseExtensionsCached(ExtensionsType, JAXBContext)}, so looking up several types in
+   * the same (unchanged) extensions parses the elements only once. The returned objects are
+   * shared between all callers and must not be modified.
+   *
+   * @param cls the type
+   * @param instancesOf if {@code true} instanceof will be used, otherwise {@link
+   *     Class#equals(Object)} will be used
+   * @param extensions the GPX extensions
+   * @param jaxbContext the {@link JAXBContext} to parse the elements
+   * @param <T> the type
+   * @return an unmodifiable list of all extensions of the given type
+   */
+  public static <T> List<T> findExtensionsCached(
+      final Class<T> cls,
+      final boolean instancesOf,
+      final ExtensionsType extensions,
+      final JAXBContext jaxbContext) {
+
+    return findExtensions(cls, instancesOf, parseExtensionsCached(extensions, jaxbContext));
+  }
+
+  /**
+   * Streams all extensions of the given type in the order of the elements. The elements are
+   * parsed lazily: an element is only unmarshalled, if it is known by the
+   * {@link ElementDispatchIndex} of the context and if it is not known to be unmarshalled to
+   * another type. Short-circuiting operations like {@link Stream#findFirst()} stop parsing after
+   * the first match.
+   *
+   * @param cls the type
+   * @param instancesOf if {@code true} instanceof will be used, otherwise {@link
+   *     Class#equals(Object)} will be used
+   * @param extensions the GPX extensions
+   * @param jaxbContext the {@link JAXBContext} to parse the elements
+   * @param <T> the type
+   * @return the stream of all extensions of the given type
+   */
+  public static <T> Stream<T> streamExtensions(
+      final Class<T> cls,
+      final boolean instancesOf,
+      final ExtensionsType extensions,
+      final JAXBContext jaxbContext) {
+
+    if (cls == null || extensions == null || extensions.getAnies() == null
+        || extensions.getAnies().isEmpty()) {
+      return Stream.empty();
+    }
+    final ElementDispatchIndex index = ElementDispatchIndex.of(jaxbContext);
+    return extensions.getAnies().stream()
+        .filter(Objects::nonNull)
+        .filter(element -> {
+          if (!index.isCandidate(element)) {
+            return isMatching(cls, instancesOf, element.getClass());
+          }
+          final Class<?> decodedClass = index.getDecodedClass(element);
+          return decodedClass == null || isMatching(cls, instancesOf, decodedClass);
+        })
+        .map(element -> decodePooled(element, index, jaxbContext))
+        .filter(value -> isMatching(cls, instancesOf, value.getClass()))
+        .map(cls::cast);
+  }
+
+  private static boolean isMatching(
+      final Class<?> cls,
+      final boolean instancesOf,
+      final Class<?> valueClass) {
+    return cls.equals(valueClass) || (instancesOf && cls.isAssignableFrom(valueClass));
+  }
+
+  private static Object decodePooled(
+      final Element element,
+      final ElementDispatchIndex index,
+      final JAXBContext jaxbContext) {
+
+    if (!index.isCandidate(element)) {
+      return index.decode(element, null);
+    }
+    final UnmarshallerPool pool = UnmarshallerPool.defaultPool();
+    final Unmarshaller unmarshaller;
+    try {
+      unmarshaller = pool.borrow(jaxbContext);
+    } catch (final Exception ignored) {
+      return index.decode(element, null);
+    }
+    try {
+      return index.decode(element, unmarshaller);
+    } finally {
+      pool.release(jaxbContext, unmarshaller);
+    }
+  }
+
   /**
    * Find all extensions of the given type.
    *
@@ -221,6 +379,7 @@ public abstract class GpxJaxbContextHelper {
    * @param <T> the type
    * @return {@link Optional#empty()} if there is no such element, otherwise an optional with the
    *     parsed element
+   * @see #streamExtensions(Class, boolean, ExtensionsType, JAXBContext)
    */
   public static <T> Optional<T> findFirstExtension(
       final Class<T> cls,
@@ -228,7 +387,31 @@ public abstract class GpxJaxbContextHelper {
       final ExtensionsType extensions,
       final JAXBContext jaxbContext) {
 
-    final List<T> list = findExtensions(cls, instancesOf, extensions, jaxbContext);
+    return streamExtensions(cls, instancesOf, extensions, jaxbContext).findFirst();
+  }
+
+  /**
+   * Find the first extension of the given type. The extensions are parsed with
+   * {@link #parseExtensionsCached(ExtensionsType, JAXBContext)}, so the returned object is shared
+   * between all callers and must not be modified.
+   *
+   * @param cls the type
+   * @param instancesOf if {@code true} instanceof will be used, otherwise {@link
+   *     Class#equals(Object)} will be used
+   * @param extensions the GPX extensions
+   * @param jaxbContext the {@link JAXBContext} to parse the elements
+   * @param <T> the type
+   * @return {@link Optional#empty()} if there is no such element, otherwise an optional with the
+   *     parsed element
+   * @see #findExtensionsCached(Class, boolean, ExtensionsType, JAXBContext)
+   */
+  public static <T> Optional<T> findFirstExtensionCached(
+      final Class<T> cls,
+      final boolean instancesOf,
+      final ExtensionsType extensions,
+      final JAXBContext jaxbContext) {
+
+    final List<T> list = findExtensionsCached(cls, instancesOf, extensions, jaxbContext);
     return list.isEmpty() ? Optional.empty() : Optional.of(list.get(0));
   }
 
@@ -0,0 +1,326 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx;
+
+import jakarta.xml.bind.DataBindingException;
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Unmarshaller;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.xml.XMLConstants;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import org.bremersee.gpx.model.BoundsType;
+import org.bremersee.gpx.model.Gpx;
+import org.bremersee.gpx.model.LinkType;
+import org.bremersee.gpx.model.MetadataType;
+import org.bremersee.gpx.model.PersonType;
+import org.bremersee.gpx.model.RteType;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.TrksegType;
+import org.bremersee.gpx.model.WptType;
+import org.bremersee.xml.JaxbContextBuilder;
+import org.bremersee.xml.SchemaMode;
+import org.xml.sax.SAXException;
+
+/**
+ * A process wide holder of the jaxb context of the GPX model. The context is created only once
+ * on a background thread, that is started by the first call of {@link #bootstrap()} or
+ * {@link #getJaxbContext()}.
+ *
+ * <p>Nothing is loaded from the network: the context is created without schema and the schema
+ * (see {@link #getSchema()}) is compiled from the bundled {@value #SCHEMA_RESOURCE} with external
+ * access disabled.
+ *
+ * <p>The cost of the first marshalling and unmarshalling can be taken at startup with
+ * {@link #warmUp()}, for example with {@code GpxJaxbContextHolder.bootstrap().thenRun(
+ * GpxJaxbContextHolder::warmUp)}.
+ *
+ * @author Christian Bremer
+ */
+public abstract class GpxJaxbContextHolder {
+
+  /**
+   * The class path resource of the GPX schema.
+   */
+  public static final String SCHEMA_RESOURCE = "META-INF/JAXB/xsd/gpx.xsd";
+
+  private static final AtomicReference<CompletableFuture<Bootstrap>> BOOTSTRAP
+      = new AtomicReference<>();
+
+  private static volatile Duration warmUp;
+
+  private GpxJaxbContextHolder() {
+  }
+
+  /**
+   * Starts the creation of the jaxb context on a background thread, if it is not already started.
+   *
+   * @return the future of the jaxb context
+   */
+  public static CompletableFuture<JAXBContext> bootstrap() {
+    return startBootstrap().thenApply(bootstrap -> bootstrap.jaxbContext);
+  }
+
+  private static CompletableFuture<Bootstrap> startBootstrap() {
+    CompletableFuture<Bootstrap> future = BOOTSTRAP.get();
+    if (future != null) {
+      return future;
+    }
+    CompletableFuture<Bootstrap> newFuture = new CompletableFuture<>();
+    if (!BOOTSTRAP.compareAndSet(null, newFuture)) {
+      return BOOTSTRAP.get();
+    }
+    Thread thread = new Thread(() -> {
+      try {
+        newFuture.complete(new Bootstrap());
+      } catch (Throwable t) {
+        // a failed bootstrap can be started again
+        BOOTSTRAP.compareAndSet(newFuture, null);
+        newFuture.completeExceptionally(t);
+      }
+    }, "gpx-jaxb-context-bootstrap");
+    thread.setDaemon(true);
+    thread.start();
+    return newFuture;
+  }
+
+  private static Bootstrap awaitBootstrap() {
+    try {
+      return startBootstrap().join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause() != null ? e.getCause() : e;
+      if (cause instanceof DataBindingException) {
+        throw (DataBindingException) cause;
+      }
+      throw new DataBindingException("Creating gpx jaxb context failed.", cause);
+    }
+  }
+
+  /**
+   * Determines whether the jaxb context is created.
+   *
+   * @return {@code true} if the jaxb context is created, otherwise {@code false}
+   */
+  public static boolean isInitialized() {
+    CompletableFuture<Bootstrap> future = BOOTSTRAP.get();
+    return future != null && future.isDone() && !future.isCompletedExceptionally();
+  }
+
+  /**
+   * Gets the jaxb context. If it is not created yet, this call waits for it.
+   *
+   * @return the jaxb context
+   */
+  public static JAXBContext getJaxbContext() {
+    return awaitBootstrap().jaxbContext;
+  }
+
+  /**
+   * Gets the GPX schema, that was compiled from the bundled {@value #SCHEMA_RESOURCE}. If it is
+   * not compiled yet, this call waits for it.
+   *
+   * @return the schema
+   */
+  public static Schema getSchema() {
+    return awaitBootstrap().schema;
+  }
+
+  /**
+   * Marshals and unmarshals a small gpx, that contains all model classes, with the jaxb context.
+   * The unmarshaller is returned to the {@link UnmarshallerPool#defaultPool()}, so that the first
+   * reader can use it. If the jaxb context is not created yet, this call waits for it.
+   */
+  public static void warmUp() {
+    JAXBContext jaxbContext = getJaxbContext();
+    long start = System.nanoTime();
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      jaxbContext.createMarshaller().marshal(createWarmUpGpx(), out);
+      UnmarshallerPool pool = UnmarshallerPool.defaultPool();
+      Unmarshaller unmarshaller = pool.borrow(jaxbContext);
+      try {
+        unmarshaller.unmarshal(new ByteArrayInputStream(out.toByteArray()));
+      } finally {
+        pool.release(jaxbContext, unmarshaller);
+      }
+    } catch (JAXBException e) {
+      throw new DataBindingException("Warming up gpx jaxb context failed.", e);
+    }
+    if (warmUp == null) {
+      warmUp = Duration.ofNanos(System.nanoTime() - start);
+    }
+  }
+
+  private static Gpx createWarmUpGpx() {
+    LinkType link = new LinkType();
+    link.setHref("https://github.com/bremersee/gpx-model");
+    PersonType author = new PersonType();
+    author.setLink(link);
+    BoundsType bounds = new BoundsType();
+    bounds.setMinlat(BigDecimal.ZERO);
+    bounds.setMinlon(BigDecimal.ZERO);
+    bounds.setMaxlat(BigDecimal.ONE);
+    bounds.setMaxlon(BigDecimal.ONE);
+    MetadataType metadata = new MetadataType();
+    metadata.setAuthor(author);
+    metadata.setBounds(bounds);
+    metadata.setTime(GpxValueHelper.toXmlGregorianCalendar(0L));
+
+    RteType route = new RteType();
+    route.getRtepts().add(createWarmUpPoint());
+    TrksegType segment = new TrksegType();
+    segment.getTrkpts().add(createWarmUpPoint());
+    TrkType track = new TrkType();
+    track.getTrksegs().add(segment);
+
+    Gpx gpx = new Gpx();
+    gpx.setVersion("1.1");
+    gpx.setCreator("warm-up");
+    gpx.setMetadata(metadata);
+    gpx.getWpts().add(createWarmUpPoint());
+    gpx.getRtes().add(route);
+    gpx.getTrks().add(track);
+    return gpx;
+  }
+
+  private static WptType createWarmUpPoint() {
+    WptType point = new WptType();
+    point.setLat(BigDecimal.ONE);
+    point.setLon(BigDecimal.ONE);
+    point.setEle(BigDecimal.ONE);
+    point.setTime(GpxValueHelper.toXmlGregorianCalendar(0L));
+    return point;
+  }
+
+  /**
+   * Gets the timing of the bootstrap.
+   *
+   * @return the timing
+   */
+  public static Timing getTiming() {
+    CompletableFuture<Bootstrap> future = BOOTSTRAP.get();
+    final Bootstrap bootstrap = future != null && isInitialized() ? future.join() : null;
+    final Duration currentWarmUp = warmUp;
+    return new Timing() {
+      @Override
+      public Duration getContextCreation() {
+        return bootstrap != null ? bootstrap.contextCreation : null;
+      }
+
+      @Override
+      public Duration getSchemaCompilation() {
+        return bootstrap != null ? bootstrap.schemaCompilation : null;
+      }
+
+      @Override
+      public Duration getWarmUp() {
+        return currentWarmUp;
+      }
+
+      @Override
+      public String toString() {
+        return "Timing {contextCreation=" + getContextCreation()
+            + ", schemaCompilation=" + getSchemaCompilation()
+            + ", warmUp=" + getWarmUp() + '}';
+      }
+    };
+  }
+
+  /**
+   * The timing of the bootstrap. A duration is {@code null}, if the step is not done yet.
+   */
+  public interface Timing {
+
+    /**
+     * Gets the duration of the creation of the jaxb context.
+     *
+     * @return the duration
+     */
+    Duration getContextCreation();
+
+    /**
+     * Gets the duration of the compilation of the schema.
+     *
+     * @return the duration
+     */
+    Duration getSchemaCompilation();
+
+    /**
+     * Gets the duration of the first warm up.
+     *
+     * @return the duration
+     */
+    Duration getWarmUp();
+  }
+
+  /**
+   * The result of the bootstrap.
+   */
+  private static class Bootstrap {
+
+    private final JAXBContext jaxbContext;
+
+    private final Duration contextCreation;
+
+    private final Schema schema;
+
+    private final Duration schemaCompilation;
+
+    private Bootstrap() {
+      long start = System.nanoTime();
+      jaxbContext = JaxbContextBuilder.newInstance()
+          .withSchemaMode(SchemaMode.NEVER)
+          .processAll(List.of(new GpxJaxbContextDataProvider()))
+          .initJaxbContext()
+          .buildJaxbContext();
+      long contextCreated = System.nanoTime();
+      contextCreation = Duration.ofNanos(contextCreated - start);
+      schema = compileSchema();
+      schemaCompilation = Duration.ofNanos(System.nanoTime() - contextCreated);
+    }
+
+    private static Schema compileSchema() {
+      ClassLoader classLoader = GpxJaxbContextHolder.class.getClassLoader();
+      URL url = classLoader != null
+          ? classLoader.getResource(SCHEMA_RESOURCE)
+          : ClassLoader.getSystemResource(SCHEMA_RESOURCE);
+      if (url == null) {
+        throw new DataBindingException("Schema " + SCHEMA_RESOURCE + " was not found.", null);
+      }
+      try {
+        SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+        schemaFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        schemaFactory.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+        schemaFactory.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+        return schemaFactory.newSchema(url);
+      } catch (SAXException e) {
+        throw new DataBindingException("Compiling schema " + SCHEMA_RESOURCE + " failed.", e);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,722 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx;
+
+import jakarta.xml.bind.DataBindingException;
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.SchemaOutputResolver;
+import jakarta.xml.bind.util.JAXBSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.ref.SoftReference;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Source;
+import javax.xml.transform.stax.StAXSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
+import org.bremersee.xml.JaxbContextBuilder;
+import org.bremersee.xml.JaxbContextDataProvider;
+import org.bremersee.xml.SchemaMode;
+import org.w3c.dom.ls.DOMImplementationLS;
+import org.w3c.dom.ls.LSInput;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Validates gpx documents against a schema, that is compiled only once. The validators of the
+ * schema are pooled, so a gpx validator can be used by many threads concurrently.
+ *
+ * <p>The default validator uses the bundled GPX schema of the {@link GpxJaxbContextHolder}, the
+ * extensions are validated lax, i.e. extension elements without a schema are not validated.
+ * Schemas of extensions can be added with the {@link Builder}. The schema locations, that are
+ * advertised by the {@link JaxbContextDataProvider}s, are never fetched; instead the schemas of
+ * the extensions are generated from the jaxb context of the providers.
+ *
+ * @author Christian Bremer
+ */
+public interface GpxValidator {
+
+  /**
+   * Validates the given source. It can be any source, that is supported by
+   * {@link Validator#validate(Source)}, for example a {@code DOMSource}, a {@link JAXBSource}, a
+   * {@link StreamSource} or a {@link StAXSource}.
+   *
+   * @param source the source
+   * @return the validation result
+   */
+  ValidationResult validate(Source source);
+
+  /**
+   * Validates the xml of the given input stream while it is read. The input stream will not be
+   * closed.
+   *
+   * @param inputStream the input stream
+   * @return the validation result
+   */
+  default ValidationResult validate(InputStream inputStream) {
+    return validate(new StreamSource(inputStream));
+  }
+
+  /**
+   * Validates the xml of the given stream reader, that must be positioned at the start of the
+   * document or at a start element.
+   *
+   * @param reader the xml stream reader
+   * @return the validation result
+   */
+  default ValidationResult validate(XMLStreamReader reader) {
+    return validate(new StAXSource(reader));
+  }
+
+  /**
+   * Validates the given jaxb element, for example a {@link org.bremersee.gpx.model.Gpx}, without
+   * marshalling it into a document.
+   *
+   * @param jaxbElement the jaxb element
+   * @param jaxbContext the jaxb context
+   * @return the validation result
+   */
+  default ValidationResult validate(Object jaxbElement, JAXBContext jaxbContext) {
+    try {
+      return validate(new JAXBSource(jaxbContext, jaxbElement));
+    } catch (JAXBException e) {
+      throw new DataBindingException("Creating jaxb source failed.", e);
+    }
+  }
+
+  /**
+   * Gets the schema.
+   *
+   * @return the schema
+   */
+  Schema getSchema();
+
+  /**
+   * Gets the statistics of the validator.
+   *
+   * @return the statistics
+   */
+  Statistics getStatistics();
+
+  /**
+   * Gets the gpx validator, that uses the bundled GPX schema and reports all errors.
+   *
+   * @return the default validator
+   */
+  static GpxValidator defaultValidator() {
+    return DefaultValidator.DEFAULT;
+  }
+
+  /**
+   * Creates a new builder of a gpx validator.
+   *
+   * @return the builder
+   */
+  static Builder builder() {
+    return new DefaultBuilder();
+  }
+
+  /**
+   * The result of a validation.
+   */
+  interface ValidationResult {
+
+    /**
+     * Determines whether the source is valid.
+     *
+     * @return {@code true} if there are no errors, otherwise {@code false}
+     */
+    boolean isValid();
+
+    /**
+     * Gets the errors (including the fatal error).
+     *
+     * @return the errors
+     */
+    List<SAXParseException> getErrors();
+
+    /**
+     * Gets the warnings.
+     *
+     * @return the warnings
+     */
+    List<SAXParseException> getWarnings();
+
+    /**
+     * Determines whether the validation was stopped, because the maximum number of errors was
+     * reached (or the validator is fail fast) or because of a fatal error.
+     *
+     * @return {@code true} if the validation was stopped, otherwise {@code false}
+     */
+    boolean isStopped();
+
+    /**
+     * Gets the duration of the validation.
+     *
+     * @return the duration
+     */
+    Duration getDuration();
+  }
+
+  /**
+   * The statistics of a gpx validator.
+   */
+  interface Statistics {
+
+    /**
+     * Gets the number of validations.
+     *
+     * @return the validations
+     */
+    long getValidations();
+
+    /**
+     * Gets the number of validations, that found errors.
+     *
+     * @return the number of invalid sources
+     */
+    long getInvalid();
+
+    /**
+     * Gets the total duration of all validations.
+     *
+     * @return the total duration
+     */
+    Duration getTotalDuration();
+
+    /**
+     * Gets the longest duration of a validation.
+     *
+     * @return the longest duration
+     */
+    Duration getMaxDuration();
+
+    /**
+     * Gets the average duration of a validation.
+     *
+     * @return the average duration
+     */
+    default Duration getAverageDuration() {
+      long validations = getValidations();
+      return validations == 0L
+          ? Duration.ZERO
+          : getTotalDuration().dividedBy(validations);
+    }
+
+    /**
+     * Gets the number of created validators.
+     *
+     * @return the creations
+     */
+    long getCreations();
+
+    /**
+     * Gets the current number of idle validators in the pool.
+     *
+     * @return the size
+     */
+    int getSize();
+  }
+
+  /**
+   * The builder of a gpx validator.
+   */
+  interface Builder {
+
+    /**
+     * Adds a schema. The GPX schema is always added.
+     *
+     * @param schema the schema source, it must have a system id
+     * @return the builder
+     */
+    Builder addSchema(Source schema);
+
+    /**
+     * Adds the schemas of the extensions, that are generated from the given jaxb context. The
+     * schema of the GPX name space is not generated, the bundled schema is used instead.
+     *
+     * @param jaxbContext the jaxb context
+     * @return the builder
+     */
+    Builder addSchemas(JAXBContext jaxbContext);
+
+    /**
+     * Adds the schemas of the extensions, that are generated from the jaxb context of the given
+     * providers (see {@link #addSchemas(JAXBContext)}).
+     *
+     * @param providers the jaxb context data providers
+     * @return the builder
+     */
+    Builder addSchemas(Iterable<? extends JaxbContextDataProvider> providers);
+
+    /**
+     * Stop the validation at the first error.
+     *
+     * @param failFast {@code true} to stop at the first error
+     * @return the builder
+     */
+    Builder failFast(boolean failFast);
+
+    /**
+     * Stop the validation, when the given number of errors is reached.
+     *
+     * @param maxErrors the maximum number of errors, a value less than one means no limit
+     * @return the builder
+     */
+    Builder maxErrors(int maxErrors);
+
+    /**
+     * Sets the maximum number of idle validators in the pool (default is the number of
+     * available processors).
+     *
+     * @param maxIdle the maximum number of idle validators
+     * @return the builder
+     */
+    Builder maxIdle(int maxIdle);
+
+    /**
+     * Compiles the schema and builds the gpx validator.
+     *
+     * @return the gpx validator
+     */
+    GpxValidator build();
+  }
+
+  /**
+   * The default builder.
+   */
+  class DefaultBuilder implements Builder {
+
+    private final Map<String, String> generatedSchemas = new LinkedHashMap<>();
+
+    private final List<Source> schemas = new ArrayList<>();
+
+    private int maxErrors;
+
+    private int maxIdle = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Instantiates a new default builder.
+     */
+    DefaultBuilder() {
+    }
+
+    @Override
+    public Builder addSchema(Source schema) {
+      if (schema != null) {
+        schemas.add(schema);
+      }
+      return this;
+    }
+
+    @Override
+    public Builder addSchemas(JAXBContext jaxbContext) {
+      if (jaxbContext == null) {
+        return this;
+      }
+      Map<String, StringWriter> results = new LinkedHashMap<>();
+      Map<String, String> namespaces = new LinkedHashMap<>();
+      try {
+        jaxbContext.generateSchema(new SchemaOutputResolver() {
+          @Override
+          public StreamResult createOutput(String namespaceUri, String suggestedFileName) {
+            StringWriter writer = new StringWriter();
+            StreamResult result = new StreamResult(writer);
+            result.setSystemId(suggestedFileName);
+            results.put(suggestedFileName, writer);
+            namespaces.put(suggestedFileName, namespaceUri);
+            return result;
+          }
+        });
+      } catch (IOException e) {
+        throw new DataBindingException("Generating schemas failed.", e);
+      }
+      for (Map.Entry<String, StringWriter> result : results.entrySet()) {
+        String namespace = namespaces.get(result.getKey());
+        if (!GpxJaxbContextDataProvider.NAMESPACE.equals(namespace)) {
+          generatedSchemas.put(namespace, result.getValue().toString());
+        }
+      }
+      return this;
+    }
+
+    @Override
+    public Builder addSchemas(Iterable<? extends JaxbContextDataProvider> providers) {
+      if (providers == null) {
+        return this;
+      }
+      return addSchemas(JaxbContextBuilder.newInstance()
+          .withSchemaMode(SchemaMode.NEVER)
+          .processAll(providers)
+          .buildJaxbContext());
+    }
+
+    @Override
+    public Builder failFast(boolean failFast) {
+      this.maxErrors = failFast ? 1 : 0;
+      return this;
+    }
+
+    @Override
+    public Builder maxErrors(int maxErrors) {
+      this.maxErrors = Math.max(0, maxErrors);
+      return this;
+    }
+
+    @Override
+    public Builder maxIdle(int maxIdle) {
+      if (maxIdle < 0) {
+        throw new IllegalArgumentException("Max idle must not be negative.");
+      }
+      this.maxIdle = maxIdle;
+      return this;
+    }
+
+    @Override
+    public GpxValidator build() {
+      Schema schema = schemas.isEmpty() && generatedSchemas.isEmpty()
+          ? GpxJaxbContextHolder.getSchema()
+          : compileSchema();
+      return new DefaultValidator(schema, maxErrors, maxIdle);
+    }
+
+    private Schema compileSchema() {
+      URL gpxSchema = GpxJaxbContextHolder.class.getClassLoader()
+          .getResource(GpxJaxbContextHolder.SCHEMA_RESOURCE);
+      if (gpxSchema == null) {
+        throw new DataBindingException(
+            "Schema " + GpxJaxbContextHolder.SCHEMA_RESOURCE + " was not found.", null);
+      }
+      List<Source> sources = new ArrayList<>();
+      sources.add(new StreamSource(gpxSchema.toExternalForm()));
+      for (Map.Entry<String, String> generated : generatedSchemas.entrySet()) {
+        sources.add(new StreamSource(
+            new StringReader(generated.getValue()), systemIdOf(generated.getKey())));
+      }
+      sources.addAll(schemas);
+      try {
+        DOMImplementationLS domImplementation = (DOMImplementationLS) DocumentBuilderFactory
+            .newInstance().newDocumentBuilder().getDOMImplementation();
+        SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+        schemaFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        schemaFactory.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+        schemaFactory.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+        // imports are resolved by the name space from the bundled and the generated schemas
+        schemaFactory.setResourceResolver((type, namespace, publicId, systemId, baseUri) -> {
+          LSInput input = null;
+          if (GpxJaxbContextDataProvider.NAMESPACE.equals(namespace)) {
+            input = domImplementation.createLSInput();
+            input.setSystemId(gpxSchema.toExternalForm());
+          } else if (namespace != null && generatedSchemas.containsKey(namespace)) {
+            input = domImplementation.createLSInput();
+            input.setStringData(generatedSchemas.get(namespace));
+            input.setSystemId(systemIdOf(namespace));
+          }
+          return input;
+        });
+        return schemaFactory.newSchema(sources.toArray(new Source[0]));
+
+      } catch (SAXException | ParserConfigurationException e) {
+        throw new DataBindingException("Compiling schemas failed.", e);
+      }
+    }
+
+    private static String systemIdOf(String namespace) {
+      return "generated:" + namespace;
+    }
+  }
+
+  /**
+   * The default gpx validator.
+   */
+  class DefaultValidator implements GpxValidator {
+
+    private static final DefaultValidator DEFAULT = new DefaultValidator(null, 0,
+        Runtime.getRuntime().availableProcessors());
+
+    private volatile Schema schema;
+
+    private final int maxErrors;
+
+    private final int maxIdle;
+
+    private final ConcurrentLinkedDeque<SoftReference<Validator>> idle
+        = new ConcurrentLinkedDeque<>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final LongAdder validations = new LongAdder();
+
+    private final LongAdder invalid = new LongAdder();
+
+    private final LongAdder creations = new LongAdder();
+
+    private final LongAdder totalNanos = new LongAdder();
+
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Instantiates a new default validator.
+     *
+     * @param schema the schema, if it is {@code null}, the schema of the
+     *     {@link GpxJaxbContextHolder} is used
+     * @param maxErrors the maximum number of errors, a value less than one means no limit
+     * @param maxIdle the maximum number of idle validators
+     */
+    protected DefaultValidator(Schema schema, int maxErrors, int maxIdle) {
+      this.schema = schema;
+      this.maxErrors = maxErrors;
+      this.maxIdle = maxIdle;
+    }
+
+    @Override
+    public Schema getSchema() {
+      Schema current = schema;
+      if (current == null) {
+        current = GpxJaxbContextHolder.getSchema();
+        schema = current;
+      }
+      return current;
+    }
+
+    private Validator borrow() throws SAXException {
+      SoftReference<Validator> ref;
+      while ((ref = idle.pollFirst()) != null) {
+        size.decrementAndGet();
+        Validator validator = ref.get();
+        if (validator != null) {
+          return validator;
+        }
+      }
+      Validator validator = getSchema().newValidator();
+      creations.increment();
+      configure(validator);
+      return validator;
+    }
+
+    private static void configure(Validator validator) throws SAXException {
+      validator.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+      validator.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+    }
+
+    private void release(Validator validator) {
+      // Validator.reset() is not used, because it drops the security settings (and the jdk
+      // validator fails on stream sources afterwards); the validator is reset by every validation
+      validator.setErrorHandler(null);
+      if (size.incrementAndGet() > maxIdle) {
+        size.decrementAndGet();
+        return;
+      }
+      idle.offerFirst(new SoftReference<>(validator));
+    }
+
+    @Override
+    public ValidationResult validate(Source source) {
+      Objects.requireNonNull(source, "Source must be present.");
+      long start = System.nanoTime();
+      Collector collector = new Collector(maxErrors);
+      Validator validator;
+      try {
+        validator = borrow();
+      } catch (SAXException e) {
+        throw new DataBindingException("Creating validator failed.", e);
+      }
+      try {
+        validator.setErrorHandler(collector);
+        validator.validate(source);
+      } catch (SAXParseException e) {
+        collector.stop(e);
+      } catch (SAXException e) {
+        collector.stop(new SAXParseException(e.getMessage(), null, e));
+      } catch (IOException e) {
+        collector.stop(new SAXParseException(e.getMessage(), null, e));
+      } finally {
+        release(validator);
+      }
+      long nanos = System.nanoTime() - start;
+      validations.increment();
+      totalNanos.add(nanos);
+      maxNanos.accumulateAndGet(nanos, Math::max);
+      if (!collector.errors.isEmpty()) {
+        invalid.increment();
+      }
+      return collector.toResult(Duration.ofNanos(nanos));
+    }
+
+    @Override
+    public Statistics getStatistics() {
+      final long currentValidations = validations.sum();
+      final long currentInvalid = invalid.sum();
+      final Duration currentTotal = Duration.ofNanos(totalNanos.sum());
+      final Duration currentMax = Duration.ofNanos(maxNanos.get());
+      final long currentCreations = creations.sum();
+      final int currentSize = Math.max(0, size.get());
+      return new Statistics() {
+        @Override
+        public long getValidations() {
+          return currentValidations;
+        }
+
+        @Override
+        public long getInvalid() {
+          return currentInvalid;
+        }
+
+        @Override
+        public Duration getTotalDuration() {
+          return currentTotal;
+        }
+
+        @Override
+        public Duration getMaxDuration() {
+          return currentMax;
+        }
+
+        @Override
+        public long getCreations() {
+          return currentCreations;
+        }
+
+        @Override
+        public int getSize() {
+          return currentSize;
+        }
+
+        @Override
+        public String toString() {
+          return "Statistics {validations=" + currentValidations
+              + ", invalid=" + currentInvalid
+              + ", totalDuration=" + currentTotal
+              + ", maxDuration=" + currentMax
+              + ", creations=" + currentCreations
+              + ", size=" + currentSize + '}';
+        }
+      };
+    }
+
+    /**
+     * Collects the errors and warnings of a validation and stops the validation, when the maximum
+     * number of errors is reached.
+     */
+    private static class Collector implements ErrorHandler {
+
+      private final int maxErrors;
+
+      private final List<SAXParseException> errors = new ArrayList<>();
+
+      private final List<SAXParseException> warnings = new ArrayList<>();
+
+      private boolean stopped;
+
+      private Collector(int maxErrors) {
+        this.maxErrors = maxErrors;
+      }
+
+      @Override
+      public void warning(SAXParseException exception) {
+        warnings.add(exception);
+      }
+
+      @Override
+      public void error(SAXParseException exception) throws SAXException {
+        errors.add(exception);
+        if (maxErrors > 0 && errors.size() >= maxErrors) {
+          stopped = true;
+          throw exception;
+        }
+      }
+
+      @Override
+      public void fatalError(SAXParseException exception) throws SAXException {
+        stop(exception);
+        throw exception;
+      }
+
+      private void stop(SAXParseException exception) {
+        stopped = true;
+        if (errors.isEmpty() || errors.get(errors.size() - 1) != exception) {
+          errors.add(exception);
+        }
+      }
+
+      private ValidationResult toResult(Duration duration) {
+        final List<SAXParseException> errorList = Collections.unmodifiableList(errors);
+        final List<SAXParseException> warningList = Collections.unmodifiableList(warnings);
+        final boolean isStopped = stopped;
+        return new ValidationResult() {
+          @Override
+          public boolean isValid() {
+            return errorList.isEmpty();
+          }
+
+          @Override
+          public List<SAXParseException> getErrors() {
+            return errorList;
+          }
+
+          @Override
+          public List<SAXParseException> getWarnings() {
+            return warningList;
+          }
+
+          @Override
+          public boolean isStopped() {
+            return isStopped;
+          }
+
+          @Override
+          public Duration getDuration() {
+            return duration;
+          }
+
+          @Override
+          public String toString() {
+            return "ValidationResult {valid=" + isValid()
+                + ", errors=" + errorList.size()
+                + ", warnings=" + warningList.size()
+                + ", stopped=" + isStopped
+                + ", duration=" + duration + '}';
+          }
+        };
+      }
+    }
+  }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.TimeZone;
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeConstants;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.datatype.XMLGregorianCalendar;
+
+/**
+ * Helper to convert the values of the GPX model into primitive values and back.
+ *
+ * @author Christian Bremer
+ */
+public abstract class GpxValueHelper {
+
+  /**
+   * The value that represents a missing time.
+   */
+  public static final long NO_TIME = Long.MIN_VALUE;
+
+  private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+  private static final DatatypeFactory DATATYPE_FACTORY;
+
+  static {
+    try {
+      DATATYPE_FACTORY = DatatypeFactory.newInstance();
+    } catch (DatatypeConfigurationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private GpxValueHelper() {
+  }
+
+  /**
+   * Converts the given decimal into a double.
+   *
+   * @param value the value
+   * @return the double or {@link Double#NaN}, if the value is {@code null}
+   */
+  public static double toDouble(BigDecimal value) {
+    return value != null ? value.doubleValue() : Double.NaN;
+  }
+
+  /**
+   * Converts the given double into a decimal.
+   *
+   * @param value the value
+   * @return the decimal or {@code null}, if the value is {@link Double#NaN}
+   */
+  public static BigDecimal toBigDecimal(double value) {
+    return Double.isNaN(value) ? null : BigDecimal.valueOf(value);
+  }
+
+  /**
+   * Converts the given date time into milliseconds since epoch. A date time without time zone is
+   * treated as UTC.
+   *
+   * @param value the value
+   * @return the milliseconds since epoch or {@link #NO_TIME}, if the value is {@code null}
+   */
+  public static long toEpochMillis(XMLGregorianCalendar value) {
+    if (value == null) {
+      return NO_TIME;
+    }
+    int year = value.getYear();
+    int month = value.getMonth();
+    int day = value.getDay();
+    int hour = value.getHour();
+    int minute = value.getMinute();
+    int second = value.getSecond();
+    if (year == DatatypeConstants.FIELD_UNDEFINED || value.getEon() != null
+        || month == DatatypeConstants.FIELD_UNDEFINED || day == DatatypeConstants.FIELD_UNDEFINED
+        || hour == DatatypeConstants.FIELD_UNDEFINED
+        || minute == DatatypeConstants.FIELD_UNDEFINED
+        || second == DatatypeConstants.FIELD_UNDEFINED) {
+      return value.toGregorianCalendar(UTC, null, null).getTimeInMillis();
+    }
+    int timezone = value.getTimezone() == DatatypeConstants.FIELD_UNDEFINED
+        ? 0
+        : value.getTimezone();
+    int millis = value.getMillisecond() == DatatypeConstants.FIELD_UNDEFINED
+        ? 0
+        : value.getMillisecond();
+    long seconds = LocalDate.of(year, month, day).toEpochDay() * 86400L
+        + hour * 3600L + minute * 60L + second - timezone * 60L;
+    return seconds * 1000L + millis;
+  }
+
+  /**
+   * Converts milliseconds since epoch into an UTC date time. The date time has a fractional
+   * second with three digits, if the milliseconds are not zero.
+   *
+   * @param epochMillis the milliseconds since epoch
+   * @return the date time or {@code null}, if the value is {@link #NO_TIME}
+   */
+  public static XMLGregorianCalendar toXmlGregorianCalendar(long epochMillis) {
+    if (epochMillis == NO_TIME) {
+      return null;
+    }
+    long seconds = Math.floorDiv(epochMillis, 1000L);
+    int millis = (int) Math.floorMod(epochMillis, 1000L);
+    LocalDateTime dateTime = LocalDateTime.ofEpochSecond(seconds, 0, ZoneOffset.UTC);
+    return DATATYPE_FACTORY.newXMLGregorianCalendar(
+        BigInteger.valueOf(dateTime.getYear()),
+        dateTime.getMonthValue(),
+        dateTime.getDayOfMonth(),
+        dateTime.getHour(),
+        dateTime.getMinute(),
+        dateTime.getSecond(),
+        millis == 0 ? null : BigDecimal.valueOf(millis, 3),
+        0);
+  }
+
+  /**
+   * Determines whether the given date time is exactly reproduced by
+   * {@code toXmlGregorianCalendar(toEpochMillis(value))}.
+   *
+   * @param value the value
+   * @return {@code true} if the date time can be represented by milliseconds since epoch without
+   *     loss, otherwise {@code false}
+   */
+  public static boolean isEpochMillisExact(XMLGregorianCalendar value) {
+    if (value == null) {
+      return true;
+    }
+    if (value.getTimezone() != 0 || value.getEon() != null
+        || value.getYear() < 1 || value.getYear() > 9999
+        || value.getHour() == DatatypeConstants.FIELD_UNDEFINED
+        || value.getHour() == 24 || value.getSecond() > 59
+        || value.getXMLSchemaType() != DatatypeConstants.DATETIME) {
+      return false;
+    }
+    BigDecimal fraction = value.getFractionalSecond();
+    return fraction == null || (fraction.scale() == 3 && fraction.signum() != 0);
+  }
+
+  /**
+   * Determines whether the numeric value of the given decimal is exactly reproduced by
+   * {@code toBigDecimal(toDouble(value))}. The scale is not compared, so {@code 35} and
+   * {@code 53.1234560} are exact, although {@code toBigDecimal(toDouble(value))} returns
+   * {@code 35.0} and {@code 53.123456}.
+   *
+   * @param value the value
+   * @return {@code true} if the numeric value can be represented by a double without loss,
+   *     otherwise {@code false}
+   */
+  public static boolean isDoubleExact(BigDecimal value) {
+    return value == null || value.compareTo(BigDecimal.valueOf(value.doubleValue())) == 0;
+  }
+
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import org.bremersee.xml.XmlDocumentBuilder;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * A bounded LRU cache of marshalled extension elements. Extension objects, that are equal (or
+ * have an equal key), are marshalled only once; afterwards a deep copy of the marshalled element
+ * is imported into the requested owner document.
+ *
+ * <p>By default the extension object itself is the key, so its class must implement
+ * {@link Object#equals(Object)} and {@link Object#hashCode()} and the object must not be changed
+ * after it was added. Otherwise a key function must be given, that creates such a key from the
+ * extension object.
+ *
+ * @author Christian Bremer
+ */
+public interface MarshalledElementCache {
+
+  /**
+   * Gets a copy of the cached element of the given extension object or marshals the extension
+   * object and caches the result.
+   *
+   * @param extensionObject the extension object
+   * @param ownerDocument the owner document of a copied element
+   * @param marshaller the function, that marshals the extension object on a cache miss
+   * @return the element
+   */
+  Element getOrMarshal(
+      Object extensionObject,
+      Document ownerDocument,
+      Function<Object, Element> marshaller);
+
+  /**
+   * Removes all entries.
+   */
+  void clear();
+
+  /**
+   * Gets the statistics of the cache.
+   *
+   * @return the statistics
+   */
+  Statistics getStatistics();
+
+  /**
+   * Creates a new marshalled element cache, that uses the extension objects as keys.
+   *
+   * @param maxSize the maximum number of cached elements
+   * @return the marshalled element cache
+   */
+  static MarshalledElementCache newInstance(int maxSize) {
+    return new DefaultCache(maxSize, Function.identity());
+  }
+
+  /**
+   * Creates a new marshalled element cache.
+   *
+   * @param maxSize the maximum number of cached elements
+   * @param keyFunction the function, that creates the key of an extension object
+   * @return the marshalled element cache
+   */
+  static MarshalledElementCache newInstance(int maxSize, Function<Object, ?> keyFunction) {
+    return new DefaultCache(maxSize, keyFunction);
+  }
+
+  /**
+   * The statistics of a marshalled element cache.
+   */
+  interface Statistics {
+
+    /**
+     * Gets the number of hits.
+     *
+     * @return the hits
+     */
+    long getHits();
+
+    /**
+     * Gets the number of misses.
+     *
+     * @return the misses
+     */
+    long getMisses();
+
+    /**
+     * Gets the hit rate.
+     *
+     * @return the hit rate between 0 and 1
+     */
+    default double getHitRate() {
+      long total = getHits() + getMisses();
+      return total == 0L ? 0. : (double) getHits() / (double) total;
+    }
+
+    /**
+     * Gets the current number of cached elements.
+     *
+     * @return the size
+     */
+    int getSize();
+  }
+
+  /**
+   * The default marshalled element cache.
+   */
+  class DefaultCache implements MarshalledElementCache {
+
+    private final Function<Object, ?> keyFunction;
+
+    private final Map<Object, Element> templates;
+
+    private Document templateDocument;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Instantiates a new default cache.
+     *
+     * @param maxSize the maximum number of cached elements
+     * @param keyFunction the key function
+     */
+    protected DefaultCache(final int maxSize, Function<Object, ?> keyFunction) {
+      if (maxSize < 1) {
+        throw new IllegalArgumentException("Max size must be greater than zero.");
+      }
+      this.keyFunction = Objects.requireNonNull(keyFunction, "Key function must be present.");
+      this.templates = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, Element> eldest) {
+          return size() > maxSize;
+        }
+      };
+    }
+
+    @Override
+    public Element getOrMarshal(
+        Object extensionObject,
+        Document ownerDocument,
+        Function<Object, Element> marshaller) {
+
+      Objects.requireNonNull(ownerDocument, "Owner document must be present.");
+      Object key = keyFunction.apply(extensionObject);
+      if (key == null) {
+        misses.increment();
+        return marshaller.apply(extensionObject);
+      }
+      synchronized (templates) {
+        Element template = templates.get(key);
+        if (template != null) {
+          hits.increment();
+          return (Element) ownerDocument.importNode(template, true);
+        }
+      }
+      misses.increment();
+      Element element = marshaller.apply(extensionObject);
+      if (element != null) {
+        synchronized (templates) {
+          if (!templates.containsKey(key)) {
+            templates.put(key, (Element) getTemplateDocument().importNode(element, true));
+          }
+        }
+      }
+      return element;
+    }
+
+    /*
+     * The templates are owned by a private document and are only read, but dom implementations
+     * are not thread safe at all, so they are only accessed while holding the lock.
+     */
+    private Document getTemplateDocument() {
+      if (templateDocument == null) {
+        templateDocument = XmlDocumentBuilder.newInstance().buildDocument();
+      }
+      return templateDocument;
+    }
+
+    @Override
+    public void clear() {
+      synchronized (templates) {
+        templates.clear();
+      }
+    }
+
+    @Override
+    public Statistics getStatistics() {
+      final long currentHits = hits.sum();
+      final long currentMisses = misses.sum();
+      final int currentSize;
+      synchronized (templates) {
+        currentSize = templates.size();
+      }
+      return new Statistics() {
+        @Override
+        public long getHits() {
+          return currentHits;
+        }
+
+        @Override
+        public long getMisses() {
+          return currentMisses;
+        }
+
+        @Override
+        public int getSize() {
+          return currentSize;
+        }
+
+        @Override
+        public String toString() {
+          return "Statistics {hits=" + currentHits
+              + ", misses=" + currentMisses
+              + ", size=" + currentSize + '}';
+        }
+      };
+    }
+  }
+
+}
@@ -0,0 +1,461 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx;
+
+import jakarta.xml.bind.JAXBContext;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import org.bremersee.gpx.model.ExtensionsType;
+import org.w3c.dom.Element;
+
+/**
+ * A cache of parsed extensions (see
+ * {@link GpxJaxbContextHelper#parseExtensionsCached(ExtensionsType, JAXBContext)}).
+ *
+ * <p>The cache is keyed by the identity of the {@link ExtensionsType} instance and the
+ * {@link JAXBContext}; both are weakly referenced. If the maximum size of a context is reached,
+ * the least recently used entry is removed. An entry is invalid, if the elements of
+ * {@link ExtensionsType#getAnies()} have been replaced, added or removed since the entry was
+ * created. Changes inside of an element are not detected, in this case the entry must be removed
+ * with {@link #invalidate(ExtensionsType)}.
+ *
+ * <p>The cached objects are shared between all callers and must not be modified.
+ *
+ * @author Christian Bremer
+ */
+public interface ParsedExtensionsCache {
+
+  /**
+   * Gets the parsed extensions from the cache or parses them with the given parser and puts the
+   * result into the cache.
+   *
+   * @param extensions the extensions
+   * @param jaxbContext the jaxb context
+   * @param parser the parser
+   * @return the parsed extensions
+   */
+  Map<Class<?>, List<Object>> computeIfAbsent(
+      ExtensionsType extensions,
+      JAXBContext jaxbContext,
+      BiFunction<ExtensionsType, JAXBContext, Map<Class<?>, List<Object>>> parser);
+
+  /**
+   * Gets the parsed extensions from the cache.
+   *
+   * @param extensions the extensions
+   * @param jaxbContext the jaxb context
+   * @return the parsed extensions or {@code null}, if there is no valid entry
+   */
+  Map<Class<?>, List<Object>> getIfPresent(ExtensionsType extensions, JAXBContext jaxbContext);
+
+  /**
+   * Sets the maximum number of cached extensions of the given context. A value of zero disables
+   * the cache for this context.
+   *
+   * @param jaxbContext the jaxb context
+   * @param maxSize the maximum size
+   */
+  void setMaxSize(JAXBContext jaxbContext, int maxSize);
+
+  /**
+   * Sets the maximum number of cached extensions of contexts, that have no own maximum size. A
+   * value of zero disables the cache for these contexts.
+   *
+   * @param maxSize the maximum size
+   */
+  void setDefaultMaxSize(int maxSize);
+
+  /**
+   * Removes the parsed extensions of the given extensions from the cache.
+   *
+   * @param extensions the extensions
+   */
+  void invalidate(ExtensionsType extensions);
+
+  /**
+   * Removes all entries.
+   */
+  void clear();
+
+  /**
+   * Gets the statistics of the cache.
+   *
+   * @return the statistics
+   */
+  Statistics getStatistics();
+
+  /**
+   * Gets the cache, that is used by
+   * {@link GpxJaxbContextHelper#parseExtensionsCached(ExtensionsType, JAXBContext)}.
+   *
+   * @return the default cache
+   */
+  static ParsedExtensionsCache defaultCache() {
+    return DefaultCache.DEFAULT;
+  }
+
+  /**
+   * Creates a new parsed extensions cache.
+   *
+   * @param defaultMaxSize the maximum number of cached extensions per context
+   * @return the parsed extensions cache
+   */
+  static ParsedExtensionsCache newInstance(int defaultMaxSize) {
+    return new DefaultCache(defaultMaxSize);
+  }
+
+  /**
+   * The statistics of a parsed extensions cache.
+   */
+  interface Statistics {
+
+    /**
+     * Gets the number of lookups, that were served from the cache.
+     *
+     * @return the hits
+     */
+    long getHits();
+
+    /**
+     * Gets the number of lookups, that had to parse the extensions.
+     *
+     * @return the misses
+     */
+    long getMisses();
+
+    /**
+     * Gets the current number of cached extensions.
+     *
+     * @return the size
+     */
+    int getSize();
+  }
+
+  /**
+   * The default parsed extensions cache.
+   */
+  class DefaultCache implements ParsedExtensionsCache {
+
+    private static final ParsedExtensionsCache DEFAULT = new DefaultCache(10_000);
+
+    private final Map<JAXBContext, ContextCache> caches = new WeakHashMap<>();
+
+    private volatile LastUsed lastUsed;
+
+    private volatile int defaultMaxSize;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Instantiates a new default cache.
+     *
+     * @param defaultMaxSize the maximum number of cached extensions per context
+     */
+    protected DefaultCache(int defaultMaxSize) {
+      setDefaultMaxSize(defaultMaxSize);
+    }
+
+    private ContextCache getContextCache(JAXBContext jaxbContext) {
+      LastUsed last = lastUsed;
+      if (last != null && last.jaxbContext.get() == jaxbContext) {
+        return last.cache;
+      }
+      ContextCache cache;
+      synchronized (caches) {
+        cache = caches.computeIfAbsent(jaxbContext, key -> new ContextCache());
+      }
+      lastUsed = new LastUsed(jaxbContext, cache);
+      return cache;
+    }
+
+    @Override
+    public Map<Class<?>, List<Object>> computeIfAbsent(
+        ExtensionsType extensions,
+        JAXBContext jaxbContext,
+        BiFunction<ExtensionsType, JAXBContext, Map<Class<?>, List<Object>>> parser) {
+
+      Objects.requireNonNull(parser, "Parser must be present.");
+      if (extensions == null || jaxbContext == null) {
+        return parser.apply(extensions, jaxbContext);
+      }
+      ContextCache cache = getContextCache(jaxbContext);
+      int maxSize = cache.maxSize >= 0 ? cache.maxSize : defaultMaxSize;
+      if (maxSize == 0) {
+        misses.increment();
+        return parser.apply(extensions, jaxbContext);
+      }
+      Element[] snapshot = snapshot(extensions);
+      Entry entry;
+      synchronized (cache) {
+        entry = cache.get(extensions);
+      }
+      if (entry != null && entry.isValid(snapshot)) {
+        hits.increment();
+        return entry.value;
+      }
+      misses.increment();
+      Map<Class<?>, List<Object>> value = parser.apply(extensions, jaxbContext);
+      synchronized (cache) {
+        cache.put(extensions, new Entry(snapshot, value));
+        cache.trimTo(maxSize);
+      }
+      return value;
+    }
+
+    @Override
+    public Map<Class<?>, List<Object>> getIfPresent(
+        ExtensionsType extensions,
+        JAXBContext jaxbContext) {
+
+      if (extensions == null || jaxbContext == null) {
+        return null;
+      }
+      ContextCache cache = getContextCache(jaxbContext);
+      Entry entry;
+      synchronized (cache) {
+        entry = cache.get(extensions);
+      }
+      if (entry != null && entry.isValid(snapshot(extensions))) {
+        hits.increment();
+        return entry.value;
+      }
+      return null;
+    }
+
+    private static Element[] snapshot(ExtensionsType extensions) {
+      List<Element> anies = extensions.getAnies();
+      return anies != null ? anies.toArray(new Element[0]) : new Element[0];
+    }
+
+    @Override
+    public void setMaxSize(JAXBContext jaxbContext, int maxSize) {
+      if (maxSize < 0) {
+        throw new IllegalArgumentException("Max size must not be negative.");
+      }
+      ContextCache cache = getContextCache(Objects.requireNonNull(
+          jaxbContext, "Jaxb context must be present."));
+      synchronized (cache) {
+        cache.maxSize = maxSize;
+        cache.trimTo(maxSize);
+      }
+    }
+
+    @Override
+    public void setDefaultMaxSize(int maxSize) {
+      if (maxSize < 0) {
+        throw new IllegalArgumentException("Max size must not be negative.");
+      }
+      this.defaultMaxSize = maxSize;
+    }
+
+    @Override
+    public void invalidate(ExtensionsType extensions) {
+      if (extensions == null) {
+        return;
+      }
+      synchronized (caches) {
+        for (ContextCache cache : caches.values()) {
+          synchronized (cache) {
+            cache.remove(extensions);
+          }
+        }
+      }
+    }
+
+    @Override
+    public void clear() {
+      synchronized (caches) {
+        for (ContextCache cache : caches.values()) {
+          synchronized (cache) {
+            cache.clear();
+          }
+        }
+      }
+    }
+
+    @Override
+    public Statistics getStatistics() {
+      final long currentHits = hits.sum();
+      final long currentMisses = misses.sum();
+      int size = 0;
+      synchronized (caches) {
+        for (ContextCache cache : caches.values()) {
+          synchronized (cache) {
+            size += cache.size();
+          }
+        }
+      }
+      final int currentSize = size;
+      return new Statistics() {
+        @Override
+        public long getHits() {
+          return currentHits;
+        }
+
+        @Override
+        public long getMisses() {
+          return currentMisses;
+        }
+
+        @Override
+        public int getSize() {
+          return currentSize;
+        }
+
+        @Override
+        public String toString() {
+          return "Statistics {hits=" + currentHits
+              + ", misses=" + currentMisses
+              + ", size=" + currentSize + '}';
+        }
+      };
+    }
+
+    /*
+     * The entries of one context in access order, so the eldest entry is the least recently used
+     * one. The keys are weak references, that are removed, when the extensions are collected.
+     * All methods must be called while holding the lock of the context cache.
+     */
+    private static class ContextCache {
+
+      private final ReferenceQueue<ExtensionsType> queue = new ReferenceQueue<>();
+
+      private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+      private volatile int maxSize = -1;
+
+      private Entry get(ExtensionsType extensions) {
+        expunge();
+        return entries.get(new Key(extensions, null));
+      }
+
+      private void put(ExtensionsType extensions, Entry entry) {
+        expunge();
+        entries.put(new Key(extensions, queue), entry);
+      }
+
+      private void remove(ExtensionsType extensions) {
+        expunge();
+        entries.remove(new Key(extensions, null));
+      }
+
+      private void trimTo(int maxSize) {
+        Iterator<Key> eldest = entries.keySet().iterator();
+        while (entries.size() > maxSize && eldest.hasNext()) {
+          eldest.next();
+          eldest.remove();
+        }
+      }
+
+      private int size() {
+        expunge();
+        return entries.size();
+      }
+
+      private void clear() {
+        entries.clear();
+        expunge();
+      }
+
+      private void expunge() {
+        Reference<? extends ExtensionsType> reference;
+        while ((reference = queue.poll()) != null) {
+          entries.remove(reference);
+        }
+      }
+    }
+
+    /*
+     * ExtensionsType does not override equals and hashCode, so the keys are compared by the
+     * identity of the extensions. A collected key is only equal to itself.
+     */
+    private static class Key extends WeakReference<ExtensionsType> {
+
+      private final int hash;
+
+      private Key(ExtensionsType extensions, ReferenceQueue<ExtensionsType> queue) {
+        super(extensions, queue);
+        this.hash = System.identityHashCode(extensions);
+      }
+
+      @Override
+      public boolean equals(Object obj) {
+        if (this == obj) {
+          return true;
+        }
+        if (!(obj instanceof Key)) {
+          return false;
+        }
+        ExtensionsType extensions = get();
+        return extensions != null && extensions == ((Key) obj).get();
+      }
+
+      @Override
+      public int hashCode() {
+        return hash;
+      }
+    }
+
+    private static class LastUsed {
+
+      private final WeakReference<JAXBContext> jaxbContext;
+
+      private final ContextCache cache;
+
+      private LastUsed(JAXBContext jaxbContext, ContextCache cache) {
+        this.jaxbContext = new WeakReference<>(jaxbContext);
+        this.cache = cache;
+      }
+    }
+
+    private static class Entry {
+
+      private final Element[] snapshot;
+
+      private final Map<Class<?>, List<Object>> value;
+
+      private Entry(Element[] snapshot, Map<Class<?>, List<Object>> value) {
+        this.snapshot = snapshot;
+        this.value = value;
+      }
+
+      private boolean isValid(Element[] current) {
+        if (current.length != snapshot.length) {
+          return false;
+        }
+        for (int i = 0; i < current.length; i++) {
+          if (current[i] != snapshot[i]) {
+            return false;
+          }
+        }
+        return true;
+      }
+    }
+  }
+
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Unmarshaller;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pool of unmarshallers, that is keyed by the {@link JAXBContext}.
+ *
+ * <p>Creating an unmarshaller is expensive compared to unmarshalling a small element, but
+ * unmarshallers are not thread safe. The pool hands out an unmarshaller to one thread at a time
+ * and takes it back after use. The number of idle unmarshallers per context is bounded. The
+ * contexts are weakly referenced and the idle unmarshallers are softly referenced, so the pool
+ * does not keep contexts alive, that are not used anymore.
+ *
+ * @author Christian Bremer
+ */
+public interface UnmarshallerPool {
+
+  /**
+   * Borrows an unmarshaller of the given context. It should be returned with
+   * {@link #release(JAXBContext, Unmarshaller)} after use.
+   *
+   * @param jaxbContext the jaxb context
+   * @return the unmarshaller
+   * @throws JAXBException if a new unmarshaller cannot be created
+   */
+  Unmarshaller borrow(JAXBContext jaxbContext) throws JAXBException;
+
+  /**
+   * Returns an unmarshaller to the pool. The schema, event handler and listener of the
+   * unmarshaller are reset.
+   *
+   * @param jaxbContext the jaxb context, that created the unmarshaller
+   * @param unmarshaller the unmarshaller
+   */
+  void release(JAXBContext jaxbContext, Unmarshaller unmarshaller);
+
+  /**
+   * Removes all idle unmarshallers.
+   */
+  void clear();
+
+  /**
+   * Gets the statistics of the pool.
+   *
+   * @return the statistics
+   */
+  Statistics getStatistics();
+
+  /**
+   * Gets the pool, that is used by {@link GpxJaxbContextHelper} and the gpx readers.
+   *
+   * @return the default pool
+   */
+  static UnmarshallerPool defaultPool() {
+    return DefaultPool.DEFAULT;
+  }
+
+  /**
+   * Creates a new unmarshaller pool.
+   *
+   * @param maxIdlePerContext the maximum number of idle unmarshallers per context
+   * @return the unmarshaller pool
+   */
+  static UnmarshallerPool newInstance(int maxIdlePerContext) {
+    return new DefaultPool(maxIdlePerContext);
+  }
+
+  /**
+   * The statistics of an unmarshaller pool.
+   */
+  interface Statistics {
+
+    /**
+     * Gets the number of borrowed unmarshallers, that were taken from the pool.
+     *
+     * @return the hits
+     */
+    long getHits();
+
+    /**
+     * Gets the number of created unmarshallers.
+     *
+     * @return the creations
+     */
+    long getCreations();
+
+    /**
+     * Gets the current number of idle unmarshallers in the pool.
+     *
+     * @return the size
+     */
+    int getSize();
+
+    /**
+     * Gets the current number of contexts in the pool.
+     *
+     * @return the number of contexts
+     */
+    int getContexts();
+  }
+
+  /**
+   * The default unmarshaller pool.
+   */
+  class DefaultPool implements UnmarshallerPool {
+
+    private static final UnmarshallerPool DEFAULT = new DefaultPool(
+        Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+
+    private final int maxIdlePerContext;
+
+    private final Map<JAXBContext, ContextPool> pools = new WeakHashMap<>();
+
+    private volatile LastUsed lastUsed;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder creations = new LongAdder();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Instantiates a new default pool.
+     *
+     * @param maxIdlePerContext the maximum number of idle unmarshallers per context
+     */
+    protected DefaultPool(int maxIdlePerContext) {
+      if (maxIdlePerContext < 0) {
+        throw new IllegalArgumentException("Max idle per context must not be negative.");
+      }
+      this.maxIdlePerContext = maxIdlePerContext;
+    }
+
+    private ContextPool getContextPool(JAXBContext jaxbContext) {
+      LastUsed last = lastUsed;
+      if (last != null && last.jaxbContext.get() == jaxbContext) {
+        return last.pool;
+      }
+      ContextPool pool;
+      synchronized (pools) {
+        pool = pools.computeIfAbsent(jaxbContext, key -> new ContextPool());
+      }
+      lastUsed = new LastUsed(jaxbContext, pool);
+      return pool;
+    }
+
+    @Override
+    public Unmarshaller borrow(JAXBContext jaxbContext) throws JAXBException {
+      Objects.requireNonNull(jaxbContext, "Jaxb context must be present.");
+      ContextPool pool = getContextPool(jaxbContext);
+      SoftReference<Unmarshaller> ref;
+      while ((ref = pool.idle.pollFirst()) != null) {
+        pool.size.decrementAndGet();
+        size.decrementAndGet();
+        Unmarshaller unmarshaller = ref.get();
+        if (unmarshaller != null) {
+          hits.increment();
+          return unmarshaller;
+        }
+      }
+      Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
+      creations.increment();
+      return unmarshaller;
+    }
+
+    @Override
+    public void release(JAXBContext jaxbContext, Unmarshaller unmarshaller) {
+      if (jaxbContext == null || unmarshaller == null) {
+        return;
+      }
+      try {
+        unmarshaller.setSchema(null);
+        unmarshaller.setEventHandler(null);
+        unmarshaller.setListener(null);
+      } catch (JAXBException | RuntimeException e) {
+        // an unmarshaller, that cannot be reset, is not pooled
+        return;
+      }
+      ContextPool pool = getContextPool(jaxbContext);
+      if (pool.size.incrementAndGet() > maxIdlePerContext) {
+        pool.size.decrementAndGet();
+        return;
+      }
+      size.incrementAndGet();
+      pool.idle.offerFirst(new SoftReference<>(unmarshaller));
+    }
+
+    @Override
+    public void clear() {
+      synchronized (pools) {
+        for (ContextPool pool : pools.values()) {
+          SoftReference<Unmarshaller> ref;
+          while ((ref = pool.idle.pollFirst()) != null) {
+            pool.size.decrementAndGet();
+            size.decrementAndGet();
+            ref.clear();
+          }
+        }
+        pools.clear();
+      }
+      lastUsed = null;
+    }
+
+    @Override
+    public Statistics getStatistics() {
+      final long currentHits = hits.sum();
+      final long currentCreations = creations.sum();
+      final int currentSize = Math.max(0, size.get());
+      final int currentContexts;
+      synchronized (pools) {
+        currentContexts = pools.size();
+      }
+      return new Statistics() {
+        @Override
+        public long getHits() {
+          return currentHits;
+        }
+
+        @Override
+        public long getCreations() {
+          return currentCreations;
+        }
+
+        @Override
+        public int getSize() {
+          return currentSize;
+        }
+
+        @Override
+        public int getContexts() {
+          return currentContexts;
+        }
+
+        @Override
+        public String toString() {
+          return "Statistics {hits=" + currentHits
+              + ", creations=" + currentCreations
+              + ", size=" + currentSize
+              + ", contexts=" + currentContexts + '}';
+        }
+      };
+    }
+
+    private static class ContextPool {
+
+      private final ConcurrentLinkedDeque<SoftReference<Unmarshaller>> idle
+          = new ConcurrentLinkedDeque<>();
+
+      private final AtomicInteger size = new AtomicInteger();
+    }
+
+    private static class LastUsed {
+
+      private final WeakReference<JAXBContext> jaxbContext;
+
+      private final ContextPool pool;
+
+      private LastUsed(JAXBContext jaxbContext, ContextPool pool) {
+        this.jaxbContext = new WeakReference<>(jaxbContext);
+        this.pool = pool;
+      }
+    }
+  }
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx.adapter;
+
+import jakarta.xml.bind.annotation.adapters.XmlAdapter;
+import java.math.BigDecimal;
+
+/**
+ * Xml adapter, that binds {@code xsd:decimal} values to {@link Double}. It is used by the fast
+ * model binding (maven profile {@code fast-model}).
+ *
+ * @author Christian Bremer
+ */
+public class DecimalDoubleAdapter extends XmlAdapter<String, Double> {
+
+  @Override
+  public Double unmarshal(String value) {
+    if (value == null) {
+      return null;
+    }
+    String trimmed = value.trim();
+    return trimmed.isEmpty() ? null : Double.valueOf(trimmed);
+  }
+
+  @Override
+  public String marshal(Double value) {
+    if (value == null) {
+      return null;
+    }
+    if (value.isNaN() || value.isInfinite()) {
+      throw new IllegalArgumentException(
+          "Value '" + value + "' cannot be represented as xsd:decimal.");
+    }
+    return BigDecimal.valueOf(value).toPlainString();
+  }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx.adapter;
+
+import jakarta.xml.bind.annotation.adapters.XmlAdapter;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAccessor;
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeConstants;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.datatype.XMLGregorianCalendar;
+
+/**
+ * Xml adapter, that binds {@code xsd:dateTime} values to {@link Instant}. It is used by the fast
+ * model binding (maven profile {@code fast-model}).
+ *
+ * <p>GPX times are in UTC. A value without time zone is therefore interpreted as UTC, a value
+ * with an offset is converted to UTC. Instants are always written in UTC.
+ *
+ * @author Christian Bremer
+ */
+public class InstantAdapter extends XmlAdapter<String, Instant> {
+
+  @Override
+  public Instant unmarshal(String value) {
+    if (value == null) {
+      return null;
+    }
+    String trimmed = value.trim();
+    if (trimmed.isEmpty()) {
+      return null;
+    }
+    try {
+      TemporalAccessor parsed = DateTimeFormatter.ISO_DATE_TIME
+          .parseBest(trimmed, OffsetDateTime::from, LocalDateTime::from);
+      return parsed instanceof OffsetDateTime
+          ? ((OffsetDateTime) parsed).toInstant()
+          : ((LocalDateTime) parsed).toInstant(ZoneOffset.UTC);
+    } catch (DateTimeParseException e) {
+      // values like '24:00:00' or years with more than four digits
+      return unmarshalLenient(trimmed, e);
+    }
+  }
+
+  private static Instant unmarshalLenient(String value, DateTimeParseException cause) {
+    try {
+      XMLGregorianCalendar calendar = DatatypeFactory.newInstance()
+          .newXMLGregorianCalendar(value);
+      if (calendar.getTimezone() == DatatypeConstants.FIELD_UNDEFINED) {
+        calendar.setTimezone(0);
+      }
+      return calendar.toGregorianCalendar().toInstant();
+    } catch (DatatypeConfigurationException | IllegalArgumentException e) {
+      cause.addSuppressed(e);
+      throw cause;
+    }
+  }
+
+  @Override
+  public String marshal(Instant value) {
+    return value != null ? DateTimeFormatter.ISO_INSTANT.format(value) : null;
+  }
+
+}
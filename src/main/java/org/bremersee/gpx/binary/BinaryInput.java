@@ -0,0 +1,488 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx.binary;
+
+import static org.bremersee.gpx.GpxValueHelper.NO_TIME;
+import static org.bremersee.gpx.binary.BinaryOutput.ESCAPE;
+import static org.bremersee.gpx.binary.BinaryOutput.FIRST_REFERENCE;
+import static org.bremersee.gpx.binary.BinaryOutput.LITERAL;
+import static org.bremersee.gpx.binary.BinaryOutput.NEW_STRING;
+import static org.bremersee.gpx.binary.BinaryOutput.TIME_TEXT;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import javax.xml.XMLConstants;
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.datatype.XMLGregorianCalendar;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.bremersee.gpx.GpxValueHelper;
+import org.bremersee.gpx.model.BoundsType;
+import org.bremersee.gpx.model.CommonGpxType;
+import org.bremersee.gpx.model.CopyrightType;
+import org.bremersee.gpx.model.EmailType;
+import org.bremersee.gpx.model.ExtensionsType;
+import org.bremersee.gpx.model.LinkType;
+import org.bremersee.gpx.model.MetadataType;
+import org.bremersee.gpx.model.PersonType;
+import org.bremersee.gpx.model.WptType;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * The buffered input of the binary format, the counterpart of {@link BinaryOutput}.
+ *
+ * @author Christian Bremer
+ */
+class BinaryInput {
+
+  private static final DatatypeFactory DATATYPE_FACTORY;
+
+  static {
+    try {
+      DATATYPE_FACTORY = DatatypeFactory.newInstance();
+    } catch (DatatypeConfigurationException e) {
+      throw new IllegalStateException("Creating datatype factory failed.", e);
+    }
+  }
+
+  private final InputStream in;
+
+  private final byte[] buffer = new byte[8192];
+
+  private int position;
+
+  private int limit;
+
+  private final List<String> dictionary = new ArrayList<>();
+
+  private DocumentBuilder documentBuilder;
+
+  private Document ownerDocument;
+
+  /**
+   * Instantiates a new binary input.
+   *
+   * @param in the input stream
+   */
+  BinaryInput(InputStream in) {
+    this.in = in;
+  }
+
+  private boolean fill() throws IOException {
+    position = 0;
+    limit = Math.max(in.read(buffer), 0);
+    return limit > 0;
+  }
+
+  /**
+   * Reads a byte.
+   *
+   * @return the byte or {@code -1}, if the end of the stream is reached
+   * @throws IOException if an I/O error occurs
+   */
+  int read() throws IOException {
+    if (position == limit && !fill()) {
+      return -1;
+    }
+    return buffer[position++] & 0xFF;
+  }
+
+  private int readByte() throws IOException {
+    if (position == limit && !fill()) {
+      throw new EOFException("Unexpected end of binary gpx.");
+    }
+    return buffer[position++] & 0xFF;
+  }
+
+  byte[] readBytes() throws IOException {
+    return readBytes(readLength());
+  }
+
+  private byte[] readBytes(int length) throws IOException {
+    byte[] bytes = new byte[length];
+    int offset = 0;
+    while (offset < length) {
+      if (position == limit && !fill()) {
+        throw new EOFException("Unexpected end of binary gpx.");
+      }
+      int n = Math.min(length - offset, limit - position);
+      System.arraycopy(buffer, position, bytes, offset, n);
+      position += n;
+      offset += n;
+    }
+    return bytes;
+  }
+
+  private int readLength() throws IOException {
+    long length = readVarLong();
+    if (length < 0L || length > Integer.MAX_VALUE) {
+      throw new IOException("Invalid length " + length + ".");
+    }
+    return (int) length;
+  }
+
+  long readVarLong() throws IOException {
+    long value = 0L;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = readByte();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed variable length integer.");
+  }
+
+  long readSignedVarLong() throws IOException {
+    return unZigZag(readVarLong());
+  }
+
+  /**
+   * Reads a string, that was written with {@link BinaryOutput#writeString(String)} or
+   * {@link BinaryOutput#writeLiteral(String)}.
+   *
+   * @return the string, may be {@code null}
+   * @throws IOException if an I/O error occurs
+   */
+  String readString() throws IOException {
+    long code = readVarLong();
+    if (code == 0L) {
+      return null;
+    }
+    if (code == NEW_STRING) {
+      String value = readUtf8();
+      dictionary.add(value);
+      return value;
+    }
+    if (code == LITERAL) {
+      return readUtf8();
+    }
+    long index = code - FIRST_REFERENCE;
+    if (index >= dictionary.size()) {
+      throw new IOException("Unknown string reference " + index + ".");
+    }
+    return dictionary.get((int) index);
+  }
+
+  private String readUtf8() throws IOException {
+    int length = readLength();
+    if (length <= limit - position) {
+      String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+      position += length;
+      return value;
+    }
+    return new String(readBytes(length), StandardCharsets.UTF_8);
+  }
+
+  BigDecimal readDecimal() throws IOException {
+    long scale = readVarLong();
+    if (scale == 0L) {
+      return null;
+    }
+    return new BigDecimal(new BigInteger(readBytes()), (int) unZigZag(scale - 1L));
+  }
+
+  /**
+   * Reads a decimal, that was written with
+   * {@link BinaryOutput#writeDecimal(DeltaState, int, BigDecimal)}.
+   *
+   * @param state the delta state
+   * @param channel the channel
+   * @return the decimal
+   * @throws IOException if an I/O error occurs
+   */
+  BigDecimal readDecimal(DeltaState state, int channel) throws IOException {
+    long code = readVarLong();
+    if ((code & 1L) == 0L) {
+      long unscaled = state.unscaled[channel] + unZigZag(code >>> 1);
+      state.unscaled[channel] = unscaled;
+      return BigDecimal.valueOf(unscaled, state.scales[channel]);
+    }
+    if (code != ESCAPE) {
+      throw new IOException("Invalid decimal code " + code + ".");
+    }
+    int scale = (int) readSignedVarLong();
+    BigInteger unscaledValue = new BigInteger(readBytes());
+    boolean isLong = unscaledValue.bitLength() < 64;
+    state.scales[channel] = isLong ? scale : DeltaState.NO_SCALE;
+    state.unscaled[channel] = isLong ? unscaledValue.longValue() : 0L;
+    return new BigDecimal(unscaledValue, scale);
+  }
+
+  /**
+   * Reads a time, that was written with
+   * {@link BinaryOutput#writeTime(DeltaState, XMLGregorianCalendar)}.
+   *
+   * @param state the delta state
+   * @return the time
+   * @throws IOException if an I/O error occurs
+   */
+  XMLGregorianCalendar readTime(DeltaState state) throws IOException {
+    long code = readVarLong();
+    if ((code & 1L) == 0L && state.time != NO_TIME) {
+      long delta = state.timeDelta + unZigZag(code >>> 1);
+      state.time += delta;
+      state.timeDelta = delta;
+    } else if (code == ESCAPE) {
+      state.time = readSignedVarLong();
+      state.timeDelta = 0L;
+    } else if (code == TIME_TEXT) {
+      return readCalendar();
+    } else {
+      throw new IOException("Invalid time code " + code + ".");
+    }
+    return GpxValueHelper.toXmlGregorianCalendar(state.time);
+  }
+
+  XMLGregorianCalendar readCalendar() throws IOException {
+    String value = readString();
+    try {
+      return value != null ? DATATYPE_FACTORY.newXMLGregorianCalendar(value) : null;
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Invalid date time '" + value + "'.", e);
+    }
+  }
+
+  BigInteger readInteger() throws IOException {
+    byte[] bytes = readBytes();
+    return bytes.length > 0 ? new BigInteger(bytes) : null;
+  }
+
+  ExtensionsType readExtensions() throws IOException {
+    long size = readVarLong();
+    if (size == 0L) {
+      return null;
+    }
+    ExtensionsType extensions = new ExtensionsType();
+    for (long i = 1L; i < size; i++) {
+      extensions.getAnies().add(parse(readString() + readString()));
+    }
+    return extensions;
+  }
+
+  private Element parse(String xml) throws IOException {
+    try {
+      if (documentBuilder == null) {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        factory.setFeature("http://apache.org/xml/features/dom/defer-node-expansion", false);
+        documentBuilder = factory.newDocumentBuilder();
+        ownerDocument = documentBuilder.newDocument();
+      }
+      // the parsed documents are thrown away, the elements share one owner document
+      Element element = documentBuilder.parse(new InputSource(new StringReader(xml)))
+          .getDocumentElement();
+      Node adopted = ownerDocument.adoptNode(element);
+      return adopted != null ? (Element) adopted : (Element) ownerDocument.importNode(element, true);
+
+    } catch (ParserConfigurationException | SAXException e) {
+      throw new IOException("Parsing extension element failed.", e);
+    }
+  }
+
+  void readLinks(List<LinkType> links) throws IOException {
+    int size = readLength();
+    for (int i = 0; i < size; i++) {
+      links.add(readLink());
+    }
+  }
+
+  private LinkType readLink() throws IOException {
+    LinkType link = new LinkType();
+    link.setHref(readString());
+    link.setText(readString());
+    link.setType(readString());
+    return link;
+  }
+
+  /**
+   * Reads a waypoint, a route point or a track point.
+   *
+   * @param state the delta state
+   * @return the point
+   * @throws IOException if an I/O error occurs
+   */
+  WptType readPoint(DeltaState state) throws IOException {
+    int mask = readMask();
+    WptType point = new WptType();
+    point.setLat(readDecimal(state, DeltaState.LAT, mask, 0));
+    point.setLon(readDecimal(state, DeltaState.LON, mask, 1));
+    point.setEle(readDecimal(state, DeltaState.ELE, mask, 2));
+    if ((mask & 1 << 3) != 0) {
+      point.setTime(readTime(state));
+    }
+    point.setMagvar(readDecimal(state, DeltaState.MAGVAR, mask, 4));
+    point.setGeoidheight(readDecimal(state, DeltaState.GEOIDHEIGHT, mask, 5));
+    point.setName(readString(mask, 6));
+    point.setCmt(readString(mask, 7));
+    point.setDesc(readString(mask, 8));
+    point.setSrc(readString(mask, 9));
+    if ((mask & 1 << 10) != 0) {
+      readLinks(point.getLinks());
+    }
+    point.setSym(readString(mask, 11));
+    point.setType(readString(mask, 12));
+    point.setFix(readString(mask, 13));
+    if ((mask & 1 << 14) != 0) {
+      point.setSat(readInteger());
+    }
+    point.setHdop(readDecimal(state, DeltaState.HDOP, mask, 15));
+    point.setVdop(readDecimal(state, DeltaState.VDOP, mask, 16));
+    point.setPdop(readDecimal(state, DeltaState.PDOP, mask, 17));
+    point.setAgeofdgpsdata(readDecimal(state, DeltaState.AGEOFDGPSDATA, mask, 18));
+    if ((mask & 1 << 19) != 0) {
+      point.setDgpsid((int) readSignedVarLong());
+    }
+    if ((mask & 1 << 20) != 0) {
+      point.setExtensions(readExtensions());
+    }
+    return point;
+  }
+
+  private BigDecimal readDecimal(
+      DeltaState state,
+      int channel,
+      int mask,
+      int bit) throws IOException {
+
+    return (mask & 1 << bit) != 0 ? readDecimal(state, channel) : null;
+  }
+
+  private String readString(int mask, int bit) throws IOException {
+    return (mask & 1 << bit) != 0 ? readString() : null;
+  }
+
+  private int readMask() throws IOException {
+    long mask = readVarLong();
+    if ((mask & ~0xFFFFFFFFL) != 0L) {
+      throw new IOException("Invalid mask " + mask + ".");
+    }
+    return (int) mask;
+  }
+
+  /**
+   * Reads the values of a route or a track without the points or segments.
+   *
+   * @param value the route or the track
+   * @param number the setter of the number of the route or the track
+   * @param type the setter of the type of the route or the track
+   * @throws IOException if an I/O error occurs
+   */
+  void readCommon(
+      CommonGpxType value,
+      Consumer<BigInteger> number,
+      Consumer<String> type) throws IOException {
+
+    int mask = readMask();
+    value.setName(readString(mask, 0));
+    value.setCmt(readString(mask, 1));
+    value.setDesc(readString(mask, 2));
+    value.setSrc(readString(mask, 3));
+    if ((mask & 1 << 4) != 0) {
+      readLinks(value.getLinks());
+    }
+    if ((mask & 1 << 5) != 0) {
+      number.accept(readInteger());
+    }
+    if ((mask & 1 << 6) != 0) {
+      type.accept(readString());
+    }
+    if ((mask & 1 << 7) != 0) {
+      value.setExtensions(readExtensions());
+    }
+  }
+
+  /**
+   * Reads the metadata.
+   *
+   * @return the metadata
+   * @throws IOException if an I/O error occurs
+   */
+  MetadataType readMetadata() throws IOException {
+    int mask = readMask();
+    MetadataType metadata = new MetadataType();
+    metadata.setName(readString(mask, 0));
+    metadata.setDesc(readString(mask, 1));
+    if ((mask & 1 << 2) != 0) {
+      metadata.setAuthor(readPerson());
+    }
+    if ((mask & 1 << 3) != 0) {
+      CopyrightType copyright = new CopyrightType();
+      copyright.setAuthor(readString());
+      copyright.setYear(readCalendar());
+      copyright.setLicense(readString());
+      metadata.setCopyright(copyright);
+    }
+    if ((mask & 1 << 4) != 0) {
+      readLinks(metadata.getLinks());
+    }
+    if ((mask & 1 << 5) != 0) {
+      metadata.setTime(readCalendar());
+    }
+    metadata.setKeywords(readString(mask, 6));
+    if ((mask & 1 << 7) != 0) {
+      BoundsType bounds = new BoundsType();
+      bounds.setMinlat(readDecimal());
+      bounds.setMinlon(readDecimal());
+      bounds.setMaxlat(readDecimal());
+      bounds.setMaxlon(readDecimal());
+      metadata.setBounds(bounds);
+    }
+    if ((mask & 1 << 8) != 0) {
+      metadata.setExtensions(readExtensions());
+    }
+    return metadata;
+  }
+
+  private PersonType readPerson() throws IOException {
+    int mask = readMask();
+    PersonType person = new PersonType();
+    person.setName(readString(mask, 0));
+    if ((mask & 1 << 1) != 0) {
+      EmailType email = new EmailType();
+      email.setId(readString());
+      email.setDomain(readString());
+      person.setEmail(email);
+    }
+    if ((mask & 1 << 2) != 0) {
+      person.setLink(readLink());
+    }
+    return person;
+  }
+
+  private static long unZigZag(long value) {
+    return (value >>> 1) ^ -(value & 1L);
+  }
+
+}
@@ -0,0 +1,559 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx.binary;
+
+import static org.bremersee.gpx.GpxValueHelper.NO_TIME;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.datatype.XMLGregorianCalendar;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import org.bremersee.gpx.GpxValueHelper;
+import org.bremersee.gpx.model.BoundsType;
+import org.bremersee.gpx.model.CommonGpxType;
+import org.bremersee.gpx.model.CopyrightType;
+import org.bremersee.gpx.model.EmailType;
+import org.bremersee.gpx.model.ExtensionsType;
+import org.bremersee.gpx.model.LinkType;
+import org.bremersee.gpx.model.MetadataType;
+import org.bremersee.gpx.model.PersonType;
+import org.bremersee.gpx.model.WptType;
+import org.w3c.dom.Element;
+
+/**
+ * The buffered output of the binary format. The optional values of an element are announced by a
+ * bit mask in the order of the gpx schema.
+ *
+ * @author Christian Bremer
+ */
+class BinaryOutput {
+
+  /**
+   * The maximum number of strings in the dictionary.
+   */
+  static final int MAX_DICTIONARY_SIZE = 1 << 16;
+
+  /**
+   * The maximum number of characters of all strings in the dictionary.
+   */
+  static final int MAX_DICTIONARY_CHARS = 1 << 22;
+
+  /**
+   * A string, that is referenced by {@code index + FIRST_REFERENCE}.
+   */
+  static final int FIRST_REFERENCE = 3;
+
+  /**
+   * A new string, that is added to the dictionary.
+   */
+  static final int NEW_STRING = 1;
+
+  /**
+   * A string, that is not added to the dictionary.
+   */
+  static final int LITERAL = 2;
+
+  /**
+   * The escape of a decimal or time difference.
+   */
+  static final int ESCAPE = 1;
+
+  /**
+   * The escape of a time, that is written as text.
+   */
+  static final int TIME_TEXT = 3;
+
+  private final OutputStream out;
+
+  private final byte[] buffer = new byte[8192];
+
+  private int position;
+
+  private long size;
+
+  private final Map<String, Integer> dictionary = new HashMap<>();
+
+  private int dictionaryChars;
+
+  private Transformer transformer;
+
+  /**
+   * Instantiates a new binary output.
+   *
+   * @param out the output stream
+   */
+  BinaryOutput(OutputStream out) {
+    this.out = out;
+  }
+
+  /**
+   * Gets the number of written bytes.
+   *
+   * @return the number of written bytes
+   */
+  long size() {
+    return size + position;
+  }
+
+  void writeByte(int value) throws IOException {
+    if (position == buffer.length) {
+      flushBuffer();
+    }
+    buffer[position++] = (byte) value;
+  }
+
+  void writeBytes(byte[] bytes) throws IOException {
+    writeVarLong(bytes.length);
+    if (bytes.length > buffer.length - position) {
+      flushBuffer();
+      if (bytes.length > buffer.length) {
+        out.write(bytes);
+        size += bytes.length;
+        return;
+      }
+    }
+    System.arraycopy(bytes, 0, buffer, position, bytes.length);
+    position += bytes.length;
+  }
+
+  void writeVarLong(long value) throws IOException {
+    if (buffer.length - position < 10) {
+      flushBuffer();
+    }
+    long v = value;
+    while ((v & ~0x7FL) != 0L) {
+      buffer[position++] = (byte) ((v & 0x7F) | 0x80);
+      v >>>= 7;
+    }
+    buffer[position++] = (byte) v;
+  }
+
+  void writeSignedVarLong(long value) throws IOException {
+    writeVarLong((value << 1) ^ (value >> 63));
+  }
+
+  /**
+   * Writes a string. Short strings are added to the dictionary and are written only once.
+   *
+   * @param value the value, may be {@code null}
+   * @throws IOException if an I/O error occurs
+   */
+  void writeString(String value) throws IOException {
+    if (value == null) {
+      writeVarLong(0);
+      return;
+    }
+    Integer index = dictionary.get(value);
+    if (index != null) {
+      writeVarLong(index + FIRST_REFERENCE);
+    } else if (dictionary.size() < MAX_DICTIONARY_SIZE
+        && dictionaryChars + value.length() <= MAX_DICTIONARY_CHARS) {
+      dictionary.put(value, dictionary.size());
+      dictionaryChars += value.length();
+      writeVarLong(NEW_STRING);
+      writeBytes(value.getBytes(StandardCharsets.UTF_8));
+    } else {
+      writeLiteral(value);
+    }
+  }
+
+  /**
+   * Writes a string, that is not added to the dictionary.
+   *
+   * @param value the value, may be {@code null}
+   * @throws IOException if an I/O error occurs
+   */
+  void writeLiteral(String value) throws IOException {
+    if (value == null) {
+      writeVarLong(0);
+    } else {
+      writeVarLong(LITERAL);
+      writeBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  /**
+   * Writes a decimal with scale and unscaled value.
+   *
+   * @param value the value, may be {@code null}
+   * @throws IOException if an I/O error occurs
+   */
+  void writeDecimal(BigDecimal value) throws IOException {
+    if (value == null) {
+      writeVarLong(0);
+    } else {
+      writeVarLong(zigZag(value.scale()) + 1L);
+      writeBytes(value.unscaledValue().toByteArray());
+    }
+  }
+
+  /**
+   * Writes the difference of a decimal to the previous decimal of the same channel. If the scale
+   * has changed or the difference is too large, the decimal is written with scale and unscaled
+   * value.
+   *
+   * @param state the delta state
+   * @param channel the channel
+   * @param value the value, must not be {@code null}
+   * @throws IOException if an I/O error occurs
+   */
+  void writeDecimal(DeltaState state, int channel, BigDecimal value) throws IOException {
+    BigInteger unscaledValue = value.unscaledValue();
+    boolean isLong = unscaledValue.bitLength() < 64;
+    if (isLong && value.scale() == state.scales[channel]) {
+      long unscaled = unscaledValue.longValue();
+      long previous = state.unscaled[channel];
+      long delta = unscaled - previous;
+      long encoded = zigZag(delta);
+      // no overflow of the difference and space for the escape bit
+      if (((unscaled ^ previous) & (unscaled ^ delta)) >= 0 && (encoded >>> 62) == 0L) {
+        writeVarLong(encoded << 1);
+        state.unscaled[channel] = unscaled;
+        return;
+      }
+    }
+    writeVarLong(ESCAPE);
+    writeVarLong(zigZag(value.scale()));
+    writeBytes(unscaledValue.toByteArray());
+    state.scales[channel] = isLong ? value.scale() : DeltaState.NO_SCALE;
+    state.unscaled[channel] = isLong ? unscaledValue.longValue() : 0L;
+  }
+
+  /**
+   * Writes the difference of the difference of the time to the previous time. The first time is
+   * written as milliseconds since epoch and times, that cannot be represented by milliseconds
+   * without loss, are written as text.
+   *
+   * @param state the delta state
+   * @param value the value, must not be {@code null}
+   * @throws IOException if an I/O error occurs
+   */
+  void writeTime(DeltaState state, XMLGregorianCalendar value) throws IOException {
+    if (!GpxValueHelper.isEpochMillisExact(value)) {
+      writeVarLong(TIME_TEXT);
+      writeLiteral(value.toXMLFormat());
+      return;
+    }
+    long time = GpxValueHelper.toEpochMillis(value);
+    if (state.time != NO_TIME) {
+      long delta = time - state.time;
+      long deltaOfDelta = delta - state.timeDelta;
+      long encoded = zigZag(deltaOfDelta);
+      if (((time ^ state.time) & (time ^ delta)) >= 0
+          && ((delta ^ state.timeDelta) & (delta ^ deltaOfDelta)) >= 0
+          && (encoded >>> 62) == 0L) {
+        writeVarLong(encoded << 1);
+        state.time = time;
+        state.timeDelta = delta;
+        return;
+      }
+    }
+    writeVarLong(ESCAPE);
+    writeSignedVarLong(time);
+    state.time = time;
+    state.timeDelta = 0L;
+  }
+
+  void writeCalendar(XMLGregorianCalendar value) throws IOException {
+    writeLiteral(value != null ? value.toXMLFormat() : null);
+  }
+
+  void writeInteger(BigInteger value) throws IOException {
+    if (value == null) {
+      writeVarLong(0);
+    } else {
+      writeBytes(value.toByteArray());
+    }
+  }
+
+  void writeExtensions(ExtensionsType extensions) throws IOException {
+    if (extensions == null) {
+      writeVarLong(0);
+      return;
+    }
+    List<Element> elements = extensions.getAnies();
+    writeVarLong(elements.size() + 1L);
+    for (Element element : elements) {
+      // the start tag with the namespace declarations is mostly the same for many elements,
+      // the body mostly differs and would only fill the dictionary
+      String xml = toXml(element);
+      int end = endOfStartTag(xml);
+      writeString(xml.substring(0, end));
+      writeLiteral(xml.substring(end));
+    }
+  }
+
+  private static int endOfStartTag(String xml) {
+    char quote = 0;
+    for (int i = 0; i < xml.length(); i++) {
+      char c = xml.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+      } else if (c == '"' || c == '\'') {
+        quote = c;
+      } else if (c == '>') {
+        return i + 1;
+      }
+    }
+    return xml.length();
+  }
+
+  private String toXml(Element element) throws IOException {
+    try {
+      if (transformer == null) {
+        transformer = TransformerFactory.newInstance().newTransformer();
+        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+      }
+      StringWriter xml = new StringWriter();
+      transformer.transform(new DOMSource(element), new StreamResult(xml));
+      return xml.toString();
+
+    } catch (TransformerException e) {
+      throw new IOException("Serializing extension element failed.", e);
+    }
+  }
+
+  void writeLinks(List<LinkType> links) throws IOException {
+    writeVarLong(links.size());
+    for (LinkType link : links) {
+      writeLink(link);
+    }
+  }
+
+  private void writeLink(LinkType link) throws IOException {
+    writeString(link.getHref());
+    writeString(link.getText());
+    writeString(link.getType());
+  }
+
+  /**
+   * Writes a waypoint, a route point or a track point.
+   *
+   * @param state the delta state
+   * @param point the point
+   * @throws IOException if an I/O error occurs
+   */
+  void writePoint(DeltaState state, WptType point) throws IOException {
+    int mask = flag(point.getLat(), 0)
+        | flag(point.getLon(), 1)
+        | flag(point.getEle(), 2)
+        | flag(point.getTime(), 3)
+        | flag(point.getMagvar(), 4)
+        | flag(point.getGeoidheight(), 5)
+        | flag(point.getName(), 6)
+        | flag(point.getCmt(), 7)
+        | flag(point.getDesc(), 8)
+        | flag(point.getSrc(), 9)
+        | flag(point.getLinks(), 10)
+        | flag(point.getSym(), 11)
+        | flag(point.getType(), 12)
+        | flag(point.getFix(), 13)
+        | flag(point.getSat(), 14)
+        | flag(point.getHdop(), 15)
+        | flag(point.getVdop(), 16)
+        | flag(point.getPdop(), 17)
+        | flag(point.getAgeofdgpsdata(), 18)
+        | flag(point.getDgpsid(), 19)
+        | flag(point.getExtensions(), 20);
+    writeVarLong(mask);
+    writeDecimal(state, DeltaState.LAT, point.getLat(), mask, 0);
+    writeDecimal(state, DeltaState.LON, point.getLon(), mask, 1);
+    writeDecimal(state, DeltaState.ELE, point.getEle(), mask, 2);
+    if ((mask & 1 << 3) != 0) {
+      writeTime(state, point.getTime());
+    }
+    writeDecimal(state, DeltaState.MAGVAR, point.getMagvar(), mask, 4);
+    writeDecimal(state, DeltaState.GEOIDHEIGHT, point.getGeoidheight(), mask, 5);
+    writeStrings(mask, 6, point.getName(), point.getCmt(), point.getDesc(), point.getSrc());
+    if ((mask & 1 << 10) != 0) {
+      writeLinks(point.getLinks());
+    }
+    writeStrings(mask, 11, point.getSym(), point.getType(), point.getFix());
+    if ((mask & 1 << 14) != 0) {
+      writeInteger(point.getSat());
+    }
+    writeDecimal(state, DeltaState.HDOP, point.getHdop(), mask, 15);
+    writeDecimal(state, DeltaState.VDOP, point.getVdop(), mask, 16);
+    writeDecimal(state, DeltaState.PDOP, point.getPdop(), mask, 17);
+    writeDecimal(state, DeltaState.AGEOFDGPSDATA, point.getAgeofdgpsdata(), mask, 18);
+    if ((mask & 1 << 19) != 0) {
+      writeSignedVarLong(point.getDgpsid());
+    }
+    if ((mask & 1 << 20) != 0) {
+      writeExtensions(point.getExtensions());
+    }
+  }
+
+  private void writeDecimal(
+      DeltaState state,
+      int channel,
+      BigDecimal value,
+      int mask,
+      int bit) throws IOException {
+
+    if ((mask & 1 << bit) != 0) {
+      writeDecimal(state, channel, value);
+    }
+  }
+
+  private void writeStrings(int mask, int firstBit, String... values) throws IOException {
+    for (int i = 0; i < values.length; i++) {
+      if ((mask & 1 << (firstBit + i)) != 0) {
+        writeString(values[i]);
+      }
+    }
+  }
+
+  /**
+   * Writes the values of a route or a track without the points or segments.
+   *
+   * @param value the route or the track
+   * @param number the number of the route or the track
+   * @param type the type of the route or the track
+   * @throws IOException if an I/O error occurs
+   */
+  void writeCommon(CommonGpxType value, BigInteger number, String type) throws IOException {
+    int mask = flag(value.getName(), 0)
+        | flag(value.getCmt(), 1)
+        | flag(value.getDesc(), 2)
+        | flag(value.getSrc(), 3)
+        | flag(value.getLinks(), 4)
+        | flag(number, 5)
+        | flag(type, 6)
+        | flag(value.getExtensions(), 7);
+    writeVarLong(mask);
+    writeStrings(mask, 0, value.getName(), value.getCmt(), value.getDesc(), value.getSrc());
+    if ((mask & 1 << 4) != 0) {
+      writeLinks(value.getLinks());
+    }
+    if ((mask & 1 << 5) != 0) {
+      writeInteger(number);
+    }
+    writeStrings(mask, 6, type);
+    if ((mask & 1 << 7) != 0) {
+      writeExtensions(value.getExtensions());
+    }
+  }
+
+  /**
+   * Writes the metadata.
+   *
+   * @param metadata the metadata
+   * @throws IOException if an I/O error occurs
+   */
+  void writeMetadata(MetadataType metadata) throws IOException {
+    int mask = flag(metadata.getName(), 0)
+        | flag(metadata.getDesc(), 1)
+        | flag(metadata.getAuthor(), 2)
+        | flag(metadata.getCopyright(), 3)
+        | flag(metadata.getLinks(), 4)
+        | flag(metadata.getTime(), 5)
+        | flag(metadata.getKeywords(), 6)
+        | flag(metadata.getBounds(), 7)
+        | flag(metadata.getExtensions(), 8);
+    writeVarLong(mask);
+    writeStrings(mask, 0, metadata.getName(), metadata.getDesc());
+    if ((mask & 1 << 2) != 0) {
+      writePerson(metadata.getAuthor());
+    }
+    if ((mask & 1 << 3) != 0) {
+      CopyrightType copyright = metadata.getCopyright();
+      writeString(copyright.getAuthor());
+      writeCalendar(copyright.getYear());
+      writeString(copyright.getLicense());
+    }
+    if ((mask & 1 << 4) != 0) {
+      writeLinks(metadata.getLinks());
+    }
+    if ((mask & 1 << 5) != 0) {
+      writeCalendar(metadata.getTime());
+    }
+    writeStrings(mask, 6, metadata.getKeywords());
+    if ((mask & 1 << 7) != 0) {
+      BoundsType bounds = metadata.getBounds();
+      writeDecimal(bounds.getMinlat());
+      writeDecimal(bounds.getMinlon());
+      writeDecimal(bounds.getMaxlat());
+      writeDecimal(bounds.getMaxlon());
+    }
+    if ((mask & 1 << 8) != 0) {
+      writeExtensions(metadata.getExtensions());
+    }
+  }
+
+  private void writePerson(PersonType person) throws IOException {
+    int mask = flag(person.getName(), 0)
+        | flag(person.getEmail(), 1)
+        | flag(person.getLink(), 2);
+    writeVarLong(mask);
+    writeStrings(mask, 0, person.getName());
+    if ((mask & 1 << 1) != 0) {
+      EmailType email = person.getEmail();
+      writeString(email.getId());
+      writeString(email.getDomain());
+    }
+    if ((mask & 1 << 2) != 0) {
+      writeLink(person.getLink());
+    }
+  }
+
+  private static int flag(Object value, int bit) {
+    if (value == null || (value instanceof List && ((List<?>) value).isEmpty())) {
+      return 0;
+    }
+    return 1 << bit;
+  }
+
+  private static long zigZag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private void flushBuffer() throws IOException {
+    if (position > 0) {
+      out.write(buffer, 0, position);
+      size += position;
+      position = 0;
+    }
+  }
+
+  /**
+   * Writes the buffer into the output stream and flushes it.
+   *
+   * @throws IOException if an I/O error occurs
+   */
+  void flush() throws IOException {
+    flushBuffer();
+    out.flush();
+  }
+
+}
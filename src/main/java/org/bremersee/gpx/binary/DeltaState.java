@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx.binary;
+
+import static org.bremersee.gpx.GpxValueHelper.NO_TIME;
+
+import java.util.Arrays;
+
+/**
+ * The state of the difference encoding of the points of a segment, of a route or of the
+ * waypoints. Writer and reader keep the same state, so that the differences can be resolved.
+ *
+ * @author Christian Bremer
+ */
+class DeltaState {
+
+  static final int LAT = 0;
+
+  static final int LON = 1;
+
+  static final int ELE = 2;
+
+  static final int MAGVAR = 3;
+
+  static final int GEOIDHEIGHT = 4;
+
+  static final int HDOP = 5;
+
+  static final int VDOP = 6;
+
+  static final int PDOP = 7;
+
+  static final int AGEOFDGPSDATA = 8;
+
+  private static final int CHANNELS = 9;
+
+  /**
+   * The scale of a channel, that has no previous value.
+   */
+  static final int NO_SCALE = Integer.MIN_VALUE;
+
+  /**
+   * The scales of the previous decimals.
+   */
+  final int[] scales = new int[CHANNELS];
+
+  /**
+   * The unscaled values of the previous decimals.
+   */
+  final long[] unscaled = new long[CHANNELS];
+
+  /**
+   * The previous time in milliseconds since epoch.
+   */
+  long time = NO_TIME;
+
+  /**
+   * The difference of the previous time to the time before.
+   */
+  long timeDelta;
+
+  /**
+   * Instantiates a new delta state.
+   */
+  DeltaState() {
+    Arrays.fill(scales, NO_SCALE);
+  }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx.binary;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import org.bremersee.gpx.model.Gpx;
+import org.bremersee.gpx.model.GpxType;
+
+/**
+ * Encodes and decodes gpx documents in a compact binary format, that can be converted back
+ * into exactly the same jaxb model.
+ *
+ * <p>The format starts with the magic bytes {@code GPXB} and a version byte, followed by one
+ * record per element of the gpx document in the same order as in the xml document (start gpx,
+ * metadata, waypoints, routes, start track, start segment, track points, end segment, end track
+ * and end gpx). Numbers are written as variable length integers:
+ * <ul>
+ *   <li>the decimals of waypoints, route points and track points (latitude, longitude,
+ *   elevation and so on) are written as zig-zag encoded differences of the unscaled value to the
+ *   value of the previous point; the scale is only written, if it changes,</li>
+ *   <li>times are written as zig-zag encoded differences of the difference to the previous
+ *   point in milliseconds (delta of delta), times, that cannot be represented by milliseconds
+ *   without loss, are written as text,</li>
+ *   <li>strings are written once and then referenced by their index in a dictionary, that is
+ *   built while writing and reading,</li>
+ *   <li>the elements of the extensions are written as length prefixed xml.</li>
+ * </ul>
+ *
+ * <p>The differences are computed per segment, per route and for all waypoints, so a segment can
+ * be written and read point by point (see {@link GpxBinaryWriter} and {@link GpxBinaryReader}).
+ *
+ * @author Christian Bremer
+ */
+public abstract class GpxBinaryCodec {
+
+  /**
+   * The magic bytes at the start of the binary format.
+   */
+  static final byte[] MAGIC = {'G', 'P', 'X', 'B'};
+
+  /**
+   * The version of the binary format.
+   */
+  static final int VERSION = 1;
+
+  static final int START_GPX = 1;
+
+  static final int METADATA = 2;
+
+  static final int WAYPOINT = 3;
+
+  static final int ROUTE = 4;
+
+  static final int START_TRACK = 5;
+
+  static final int START_SEGMENT = 6;
+
+  static final int TRACK_POINT = 7;
+
+  static final int END_SEGMENT = 8;
+
+  static final int END_TRACK = 9;
+
+  static final int END_GPX = 10;
+
+  private GpxBinaryCodec() {
+  }
+
+  /**
+   * Determines whether the given bytes start with the magic bytes of the binary format.
+   *
+   * @param bytes the bytes
+   * @return {@code true} if the bytes start with the magic bytes, otherwise {@code false}
+   */
+  public static boolean isBinaryGpx(byte[] bytes) {
+    if (bytes == null || bytes.length < MAGIC.length) {
+      return false;
+    }
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (bytes[i] != MAGIC[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Writes the given gpx in the binary format into the given output stream. The output stream
+   * will not be closed.
+   *
+   * @param gpx the gpx
+   * @param outputStream the output stream
+   */
+  public static void encode(GpxType gpx, OutputStream outputStream) {
+    try (GpxBinaryWriter writer = GpxBinaryWriter.newInstance(outputStream)) {
+      writer.write(gpx);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Encodes the given gpx into the binary format.
+   *
+   * @param gpx the gpx
+   * @return the bytes
+   */
+  public static byte[] toBytes(GpxType gpx) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    encode(gpx, out);
+    return out.toByteArray();
+  }
+
+  /**
+   * Reads a gpx in the binary format from the given input stream. The input stream will not be
+   * closed.
+   *
+   * @param inputStream the input stream
+   * @return the gpx
+   */
+  public static Gpx decode(InputStream inputStream) {
+    try (GpxBinaryReader reader = GpxBinaryReader.newInstance(inputStream)) {
+      return reader.readGpx();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Decodes a gpx from the given bytes in the binary format.
+   *
+   * @param bytes the bytes
+   * @return the gpx
+   */
+  public static Gpx fromBytes(byte[] bytes) {
+    return decode(new ByteArrayInputStream(bytes));
+  }
+
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx.binary;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import org.bremersee.gpx.io.GpxStreamException;
+import org.bremersee.gpx.io.GpxStreamHandler;
+import org.bremersee.gpx.model.ExtensionsType;
+import org.bremersee.gpx.model.Gpx;
+import org.bremersee.gpx.model.GpxType;
+import org.bremersee.gpx.model.MetadataType;
+import org.bremersee.gpx.model.RteType;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.TrksegType;
+import org.bremersee.gpx.model.WptType;
+
+/**
+ * A reader of the binary gpx format (see {@link GpxBinaryCodec}). The records are pushed to a
+ * {@link GpxStreamHandler} in the same way as the {@link org.bremersee.gpx.io.GpxStreamReader}
+ * does it, so track points are read one by one and the memory usage does not depend on the size
+ * of a segment.
+ *
+ * <p>A reader is not thread safe.
+ *
+ * @author Christian Bremer
+ */
+public class GpxBinaryReader implements Closeable {
+
+  private final BinaryInput input;
+
+  private final Closeable source;
+
+  private boolean finished;
+
+  /**
+   * Instantiates a new gpx binary reader.
+   *
+   * @param inputStream the input stream
+   * @param source the source that will be closed together with this reader, may be {@code null}
+   */
+  protected GpxBinaryReader(InputStream inputStream, Closeable source) {
+    this.input = new BinaryInput(
+        Objects.requireNonNull(inputStream, "Input stream must be present."));
+    this.source = source;
+  }
+
+  /**
+   * Creates a new gpx binary reader. The input stream will not be closed by the reader.
+   *
+   * @param inputStream the input stream
+   * @return the gpx binary reader
+   */
+  public static GpxBinaryReader newInstance(InputStream inputStream) {
+    return new GpxBinaryReader(inputStream, null);
+  }
+
+  /**
+   * Creates a new gpx binary reader of the given file. The file will be closed, when the reader
+   * is closed.
+   *
+   * @param file the file
+   * @return the gpx binary reader
+   */
+  public static GpxBinaryReader newInstance(Path file) {
+    try {
+      InputStream inputStream = Files.newInputStream(file);
+      return new GpxBinaryReader(inputStream, inputStream);
+    } catch (IOException e) {
+      throw new GpxStreamException("Creating gpx binary reader of file " + file + " failed.", e);
+    }
+  }
+
+  /**
+   * Reads the whole gpx.
+   *
+   * @return the gpx
+   */
+  public Gpx readGpx() {
+    Gpx gpx = new Gpx();
+    read(new GpxStreamHandler() {
+
+      private TrkType track;
+
+      @Override
+      public void startGpx(GpxType start) {
+        gpx.setVersion(start.getVersion());
+        gpx.setCreator(start.getCreator());
+      }
+
+      @Override
+      public void metadata(MetadataType metadata) {
+        gpx.setMetadata(metadata);
+      }
+
+      @Override
+      public void waypoint(WptType waypoint, int index) {
+        gpx.getWpts().add(waypoint);
+      }
+
+      @Override
+      public void route(RteType route, int index) {
+        gpx.getRtes().add(route);
+      }
+
+      @Override
+      public void startTrack(TrkType track, int trackIndex) {
+        this.track = track;
+        gpx.getTrks().add(track);
+      }
+
+      @Override
+      public void startSegment(int trackIndex, int segmentIndex) {
+        track.getTrksegs().add(new TrksegType());
+      }
+
+      @Override
+      public void trackPoint(WptType trackPoint, int trackIndex, int segmentIndex,
+          int pointIndex) {
+        track.getTrksegs().get(segmentIndex).getTrkpts().add(trackPoint);
+      }
+
+      @Override
+      public void endSegment(TrksegType segment, int trackIndex, int segmentIndex) {
+        track.getTrksegs().get(segmentIndex).setExtensions(segment.getExtensions());
+      }
+
+      @Override
+      public void endGpx(GpxType end, ExtensionsType extensions) {
+        gpx.setExtensions(extensions);
+      }
+    });
+    return gpx;
+  }
+
+  /**
+   * Reads all records and pushes them to the given handler.
+   *
+   * @param handler the handler
+   */
+  public void read(GpxStreamHandler handler) {
+    if (finished) {
+      return;
+    }
+    try {
+      readHeader();
+      GpxType gpx = null;
+      TrkType track = null;
+      DeltaState waypointState = new DeltaState();
+      DeltaState segmentState = null;
+      int waypointIndex = -1;
+      int routeIndex = -1;
+      int trackIndex = -1;
+      int segmentIndex = -1;
+      int pointIndex = -1;
+      int tag;
+      while (!finished && (tag = input.read()) != -1) {
+        switch (tag) {
+          case GpxBinaryCodec.START_GPX:
+            gpx = new GpxType();
+            gpx.setVersion(input.readString());
+            gpx.setCreator(input.readString());
+            handler.startGpx(gpx);
+            break;
+          case GpxBinaryCodec.METADATA:
+            handler.metadata(input.readMetadata());
+            break;
+          case GpxBinaryCodec.WAYPOINT:
+            handler.waypoint(input.readPoint(waypointState), ++waypointIndex);
+            break;
+          case GpxBinaryCodec.ROUTE:
+            handler.route(readRoute(), ++routeIndex);
+            break;
+          case GpxBinaryCodec.START_TRACK:
+            track = new TrkType();
+            input.readCommon(track, track::setNumber, track::setType);
+            segmentIndex = -1;
+            handler.startTrack(track, ++trackIndex);
+            break;
+          case GpxBinaryCodec.START_SEGMENT:
+            segmentState = new DeltaState();
+            pointIndex = -1;
+            handler.startSegment(trackIndex, ++segmentIndex);
+            break;
+          case GpxBinaryCodec.TRACK_POINT:
+            if (segmentState == null) {
+              throw new GpxStreamException("Track point outside of a segment.");
+            }
+            handler.trackPoint(input.readPoint(segmentState),
+                trackIndex, segmentIndex, ++pointIndex);
+            break;
+          case GpxBinaryCodec.END_SEGMENT:
+            TrksegType segment = new TrksegType();
+            segment.setExtensions(input.readExtensions());
+            segmentState = null;
+            handler.endSegment(segment, trackIndex, segmentIndex);
+            break;
+          case GpxBinaryCodec.END_TRACK:
+            handler.endTrack(track, trackIndex);
+            track = null;
+            break;
+          case GpxBinaryCodec.END_GPX:
+            ExtensionsType extensions = input.readExtensions();
+            if (gpx != null) {
+              gpx.setExtensions(extensions);
+            }
+            finished = true;
+            handler.endGpx(gpx, extensions);
+            break;
+          default:
+            throw new GpxStreamException("Unknown record type " + tag + ".");
+        }
+      }
+      finished = true;
+
+    } catch (IOException e) {
+      throw new GpxStreamException("Reading binary gpx failed.", e);
+    }
+  }
+
+  private void readHeader() throws IOException {
+    for (byte b : GpxBinaryCodec.MAGIC) {
+      if (input.read() != b) {
+        throw new GpxStreamException("Input is not a binary gpx.");
+      }
+    }
+    int version = input.read();
+    if (version != GpxBinaryCodec.VERSION) {
+      throw new GpxStreamException("Unsupported binary gpx version " + version + ".");
+    }
+  }
+
+  private RteType readRoute() throws IOException {
+    RteType route = new RteType();
+    input.readCommon(route, route::setNumber, route::setType);
+    long size = input.readVarLong();
+    DeltaState routeState = new DeltaState();
+    for (long i = 0; i < size; i++) {
+      route.getRtepts().add(input.readPoint(routeState));
+    }
+    return route;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (source != null) {
+      source.close();
+    }
+  }
+
+}
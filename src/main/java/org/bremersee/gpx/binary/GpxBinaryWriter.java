@@ -0,0 +1,484 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx.binary;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import org.bremersee.gpx.io.GpxStreamException;
+import org.bremersee.gpx.io.GpxStreamHandler;
+import org.bremersee.gpx.model.ExtensionsType;
+import org.bremersee.gpx.model.GpxType;
+import org.bremersee.gpx.model.MetadataType;
+import org.bremersee.gpx.model.RteType;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.TrksegType;
+import org.bremersee.gpx.model.WptType;
+
+/**
+ * An incremental writer of the binary gpx format (see {@link GpxBinaryCodec}). It has the same
+ * methods as the {@link org.bremersee.gpx.io.GpxStreamWriter}: the gpx is opened with
+ * {@link #startGpx(GpxType)}, then metadata, waypoints, routes and tracks can be pushed in the
+ * order of the GPX schema and tracks can be written point by point.
+ *
+ * <p>A writer is not thread safe.
+ *
+ * @author Christian Bremer
+ */
+public class GpxBinaryWriter implements Closeable, Flushable {
+
+  private final BinaryOutput output;
+
+  private final Closeable target;
+
+  private DeltaState waypointState;
+
+  private DeltaState segmentState;
+
+  private State state = State.INITIAL;
+
+  private enum State {
+    INITIAL, GPX, WAYPOINTS, ROUTES, TRACKS, TRACK, SEGMENT, ENDED
+  }
+
+  /**
+   * Instantiates a new gpx binary writer.
+   *
+   * @param outputStream the output stream
+   * @param target the target that will be closed together with this writer, may be {@code null}
+   */
+  protected GpxBinaryWriter(OutputStream outputStream, Closeable target) {
+    this.output = new BinaryOutput(
+        Objects.requireNonNull(outputStream, "Output stream must be present."));
+    this.target = target;
+  }
+
+  /**
+   * Creates a new gpx binary writer. The output stream will not be closed by the writer.
+   *
+   * @param outputStream the output stream
+   * @return the gpx binary writer
+   */
+  public static GpxBinaryWriter newInstance(OutputStream outputStream) {
+    return new GpxBinaryWriter(outputStream, null);
+  }
+
+  /**
+   * Creates a new gpx binary writer, that writes into the given file. The file will be closed,
+   * when the gpx binary writer is closed.
+   *
+   * @param file the file
+   * @return the gpx binary writer
+   */
+  public static GpxBinaryWriter newInstance(Path file) {
+    try {
+      OutputStream outputStream = Files.newOutputStream(file);
+      return new GpxBinaryWriter(outputStream, outputStream);
+    } catch (IOException e) {
+      throw new GpxStreamException("Creating gpx binary writer of file " + file + " failed.", e);
+    }
+  }
+
+  /**
+   * Gets the number of bytes, that were written so far.
+   *
+   * @return the number of bytes
+   */
+  public long getSize() {
+    return output.size();
+  }
+
+  /**
+   * Writes the whole gpx.
+   *
+   * @param gpx the gpx
+   * @return the gpx binary writer
+   */
+  public GpxBinaryWriter write(GpxType gpx) {
+    startGpx(gpx);
+    if (gpx.getMetadata() != null) {
+      writeMetadata(gpx.getMetadata());
+    }
+    for (WptType waypoint : gpx.getWpts()) {
+      writeWaypoint(waypoint);
+    }
+    for (RteType route : gpx.getRtes()) {
+      writeRoute(route);
+    }
+    for (TrkType track : gpx.getTrks()) {
+      writeTrack(track);
+    }
+    return endGpx(gpx.getExtensions());
+  }
+
+  /**
+   * Opens the gpx with the version and the creator of the given gpx. Other values of the given
+   * gpx are ignored.
+   *
+   * @param gpx the gpx
+   * @return the gpx binary writer
+   */
+  public GpxBinaryWriter startGpx(GpxType gpx) {
+    assertState("startGpx", State.INITIAL);
+    try {
+      for (byte b : GpxBinaryCodec.MAGIC) {
+        output.writeByte(b);
+      }
+      output.writeByte(GpxBinaryCodec.VERSION);
+      output.writeByte(GpxBinaryCodec.START_GPX);
+      output.writeString(gpx.getVersion());
+      output.writeString(gpx.getCreator());
+      waypointState = new DeltaState();
+      state = State.GPX;
+      return this;
+
+    } catch (IOException e) {
+      throw new GpxStreamException("Writing gpx start failed.", e);
+    }
+  }
+
+  /**
+   * Writes the metadata. This must be done before anything else is written.
+   *
+   * @param metadata the metadata
+   * @return the gpx binary writer
+   */
+  public GpxBinaryWriter writeMetadata(MetadataType metadata) {
+    assertState("writeMetadata", State.GPX);
+    try {
+      output.writeByte(GpxBinaryCodec.METADATA);
+      output.writeMetadata(metadata);
+      state = State.WAYPOINTS;
+      return this;
+
+    } catch (IOException e) {
+      throw new GpxStreamException("Writing metadata failed.", e);
+    }
+  }
+
+  /**
+   * Writes a waypoint.
+   *
+   * @param waypoint the waypoint
+   * @return the gpx binary writer
+   */
+  public GpxBinaryWriter writeWaypoint(WptType waypoint) {
+    assertState("writeWaypoint", State.GPX, State.WAYPOINTS);
+    try {
+      output.writeByte(GpxBinaryCodec.WAYPOINT);
+      output.writePoint(waypointState, waypoint);
+      state = State.WAYPOINTS;
+      return this;
+
+    } catch (IOException e) {
+      throw new GpxStreamException("Writing waypoint failed.", e);
+    }
+  }
+
+  /**
+   * Writes a route.
+   *
+   * @param route the route
+   * @return the gpx binary writer
+   */
+  public GpxBinaryWriter writeRoute(RteType route) {
+    assertState("writeRoute", State.GPX, State.WAYPOINTS, State.ROUTES);
+    try {
+      output.writeByte(GpxBinaryCodec.ROUTE);
+      output.writeCommon(route, route.getNumber(), route.getType());
+      output.writeVarLong(route.getRtepts().size());
+      DeltaState routeState = new DeltaState();
+      for (WptType routePoint : route.getRtepts()) {
+        output.writePoint(routeState, routePoint);
+      }
+      state = State.ROUTES;
+      return this;
+
+    } catch (IOException e) {
+      throw new GpxStreamException("Writing route failed.", e);
+    }
+  }
+
+  /**
+   * Writes a complete track.
+   *
+   * @param track the track
+   * @return the gpx binary writer
+   */
+  public GpxBinaryWriter writeTrack(TrkType track) {
+    startTrack(track);
+    for (TrksegType segment : track.getTrksegs()) {
+      writeSegment(segment);
+    }
+    return endTrack();
+  }
+
+  /**
+   * Opens a track and writes all values of the given track except its segments. Segments can
+   * then be written with {@link #writeSegment(TrksegType)} or {@link #startSegment()}.
+   *
+   * @param track the track
+   * @return the gpx binary writer
+   */
+  public GpxBinaryWriter startTrack(TrkType track) {
+    assertState("startTrack", State.GPX, State.WAYPOINTS, State.ROUTES, State.TRACKS);
+    try {
+      output.writeByte(GpxBinaryCodec.START_TRACK);
+      output.writeCommon(track, track.getNumber(), track.getType());
+      state = State.TRACK;
+      return this;
+
+    } catch (IOException e) {
+      throw new GpxStreamException("Writing track start failed.", e);
+    }
+  }
+
+  /**
+   * Writes a complete segment into the open track.
+   *
+   * @param segment the segment
+   * @return the gpx binary writer
+   */
+  public GpxBinaryWriter writeSegment(TrksegType segment) {
+    startSegment();
+    for (WptType trackPoint : segment.getTrkpts()) {
+      writeTrackPoint(trackPoint);
+    }
+    return endSegment(segment.getExtensions());
+  }
+
+  /**
+   * Opens a segment in the open track.
+   *
+   * @return the gpx binary writer
+   */
+  public GpxBinaryWriter startSegment() {
+    assertState("startSegment", State.TRACK);
+    try {
+      output.writeByte(GpxBinaryCodec.START_SEGMENT);
+      segmentState = new DeltaState();
+      state = State.SEGMENT;
+      return this;
+
+    } catch (IOException e) {
+      throw new GpxStreamException("Writing segment start failed.", e);
+    }
+  }
+
+  /**
+   * Writes a track point into the open segment.
+   *
+   * @param trackPoint the track point
+   * @return the gpx binary writer
+   */
+  public GpxBinaryWriter writeTrackPoint(WptType trackPoint) {
+    assertState("writeTrackPoint", State.SEGMENT);
+    try {
+      output.writeByte(GpxBinaryCodec.TRACK_POINT);
+      output.writePoint(segmentState, trackPoint);
+      return this;
+
+    } catch (IOException e) {
+      throw new GpxStreamException("Writing track point failed.", e);
+    }
+  }
+
+  /**
+   * Closes the open segment.
+   *
+   * @return the gpx binary writer
+   */
+  public GpxBinaryWriter endSegment() {
+    return endSegment(null);
+  }
+
+  /**
+   * Closes the open segment and writes the given extensions of the segment.
+   *
+   * @param extensions the extensions of the segment, may be {@code null}
+   * @return the gpx binary writer
+   */
+  public GpxBinaryWriter endSegment(ExtensionsType extensions) {
+    assertState("endSegment", State.SEGMENT);
+    try {
+      output.writeByte(GpxBinaryCodec.END_SEGMENT);
+      output.writeExtensions(extensions);
+      segmentState = null;
+      state = State.TRACK;
+      return this;
+
+    } catch (IOException e) {
+      throw new GpxStreamException("Writing segment end failed.", e);
+    }
+  }
+
+  /**
+   * Closes the open track (and the open segment, if there is one).
+   *
+   * @return the gpx binary writer
+   */
+  public GpxBinaryWriter endTrack() {
+    if (state == State.SEGMENT) {
+      endSegment();
+    }
+    assertState("endTrack", State.TRACK);
+    try {
+      output.writeByte(GpxBinaryCodec.END_TRACK);
+      state = State.TRACKS;
+      return this;
+
+    } catch (IOException e) {
+      throw new GpxStreamException("Writing track end failed.", e);
+    }
+  }
+
+  /**
+   * Closes the gpx.
+   *
+   * @return the gpx binary writer
+   */
+  public GpxBinaryWriter endGpx() {
+    return endGpx(null);
+  }
+
+  /**
+   * Closes the gpx (and the open segment and track, if there are some) and writes the given
+   * extensions of the gpx.
+   *
+   * @param extensions the extensions of the gpx, may be {@code null}
+   * @return the gpx binary writer
+   */
+  public GpxBinaryWriter endGpx(ExtensionsType extensions) {
+    if (state == State.SEGMENT || state == State.TRACK) {
+      endTrack();
+    }
+    assertState("endGpx",
+        State.GPX, State.WAYPOINTS, State.ROUTES, State.TRACKS);
+    try {
+      output.writeByte(GpxBinaryCodec.END_GPX);
+      output.writeExtensions(extensions);
+      output.flush();
+      state = State.ENDED;
+      return this;
+
+    } catch (IOException e) {
+      throw new GpxStreamException("Writing gpx end failed.", e);
+    }
+  }
+
+  /**
+   * Returns a handler, that writes everything it receives into this writer. This can be used to
+   * convert a {@link org.bremersee.gpx.io.GpxStreamReader} into the binary format.
+   *
+   * @return the gpx stream handler
+   */
+  public GpxStreamHandler asHandler() {
+    return new GpxStreamHandler() {
+      @Override
+      public void startGpx(GpxType gpx) {
+        GpxBinaryWriter.this.startGpx(gpx);
+      }
+
+      @Override
+      public void metadata(MetadataType metadata) {
+        writeMetadata(metadata);
+      }
+
+      @Override
+      public void waypoint(WptType waypoint, int index) {
+        writeWaypoint(waypoint);
+      }
+
+      @Override
+      public void route(RteType route, int index) {
+        writeRoute(route);
+      }
+
+      @Override
+      public void startTrack(TrkType track, int trackIndex) {
+        GpxBinaryWriter.this.startTrack(track);
+      }
+
+      @Override
+      public void startSegment(int trackIndex, int segmentIndex) {
+        GpxBinaryWriter.this.startSegment();
+      }
+
+      @Override
+      public void trackPoint(WptType trackPoint, int trackIndex, int segmentIndex,
+          int pointIndex) {
+        writeTrackPoint(trackPoint);
+      }
+
+      @Override
+      public void endSegment(TrksegType segment, int trackIndex, int segmentIndex) {
+        GpxBinaryWriter.this.endSegment(segment.getExtensions());
+      }
+
+      @Override
+      public void endTrack(TrkType track, int trackIndex) {
+        GpxBinaryWriter.this.endTrack();
+      }
+
+      @Override
+      public void endGpx(GpxType gpx, ExtensionsType extensions) {
+        GpxBinaryWriter.this.endGpx(extensions);
+      }
+    };
+  }
+
+  private void assertState(String operation, State... allowed) {
+    for (State s : allowed) {
+      if (s == state) {
+        return;
+      }
+    }
+    throw new IllegalStateException("Operation '" + operation
+        + "' is not allowed in state " + state + ".");
+  }
+
+  @Override
+  public void flush() throws IOException {
+    output.flush();
+  }
+
+  /**
+   * Closes the gpx, if it is open, and flushes the output. The underlying output is only closed,
+   * if this writer was created for a file.
+   *
+   * @throws IOException if an I/O error occurs
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      if (state != State.INITIAL && state != State.ENDED) {
+        endGpx();
+      }
+      flush();
+    } finally {
+      if (target != null) {
+        target.close();
+      }
+    }
+  }
+
+}
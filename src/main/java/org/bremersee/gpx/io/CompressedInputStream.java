@@ -0,0 +1,336 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx.io;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Objects;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * An input stream, that detects the compression of the source by its magic bytes and
+ * decompresses gzip and zlib data with a pooled inflater and a pooled direct buffer. Other data
+ * is passed through. The headers and trailers are processed by the stream, so the inflater works
+ * on the raw deflate data and the compressed bytes are read by the channel directly into the
+ * native memory of the buffer. Concatenated gzip members are read as one stream.
+ *
+ * @author Christian Bremer
+ */
+class CompressedInputStream extends InputStream {
+
+  private static final int FHCRC = 2;
+
+  private static final int FEXTRA = 4;
+
+  private static final int FNAME = 8;
+
+  private static final int FCOMMENT = 16;
+
+  private static final int RESERVED = 0xe0;
+
+  private final ReadableByteChannel source;
+
+  private final Closeable closeable;
+
+  private final CompressionPool pool;
+
+  private final byte[] single = new byte[1];
+
+  private ByteBuffer buffer;
+
+  private GpxCompression compression;
+
+  private Inflater inflater;
+
+  private Checksum checksum;
+
+  private boolean eof;
+
+  private boolean closed;
+
+  /**
+   * Instantiates a new compressed input stream.
+   *
+   * @param source the source
+   * @param closeable the closeable, that is closed together with this stream, may be
+   *     {@code null}
+   * @param pool the pool
+   */
+  CompressedInputStream(ReadableByteChannel source, Closeable closeable, CompressionPool pool) {
+    this.source = Objects.requireNonNull(source, "Source must be present.");
+    this.closeable = closeable;
+    this.pool = Objects.requireNonNull(pool, "Compression pool must be present.");
+    this.buffer = pool.borrowBuffer();
+    this.buffer.flip();
+  }
+
+  /**
+   * Gets the detected compression. The magic bytes are read, if this was not done before.
+   *
+   * @return the compression
+   * @throws IOException if an I/O error occurs
+   */
+  GpxCompression getCompression() throws IOException {
+    ensureOpen();
+    if (compression == null) {
+      start();
+    }
+    return compression;
+  }
+
+  private void start() throws IOException {
+    ensure(2);
+    int length = Math.min(buffer.remaining(), 2);
+    byte[] magic = new byte[length];
+    buffer.get(buffer.position(), magic);
+    compression = GpxCompression.detect(magic);
+    if (compression == GpxCompression.GZIP) {
+      readGzipHeader();
+      checksum = new CRC32();
+    } else if (compression == GpxCompression.ZLIB) {
+      int flags = buffer.get(buffer.position() + 1) & 0xff;
+      if ((flags & 0x20) != 0) {
+        throw new ZipException("Zlib data with a preset dictionary is not supported.");
+      }
+      buffer.position(buffer.position() + 2);
+      checksum = new Adler32();
+    }
+    if (compression != GpxCompression.NONE) {
+      inflater = pool.borrowInflater();
+    }
+  }
+
+  private void readGzipHeader() throws IOException {
+    if (!ensure(10)) {
+      throw new EOFException("Unexpected end of gzip header.");
+    }
+    buffer.position(buffer.position() + 2);
+    if (buffer.get() != 8) {
+      throw new ZipException("Unsupported compression method of gzip data.");
+    }
+    int flags = buffer.get() & 0xff;
+    if ((flags & RESERVED) != 0) {
+      throw new ZipException("Reserved flags of gzip header are set.");
+    }
+    buffer.position(buffer.position() + 6); // modification time, extra flags and os
+    if ((flags & FEXTRA) != 0) {
+      if (!ensure(2)) {
+        throw new EOFException("Unexpected end of gzip header.");
+      }
+      skip((buffer.get() & 0xff) | (buffer.get() & 0xff) << 8);
+    }
+    if ((flags & FNAME) != 0) {
+      skipZeroTerminated();
+    }
+    if ((flags & FCOMMENT) != 0) {
+      skipZeroTerminated();
+    }
+    if ((flags & FHCRC) != 0) {
+      skip(2);
+    }
+  }
+
+  /**
+   * Reads the trailer of the compressed data and the header of the next gzip member. Returns
+   * {@code false}, if there is no next member.
+   */
+  private boolean readTrailer() throws IOException {
+    if (compression == GpxCompression.GZIP) {
+      if (!ensure(8)) {
+        throw new EOFException("Unexpected end of gzip trailer.");
+      }
+      long crc = readIntLittleEndian();
+      long size = readIntLittleEndian();
+      if (crc != checksum.getValue()) {
+        throw new ZipException("Corrupt gzip data (wrong checksum).");
+      }
+      if (size != (inflater.getBytesWritten() & 0xffffffffL)) {
+        throw new ZipException("Corrupt gzip data (wrong size).");
+      }
+      if (ensure(2) && (buffer.get(buffer.position()) & 0xff) == 0x1f
+          && (buffer.get(buffer.position() + 1) & 0xff) == 0x8b) {
+        readGzipHeader();
+        inflater.reset();
+        checksum.reset();
+        return true;
+      }
+      return false;
+    }
+    if (!ensure(4)) {
+      throw new EOFException("Unexpected end of zlib trailer.");
+    }
+    if ((buffer.getInt() & 0xffffffffL) != checksum.getValue()) {
+      throw new ZipException("Corrupt zlib data (wrong checksum).");
+    }
+    return false;
+  }
+
+  private long readIntLittleEndian() {
+    return (buffer.get() & 0xffL)
+        | (buffer.get() & 0xffL) << 8
+        | (buffer.get() & 0xffL) << 16
+        | (buffer.get() & 0xffL) << 24;
+  }
+
+  private void skip(int length) throws IOException {
+    int remaining = length;
+    while (remaining > 0) {
+      if (!ensure(1)) {
+        throw new EOFException("Unexpected end of gzip header.");
+      }
+      int n = Math.min(remaining, buffer.remaining());
+      buffer.position(buffer.position() + n);
+      remaining -= n;
+    }
+  }
+
+  private void skipZeroTerminated() throws IOException {
+    do {
+      if (!ensure(1)) {
+        throw new EOFException("Unexpected end of gzip header.");
+      }
+    } while (buffer.get() != 0);
+  }
+
+  /**
+   * Reads from the source, until the buffer has the given number of bytes. Returns
+   * {@code false}, if the end of the source is reached before.
+   */
+  private boolean ensure(int length) throws IOException {
+    while (buffer.remaining() < length) {
+      buffer.compact();
+      int n;
+      try {
+        n = source.read(buffer);
+      } finally {
+        buffer.flip();
+      }
+      if (n < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int read() throws IOException {
+    int n;
+    do {
+      n = read(single, 0, 1);
+    } while (n == 0);
+    return n < 0 ? -1 : single[0] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] bytes, int offset, int length) throws IOException {
+    ensureOpen();
+    Objects.checkFromIndexSize(offset, length, bytes.length);
+    if (length == 0) {
+      return 0;
+    }
+    if (compression == null) {
+      start();
+    }
+    if (eof) {
+      return -1;
+    }
+    if (compression == GpxCompression.NONE) {
+      return readPlain(bytes, offset, length);
+    }
+    while (true) {
+      int n;
+      try {
+        n = inflater.inflate(bytes, offset, length);
+      } catch (DataFormatException e) {
+        throw new ZipException(e.getMessage() != null ? e.getMessage() : "Invalid deflate data.");
+      }
+      if (n > 0) {
+        checksum.update(bytes, offset, n);
+        return n;
+      }
+      if (inflater.finished()) {
+        if (!readTrailer()) {
+          eof = true;
+          return -1;
+        }
+      } else if (inflater.needsDictionary()) {
+        throw new ZipException("Deflate data with a preset dictionary is not supported.");
+      } else if (inflater.needsInput()) {
+        if (!buffer.hasRemaining() && !ensure(1)) {
+          throw new EOFException("Unexpected end of compressed data.");
+        }
+        inflater.setInput(buffer);
+      }
+    }
+  }
+
+  private int readPlain(byte[] bytes, int offset, int length) throws IOException {
+    if (!buffer.hasRemaining() && length >= buffer.capacity()) {
+      int n;
+      do {
+        n = source.read(ByteBuffer.wrap(bytes, offset, length));
+      } while (n == 0);
+      eof = n < 0;
+      return n;
+    }
+    if (!ensure(1)) {
+      eof = true;
+      return -1;
+    }
+    int n = Math.min(length, buffer.remaining());
+    buffer.get(bytes, offset, n);
+    return n;
+  }
+
+  @Override
+  public int available() throws IOException {
+    ensureOpen();
+    return compression == GpxCompression.NONE ? buffer.remaining() : 0;
+  }
+
+  private void ensureOpen() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed.");
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    pool.release(inflater); // releases the reference to the buffer, too
+    pool.release(buffer);
+    inflater = null;
+    buffer = null;
+    if (closeable != null) {
+      closeable.close();
+    }
+  }
+
+}
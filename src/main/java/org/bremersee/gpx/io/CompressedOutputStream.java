@@ -0,0 +1,226 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx.io;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Objects;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+import java.util.zip.Deflater;
+
+/**
+ * An output stream, that compresses the written bytes into gzip or zlib data with a pooled
+ * deflater and a pooled direct buffer. The header and the trailer are written by the stream, so
+ * the deflater produces raw deflate data directly into the native memory of the buffer, which is
+ * written into the target channel.
+ *
+ * <p>Flushing writes the compressed bytes, that are buffered, but it does not flush the
+ * deflater, because this would make the compression worse.
+ *
+ * @author Christian Bremer
+ */
+class CompressedOutputStream extends OutputStream {
+
+  private final WritableByteChannel target;
+
+  private final Flushable flushable;
+
+  private final Closeable closeable;
+
+  private final GpxCompression compression;
+
+  private final CompressionPool pool;
+
+  private final byte[] single = new byte[1];
+
+  private Deflater deflater;
+
+  private ByteBuffer buffer;
+
+  private final Checksum checksum;
+
+  private boolean finished;
+
+  private boolean closed;
+
+  /**
+   * Instantiates a new compressed output stream.
+   *
+   * @param target the target
+   * @param flushable the flushable, that is flushed, when this stream is flushed, may be
+   *     {@code null}
+   * @param closeable the closeable, that is closed together with this stream, may be
+   *     {@code null}
+   * @param compression the compression, gzip or zlib
+   * @param level the compression level
+   * @param pool the pool
+   */
+  CompressedOutputStream(
+      WritableByteChannel target,
+      Flushable flushable,
+      Closeable closeable,
+      GpxCompression compression,
+      int level,
+      CompressionPool pool) {
+    this.target = Objects.requireNonNull(target, "Target must be present.");
+    this.flushable = flushable;
+    this.closeable = closeable;
+    this.compression = Objects.requireNonNull(compression, "Compression must be present.");
+    if (compression == GpxCompression.NONE) {
+      throw new IllegalArgumentException("Compression must be gzip or zlib.");
+    }
+    if ((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION) {
+      throw new IllegalArgumentException("Illegal compression level: " + level);
+    }
+    this.pool = Objects.requireNonNull(pool, "Compression pool must be present.");
+    this.deflater = pool.borrowDeflater(level);
+    this.buffer = pool.borrowBuffer();
+    if (compression == GpxCompression.GZIP) {
+      checksum = new CRC32();
+      int extraFlags = level == Deflater.BEST_COMPRESSION ? 2 : level == 1 ? 4 : 0;
+      buffer.put(new byte[]{0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, (byte) extraFlags, (byte) 255});
+    } else {
+      checksum = new Adler32();
+      int levelFlags = level == Deflater.DEFAULT_COMPRESSION || level == 6
+          ? 2
+          : level < 2 ? 0 : level < 6 ? 1 : 3;
+      int header = 0x7800 | levelFlags << 6;
+      if (header % 31 != 0) {
+        header += 31 - header % 31;
+      }
+      buffer.put((byte) (header >> 8)).put((byte) header);
+    }
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    single[0] = (byte) b;
+    write(single, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] bytes, int offset, int length) throws IOException {
+    ensureOpen();
+    Objects.checkFromIndexSize(offset, length, bytes.length);
+    if (finished) {
+      throw new IOException("Compressed data is already finished.");
+    }
+    if (length == 0) {
+      return;
+    }
+    checksum.update(bytes, offset, length);
+    deflater.setInput(bytes, offset, length);
+    while (!deflater.needsInput()) {
+      deflate();
+    }
+  }
+
+  private void deflate() throws IOException {
+    deflater.deflate(buffer);
+    if (!buffer.hasRemaining()) {
+      drain();
+    }
+  }
+
+  private void drain() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      target.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  /**
+   * Finishes the compressed data without closing the target.
+   *
+   * @throws IOException if an I/O error occurs
+   */
+  void finish() throws IOException {
+    ensureOpen();
+    if (finished) {
+      return;
+    }
+    finished = true;
+    deflater.finish();
+    while (!deflater.finished()) {
+      deflate();
+    }
+    if (buffer.remaining() < 8) {
+      drain();
+    }
+    long value = checksum.getValue();
+    if (compression == GpxCompression.GZIP) {
+      putIntLittleEndian(value);
+      putIntLittleEndian(deflater.getBytesRead());
+    } else {
+      buffer.putInt((int) value);
+    }
+    drain();
+  }
+
+  private void putIntLittleEndian(long value) {
+    buffer.put((byte) value)
+        .put((byte) (value >> 8))
+        .put((byte) (value >> 16))
+        .put((byte) (value >> 24));
+  }
+
+  @Override
+  public void flush() throws IOException {
+    ensureOpen();
+    drain();
+    if (flushable != null) {
+      flushable.flush();
+    }
+  }
+
+  private void ensureOpen() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed.");
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    try {
+      finish();
+      if (flushable != null) {
+        flushable.flush();
+      }
+    } finally {
+      closed = true;
+      pool.release(deflater);
+      pool.release(buffer);
+      deflater = null;
+      buffer = null;
+      if (closeable != null) {
+        closeable.close();
+      }
+    }
+  }
+
+}
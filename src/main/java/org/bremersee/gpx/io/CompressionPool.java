@@ -0,0 +1,338 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx.io;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A pool of {@link Inflater}s, {@link Deflater}s and direct byte buffers, that are used by the
+ * compressed streams of {@link GpxCompression}.
+ *
+ * <p>Every new inflater or deflater allocates the native state of zlib and every direct buffer
+ * allocates native memory, which is expensive compared to decompressing a small file. The pool
+ * hands out an object to one stream at a time and takes it back, when the stream is closed. All
+ * inflaters and deflaters of the pool work on raw deflate data ({@code nowrap}), the headers and
+ * trailers of gzip and zlib are processed by the streams. The number of idle objects of each
+ * kind is bounded; an inflater or deflater, that does not fit into the pool, is ended.
+ *
+ * @author Christian Bremer
+ */
+public interface CompressionPool {
+
+  /**
+   * Borrows an inflater. It should be returned with {@link #release(Inflater)} after use.
+   *
+   * @return the inflater
+   */
+  Inflater borrowInflater();
+
+  /**
+   * Returns an inflater to the pool. The inflater is reset.
+   *
+   * @param inflater the inflater
+   */
+  void release(Inflater inflater);
+
+  /**
+   * Borrows a deflater with the given compression level. It should be returned with
+   * {@link #release(Deflater)} after use.
+   *
+   * @param level the compression level (see {@link Deflater#setLevel(int)})
+   * @return the deflater
+   */
+  Deflater borrowDeflater(int level);
+
+  /**
+   * Returns a deflater to the pool. The deflater is reset.
+   *
+   * @param deflater the deflater
+   */
+  void release(Deflater deflater);
+
+  /**
+   * Borrows a direct byte buffer. It should be returned with {@link #release(ByteBuffer)} after
+   * use.
+   *
+   * @return the cleared byte buffer
+   */
+  ByteBuffer borrowBuffer();
+
+  /**
+   * Returns a byte buffer to the pool. Only direct buffers with the capacity of the buffers of
+   * this pool are taken back.
+   *
+   * @param buffer the buffer
+   */
+  void release(ByteBuffer buffer);
+
+  /**
+   * Removes all idle objects and ends the idle inflaters and deflaters.
+   */
+  void clear();
+
+  /**
+   * Gets the statistics of the pool.
+   *
+   * @return the statistics
+   */
+  Statistics getStatistics();
+
+  /**
+   * Gets the pool, that is used by {@link GpxCompression} and the gpx readers and writers.
+   *
+   * @return the default pool
+   */
+  static CompressionPool defaultPool() {
+    return DefaultPool.DEFAULT;
+  }
+
+  /**
+   * Creates a new compression pool.
+   *
+   * @param maxIdle the maximum number of idle objects of each kind
+   * @param bufferSize the capacity of the buffers
+   * @return the compression pool
+   */
+  static CompressionPool newInstance(int maxIdle, int bufferSize) {
+    return new DefaultPool(maxIdle, bufferSize);
+  }
+
+  /**
+   * The statistics of a compression pool.
+   */
+  interface Statistics {
+
+    /**
+     * Gets the number of borrowed objects, that were taken from the pool.
+     *
+     * @return the hits
+     */
+    long getHits();
+
+    /**
+     * Gets the number of created inflaters, deflaters and buffers.
+     *
+     * @return the creations
+     */
+    long getCreations();
+
+    /**
+     * Gets the current number of idle objects in the pool.
+     *
+     * @return the size
+     */
+    int getSize();
+  }
+
+  /**
+   * The default compression pool.
+   */
+  class DefaultPool implements CompressionPool {
+
+    private static final CompressionPool DEFAULT = new DefaultPool(
+        Math.max(4, 2 * Runtime.getRuntime().availableProcessors()), 64 * 1024);
+
+    private final int maxIdle;
+
+    private final int bufferSize;
+
+    private final Idle<Inflater> inflaters = new Idle<>();
+
+    private final Idle<Deflater> deflaters = new Idle<>();
+
+    private final Idle<ByteBuffer> buffers = new Idle<>();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder creations = new LongAdder();
+
+    /**
+     * Instantiates a new default pool.
+     *
+     * @param maxIdle the maximum number of idle objects of each kind
+     * @param bufferSize the capacity of the buffers
+     */
+    protected DefaultPool(int maxIdle, int bufferSize) {
+      if (maxIdle < 0) {
+        throw new IllegalArgumentException("Max idle must not be negative.");
+      }
+      if (bufferSize < 512) {
+        throw new IllegalArgumentException("Buffer size must be at least 512.");
+      }
+      this.maxIdle = maxIdle;
+      this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public Inflater borrowInflater() {
+      Inflater inflater = inflaters.poll();
+      if (inflater != null) {
+        hits.increment();
+        return inflater;
+      }
+      creations.increment();
+      return new Inflater(true);
+    }
+
+    @Override
+    public void release(Inflater inflater) {
+      if (inflater == null) {
+        return;
+      }
+      try {
+        inflater.reset();
+      } catch (RuntimeException e) {
+        // an inflater, that was ended, is not pooled
+        return;
+      }
+      if (!inflaters.offer(inflater, maxIdle)) {
+        inflater.end();
+      }
+    }
+
+    @Override
+    public Deflater borrowDeflater(int level) {
+      Deflater deflater = deflaters.poll();
+      if (deflater != null) {
+        hits.increment();
+        deflater.setLevel(level);
+        return deflater;
+      }
+      creations.increment();
+      return new Deflater(level, true);
+    }
+
+    @Override
+    public void release(Deflater deflater) {
+      if (deflater == null) {
+        return;
+      }
+      try {
+        deflater.reset();
+      } catch (RuntimeException e) {
+        // a deflater, that was ended, is not pooled
+        return;
+      }
+      if (!deflaters.offer(deflater, maxIdle)) {
+        deflater.end();
+      }
+    }
+
+    @Override
+    public ByteBuffer borrowBuffer() {
+      ByteBuffer buffer = buffers.poll();
+      if (buffer != null) {
+        hits.increment();
+        return buffer;
+      }
+      creations.increment();
+      return ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    @Override
+    public void release(ByteBuffer buffer) {
+      if (buffer != null && buffer.isDirect() && !buffer.isReadOnly()
+          && buffer.capacity() == bufferSize) {
+        buffer.clear();
+        buffers.offer(buffer, maxIdle);
+      }
+    }
+
+    @Override
+    public void clear() {
+      Inflater inflater;
+      while ((inflater = inflaters.poll()) != null) {
+        inflater.end();
+      }
+      Deflater deflater;
+      while ((deflater = deflaters.poll()) != null) {
+        deflater.end();
+      }
+      while (buffers.poll() != null) {
+        // the native memory is freed, when the buffer is collected
+      }
+    }
+
+    @Override
+    public Statistics getStatistics() {
+      final long currentHits = hits.sum();
+      final long currentCreations = creations.sum();
+      final int currentSize = inflaters.size() + deflaters.size() + buffers.size();
+      return new Statistics() {
+        @Override
+        public long getHits() {
+          return currentHits;
+        }
+
+        @Override
+        public long getCreations() {
+          return currentCreations;
+        }
+
+        @Override
+        public int getSize() {
+          return currentSize;
+        }
+
+        @Override
+        public String toString() {
+          return "Statistics {hits=" + currentHits
+              + ", creations=" + currentCreations
+              + ", size=" + currentSize + '}';
+        }
+      };
+    }
+
+    /**
+     * The idle objects of one kind.
+     */
+    private static class Idle<T> {
+
+      private final ConcurrentLinkedDeque<T> idle = new ConcurrentLinkedDeque<>();
+
+      private final AtomicInteger size = new AtomicInteger();
+
+      private T poll() {
+        T value = idle.pollFirst();
+        if (value != null) {
+          size.decrementAndGet();
+        }
+        return value;
+      }
+
+      private boolean offer(T value, int maxIdle) {
+        if (size.incrementAndGet() > maxIdle) {
+          size.decrementAndGet();
+          return false;
+        }
+        idle.offerFirst(value);
+        return true;
+      }
+
+      private int size() {
+        return Math.max(0, size.get());
+      }
+    }
+  }
+
+}
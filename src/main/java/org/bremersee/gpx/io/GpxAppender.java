@@ -0,0 +1,702 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx.io;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBElement;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import org.bremersee.gpx.GpxJaxbContextDataProvider;
+import org.bremersee.gpx.model.WptType;
+
+/**
+ * Appends track points to the last track segment of an existing GPX file in place.
+ *
+ * <p>When the appender is opened, the start tag of the gpx element is read to get its namespace
+ * declarations and the end of the file is scanned backwards to find the place after the last
+ * point of the last segment. Normally the end of the file is {@code </trkseg></trk></gpx>}, maybe
+ * with the extensions of the segment and of the gpx element; if the file has no track or the last
+ * track has no segment, they are created with the first append. This end (the tail) is kept in
+ * memory and every append writes the new points followed by the tail at this place, so the costs
+ * of an append depend on the number of the points and not on the size of the file, and the file
+ * is a valid GPX document after each append.
+ *
+ * <p>The file must be UTF-8 encoded. Comments between the last elements are skipped, but the
+ * skipped extensions must not contain comments or {@code CDATA} sections with markup. While the
+ * appender is open, the file is locked. An append is not atomic: if the process dies while
+ * writing, the end of the document may be lost. When the data is forced to the storage device is
+ * specified by the {@link SyncPolicy}.
+ *
+ * <p>The appender is not thread safe.
+ *
+ * @author Christian Bremer
+ */
+public class GpxAppender implements Closeable {
+
+  private static final String NAMESPACE = GpxJaxbContextDataProvider.NAMESPACE;
+
+  private static final int TAIL_WINDOW = 8 * 1024;
+
+  private final Path file;
+
+  private final Marshaller marshaller;
+
+  private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(1024);
+
+  private FileChannel channel;
+
+  private FileLock lock;
+
+  private XMLStreamWriter writer;
+
+  private String prefix;
+
+  private SyncPolicy syncPolicy = SyncPolicy.ON_CLOSE;
+
+  private long position;
+
+  private byte[] tail;
+
+  private int segmentEnd;
+
+  private byte[] pendingStart;
+
+  private byte[] pendingEnd;
+
+  private long appendedPoints;
+
+  /**
+   * Specifies, when the appended points are forced to the storage device.
+   */
+  public enum SyncPolicy {
+
+    /**
+     * The points are never forced to the storage device, this is left to the operating system.
+     */
+    NEVER,
+
+    /**
+     * The points are forced to the storage device, when the appender is closed.
+     */
+    ON_CLOSE,
+
+    /**
+     * The points are forced to the storage device after each append.
+     */
+    EVERY_APPEND
+  }
+
+  /**
+   * Instantiates a new gpx appender.
+   *
+   * @param file the file
+   * @param marshaller the marshaller
+   */
+  protected GpxAppender(Path file, Marshaller marshaller) {
+    this.file = Objects.requireNonNull(file, "File must be present.");
+    this.marshaller = Objects.requireNonNull(marshaller, "Marshaller must be present.");
+    try {
+      channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      try {
+        lock = channel.tryLock();
+      } catch (OverlappingFileLockException e) {
+        lock = null;
+      }
+      if (lock == null) {
+        throw new GpxStreamException("Gpx file " + file + " is locked by another appender.");
+      }
+      marshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
+      marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, false);
+      writer = XMLOutputFactory.newFactory().createXMLStreamWriter(buffer, "UTF-8");
+      declareNamespaces();
+      readTail();
+
+    } catch (IOException | JAXBException | XMLStreamException | RuntimeException e) {
+      closeQuietly();
+      if (e instanceof GpxStreamException) {
+        throw (GpxStreamException) e;
+      }
+      throw new GpxStreamException("Opening gpx file " + file + " failed.", e);
+    }
+  }
+
+  /**
+   * Opens the given gpx file to append track points.
+   *
+   * @param file the file
+   * @param jaxbContext the jaxb context
+   * @return the gpx appender
+   */
+  public static GpxAppender newInstance(Path file, JAXBContext jaxbContext) {
+    try {
+      return new GpxAppender(file, jaxbContext.createMarshaller());
+    } catch (JAXBException e) {
+      throw new GpxStreamException("Creating marshaller failed.", e);
+    }
+  }
+
+  /**
+   * Use the given sync policy (default is {@link SyncPolicy#ON_CLOSE}).
+   *
+   * @param syncPolicy the sync policy
+   * @return the gpx appender
+   */
+  public GpxAppender withSyncPolicy(SyncPolicy syncPolicy) {
+    if (syncPolicy != null) {
+      this.syncPolicy = syncPolicy;
+    }
+    return this;
+  }
+
+  /**
+   * Reads the start tag of the gpx element and declares its namespaces in the xml stream writer,
+   * so that the marshalled points do not declare them again.
+   */
+  private void declareNamespaces() throws IOException, XMLStreamException {
+    try (InputStream in = Files.newInputStream(file)) {
+      XMLStreamReader reader = GpxStreamReader.createXmlInputFactory().createXMLStreamReader(in);
+      try {
+        while (reader.hasNext() && reader.next() != XMLStreamConstants.START_ELEMENT) {
+          // advance to the root element
+        }
+        if (!reader.isStartElement()
+            || !"gpx".equals(reader.getLocalName())
+            || !NAMESPACE.equals(reader.getNamespaceURI())) {
+          throw new GpxStreamException("File " + file + " is not a gpx file.");
+        }
+        String encoding = reader.getCharacterEncodingScheme();
+        if (encoding != null
+            && !StandardCharsets.UTF_8.name().equalsIgnoreCase(encoding)
+            && !StandardCharsets.US_ASCII.name().equalsIgnoreCase(encoding)) {
+          throw new GpxStreamException(
+              "Encoding " + encoding + " of gpx file " + file + " is not supported.");
+        }
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+          String p = reader.getNamespacePrefix(i);
+          if (p == null || p.isEmpty()) {
+            writer.setDefaultNamespace(reader.getNamespaceURI(i));
+          } else {
+            writer.setPrefix(p, reader.getNamespaceURI(i));
+          }
+        }
+        prefix = reader.getPrefix() == null ? XMLConstants.DEFAULT_NS_PREFIX : reader.getPrefix();
+      } finally {
+        reader.close();
+      }
+    }
+  }
+
+  /**
+   * Reads the end of the file into a window, that is enlarged, until the place of the next track
+   * point is found.
+   */
+  private void readTail() throws IOException {
+    long size = channel.size();
+    int window = (int) Math.min(size, TAIL_WINDOW);
+    while (true) {
+      long start = size - window;
+      ByteBuffer bytes = ByteBuffer.allocate(window);
+      while (bytes.hasRemaining()) {
+        if (channel.read(bytes, start + bytes.position()) < 0) {
+          throw new GpxStreamException("Gpx file " + file + " was truncated.");
+        }
+      }
+      TailScanner scanner = new TailScanner(bytes.array());
+      if (scanner.scan()) {
+        position = start + scanner.insert;
+        tail = Arrays.copyOfRange(bytes.array(), scanner.tailStart, window);
+        segmentEnd = scanner.segmentEnd - scanner.insert;
+        pendingStart = scanner.pendingStart;
+        pendingEnd = scanner.pendingEnd;
+        return;
+      }
+      if (start == 0L) {
+        throw new GpxStreamException("The end of gpx file " + file + " is not supported.");
+      }
+      window = (int) Math.min(size, Math.min(4L * window, Integer.MAX_VALUE - 8L));
+    }
+  }
+
+  /**
+   * Gets the number of the points, that were appended by this appender.
+   *
+   * @return the number of the appended points
+   */
+  public long getAppendedPoints() {
+    return appendedPoints;
+  }
+
+  /**
+   * Gets the current size of the file.
+   *
+   * @return the size of the file
+   */
+  public long getSize() {
+    return position + tail.length;
+  }
+
+  /**
+   * Appends a track point to the last segment of the last track.
+   *
+   * @param trackPoint the track point
+   * @return the gpx appender
+   */
+  public GpxAppender appendTrackPoint(WptType trackPoint) {
+    return appendTrackPoints(List.of(trackPoint));
+  }
+
+  /**
+   * Appends the given track points to the last segment of the last track with one write.
+   *
+   * @param trackPoints the track points
+   * @return the gpx appender
+   */
+  public GpxAppender appendTrackPoints(Collection<? extends WptType> trackPoints) {
+    if (trackPoints == null || trackPoints.isEmpty()) {
+      return this;
+    }
+    buffer.reset();
+    try {
+      if (pendingStart != null) {
+        buffer.write(pendingStart);
+      }
+      for (WptType trackPoint : trackPoints) {
+        marshaller.marshal(
+            new JAXBElement<>(new QName(NAMESPACE, "trkpt"), WptType.class, trackPoint),
+            writer);
+      }
+      writer.flush();
+    } catch (IOException | JAXBException | XMLStreamException e) {
+      throw new GpxStreamException("Marshalling track points failed.", e);
+    }
+    boolean replacing = pendingStart != null;
+    if (replacing) {
+      byte[] newTail = new byte[pendingEnd.length + tail.length];
+      System.arraycopy(pendingEnd, 0, newTail, 0, pendingEnd.length);
+      System.arraycopy(tail, 0, newTail, pendingEnd.length, tail.length);
+      tail = newTail;
+      segmentEnd = endTag("trkseg").length;
+      pendingStart = null;
+      pendingEnd = null;
+    }
+    write(buffer.toByteArray(), replacing);
+    appendedPoints += trackPoints.size();
+    return this;
+  }
+
+  /**
+   * Starts a new segment in the last track. The next points are appended to the new segment. If
+   * the new segment of the last call has no points yet, nothing happens.
+   *
+   * @return the gpx appender
+   */
+  public GpxAppender startSegment() {
+    if (pendingStart == null) {
+      position += segmentEnd;
+      tail = Arrays.copyOfRange(tail, segmentEnd, tail.length);
+      pendingStart = startTag("trkseg");
+      pendingEnd = endTag("trkseg");
+    }
+    return this;
+  }
+
+  /**
+   * Writes the given points and the tail at the current position.
+   */
+  private void write(byte[] points, boolean replacing) {
+    try {
+      ByteBuffer[] buffers = {ByteBuffer.wrap(points), ByteBuffer.wrap(tail)};
+      channel.position(position);
+      long remaining = (long) points.length + tail.length;
+      while (remaining > 0L) {
+        remaining -= channel.write(buffers);
+      }
+      position += points.length;
+      if (replacing && channel.size() > getSize()) {
+        // the replaced empty element may have been longer than the new markup
+        channel.truncate(getSize());
+      }
+      if (syncPolicy == SyncPolicy.EVERY_APPEND) {
+        channel.force(false);
+      }
+    } catch (IOException e) {
+      throw new GpxStreamException("Appending to gpx file " + file + " failed.", e);
+    }
+  }
+
+  /**
+   * Forces the appended points to the storage device.
+   */
+  public void sync() {
+    try {
+      channel.force(false);
+    } catch (IOException e) {
+      throw new GpxStreamException("Syncing gpx file " + file + " failed.", e);
+    }
+  }
+
+  private byte[] startTag(String localName) {
+    return ('<' + qualify(localName) + '>').getBytes(StandardCharsets.UTF_8);
+  }
+
+  private byte[] endTag(String localName) {
+    return ("</" + qualify(localName) + '>').getBytes(StandardCharsets.UTF_8);
+  }
+
+  private String qualify(String localName) {
+    return prefix.isEmpty() ? localName : prefix + ':' + localName;
+  }
+
+  /**
+   * Closes the file. The file is forced to the storage device before, if the sync policy is not
+   * {@link SyncPolicy#NEVER}.
+   *
+   * @throws IOException if an I/O error occurs
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      if (syncPolicy != SyncPolicy.NEVER) {
+        channel.force(false);
+      }
+      writer.close();
+    } catch (XMLStreamException e) {
+      throw new IOException("Closing xml stream writer failed.", e);
+    } finally {
+      try {
+        lock.release();
+      } finally {
+        channel.close();
+      }
+    }
+  }
+
+  private void closeQuietly() {
+    if (channel != null) {
+      try {
+        channel.close(); // releases the lock, too
+      } catch (IOException ignored) {
+        // the original exception is thrown
+      }
+    }
+  }
+
+  /**
+   * Thrown by the tail scanner, if the beginning of the window is reached.
+   */
+  private static class WindowExceededException extends Exception {
+
+    private WindowExceededException() {
+      super(null, null, false, false);
+    }
+  }
+
+  /**
+   * Scans the end of the document backwards. The markup of the GPX elements is ascii, so the
+   * scanner works on the bytes.
+   */
+  private class TailScanner {
+
+    private final byte[] bytes;
+
+    private int insert;
+
+    private int tailStart;
+
+    private int segmentEnd;
+
+    private byte[] pendingStart;
+
+    private byte[] pendingEnd;
+
+    private TailScanner(byte[] bytes) {
+      this.bytes = bytes;
+    }
+
+    /**
+     * Finds the place of the next track point. Returns {@code false}, if the window is too
+     * small.
+     */
+    private boolean scan() {
+      try {
+        int p = skipBackwards(bytes.length - 1);
+        int gpxEnd = endTagStart(p, "gpx");
+        if (gpxEnd < 0) {
+          int emptyGpx = emptyElementStart(p, "gpx");
+          if (emptyGpx < 0) {
+            throw new GpxStreamException(
+                "Gpx file " + file + " does not end with the gpx element.");
+          }
+          // <gpx ... /> becomes <gpx ...><trk><trkseg>...</trkseg></trk></gpx>
+          pending(p - 1, p + 1, ">", "<trk><trkseg>", "</trkseg></trk></gpx>");
+          return true;
+        }
+        int end = gpxEnd;
+        p = skipBackwards(gpxEnd - 1);
+        int extensions = endTagStart(p, "extensions");
+        if (extensions >= 0) {
+          end = startTagStart(extensions, "extensions");
+          p = skipBackwards(end - 1);
+        }
+        int trackEnd = endTagStart(p, "trk");
+        if (trackEnd < 0) {
+          int emptyTrack = emptyElementStart(p, "trk");
+          if (emptyTrack >= 0) {
+            pending(emptyTrack, p + 1, "", "<trk><trkseg>", "</trkseg></trk>");
+          } else {
+            pending(end, end, "", "<trk><trkseg>", "</trkseg></trk>");
+          }
+          return true;
+        }
+        p = skipBackwards(trackEnd - 1);
+        int segmentEndStart = endTagStart(p, "trkseg");
+        if (segmentEndStart < 0) {
+          int emptySegment = emptyElementStart(p, "trkseg");
+          if (emptySegment >= 0) {
+            pending(emptySegment, p + 1, "", "<trkseg>", "</trkseg>");
+          } else {
+            pending(trackEnd, trackEnd, "", "<trkseg>", "</trkseg>");
+          }
+          return true;
+        }
+        segmentEnd = p + 1;
+        insert = segmentEndStart;
+        p = skipBackwards(segmentEndStart - 1);
+        extensions = endTagStart(p, "extensions");
+        if (extensions >= 0) {
+          insert = startTagStart(extensions, "extensions");
+        }
+        tailStart = insert;
+        return true;
+
+      } catch (WindowExceededException e) {
+        return false;
+      }
+    }
+
+    /**
+     * Replaces the bytes from start to end with the given markup on the first append.
+     */
+    private void pending(int start, int end, String text, String open, String close) {
+      insert = start;
+      tailStart = end;
+      segmentEnd = start;
+      pendingStart = (text + qualifyMarkup(open)).getBytes(StandardCharsets.UTF_8);
+      pendingEnd = qualifyMarkup(close).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private String qualifyMarkup(String markup) {
+      return prefix.isEmpty()
+          ? markup
+          : markup.replaceAll("<(/?)", "<$1" + prefix + ':');
+    }
+
+    /**
+     * Skips whitespace and comments backwards and returns the position of the last other byte.
+     */
+    private int skipBackwards(int p) throws WindowExceededException {
+      while (true) {
+        check(p);
+        if (isWhitespace(bytes[p])) {
+          p--;
+        } else if (bytes[p] == '>' && matches(p - 2, "-->")) {
+          p = p - 3;
+          while (!matches(p - 3, "<!--")) {
+            p--;
+          }
+          p = p - 4;
+        } else {
+          return p;
+        }
+      }
+    }
+
+    /**
+     * Returns the position of the end tag with the given local name, which ends at p, or -1.
+     */
+    private int endTagStart(int p, String localName) throws WindowExceededException {
+      int start = qualifiedNameStart(p, localName);
+      if (start < 0) {
+        return -1;
+      }
+      check(start - 2);
+      return bytes[start - 1] == '/' && bytes[start - 2] == '<' ? start - 2 : -1;
+    }
+
+    /**
+     * Returns the position of the empty element with the given local name, which ends at p, or
+     * -1.
+     */
+    private int emptyElementStart(int p, String localName) throws WindowExceededException {
+      check(p - 1);
+      if (bytes[p] != '>' || bytes[p - 1] != '/') {
+        return -1;
+      }
+      int start = p - 2;
+      while (check(start) && bytes[start] != '<') {
+        start--;
+      }
+      return isStartTag(start, localName) ? start : -1;
+    }
+
+    /**
+     * Returns the position of the start tag, that belongs to the end tag at the given position.
+     */
+    private int startTagStart(int endTagStart, String localName)
+        throws WindowExceededException {
+      int depth = 1;
+      int p = endTagStart - 1;
+      while (true) {
+        check(p);
+        if (bytes[p] == '<') {
+          if (bytes[p + 1] == '/') {
+            if (isEndTag(p, localName)) {
+              depth++;
+            }
+          } else if (isStartTag(p, localName) && !isEmptyElement(p)) {
+            depth--;
+            if (depth == 0) {
+              return p;
+            }
+          }
+        }
+        p--;
+      }
+    }
+
+    /**
+     * Returns the start of the qualified name with the given local name, that is followed by
+     * optional whitespace and the {@code >} at p, or -1.
+     */
+    private int qualifiedNameStart(int p, String localName) throws WindowExceededException {
+      check(p);
+      if (bytes[p] != '>') {
+        return -1;
+      }
+      p--;
+      while (check(p) && isWhitespace(bytes[p])) {
+        p--;
+      }
+      int start = p - localName.length() + 1;
+      if (!matches(start, localName)) {
+        return -1;
+      }
+      check(start - 1);
+      if (bytes[start - 1] == ':') {
+        start--;
+        while (check(start - 1) && isNameByte(bytes[start - 1])) {
+          start--;
+        }
+      }
+      return start;
+    }
+
+    private boolean isStartTag(int p, String localName) throws WindowExceededException {
+      int q = p + 1;
+      while (q < bytes.length && isNameByte(bytes[q]) && bytes[q] != ':') {
+        q++;
+      }
+      if (q < bytes.length && bytes[q] == ':') {
+        q++;
+      } else {
+        q = p + 1;
+      }
+      int end = q + localName.length();
+      return end < bytes.length
+          && matches(q, localName)
+          && (isWhitespace(bytes[end]) || bytes[end] == '>' || bytes[end] == '/');
+    }
+
+    private boolean isEndTag(int p, String localName) throws WindowExceededException {
+      int q = p + 2;
+      while (q < bytes.length && bytes[q] != '>') {
+        q++;
+      }
+      return q < bytes.length && qualifiedNameStart(q, localName) == p + 2;
+    }
+
+    private boolean isEmptyElement(int p) {
+      int q = p;
+      char quote = 0;
+      while (q < bytes.length) {
+        byte b = bytes[q];
+        if (quote != 0) {
+          if (b == quote) {
+            quote = 0;
+          }
+        } else if (b == '"' || b == '\'') {
+          quote = (char) b;
+        } else if (b == '>') {
+          return bytes[q - 1] == '/';
+        }
+        q++;
+      }
+      return false;
+    }
+
+    private boolean matches(int p, String ascii) throws WindowExceededException {
+      check(p);
+      for (int i = 0; i < ascii.length(); i++) {
+        if (p + i >= bytes.length || bytes[p + i] != ascii.charAt(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private boolean check(int p) throws WindowExceededException {
+      if (p < 0) {
+        throw new WindowExceededException();
+      }
+      return true;
+    }
+
+    private boolean isWhitespace(byte b) {
+      return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    private boolean isNameByte(byte b) {
+      return b < 0 || Character.isLetterOrDigit(b) || b == '_' || b == '-' || b == '.'
+          || b == ':';
+    }
+  }
+
+}
@@ -0,0 +1,571 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx.io;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Unmarshaller;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.bremersee.gpx.UnmarshallerPool;
+import org.bremersee.gpx.model.GpxType;
+
+/**
+ * Imports many GPX files concurrently.
+ *
+ * <p>The files are parsed by an executor, but the consumer is always called by the thread, that
+ * started the import, one file at a time, so it does not need to be thread safe. The number of
+ * files, that are parsed or waiting for the consumer, is bounded ({@link #withMaxInFlight(int)}):
+ * no more files are submitted until the consumer has taken a parsed file, so a slow consumer
+ * slows down the import instead of filling the memory. A file, that cannot be read, is reported
+ * in the {@link Report} and does not abort the import. Gzip or zlib compressed files are
+ * decompressed with the pooled inflaters of {@link CompressionPool#defaultPool()}.
+ *
+ * <p>Without an executor, a fixed thread pool with one thread per available processor is
+ * created for each import. Parsing is mostly cpu bound, so more threads rarely help; on a
+ * runtime with virtual threads, a virtual thread per task executor can be given instead.
+ *
+ * @author Christian Bremer
+ */
+public class GpxBatchImporter {
+
+  private static final long IDLE_CHECK_MILLIS = 500L;
+
+  private final JAXBContext jaxbContext;
+
+  private ExecutorService executor;
+
+  private int maxInFlight = 2 * Runtime.getRuntime().availableProcessors();
+
+  private UnmarshallerPool unmarshallerPool = UnmarshallerPool.defaultPool();
+
+  private Predicate<Path> fileFilter = file -> {
+    String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+    return name.endsWith(".gpx") || name.endsWith(".gpx.gz");
+  };
+
+  /**
+   * Instantiates a new gpx batch importer.
+   *
+   * @param jaxbContext the jaxb context
+   */
+  protected GpxBatchImporter(JAXBContext jaxbContext) {
+    this.jaxbContext = Objects.requireNonNull(jaxbContext, "Jaxb context must be present.");
+  }
+
+  /**
+   * Creates a new gpx batch importer.
+   *
+   * @param jaxbContext the jaxb context
+   * @return the gpx batch importer
+   */
+  public static GpxBatchImporter newInstance(JAXBContext jaxbContext) {
+    return new GpxBatchImporter(jaxbContext);
+  }
+
+  /**
+   * Use the given executor to parse the files. It will not be shut down by the importer. If the
+   * executor discards files instead of parsing them, the import fails with a
+   * {@link GpxStreamException}; this is only detected for a {@link ThreadPoolExecutor} or an
+   * executor, that was terminated.
+   *
+   * @param executor the executor, if {@code null}, a fixed thread pool is created for each
+   *     import
+   * @return the gpx batch importer
+   */
+  public GpxBatchImporter withExecutor(ExecutorService executor) {
+    this.executor = executor;
+    return this;
+  }
+
+  /**
+   * Use the given maximum number of files, that are parsed or waiting for the consumer (default
+   * is two times the number of available processors).
+   *
+   * @param maxInFlight the maximum number of files in flight
+   * @return the gpx batch importer
+   */
+  public GpxBatchImporter withMaxInFlight(int maxInFlight) {
+    if (maxInFlight < 1) {
+      throw new IllegalArgumentException("Max in flight must be greater than zero.");
+    }
+    this.maxInFlight = maxInFlight;
+    return this;
+  }
+
+  /**
+   * Use the given unmarshaller pool (default is {@link UnmarshallerPool#defaultPool()}).
+   *
+   * @param unmarshallerPool the unmarshaller pool
+   * @return the gpx batch importer
+   */
+  public GpxBatchImporter withUnmarshallerPool(UnmarshallerPool unmarshallerPool) {
+    if (unmarshallerPool != null) {
+      this.unmarshallerPool = unmarshallerPool;
+    }
+    return this;
+  }
+
+  /**
+   * Use the given filter to select the files of a directory (default are all files with the
+   * extension {@code .gpx} or {@code .gpx.gz}, ignoring the case).
+   *
+   * @param fileFilter the file filter
+   * @return the gpx batch importer
+   */
+  public GpxBatchImporter withFileFilter(Predicate<Path> fileFilter) {
+    if (fileFilter != null) {
+      this.fileFilter = fileFilter;
+    }
+    return this;
+  }
+
+  /**
+   * Imports the regular files of the given directory and its sub directories, that are accepted
+   * by the file filter.
+   *
+   * @param directory the directory
+   * @param consumer the consumer of the imported files
+   * @return the report
+   */
+  public Report importDirectory(Path directory, Consumer<? super ImportedFile> consumer) {
+    try (Stream<Path> files = Files.walk(directory)) {
+      return importFiles(files
+          .filter(Files::isRegularFile)
+          .filter(fileFilter), consumer);
+    } catch (IOException e) {
+      throw new GpxStreamException("Reading directory " + directory + " failed.", e);
+    }
+  }
+
+  /**
+   * Imports the given files. The stream is consumed lazily, so it may be backed by a directory
+   * listing, but it is not closed.
+   *
+   * @param files the files
+   * @param consumer the consumer of the imported files
+   * @return the report
+   */
+  public Report importFiles(Stream<Path> files, Consumer<? super ImportedFile> consumer) {
+    Objects.requireNonNull(files, "Files must be present.");
+    Objects.requireNonNull(consumer, "Consumer must be present.");
+    ExecutorService service = executor != null
+        ? executor
+        : Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    XMLInputFactory inputFactory = GpxStreamReader.createXmlInputFactory();
+    BlockingQueue<Outcome> completed = new LinkedBlockingQueue<>();
+    AtomicBoolean aborted = new AtomicBoolean();
+    ReportBuilder report = new ReportBuilder();
+    long start = System.nanoTime();
+    int inFlight = 0;
+    try {
+      Iterator<Path> iterator = files.iterator();
+      while (iterator.hasNext()) {
+        Path file = iterator.next();
+        while (inFlight >= maxInFlight) {
+          report.add(take(completed, service), consumer);
+          inFlight--;
+        }
+        try {
+          service.execute(() -> completed.add(aborted.get()
+              ? new Outcome(file, null, null, 0L, 0L)
+              : parse(file, inputFactory)));
+        } catch (RejectedExecutionException e) {
+          throw new GpxStreamException("Submitting file " + file + " failed.", e);
+        }
+        inFlight++;
+      }
+      while (inFlight > 0) {
+        report.add(take(completed, service), consumer);
+        inFlight--;
+      }
+    } finally {
+      aborted.set(true);
+      if (service != executor) {
+        service.shutdownNow();
+      }
+    }
+    return report.build(System.nanoTime() - start);
+  }
+
+  /*
+   * Waits for the next parsed file. An executor, that discards tasks (like a thread pool
+   * executor with a discard policy) or that is shut down, never runs some of them, so the
+   * executor is checked whenever no file was parsed for a while. It must be idle twice in a
+   * row, because a worker may just have taken a task from the queue.
+   */
+  private static Outcome take(BlockingQueue<Outcome> completed, ExecutorService service) {
+    try {
+      boolean idle = false;
+      while (true) {
+        Outcome outcome = completed.poll(IDLE_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+        if (outcome != null) {
+          return outcome;
+        }
+        if (isIdle(service)) {
+          if (idle) {
+            throw new GpxStreamException("Files were discarded by the executor.");
+          }
+          idle = true;
+        } else {
+          idle = false;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new GpxStreamException("Import was interrupted.", e);
+    }
+  }
+
+  private static boolean isIdle(ExecutorService service) {
+    if (service.isTerminated()) {
+      return true;
+    }
+    if (service instanceof ThreadPoolExecutor) {
+      ThreadPoolExecutor pool = (ThreadPoolExecutor) service;
+      return pool.getActiveCount() == 0 && pool.getQueue().isEmpty();
+    }
+    return false;
+  }
+
+  private Outcome parse(Path file, XMLInputFactory inputFactory) {
+    long start = System.nanoTime();
+    long size = 0L;
+    try (InputStream in = GpxCompression.decompress(file)) {
+      size = Files.size(file);
+      XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+      try {
+        Unmarshaller unmarshaller = unmarshallerPool.borrow(jaxbContext);
+        try {
+          GpxType gpx = unmarshaller.unmarshal(reader, GpxType.class).getValue();
+          return new Outcome(file, gpx, null, System.nanoTime() - start, size);
+        } finally {
+          unmarshallerPool.release(jaxbContext, unmarshaller);
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (IOException | XMLStreamException | JAXBException | RuntimeException e) {
+      return new Outcome(file, null, e, System.nanoTime() - start, size);
+    } catch (Throwable t) {
+      // e.g. a stack overflow on deeply nested input; without an outcome the import would hang
+      return new Outcome(file, null, new GpxStreamException("Parsing file " + file + " failed.", t),
+          System.nanoTime() - start, size);
+    }
+  }
+
+  /**
+   * The result of parsing a file.
+   */
+  private static class Outcome {
+
+    private final Path file;
+
+    private final GpxType gpx;
+
+    private final Exception error;
+
+    private final long nanos;
+
+    private final long size;
+
+    private Outcome(Path file, GpxType gpx, Exception error, long nanos, long size) {
+      this.file = file;
+      this.gpx = gpx;
+      this.error = error;
+      this.nanos = nanos;
+      this.size = size;
+    }
+  }
+
+  /**
+   * An imported file.
+   */
+  public static class ImportedFile {
+
+    private final Path file;
+
+    private final GpxType gpx;
+
+    private final Duration duration;
+
+    private final long size;
+
+    private ImportedFile(Path file, GpxType gpx, Duration duration, long size) {
+      this.file = file;
+      this.gpx = gpx;
+      this.duration = duration;
+      this.size = size;
+    }
+
+    /**
+     * Gets the file.
+     *
+     * @return the file
+     */
+    public Path getFile() {
+      return file;
+    }
+
+    /**
+     * Gets the gpx of the file.
+     *
+     * @return the gpx
+     */
+    public GpxType getGpx() {
+      return gpx;
+    }
+
+    /**
+     * Gets the duration of parsing the file.
+     *
+     * @return the duration
+     */
+    public Duration getDuration() {
+      return duration;
+    }
+
+    /**
+     * Gets the size of the file in bytes.
+     *
+     * @return the size
+     */
+    public long getSize() {
+      return size;
+    }
+  }
+
+  /**
+   * A file, that could not be imported.
+   */
+  public static class FileError {
+
+    private final Path file;
+
+    private final Exception error;
+
+    private FileError(Path file, Exception error) {
+      this.file = file;
+      this.error = error;
+    }
+
+    /**
+     * Gets the file.
+     *
+     * @return the file
+     */
+    public Path getFile() {
+      return file;
+    }
+
+    /**
+     * Gets the error.
+     *
+     * @return the error
+     */
+    public Exception getError() {
+      return error;
+    }
+
+    @Override
+    public String toString() {
+      return "FileError {file=" + file + ", error=" + error + '}';
+    }
+  }
+
+  /**
+   * The report of an import.
+   */
+  public static class Report {
+
+    private final int imported;
+
+    private final List<FileError> errors;
+
+    private final long bytes;
+
+    private final Duration duration;
+
+    private final long[] latencies;
+
+    private Report(
+        int imported,
+        List<FileError> errors,
+        long bytes,
+        Duration duration,
+        long[] latencies) {
+      this.imported = imported;
+      this.errors = errors;
+      this.bytes = bytes;
+      this.duration = duration;
+      this.latencies = latencies;
+    }
+
+    /**
+     * Gets the number of imported files.
+     *
+     * @return the number of imported files
+     */
+    public int getImported() {
+      return imported;
+    }
+
+    /**
+     * Gets the files, that could not be imported.
+     *
+     * @return the errors
+     */
+    public List<FileError> getErrors() {
+      return errors;
+    }
+
+    /**
+     * Gets the number of bytes of all files.
+     *
+     * @return the bytes
+     */
+    public long getBytes() {
+      return bytes;
+    }
+
+    /**
+     * Gets the wall clock duration of the import (including the consumer).
+     *
+     * @return the duration
+     */
+    public Duration getDuration() {
+      return duration;
+    }
+
+    /**
+     * Gets the number of processed files (imported and failed) per second.
+     *
+     * @return the files per second
+     */
+    public double getFilesPerSecond() {
+      return perSecond(imported + errors.size());
+    }
+
+    /**
+     * Gets the number of processed bytes per second.
+     *
+     * @return the bytes per second
+     */
+    public double getBytesPerSecond() {
+      return perSecond(bytes);
+    }
+
+    private double perSecond(long value) {
+      long nanos = duration.toNanos();
+      return nanos == 0L ? 0. : value * 1_000_000_000. / nanos;
+    }
+
+    /**
+     * Gets the given percentile of the parse durations of all processed files (nearest rank).
+     *
+     * @param percentile the percentile between 0 and 100, e.g. 50 for the median or 99
+     * @return the duration
+     */
+    public Duration getLatency(double percentile) {
+      if (percentile < 0. || percentile > 100.) {
+        throw new IllegalArgumentException("Percentile must be between 0 and 100.");
+      }
+      if (latencies.length == 0) {
+        return Duration.ZERO;
+      }
+      int rank = (int) Math.ceil(percentile / 100. * latencies.length);
+      return Duration.ofNanos(latencies[Math.max(0, rank - 1)]);
+    }
+
+    @Override
+    public String toString() {
+      return "Report {imported=" + imported
+          + ", errors=" + errors.size()
+          + ", bytes=" + bytes
+          + ", duration=" + duration
+          + ", filesPerSecond=" + String.format(Locale.ROOT, "%.1f", getFilesPerSecond())
+          + ", p50=" + getLatency(50.)
+          + ", p90=" + getLatency(90.)
+          + ", p99=" + getLatency(99.)
+          + ", max=" + getLatency(100.) + '}';
+    }
+  }
+
+  /**
+   * Collects the outcomes and delivers the imported files to the consumer.
+   */
+  private static class ReportBuilder {
+
+    private final List<FileError> errors = new ArrayList<>();
+
+    private long[] latencies = new long[1024];
+
+    private int count;
+
+    private int imported;
+
+    private long bytes;
+
+    private void add(Outcome outcome, Consumer<? super ImportedFile> consumer) {
+      if (count == latencies.length) {
+        latencies = Arrays.copyOf(latencies, count * 2);
+      }
+      latencies[count++] = outcome.nanos;
+      bytes += outcome.size;
+      if (outcome.error != null) {
+        errors.add(new FileError(outcome.file, outcome.error));
+      } else {
+        imported++;
+        consumer.accept(new ImportedFile(
+            outcome.file, outcome.gpx, Duration.ofNanos(outcome.nanos), outcome.size));
+      }
+    }
+
+    private Report build(long nanos) {
+      long[] sorted = Arrays.copyOf(latencies, count);
+      Arrays.sort(sorted);
+      return new Report(imported, Collections.unmodifiableList(errors), bytes,
+          Duration.ofNanos(nanos), sorted);
+    }
+  }
+
+}
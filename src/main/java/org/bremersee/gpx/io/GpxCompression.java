@@ -0,0 +1,238 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+/**
+ * The compression of a GPX document.
+ *
+ * <p>The compression of the input is detected by its magic bytes: gzip data starts with
+ * {@code 0x1f 0x8b}, zlib data (deflate data with the zlib header) starts with a header, that
+ * specifies the deflate method and whose value is a multiple of 31. Everything else, like plain
+ * xml or the binary format, is not compressed.
+ *
+ * <p>The streams of this class decompress and compress with {@link java.util.zip.Inflater}s,
+ * {@link Deflater}s and direct buffers of a {@link CompressionPool}, so reading many small files
+ * does not allocate the native state of zlib for each file. The returned streams must be closed
+ * to return the pooled objects.
+ *
+ * @author Christian Bremer
+ */
+public enum GpxCompression {
+
+  /**
+   * Not compressed.
+   */
+  NONE,
+
+  /**
+   * Gzip compressed (file extension {@code .gz}).
+   */
+  GZIP,
+
+  /**
+   * Zlib compressed (file extension {@code .zz}).
+   */
+  ZLIB;
+
+  /**
+   * Detects the compression of the given bytes.
+   *
+   * @param bytes the first bytes of the data
+   * @return the compression
+   */
+  public static GpxCompression detect(byte[] bytes) {
+    if (bytes == null || bytes.length < 2) {
+      return NONE;
+    }
+    int first = bytes[0] & 0xff;
+    int second = bytes[1] & 0xff;
+    if (first == 0x1f && second == 0x8b) {
+      return GZIP;
+    }
+    if ((first & 0x0f) == 8 && (first >> 4) <= 7 && ((first << 8) | second) % 31 == 0) {
+      return ZLIB;
+    }
+    return NONE;
+  }
+
+  /**
+   * Gets the compression of the given file by its name: files with the extension {@code .gz}
+   * or {@code .gzip} are gzip compressed, files with the extension {@code .zz} or {@code .zlib}
+   * are zlib compressed, all others are not compressed.
+   *
+   * @param file the file
+   * @return the compression
+   */
+  public static GpxCompression forFileName(Path file) {
+    Path fileName = file != null ? file.getFileName() : null;
+    if (fileName == null) {
+      return NONE;
+    }
+    String name = fileName.toString().toLowerCase(Locale.ROOT);
+    if (name.endsWith(".gz") || name.endsWith(".gzip")) {
+      return GZIP;
+    }
+    if (name.endsWith(".zz") || name.endsWith(".zlib")) {
+      return ZLIB;
+    }
+    return NONE;
+  }
+
+  /**
+   * Gets the compression of the given input stream. It reads the magic bytes with
+   * {@link InputStream#mark(int)} and {@link InputStream#reset()}, so the input stream must
+   * support marks.
+   *
+   * @param inputStream the input stream
+   * @return the compression
+   * @throws IOException if an I/O error occurs
+   */
+  public static GpxCompression detect(InputStream inputStream) throws IOException {
+    if (!inputStream.markSupported()) {
+      throw new IllegalArgumentException("Input stream must support marks.");
+    }
+    inputStream.mark(2);
+    try {
+      return detect(inputStream.readNBytes(2));
+    } finally {
+      inputStream.reset();
+    }
+  }
+
+  /**
+   * Creates an input stream, that decompresses the given input stream, if it is compressed.
+   * The compression is detected by the magic bytes. Closing the returned stream closes the
+   * given input stream.
+   *
+   * @param inputStream the input stream
+   * @return the decompressing input stream
+   */
+  public static InputStream decompress(InputStream inputStream) {
+    return decompress(inputStream, CompressionPool.defaultPool());
+  }
+
+  /**
+   * Creates an input stream, that decompresses the given input stream with the inflaters and
+   * buffers of the given pool, if it is compressed. The compression is detected by the magic
+   * bytes. Closing the returned stream closes the given input stream.
+   *
+   * @param inputStream the input stream
+   * @param pool the pool
+   * @return the decompressing input stream
+   */
+  public static InputStream decompress(InputStream inputStream, CompressionPool pool) {
+    return new CompressedInputStream(Channels.newChannel(inputStream), inputStream, pool);
+  }
+
+  /**
+   * Opens the given file and decompresses it, if it is compressed. The compression is detected
+   * by the magic bytes, not by the name of the file. The compressed bytes are read directly into
+   * the pooled buffer.
+   *
+   * @param file the file
+   * @return the decompressing input stream
+   */
+  public static InputStream decompress(Path file) {
+    try {
+      FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+      return new CompressedInputStream(channel, channel, CompressionPool.defaultPool());
+    } catch (IOException e) {
+      throw new GpxStreamException("Opening file " + file + " failed.", e);
+    }
+  }
+
+  /**
+   * Creates an output stream, that compresses into the given output stream with the default
+   * compression level. Closing the returned stream closes the given output stream. If this is
+   * {@link #NONE}, the given output stream is returned.
+   *
+   * @param outputStream the output stream
+   * @return the compressing output stream
+   */
+  public OutputStream compress(OutputStream outputStream) {
+    return compress(outputStream, Deflater.DEFAULT_COMPRESSION, CompressionPool.defaultPool());
+  }
+
+  /**
+   * Creates an output stream, that compresses into the given output stream with the given
+   * compression level and the deflaters and buffers of the given pool. Closing the returned
+   * stream closes the given output stream. If this is {@link #NONE}, the given output stream is
+   * returned.
+   *
+   * @param outputStream the output stream
+   * @param level the compression level (0-9 or {@link Deflater#DEFAULT_COMPRESSION})
+   * @param pool the pool
+   * @return the compressing output stream
+   */
+  public OutputStream compress(OutputStream outputStream, int level, CompressionPool pool) {
+    if (this == NONE) {
+      return outputStream;
+    }
+    return new CompressedOutputStream(
+        Channels.newChannel(outputStream), outputStream, outputStream, this, level, pool);
+  }
+
+  /**
+   * Creates the given file and returns an output stream, that compresses into it. If this is
+   * {@link #NONE}, the output stream writes into the file unchanged. The compressed bytes are
+   * written directly from the pooled buffer into the file.
+   *
+   * @param file the file
+   * @return the compressing output stream
+   * @see #forFileName(Path)
+   */
+  public OutputStream compress(Path file) {
+    FileChannel channel = null;
+    try {
+      channel = FileChannel.open(file, StandardOpenOption.CREATE,
+          StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+      if (this == NONE) {
+        return Channels.newOutputStream(channel);
+      }
+      return new CompressedOutputStream(channel, null, channel, this,
+          Deflater.DEFAULT_COMPRESSION, CompressionPool.defaultPool());
+    } catch (IOException e) {
+      closeQuietly(channel);
+      throw new GpxStreamException("Creating file " + file + " failed.", e);
+    } catch (RuntimeException e) {
+      closeQuietly(channel);
+      throw e;
+    }
+  }
+
+  private static void closeQuietly(FileChannel channel) {
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (IOException ignored) {
+        // the original exception is thrown
+      }
+    }
+  }
+
+}
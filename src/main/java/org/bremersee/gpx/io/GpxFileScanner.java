@@ -0,0 +1,524 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx.io;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.bremersee.gpx.GpxJaxbContextDataProvider;
+
+/**
+ * A fast byte scanner, that locates the top level waypoints and the track segments of a memory
+ * mapped GPX file without parsing it. The scanner understands comments, processing instructions,
+ * CDATA sections and quoted attribute values, so it finds the element boundaries of any well
+ * formed document with an ASCII compatible encoding. The names of the elements down to the track
+ * points are resolved with the namespace declarations in scope, so the GPX namespace may be bound
+ * to any prefix on any of these elements. Entities that are declared in a DTD are not supported.
+ *
+ * @author Christian Bremer
+ */
+class GpxFileScanner {
+
+  private static final Pattern ENCODING = Pattern
+      .compile("encoding\\s*=\\s*[\"']([A-Za-z0-9._\\-]+)[\"']");
+
+  private static final byte[] GPX_NAMESPACE = GpxJaxbContextDataProvider.NAMESPACE
+      .getBytes(StandardCharsets.US_ASCII);
+
+  private static final byte[] XMLNS = "xmlns".getBytes(StandardCharsets.US_ASCII);
+
+  private static final byte[] WPT = "wpt".getBytes(StandardCharsets.US_ASCII);
+
+  private static final byte[] TRK = "trk".getBytes(StandardCharsets.US_ASCII);
+
+  private static final byte[] TRKSEG = "trkseg".getBytes(StandardCharsets.US_ASCII);
+
+  private static final byte[] TRKPT = "trkpt".getBytes(StandardCharsets.US_ASCII);
+
+  /**
+   * The level of the deepest elements, whose names are resolved.
+   */
+  private static final int MAX_RESOLVED_LEVEL = 3;
+
+  private final MappedGpxFile file;
+
+  private final long chunkSize;
+
+  private final long size;
+
+  private long position;
+
+  private final List<Binding> bindings = new ArrayList<>();
+
+  /**
+   * Instantiates a new gpx file scanner.
+   *
+   * @param file the file
+   * @param chunkSize the minimum size of a track segment part
+   */
+  GpxFileScanner(MappedGpxFile file, long chunkSize) {
+    this.file = file;
+    this.chunkSize = chunkSize;
+    this.size = file.size();
+  }
+
+  /**
+   * Scans the file.
+   *
+   * @return the layout of the file
+   */
+  Layout scan() {
+    Layout layout = new Layout();
+    scanProlog(layout);
+
+    int level = 1;
+    long[] trackStartTag = null;
+    byte[] trackEndTag = null;
+    long waypointStart = -1;
+    Segment segment = null;
+    long cursor = 0;
+    while (nextTag()) {
+      long tagStart = position;
+      byte next = at(position + 1);
+      if (next == '!' || next == '?') {
+        skipMarkup(next);
+        continue;
+      }
+      if (next == '/') {
+        level--;
+        popBindings(level);
+        position = tagEnd(position);
+        if (level == 2 && segment != null) {
+          segment.contentEnd = tagStart;
+          segment.closeParts();
+          layout.segments.add(segment);
+          // the skeleton keeps the start tag with its namespace declarations
+          cursor = addSkeleton(layout, cursor, segment.contentStart, segment.endTag);
+          cursor = position;
+          segment = null;
+        } else if (level == 1 && waypointStart >= 0) {
+          layout.waypoints.add(new long[]{waypointStart, position});
+          cursor = position;
+          waypointStart = -1;
+        } else if (level == 1) {
+          trackStartTag = null;
+        }
+        continue;
+      }
+      long nameStart = position + 1;
+      position = tagEnd(position);
+      boolean empty = at(position - 2) == '/';
+      if (level > MAX_RESOLVED_LEVEL) {
+        if (!empty) {
+          level++;
+        }
+        continue;
+      }
+      long nameEnd = nameEnd(nameStart);
+      pushBindings(nameEnd, position, level);
+      if (level == 1 && isGpxElement(nameStart, nameEnd, WPT)) {
+        if (empty) {
+          layout.waypoints.add(new long[]{tagStart, position});
+        } else {
+          // the skeleton keeps the start tag with its namespace declarations
+          cursor = addSkeleton(layout, cursor, position, endTag(layout, nameStart, nameEnd));
+          waypointStart = tagStart;
+        }
+      } else if (level == 1 && isGpxElement(nameStart, nameEnd, TRK)) {
+        trackStartTag = empty ? null : new long[]{tagStart, position};
+        trackEndTag = empty ? null : endTag(layout, nameStart, nameEnd);
+      } else if (level == 2 && trackStartTag != null
+          && isGpxElement(nameStart, nameEnd, TRKSEG)) {
+        segment = new Segment(tagStart, position, chunkSize);
+        segment.trackStartTag = trackStartTag;
+        segment.trackEndTag = trackEndTag;
+        if (empty) {
+          segment.contentEnd = position;
+          segment.closeParts();
+          layout.segments.add(segment);
+          segment = null;
+        } else {
+          segment.endTag = endTag(layout, nameStart, nameEnd);
+        }
+      } else if (level == 3 && segment != null && isGpxElement(nameStart, nameEnd, TRKPT)) {
+        segment.trackPoint(tagStart);
+      }
+      if (empty) {
+        popBindings(level);
+      } else {
+        level++;
+      }
+    }
+    layout.skeleton.add(new long[]{cursor, size});
+    return layout;
+  }
+
+  private void scanProlog(Layout layout) {
+    position = 0;
+    while (nextTag()) {
+      byte next = at(position + 1);
+      if (next == '?') {
+        long start = position;
+        skipMarkup(next);
+        String declaration = new String(file.getBytes(start, position),
+            StandardCharsets.US_ASCII);
+        Matcher matcher = ENCODING.matcher(declaration);
+        if (matcher.find()) {
+          layout.encoding = matcher.group(1);
+        }
+      } else if (next == '!') {
+        skipMarkup(next);
+      } else {
+        long start = position;
+        position = tagEnd(position);
+        long nameEnd = nameEnd(start + 1);
+        pushBindings(nameEnd, position, 0);
+        layout.rootStartTag = file.getBytes(start, position);
+        layout.rootEndTag = endTag(layout, start + 1, nameEnd);
+        return;
+      }
+    }
+    throw new GpxStreamException("File has no root element.");
+  }
+
+  /**
+   * Gets the end of the qualified name, that starts at the given position.
+   */
+  private long nameEnd(long nameStart) {
+    long pos = nameStart;
+    while (pos < size && !isNameEnd(file.get(pos))) {
+      pos++;
+    }
+    return pos;
+  }
+
+  private static boolean isNameEnd(byte b) {
+    return b == '>' || b == '/' || isWhitespace(b);
+  }
+
+  private static boolean isWhitespace(byte b) {
+    return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+  }
+
+  private byte[] endTag(Layout layout, long nameStart, long nameEnd) {
+    String name = new String(file.getBytes(nameStart, nameEnd), Charset.forName(layout.encoding));
+    return bytes(layout, "</" + name + ">");
+  }
+
+  /**
+   * Adds the namespace declarations of the attributes between the given positions.
+   */
+  private void pushBindings(long attributesStart, long tagEnd, int level) {
+    long pos = attributesStart;
+    while (pos < tagEnd) {
+      while (pos < tagEnd && isWhitespace(file.get(pos))) {
+        pos++;
+      }
+      byte b = at(pos);
+      if (pos >= tagEnd || b == '/' || b == '>') {
+        return;
+      }
+      long attributeStart = pos;
+      while (pos < tagEnd && file.get(pos) != '=' && !isWhitespace(file.get(pos))) {
+        pos++;
+      }
+      long attributeEnd = pos;
+      while (pos < tagEnd && file.get(pos) != '"' && file.get(pos) != '\'') {
+        pos++;
+      }
+      byte quote = at(pos);
+      long valueStart = ++pos;
+      while (pos < tagEnd && file.get(pos) != quote) {
+        pos++;
+      }
+      long valueEnd = pos++;
+      if (equals(attributeStart, Math.min(attributeEnd, attributeStart + XMLNS.length), XMLNS)) {
+        long length = attributeEnd - attributeStart;
+        if (length == XMLNS.length) {
+          bindings.add(new Binding(level, new byte[0],
+              equals(valueStart, valueEnd, GPX_NAMESPACE)));
+        } else if (file.get(attributeStart + XMLNS.length) == ':') {
+          bindings.add(new Binding(level,
+              file.getBytes(attributeStart + XMLNS.length + 1, attributeEnd),
+              equals(valueStart, valueEnd, GPX_NAMESPACE)));
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes the namespace declarations of the elements at the given or a deeper level.
+   */
+  private void popBindings(int level) {
+    while (!bindings.isEmpty() && bindings.get(bindings.size() - 1).level >= level) {
+      bindings.remove(bindings.size() - 1);
+    }
+  }
+
+  /**
+   * Determines whether the qualified name between the given positions is the given local name
+   * in the GPX namespace.
+   */
+  private boolean isGpxElement(long nameStart, long nameEnd, byte[] localName) {
+    long localStart = nameEnd - localName.length;
+    if (localStart < nameStart || !equals(localStart, nameEnd, localName)) {
+      return false;
+    }
+    long prefixEnd = localStart - 1;
+    if (localStart > nameStart && file.get(prefixEnd) != ':') {
+      return false;
+    }
+    long prefixStart = nameStart;
+    long prefixLength = Math.max(0L, prefixEnd - prefixStart);
+    for (int i = bindings.size() - 1; i >= 0; i--) {
+      Binding binding = bindings.get(i);
+      if (binding.prefix.length == prefixLength
+          && equals(prefixStart, prefixStart + prefixLength, binding.prefix)) {
+        return binding.gpx;
+      }
+    }
+    return false;
+  }
+
+  private boolean equals(long start, long end, byte[] value) {
+    if (end - start != value.length || end > size) {
+      return false;
+    }
+    for (int i = 0; i < value.length; i++) {
+      if (file.get(start + i) != value[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static byte[] bytes(Layout layout, String value) {
+    return value.getBytes(Charset.forName(layout.encoding));
+  }
+
+  private static long addSkeleton(Layout layout, long cursor, long end, byte[] placeholder) {
+    layout.skeleton.add(new long[]{cursor, end});
+    layout.skeleton.add(placeholder);
+    return end;
+  }
+
+  private byte at(long pos) {
+    return pos < size ? file.get(pos) : 0;
+  }
+
+  /**
+   * Moves the position to the next {@code '<'}.
+   */
+  private boolean nextTag() {
+    while (position < size) {
+      if (file.get(position) == '<') {
+        return true;
+      }
+      position++;
+    }
+    return false;
+  }
+
+  /**
+   * Gets the position after the {@code '>'} of the tag, that starts at the given position.
+   */
+  private long tagEnd(long start) {
+    byte quote = 0;
+    for (long pos = start + 1; pos < size; pos++) {
+      byte b = file.get(pos);
+      if (quote != 0) {
+        if (b == quote) {
+          quote = 0;
+        }
+      } else if (b == '"' || b == '\'') {
+        quote = b;
+      } else if (b == '>') {
+        return pos + 1;
+      }
+    }
+    throw new GpxStreamException("Unexpected end of file, tag at position " + start
+        + " is not closed.");
+  }
+
+  /**
+   * Skips a comment, CDATA section, processing instruction or declaration.
+   */
+  private void skipMarkup(byte next) {
+    if (next == '?') {
+      position = find(position + 2, '?', '>');
+    } else if (at(position + 2) == '-' && at(position + 3) == '-') {
+      position = find(position + 4, '-', '-', '>');
+    } else if (at(position + 2) == '[') {
+      position = find(position + 2, ']', ']', '>');
+    } else {
+      position = tagEnd(position);
+    }
+  }
+
+  private long find(long start, char... pattern) {
+    for (long pos = start; pos + pattern.length <= size; pos++) {
+      int i = 0;
+      while (i < pattern.length && file.get(pos + i) == pattern[i]) {
+        i++;
+      }
+      if (i == pattern.length) {
+        return pos + pattern.length;
+      }
+    }
+    throw new GpxStreamException("Unexpected end of file, markup at position " + start
+        + " is not closed.");
+  }
+
+  /**
+   * The layout of a scanned file.
+   */
+  static class Layout {
+
+    /**
+     * The encoding of the file.
+     */
+    String encoding = StandardCharsets.UTF_8.name();
+
+    /**
+     * The start tag of the root element.
+     */
+    byte[] rootStartTag;
+
+    /**
+     * The end tag of the root element.
+     */
+    byte[] rootEndTag;
+
+    /**
+     * The ranges of the top level waypoints.
+     */
+    final List<long[]> waypoints = new ArrayList<>();
+
+    /**
+     * The track segments in document order.
+     */
+    final List<Segment> segments = new ArrayList<>();
+
+    /**
+     * The document without the content of the waypoints and track segments as ranges of the
+     * file and end tags.
+     */
+    final List<Object> skeleton = new ArrayList<>();
+  }
+
+  /**
+   * A track segment, that is split into parts with complete track points.
+   */
+  static class Segment {
+
+    /**
+     * The start of the segment start tag.
+     */
+    final long start;
+
+    /**
+     * The end of the segment start tag.
+     */
+    final long contentStart;
+
+    /**
+     * The start of the segment end tag.
+     */
+    long contentEnd;
+
+    /**
+     * The end tag of the segment or an empty array, if the segment is an empty element.
+     */
+    byte[] endTag = new byte[0];
+
+    /**
+     * The range of the start tag of the enclosing track.
+     */
+    long[] trackStartTag;
+
+    /**
+     * The end tag of the enclosing track.
+     */
+    byte[] trackEndTag;
+
+    /**
+     * The parts of the segment content.
+     */
+    final List<long[]> parts = new ArrayList<>();
+
+    private final long chunkSize;
+
+    private long partStart;
+
+    /**
+     * Instantiates a new segment.
+     *
+     * @param start the start
+     * @param contentStart the content start
+     * @param chunkSize the chunk size
+     */
+    Segment(long start, long contentStart, long chunkSize) {
+      this.start = start;
+      this.contentStart = contentStart;
+      this.chunkSize = chunkSize;
+      this.partStart = contentStart;
+    }
+
+    /**
+     * Called with the start of each track point.
+     *
+     * @param trackPointStart the track point start
+     */
+    void trackPoint(long trackPointStart) {
+      if (trackPointStart - partStart >= chunkSize) {
+        parts.add(new long[]{partStart, trackPointStart});
+        partStart = trackPointStart;
+      }
+    }
+
+    /**
+     * Closes the last part.
+     */
+    void closeParts() {
+      if (contentEnd > partStart || parts.isEmpty()) {
+        parts.add(new long[]{partStart, Math.max(partStart, contentEnd)});
+      }
+    }
+  }
+
+  /**
+   * A namespace declaration.
+   */
+  private static class Binding {
+
+    private final int level;
+
+    private final byte[] prefix;
+
+    private final boolean gpx;
+
+    private Binding(int level, byte[] prefix, boolean gpx) {
+      this.level = level;
+      this.prefix = prefix;
+      this.gpx = gpx;
+    }
+  }
+
+}
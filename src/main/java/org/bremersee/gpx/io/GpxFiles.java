@@ -0,0 +1,161 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx.io;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBElement;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
+import jakarta.xml.bind.Unmarshaller;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Path;
+import java.util.zip.Deflater;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.bremersee.gpx.GpxJaxbContextDataProvider;
+import org.bremersee.gpx.UnmarshallerPool;
+import org.bremersee.gpx.model.Gpx;
+import org.bremersee.gpx.model.GpxType;
+
+/**
+ * Reads and writes whole GPX documents, that may be gzip or zlib compressed.
+ *
+ * <p>The compression of the input is detected by the magic bytes, the compression of a written
+ * file by its name (see {@link GpxCompression}). The unmarshallers are taken from the
+ * {@link UnmarshallerPool#defaultPool()} and the inflaters, deflaters and buffers from the
+ * {@link CompressionPool#defaultPool()}, so reading many small files does not create them again
+ * for every file.
+ *
+ * @author Christian Bremer
+ */
+public abstract class GpxFiles {
+
+  private static final XMLInputFactory INPUT_FACTORY = GpxStreamReader.createXmlInputFactory();
+
+  private GpxFiles() {
+  }
+
+  /**
+   * Reads the gpx of the given file.
+   *
+   * @param file the file
+   * @param jaxbContext the jaxb context
+   * @return the gpx
+   */
+  public static GpxType read(Path file, JAXBContext jaxbContext) {
+    try (InputStream in = GpxCompression.decompress(file)) {
+      return unmarshal(in, jaxbContext);
+    } catch (IOException | XMLStreamException | JAXBException e) {
+      throw new GpxStreamException("Reading gpx file " + file + " failed.", e);
+    }
+  }
+
+  /**
+   * Reads the gpx of the given input stream. The input stream will not be closed.
+   *
+   * @param inputStream the input stream
+   * @param jaxbContext the jaxb context
+   * @return the gpx
+   */
+  public static GpxType read(InputStream inputStream, JAXBContext jaxbContext) {
+    try (InputStream in = new CompressedInputStream(
+        Channels.newChannel(inputStream), null, CompressionPool.defaultPool())) {
+      return unmarshal(in, jaxbContext);
+    } catch (IOException | XMLStreamException | JAXBException e) {
+      throw new GpxStreamException("Reading gpx failed.", e);
+    }
+  }
+
+  private static GpxType unmarshal(InputStream in, JAXBContext jaxbContext)
+      throws XMLStreamException, JAXBException {
+    XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(in);
+    try {
+      UnmarshallerPool pool = UnmarshallerPool.defaultPool();
+      Unmarshaller unmarshaller = pool.borrow(jaxbContext);
+      try {
+        return unmarshaller.unmarshal(reader, GpxType.class).getValue();
+      } finally {
+        pool.release(jaxbContext, unmarshaller);
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Writes the given gpx into the given file. The file is compressed according to its name.
+   *
+   * @param gpx the gpx
+   * @param file the file
+   * @param jaxbContext the jaxb context
+   */
+  public static void write(GpxType gpx, Path file, JAXBContext jaxbContext) {
+    try (OutputStream out = GpxCompression.forFileName(file).compress(file)) {
+      marshal(gpx, out, jaxbContext);
+    } catch (IOException | JAXBException e) {
+      throw new GpxStreamException("Writing gpx file " + file + " failed.", e);
+    }
+  }
+
+  /**
+   * Writes the given gpx with the given compression into the given output stream. The output
+   * stream will not be closed.
+   *
+   * @param gpx the gpx
+   * @param outputStream the output stream
+   * @param compression the compression
+   * @param jaxbContext the jaxb context
+   */
+  public static void write(
+      GpxType gpx,
+      OutputStream outputStream,
+      GpxCompression compression,
+      JAXBContext jaxbContext) {
+
+    try {
+      if (compression == null || compression == GpxCompression.NONE) {
+        marshal(gpx, outputStream, jaxbContext);
+      } else {
+        try (OutputStream out = new CompressedOutputStream(
+            Channels.newChannel(outputStream), outputStream, null, compression,
+            Deflater.DEFAULT_COMPRESSION, CompressionPool.defaultPool())) {
+          marshal(gpx, out, jaxbContext);
+        }
+      }
+    } catch (IOException | JAXBException e) {
+      throw new GpxStreamException("Writing gpx failed.", e);
+    }
+  }
+
+  private static void marshal(GpxType gpx, OutputStream out, JAXBContext jaxbContext)
+      throws JAXBException {
+    Marshaller marshaller = jaxbContext.createMarshaller();
+    if (gpx instanceof Gpx) {
+      marshaller.marshal(gpx, out);
+    } else {
+      marshaller.marshal(new JAXBElement<>(
+          new QName(GpxJaxbContextDataProvider.NAMESPACE, "gpx"), GpxType.class, gpx), out);
+    }
+  }
+
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx.io;
+
+import org.bremersee.gpx.model.ExtensionsType;
+import org.bremersee.gpx.model.GpxType;
+import org.bremersee.gpx.model.MetadataType;
+import org.bremersee.gpx.model.RteType;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.TrksegType;
+import org.bremersee.gpx.model.WptType;
+
+/**
+ * An event of the {@link GpxStreamReader}.
+ *
+ * <p>Each event carries exactly one bound model object. Which object that is, depends on the
+ * {@link Type} of the event:
+ * <ul>
+ *   <li>{@link Type#START_GPX}: a {@link GpxType} with version and creator only</li>
+ *   <li>{@link Type#METADATA}: the {@link MetadataType}</li>
+ *   <li>{@link Type#WAYPOINT}: a {@link WptType}</li>
+ *   <li>{@link Type#ROUTE}: a {@link RteType}</li>
+ *   <li>{@link Type#START_TRACK}: a {@link TrkType} with all values except the segments</li>
+ *   <li>{@link Type#START_SEGMENT}: an empty {@link TrksegType}</li>
+ *   <li>{@link Type#TRACK_POINT}: a {@link WptType}</li>
+ *   <li>{@link Type#END_SEGMENT}: the {@link TrksegType} of the start event, now with its
+ *   extensions, but without the track points</li>
+ *   <li>{@link Type#END_TRACK}: the {@link TrkType} of the start event</li>
+ *   <li>{@link Type#END_GPX}: the {@link GpxType} of the start event, now with its
+ *   extensions</li>
+ * </ul>
+ *
+ * @author Christian Bremer
+ */
+public class GpxStreamEvent {
+
+  /**
+   * The event type.
+   */
+  public enum Type {
+
+    /**
+     * Start of the gpx element.
+     */
+    START_GPX,
+
+    /**
+     * The metadata element.
+     */
+    METADATA,
+
+    /**
+     * A waypoint element.
+     */
+    WAYPOINT,
+
+    /**
+     * A route element.
+     */
+    ROUTE,
+
+    /**
+     * Start of a track element.
+     */
+    START_TRACK,
+
+    /**
+     * Start of a track segment element.
+     */
+    START_SEGMENT,
+
+    /**
+     * A track point element.
+     */
+    TRACK_POINT,
+
+    /**
+     * End of a track segment element.
+     */
+    END_SEGMENT,
+
+    /**
+     * End of a track element.
+     */
+    END_TRACK,
+
+    /**
+     * End of the gpx element.
+     */
+    END_GPX
+  }
+
+  private final Type type;
+
+  private final Object value;
+
+  private final int trackIndex;
+
+  private final int segmentIndex;
+
+  private final int pointIndex;
+
+  /**
+   * Instantiates a new gpx stream event.
+   *
+   * @param type the type
+   * @param value the value
+   * @param trackIndex the track index
+   * @param segmentIndex the segment index
+   * @param pointIndex the point index
+   */
+  GpxStreamEvent(Type type, Object value, int trackIndex, int segmentIndex, int pointIndex) {
+    this.type = type;
+    this.value = value;
+    this.trackIndex = trackIndex;
+    this.segmentIndex = segmentIndex;
+    this.pointIndex = pointIndex;
+  }
+
+  /**
+   * Gets type.
+   *
+   * @return the type
+   */
+  public Type getType() {
+    return type;
+  }
+
+  /**
+   * Gets the bound value of this event.
+   *
+   * @return the value
+   */
+  public Object getValue() {
+    return value;
+  }
+
+  /**
+   * Gets the index of the current track within the gpx element.
+   *
+   * @return the track index or {@code -1}, if the event does not belong to a track
+   */
+  public int getTrackIndex() {
+    return trackIndex;
+  }
+
+  /**
+   * Gets the index of the current segment within the track.
+   *
+   * @return the segment index or {@code -1}, if the event does not belong to a segment
+   */
+  public int getSegmentIndex() {
+    return segmentIndex;
+  }
+
+  /**
+   * Gets the index of the current point within the segment or the index of the waypoint or route
+   * within the gpx element.
+   *
+   * @return the point index or {@code -1}
+   */
+  public int getPointIndex() {
+    return pointIndex;
+  }
+
+  /**
+   * Gets gpx.
+   *
+   * @return the gpx of a {@link Type#START_GPX} or {@link Type#END_GPX} event
+   */
+  public GpxType getGpx() {
+    return cast(GpxType.class, Type.START_GPX, Type.END_GPX);
+  }
+
+  /**
+   * Gets metadata.
+   *
+   * @return the metadata of a {@link Type#METADATA} event
+   */
+  public MetadataType getMetadata() {
+    return cast(MetadataType.class, Type.METADATA);
+  }
+
+  /**
+   * Gets waypoint.
+   *
+   * @return the waypoint of a {@link Type#WAYPOINT} event
+   */
+  public WptType getWaypoint() {
+    return cast(WptType.class, Type.WAYPOINT);
+  }
+
+  /**
+   * Gets route.
+   *
+   * @return the route of a {@link Type#ROUTE} event
+   */
+  public RteType getRoute() {
+    return cast(RteType.class, Type.ROUTE);
+  }
+
+  /**
+   * Gets track.
+   *
+   * @return the track of a {@link Type#START_TRACK} or {@link Type#END_TRACK} event
+   */
+  public TrkType getTrack() {
+    return cast(TrkType.class, Type.START_TRACK, Type.END_TRACK);
+  }
+
+  /**
+   * Gets segment.
+   *
+   * @return the segment of a {@link Type#START_SEGMENT} or {@link Type#END_SEGMENT} event
+   */
+  public TrksegType getSegment() {
+    return cast(TrksegType.class, Type.START_SEGMENT, Type.END_SEGMENT);
+  }
+
+  /**
+   * Gets track point.
+   *
+   * @return the track point of a {@link Type#TRACK_POINT} event
+   */
+  public WptType getTrackPoint() {
+    return cast(WptType.class, Type.TRACK_POINT);
+  }
+
+  /**
+   * Gets the extensions of the gpx, track segment or track of this event.
+   *
+   * @return the extensions, may be {@code null}
+   */
+  public ExtensionsType getExtensions() {
+    if (value instanceof GpxType) {
+      return ((GpxType) value).getExtensions();
+    }
+    if (value instanceof TrksegType) {
+      return ((TrksegType) value).getExtensions();
+    }
+    if (value instanceof TrkType) {
+      return ((TrkType) value).getExtensions();
+    }
+    return null;
+  }
+
+  private <T> T cast(Class<T> cls, Type... types) {
+    for (Type t : types) {
+      if (t == type) {
+        return cls.cast(value);
+      }
+    }
+    throw new IllegalStateException("Event " + type + " has no value of type "
+        + cls.getSimpleName() + ".");
+  }
+
+  @Override
+  public String toString() {
+    return "GpxStreamEvent{"
+        + "type=" + type
+        + ", trackIndex=" + trackIndex
+        + ", segmentIndex=" + segmentIndex
+        + ", pointIndex=" + pointIndex
+        + '}';
+  }
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx.io;
+
+/**
+ * The exception that is thrown, if a GPX stream cannot be read or written.
+ *
+ * @author Christian Bremer
+ */
+public class GpxStreamException extends RuntimeException {
+
+  /**
+   * Instantiates a new gpx stream exception.
+   *
+   * @param message the message
+   */
+  public GpxStreamException(String message) {
+    super(message);
+  }
+
+  /**
+   * Instantiates a new gpx stream exception.
+   *
+   * @param message the message
+   * @param cause the cause
+   */
+  public GpxStreamException(String message, Throwable cause) {
+    super(message, cause);
+  }
+
+}
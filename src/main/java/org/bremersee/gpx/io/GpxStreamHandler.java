@@ -0,0 +1,126 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx.io;
+
+import org.bremersee.gpx.model.ExtensionsType;
+import org.bremersee.gpx.model.GpxType;
+import org.bremersee.gpx.model.MetadataType;
+import org.bremersee.gpx.model.RteType;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.TrksegType;
+import org.bremersee.gpx.model.WptType;
+
+/**
+ * A push style handler of the elements of a GPX stream (see
+ * {@link GpxStreamReader#read(GpxStreamHandler)}). All methods do nothing by default.
+ *
+ * @author Christian Bremer
+ */
+public interface GpxStreamHandler {
+
+  /**
+   * Called at the start of the gpx element.
+   *
+   * @param gpx the gpx with version and creator
+   */
+  default void startGpx(GpxType gpx) {
+  }
+
+  /**
+   * Called with the metadata.
+   *
+   * @param metadata the metadata
+   */
+  default void metadata(MetadataType metadata) {
+  }
+
+  /**
+   * Called with a waypoint.
+   *
+   * @param waypoint the waypoint
+   * @param index the index of the waypoint
+   */
+  default void waypoint(WptType waypoint, int index) {
+  }
+
+  /**
+   * Called with a route.
+   *
+   * @param route the route
+   * @param index the index of the route
+   */
+  default void route(RteType route, int index) {
+  }
+
+  /**
+   * Called at the start of a track.
+   *
+   * @param track the track without segments
+   * @param trackIndex the track index
+   */
+  default void startTrack(TrkType track, int trackIndex) {
+  }
+
+  /**
+   * Called at the start of a track segment.
+   *
+   * @param trackIndex the track index
+   * @param segmentIndex the segment index
+   */
+  default void startSegment(int trackIndex, int segmentIndex) {
+  }
+
+  /**
+   * Called with a track point.
+   *
+   * @param trackPoint the track point
+   * @param trackIndex the track index
+   * @param segmentIndex the segment index
+   * @param pointIndex the point index
+   */
+  default void trackPoint(WptType trackPoint, int trackIndex, int segmentIndex, int pointIndex) {
+  }
+
+  /**
+   * Called at the end of a track segment.
+   *
+   * @param segment the segment with extensions, but without track points
+   * @param trackIndex the track index
+   * @param segmentIndex the segment index
+   */
+  default void endSegment(TrksegType segment, int trackIndex, int segmentIndex) {
+  }
+
+  /**
+   * Called at the end of a track.
+   *
+   * @param track the track without segments
+   * @param trackIndex the track index
+   */
+  default void endTrack(TrkType track, int trackIndex) {
+  }
+
+  /**
+   * Called at the end of the gpx element.
+   *
+   * @param gpx the gpx with version, creator and extensions
+   * @param extensions the extensions of the gpx element, may be {@code null}
+   */
+  default void endGpx(GpxType gpx, ExtensionsType extensions) {
+  }
+
+}
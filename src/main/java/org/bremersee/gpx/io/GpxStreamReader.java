@@ -0,0 +1,504 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx.io;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Unmarshaller;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.bremersee.gpx.GpxJaxbContextDataProvider;
+import org.bremersee.gpx.UnmarshallerPool;
+import org.bremersee.gpx.io.GpxStreamEvent.Type;
+import org.bremersee.gpx.model.ExtensionsType;
+import org.bremersee.gpx.model.GpxType;
+import org.bremersee.gpx.model.LinkType;
+import org.bremersee.gpx.model.MetadataType;
+import org.bremersee.gpx.model.RteType;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.TrksegType;
+import org.bremersee.gpx.model.WptType;
+
+/**
+ * A pull style GPX reader, that walks the structure of the GPX document with StAX and binds only
+ * the current element to the model classes. The whole {@link GpxType} is never materialized, so
+ * files of any size can be read in constant memory.
+ *
+ * <p>Metadata, waypoints and routes are bound as a whole. Tracks are split into a start event
+ * (with all values of the track except the segments), the segment events and the track points.
+ *
+ * <p>A reader is not thread safe.
+ *
+ * @author Christian Bremer
+ */
+public class GpxStreamReader implements Closeable {
+
+  private static final String NAMESPACE = GpxJaxbContextDataProvider.NAMESPACE;
+
+  private final XMLStreamReader reader;
+
+  private final Unmarshaller unmarshaller;
+
+  private final Closeable source;
+
+  private State state = State.DOCUMENT;
+
+  private boolean reuseCurrentEvent;
+
+  private GpxStreamEvent nextEvent;
+
+  private GpxType gpx;
+
+  private TrkType track;
+
+  private TrksegType segment;
+
+  private int waypointIndex = -1;
+
+  private int routeIndex = -1;
+
+  private int trackIndex = -1;
+
+  private int segmentIndex = -1;
+
+  private int pointIndex = -1;
+
+  private enum State {
+    DOCUMENT, GPX, TRACK, SEGMENT, FINISHED
+  }
+
+  /**
+   * Instantiates a new gpx stream reader.
+   *
+   * @param reader the xml stream reader
+   * @param unmarshaller the unmarshaller
+   * @param source the source that will be closed together with this reader, may be {@code null}
+   */
+  protected GpxStreamReader(XMLStreamReader reader, Unmarshaller unmarshaller, Closeable source) {
+    this.reader = Objects.requireNonNull(reader, "XML stream reader must be present.");
+    this.unmarshaller = Objects.requireNonNull(unmarshaller, "Unmarshaller must be present.");
+    this.source = source;
+  }
+
+  /**
+   * Creates a new gpx stream reader. The input stream will not be closed by the reader.
+   *
+   * @param inputStream the input stream
+   * @param jaxbContext the jaxb context
+   * @return the gpx stream reader
+   */
+  public static GpxStreamReader newInstance(InputStream inputStream, JAXBContext jaxbContext) {
+    try {
+      Unmarshaller unmarshaller = UnmarshallerPool.defaultPool().borrow(jaxbContext);
+      return newInstance(
+          createXmlInputFactory().createXMLStreamReader(inputStream),
+          unmarshaller,
+          releasing(jaxbContext, unmarshaller, null));
+    } catch (XMLStreamException | JAXBException e) {
+      throw new GpxStreamException("Creating gpx stream reader failed.", e);
+    }
+  }
+
+  /**
+   * Creates a new gpx stream reader. The reader will not be closed by the gpx stream reader.
+   *
+   * @param reader the reader
+   * @param jaxbContext the jaxb context
+   * @return the gpx stream reader
+   */
+  public static GpxStreamReader newInstance(Reader reader, JAXBContext jaxbContext) {
+    try {
+      Unmarshaller unmarshaller = UnmarshallerPool.defaultPool().borrow(jaxbContext);
+      return newInstance(
+          createXmlInputFactory().createXMLStreamReader(reader),
+          unmarshaller,
+          releasing(jaxbContext, unmarshaller, null));
+    } catch (XMLStreamException | JAXBException e) {
+      throw new GpxStreamException("Creating gpx stream reader failed.", e);
+    }
+  }
+
+  /**
+   * Creates a new gpx stream reader of the given file. The file will be closed, when the gpx
+   * stream reader is closed. A gzip or zlib compressed file is decompressed (see
+   * {@link GpxCompression#decompress(Path)}).
+   *
+   * @param file the file
+   * @param jaxbContext the jaxb context
+   * @return the gpx stream reader
+   */
+  public static GpxStreamReader newInstance(Path file, JAXBContext jaxbContext) {
+    InputStream inputStream = null;
+    try {
+      inputStream = GpxCompression.decompress(file);
+      Unmarshaller unmarshaller = UnmarshallerPool.defaultPool().borrow(jaxbContext);
+      return newInstance(
+          createXmlInputFactory().createXMLStreamReader(inputStream),
+          unmarshaller,
+          releasing(jaxbContext, unmarshaller, inputStream));
+    } catch (XMLStreamException | JAXBException | GpxStreamException e) {
+      closeQuietly(inputStream);
+      throw new GpxStreamException("Creating gpx stream reader of file " + file + " failed.", e);
+    }
+  }
+
+  /**
+   * Creates a new gpx stream reader.
+   *
+   * @param reader the xml stream reader
+   * @param unmarshaller the unmarshaller
+   * @param source the source that will be closed together with the reader, may be {@code null}
+   * @return the gpx stream reader
+   */
+  public static GpxStreamReader newInstance(
+      XMLStreamReader reader,
+      Unmarshaller unmarshaller,
+      Closeable source) {
+    return new GpxStreamReader(reader, unmarshaller, source);
+  }
+
+  /**
+   * Creates a xml input factory, that does not support dtd and external entities.
+   *
+   * @return the xml input factory
+   */
+  static XMLInputFactory createXmlInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newFactory();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+    return factory;
+  }
+
+  /**
+   * Determines whether there is another event.
+   *
+   * @return {@code true} if there is another event, otherwise {@code false}
+   */
+  public boolean hasNext() {
+    if (nextEvent == null) {
+      nextEvent = readNextEvent();
+    }
+    return nextEvent != null;
+  }
+
+  /**
+   * Gets the next event.
+   *
+   * @return the next event
+   * @throws NoSuchElementException if there are no more events
+   */
+  public GpxStreamEvent next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException("There are no more gpx stream events.");
+    }
+    GpxStreamEvent event = nextEvent;
+    nextEvent = null;
+    return event;
+  }
+
+  /**
+   * Reads all remaining events and pushes them to the given handler.
+   *
+   * @param handler the handler
+   */
+  public void read(GpxStreamHandler handler) {
+    while (hasNext()) {
+      GpxStreamEvent event = next();
+      switch (event.getType()) {
+        case START_GPX:
+          handler.startGpx(event.getGpx());
+          break;
+        case METADATA:
+          handler.metadata(event.getMetadata());
+          break;
+        case WAYPOINT:
+          handler.waypoint(event.getWaypoint(), event.getPointIndex());
+          break;
+        case ROUTE:
+          handler.route(event.getRoute(), event.getPointIndex());
+          break;
+        case START_TRACK:
+          handler.startTrack(event.getTrack(), event.getTrackIndex());
+          break;
+        case START_SEGMENT:
+          handler.startSegment(event.getTrackIndex(), event.getSegmentIndex());
+          break;
+        case TRACK_POINT:
+          handler.trackPoint(event.getTrackPoint(), event.getTrackIndex(),
+              event.getSegmentIndex(), event.getPointIndex());
+          break;
+        case END_SEGMENT:
+          handler.endSegment(event.getSegment(), event.getTrackIndex(),
+              event.getSegmentIndex());
+          break;
+        case END_TRACK:
+          handler.endTrack(event.getTrack(), event.getTrackIndex());
+          break;
+        default:
+          handler.endGpx(event.getGpx(), event.getExtensions());
+      }
+    }
+  }
+
+  private GpxStreamEvent readNextEvent() {
+    try {
+      while (state != State.FINISHED && hasNextXmlEvent()) {
+        int xmlEvent = nextXmlEvent();
+        if (xmlEvent == XMLStreamConstants.START_ELEMENT) {
+          GpxStreamEvent event = startElement();
+          if (event != null) {
+            return event;
+          }
+        } else if (xmlEvent == XMLStreamConstants.END_ELEMENT) {
+          GpxStreamEvent event = endElement();
+          if (event != null) {
+            return event;
+          }
+        }
+      }
+      return null;
+
+    } catch (XMLStreamException | JAXBException e) {
+      throw new GpxStreamException("Reading gpx stream failed.", e);
+    }
+  }
+
+  private boolean hasNextXmlEvent() throws XMLStreamException {
+    return reuseCurrentEvent || reader.hasNext();
+  }
+
+  private int nextXmlEvent() throws XMLStreamException {
+    if (reuseCurrentEvent) {
+      reuseCurrentEvent = false;
+      return reader.getEventType();
+    }
+    return reader.next();
+  }
+
+  private GpxStreamEvent startElement() throws XMLStreamException, JAXBException {
+    String name = isGpxElement() ? reader.getLocalName() : "";
+    switch (state) {
+      case DOCUMENT:
+        if ("gpx".equals(name)) {
+          gpx = new GpxType();
+          gpx.setVersion(reader.getAttributeValue(null, "version"));
+          gpx.setCreator(reader.getAttributeValue(null, "creator"));
+          state = State.GPX;
+          return new GpxStreamEvent(Type.START_GPX, gpx, -1, -1, -1);
+        }
+        throw new GpxStreamException("Document is not a gpx document, root element is "
+            + reader.getName() + ".");
+      case GPX:
+        return startGpxChild(name);
+      case TRACK:
+        if ("trkseg".equals(name)) {
+          segment = new TrksegType();
+          segmentIndex++;
+          pointIndex = -1;
+          state = State.SEGMENT;
+          return new GpxStreamEvent(Type.START_SEGMENT, segment, trackIndex, segmentIndex, -1);
+        }
+        skipElement();
+        return null;
+      case SEGMENT:
+        if ("trkpt".equals(name)) {
+          pointIndex++;
+          return new GpxStreamEvent(Type.TRACK_POINT, unmarshal(WptType.class),
+              trackIndex, segmentIndex, pointIndex);
+        }
+        if ("extensions".equals(name)) {
+          segment.setExtensions(unmarshal(ExtensionsType.class));
+        } else {
+          skipElement();
+        }
+        return null;
+      default:
+        return null;
+    }
+  }
+
+  private GpxStreamEvent startGpxChild(String name) throws XMLStreamException, JAXBException {
+    switch (name) {
+      case "metadata":
+        return new GpxStreamEvent(Type.METADATA, unmarshal(MetadataType.class), -1, -1, -1);
+      case "wpt":
+        waypointIndex++;
+        return new GpxStreamEvent(Type.WAYPOINT, unmarshal(WptType.class),
+            -1, -1, waypointIndex);
+      case "rte":
+        routeIndex++;
+        return new GpxStreamEvent(Type.ROUTE, unmarshal(RteType.class),
+            -1, -1, routeIndex);
+      case "trk":
+        trackIndex++;
+        segmentIndex = -1;
+        track = readTrackHeader();
+        state = State.TRACK;
+        return new GpxStreamEvent(Type.START_TRACK, track, trackIndex, -1, -1);
+      case "extensions":
+        gpx.setExtensions(unmarshal(ExtensionsType.class));
+        return null;
+      default:
+        skipElement();
+        return null;
+    }
+  }
+
+  private GpxStreamEvent endElement() {
+    switch (state) {
+      case SEGMENT:
+        state = State.TRACK;
+        return new GpxStreamEvent(Type.END_SEGMENT, segment, trackIndex, segmentIndex, -1);
+      case TRACK:
+        state = State.GPX;
+        return new GpxStreamEvent(Type.END_TRACK, track, trackIndex, -1, -1);
+      case GPX:
+        state = State.FINISHED;
+        return new GpxStreamEvent(Type.END_GPX, gpx, -1, -1, -1);
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Reads the child elements of a track until the first segment or the end of the track. The
+   * reader will stay on the start element of the first segment or the end element of the track.
+   */
+  private TrkType readTrackHeader() throws XMLStreamException, JAXBException {
+    TrkType trk = new TrkType();
+    while (hasNextXmlEvent()) {
+      int xmlEvent = nextXmlEvent();
+      if (xmlEvent == XMLStreamConstants.END_ELEMENT) {
+        reuseCurrentEvent = true;
+        return trk;
+      }
+      if (xmlEvent == XMLStreamConstants.START_ELEMENT) {
+        String name = isGpxElement() ? reader.getLocalName() : "";
+        switch (name) {
+          case "name":
+            trk.setName(reader.getElementText());
+            break;
+          case "cmt":
+            trk.setCmt(reader.getElementText());
+            break;
+          case "desc":
+            trk.setDesc(reader.getElementText());
+            break;
+          case "src":
+            trk.setSrc(reader.getElementText());
+            break;
+          case "link":
+            trk.getLinks().add(unmarshal(LinkType.class));
+            break;
+          case "number":
+            trk.setNumber(new BigInteger(reader.getElementText().trim()));
+            break;
+          case "type":
+            trk.setType(reader.getElementText());
+            break;
+          case "extensions":
+            trk.setExtensions(unmarshal(ExtensionsType.class));
+            break;
+          case "trkseg":
+            reuseCurrentEvent = true;
+            return trk;
+          default:
+            skipElement();
+        }
+      }
+    }
+    return trk;
+  }
+
+  private boolean isGpxElement() {
+    return NAMESPACE.equals(reader.getNamespaceURI())
+        || XMLConstants.NULL_NS_URI.equals(reader.getNamespaceURI());
+  }
+
+  /**
+   * Unmarshals the current element. Afterwards the reader is positioned on the event after the
+   * end element, so that event must be processed next.
+   */
+  private <T> T unmarshal(Class<T> cls) throws JAXBException {
+    T value = unmarshaller.unmarshal(reader, cls).getValue();
+    reuseCurrentEvent = true;
+    return value;
+  }
+
+  private void skipElement() throws XMLStreamException {
+    int depth = 1;
+    while (depth > 0 && reader.hasNext()) {
+      int xmlEvent = reader.next();
+      if (xmlEvent == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      } else if (xmlEvent == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      reader.close();
+    } catch (XMLStreamException e) {
+      throw new IOException("Closing xml stream reader failed.", e);
+    } finally {
+      if (source != null) {
+        source.close();
+      }
+    }
+  }
+
+  private static Closeable releasing(
+      JAXBContext jaxbContext,
+      Unmarshaller unmarshaller,
+      Closeable source) {
+    return () -> {
+      try {
+        if (source != null) {
+          source.close();
+        }
+      } finally {
+        UnmarshallerPool.defaultPool().release(jaxbContext, unmarshaller);
+      }
+    };
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      } catch (IOException ignored) {
+        // ignored
+      }
+    }
+  }
+
+}
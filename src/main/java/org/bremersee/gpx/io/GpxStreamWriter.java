@@ -0,0 +1,962 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx.io;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBElement;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import org.bremersee.gpx.GpxJaxbContextDataProvider;
+import org.bremersee.gpx.model.CopyrightType;
+import org.bremersee.gpx.model.ExtensionsType;
+import org.bremersee.gpx.model.Gpx;
+import org.bremersee.gpx.model.GpxType;
+import org.bremersee.gpx.model.LinkType;
+import org.bremersee.gpx.model.MetadataType;
+import org.bremersee.gpx.model.PersonType;
+import org.bremersee.gpx.model.RteType;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.TrksegType;
+import org.bremersee.gpx.model.WptType;
+
+/**
+ * An incremental GPX writer. The gpx element is opened with {@link #startGpx(String)}, then
+ * metadata, waypoints, routes and tracks can be pushed in the order of the GPX schema. Tracks can
+ * be written as a whole or point by point into open track and segment scopes. Everything is
+ * written through to the underlying output, so the memory usage does not depend on the size of
+ * the document.
+ *
+ * <p>The elements are marshalled with the given {@link Marshaller} (or a marshaller of the given
+ * {@link JAXBContext}) and the gpx element gets the same namespace declarations as if the whole
+ * {@link GpxType} were marshalled, so the result is the same document as produced by JAXB.
+ *
+ * <p>With {@link #withComputedBounds()} the writer computes the bounds of the metadata from all
+ * written waypoints, route points and track points. Because the bounds must be written before
+ * the points, the writer reserves space for them in the metadata and writes them into this
+ * space, when the gpx element is closed, if the writer was created for a file or a
+ * {@link FileChannel}. Otherwise everything after the bounds is spooled into a temporary file,
+ * that is copied into the output after the bounds.
+ *
+ * <p>A writer is not thread safe.
+ *
+ * @author Christian Bremer
+ */
+public class GpxStreamWriter implements Closeable, Flushable {
+
+  private static final String NAMESPACE = GpxJaxbContextDataProvider.NAMESPACE;
+
+  private static final String XML_DECLARATION
+      = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>";
+
+  private final Writer output;
+
+  private final Marshaller marshaller;
+
+  private final Closeable target;
+
+  private final FileChannel channel;
+
+  private Writer sink;
+
+  private XMLStreamWriter writer;
+
+  private String prefix = XMLConstants.DEFAULT_NS_PREFIX;
+
+  private String rootEndTag;
+
+  private State state = State.INITIAL;
+
+  private BoundsCollector bounds;
+
+  private Path spoolDirectory;
+
+  private Path spoolFile;
+
+  private long boundsPosition = -1L;
+
+  private int boundsLength;
+
+  private enum State {
+    INITIAL, GPX, WAYPOINTS, ROUTES, TRACKS, TRACK, SEGMENT, ENDED
+  }
+
+  /**
+   * Instantiates a new gpx stream writer.
+   *
+   * @param output the output
+   * @param marshaller the marshaller
+   * @param target the target that will be closed together with this writer, may be {@code null}
+   */
+  protected GpxStreamWriter(Writer output, Marshaller marshaller, Closeable target) {
+    this(output, marshaller, target, null);
+  }
+
+  /**
+   * Instantiates a new gpx stream writer.
+   *
+   * @param output the output
+   * @param marshaller the marshaller
+   * @param target the target that will be closed together with this writer, may be {@code null}
+   * @param channel the file channel, the output writes into; it is used to write the computed
+   *     bounds into the reserved space of the metadata, may be {@code null}
+   */
+  protected GpxStreamWriter(
+      Writer output,
+      Marshaller marshaller,
+      Closeable target,
+      FileChannel channel) {
+    this.output = Objects.requireNonNull(output, "Output must be present.");
+    this.marshaller = Objects.requireNonNull(marshaller, "Marshaller must be present.");
+    this.target = target;
+    this.channel = channel;
+    this.sink = output;
+  }
+
+  /**
+   * Creates a new gpx stream writer, that writes UTF-8 encoded xml to the given output stream.
+   * The output stream will not be closed by the writer.
+   *
+   * @param outputStream the output stream
+   * @param jaxbContext the jaxb context
+   * @return the gpx stream writer
+   */
+  public static GpxStreamWriter newInstance(OutputStream outputStream, JAXBContext jaxbContext) {
+    return newInstance(outputStream, createMarshaller(jaxbContext));
+  }
+
+  /**
+   * Creates a new gpx stream writer, that writes UTF-8 encoded xml to the given output stream.
+   * The output stream will not be closed by the writer. The marshaller will be switched into
+   * fragment mode.
+   *
+   * @param outputStream the output stream
+   * @param marshaller the marshaller
+   * @return the gpx stream writer
+   */
+  public static GpxStreamWriter newInstance(OutputStream outputStream, Marshaller marshaller) {
+    return new GpxStreamWriter(
+        new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8)),
+        marshaller,
+        null);
+  }
+
+  /**
+   * Creates a new gpx stream writer. The writer will not be closed by the gpx stream writer.
+   *
+   * @param writer the writer
+   * @param jaxbContext the jaxb context
+   * @return the gpx stream writer
+   */
+  public static GpxStreamWriter newInstance(Writer writer, JAXBContext jaxbContext) {
+    return new GpxStreamWriter(writer, createMarshaller(jaxbContext), null);
+  }
+
+  /**
+   * Creates a new gpx stream writer, that writes UTF-8 encoded xml into the given file. The file
+   * will be closed, when the gpx stream writer is closed. If the name of the file has the
+   * extension of a compression (see {@link GpxCompression#forFileName(Path)}), the file is
+   * compressed; computed bounds are then written with a temporary file.
+   *
+   * @param file the file
+   * @param jaxbContext the jaxb context
+   * @return the gpx stream writer
+   */
+  public static GpxStreamWriter newInstance(Path file, JAXBContext jaxbContext) {
+    GpxCompression compression = GpxCompression.forFileName(file);
+    if (compression != GpxCompression.NONE) {
+      Marshaller marshaller = createMarshaller(jaxbContext);
+      OutputStream outputStream = compression.compress(file);
+      return new GpxStreamWriter(
+          new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8)),
+          marshaller,
+          outputStream);
+    }
+    try {
+      FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+          StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+      return new GpxStreamWriter(
+          new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8)),
+          createMarshaller(jaxbContext),
+          channel,
+          channel);
+    } catch (IOException e) {
+      throw new GpxStreamException("Creating gpx stream writer of file " + file + " failed.", e);
+    }
+  }
+
+  /**
+   * Creates a new gpx stream writer, that writes UTF-8 encoded xml into the given file channel
+   * starting at its current position. The channel will not be closed by the writer.
+   *
+   * @param channel the file channel
+   * @param jaxbContext the jaxb context
+   * @return the gpx stream writer
+   */
+  public static GpxStreamWriter newInstance(FileChannel channel, JAXBContext jaxbContext) {
+    return new GpxStreamWriter(
+        new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8)),
+        createMarshaller(jaxbContext),
+        null,
+        channel);
+  }
+
+  private static Marshaller createMarshaller(JAXBContext jaxbContext) {
+    try {
+      return jaxbContext.createMarshaller();
+    } catch (JAXBException e) {
+      throw new GpxStreamException("Creating marshaller failed.", e);
+    }
+  }
+
+  /**
+   * Computes the bounds of the metadata from the written points. This must be called before the
+   * gpx element is opened. Bounds of the metadata, that is passed to
+   * {@link #writeMetadata(MetadataType)}, are ignored. If the writer does not write into a file
+   * channel, the temporary file is created in the default temporary directory.
+   *
+   * @return the gpx stream writer
+   */
+  public GpxStreamWriter withComputedBounds() {
+    return withComputedBounds(null);
+  }
+
+  /**
+   * Computes the bounds of the metadata from the written points. This must be called before the
+   * gpx element is opened. Bounds of the metadata, that is passed to
+   * {@link #writeMetadata(MetadataType)}, are ignored.
+   *
+   * @param spoolDirectory the directory of the temporary file, that is used, if the writer
+   *     does not write into a file channel; if it is {@code null}, the default temporary
+   *     directory is used
+   * @return the gpx stream writer
+   */
+  public GpxStreamWriter withComputedBounds(Path spoolDirectory) {
+    assertState("withComputedBounds", State.INITIAL);
+    this.bounds = new BoundsCollector();
+    this.spoolDirectory = spoolDirectory;
+    if (channel == null && !(sink instanceof SwitchableWriter)) {
+      sink = new SwitchableWriter(output);
+    }
+    return this;
+  }
+
+  /**
+   * Opens the gpx element with version {@code 1.1}.
+   *
+   * @param creator the creator
+   * @return the gpx stream writer
+   */
+  public GpxStreamWriter startGpx(String creator) {
+    GpxType gpx = new GpxType();
+    gpx.setCreator(creator);
+    return startGpx(gpx);
+  }
+
+  /**
+   * Opens the gpx element with the version and the creator of the given gpx. Other values of the
+   * given gpx are ignored.
+   *
+   * @param gpx the gpx
+   * @return the gpx stream writer
+   */
+  public GpxStreamWriter startGpx(GpxType gpx) {
+    assertState("startGpx", State.INITIAL);
+    Gpx root = new Gpx();
+    root.setVersion(gpx.getVersion());
+    root.setCreator(gpx.getCreator());
+    try {
+      // Let JAXB produce the root element to get the same attributes and namespace declarations.
+      StringWriter probe = new StringWriter();
+      marshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
+      marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, false);
+      marshaller.marshal(root, probe);
+      String startTag = startTag(probe.toString());
+
+      sink.write(XML_DECLARATION);
+      sink.write(startTag);
+      writer = XMLOutputFactory.newFactory().createXMLStreamWriter(sink);
+      declareNamespaces(startTag);
+      state = State.GPX;
+      return this;
+
+    } catch (JAXBException | XMLStreamException | IOException e) {
+      throw new GpxStreamException("Writing gpx start element failed.", e);
+    }
+  }
+
+  /**
+   * Gets the start tag of the given element.
+   */
+  private static String startTag(String xml) {
+    int end = xml.indexOf('>');
+    char quote = 0;
+    for (int i = 0; i < xml.length(); i++) {
+      char c = xml.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+      } else if (c == '"' || c == '\'') {
+        quote = c;
+      } else if (c == '>') {
+        end = i;
+        break;
+      }
+    }
+    String startTag = xml.substring(0, end + 1);
+    if (startTag.endsWith("/>")) {
+      startTag = startTag.substring(0, startTag.length() - 2) + '>';
+    }
+    return startTag;
+  }
+
+  private void declareNamespaces(String startTag) throws XMLStreamException {
+    rootEndTag = "</" + startTag.substring(1).split("[\\s/>]", 2)[0] + '>';
+    XMLStreamReader reader = GpxStreamReader.createXmlInputFactory()
+        .createXMLStreamReader(new StringReader(startTag + rootEndTag));
+    while (reader.next() != XMLStreamConstants.START_ELEMENT) {
+      // advance to the root element
+    }
+    Map<String, String> bindings = new LinkedHashMap<>();
+    for (int i = 0; i < reader.getNamespaceCount(); i++) {
+      String p = reader.getNamespacePrefix(i);
+      bindings.put(p == null ? XMLConstants.DEFAULT_NS_PREFIX : p, reader.getNamespaceURI(i));
+    }
+    prefix = reader.getPrefix() == null ? XMLConstants.DEFAULT_NS_PREFIX : reader.getPrefix();
+    reader.close();
+    for (Map.Entry<String, String> binding : bindings.entrySet()) {
+      if (binding.getKey().isEmpty()) {
+        writer.setDefaultNamespace(binding.getValue());
+      } else {
+        writer.setPrefix(binding.getKey(), binding.getValue());
+      }
+    }
+  }
+
+  /**
+   * Writes the metadata. This must be done before anything else is written.
+   *
+   * @param metadata the metadata
+   * @return the gpx stream writer
+   */
+  public GpxStreamWriter writeMetadata(MetadataType metadata) {
+    assertState("writeMetadata", State.GPX);
+    if (bounds != null) {
+      writeMetadataAndReserveBounds(metadata);
+    } else {
+      marshal("metadata", MetadataType.class, metadata);
+    }
+    state = State.WAYPOINTS;
+    return this;
+  }
+
+  /**
+   * Writes the metadata element by element and reserves the space of the bounds, i.e. either
+   * remembers the position of a placeholder in the file channel or switches the output into the
+   * spool file.
+   */
+  private void writeMetadataAndReserveBounds(MetadataType metadata) {
+    try {
+      writer.writeStartElement(prefix, "metadata", NAMESPACE);
+      if (metadata != null) {
+        writeText("name", metadata.getName());
+        writeText("desc", metadata.getDesc());
+        marshal("author", PersonType.class, metadata.getAuthor());
+        marshal("copyright", CopyrightType.class, metadata.getCopyright());
+        for (LinkType link : metadata.getLinks()) {
+          marshal("link", LinkType.class, link);
+        }
+        writeText("time", metadata.getTime() != null ? metadata.getTime().toXMLFormat() : null);
+        writeText("keywords", metadata.getKeywords());
+      }
+      // An empty text closes the start tag, so everything before the bounds can be flushed.
+      writer.writeCharacters("");
+      writer.flush();
+      sink.flush();
+      if (channel != null) {
+        boundsPosition = channel.position();
+        boundsLength = bounds.getMaxLength(prefix);
+        sink.write(" ".repeat(boundsLength));
+      } else {
+        spoolFile = spoolDirectory != null
+            ? Files.createTempFile(spoolDirectory, "gpx-", ".spool")
+            : Files.createTempFile("gpx-", ".spool");
+        ((SwitchableWriter) sink).delegate = Files
+            .newBufferedWriter(spoolFile, StandardCharsets.UTF_8);
+      }
+      if (metadata != null && metadata.getExtensions() != null) {
+        marshal("extensions", ExtensionsType.class, metadata.getExtensions());
+      }
+      writer.writeEndElement();
+
+    } catch (XMLStreamException | IOException e) {
+      throw new GpxStreamException("Writing metadata failed.", e);
+    }
+  }
+
+  /**
+   * Writes the metadata with the reserved bounds, if bounds are computed and the metadata was not
+   * written yet.
+   */
+  private void reserveBounds() {
+    if (bounds != null && state == State.GPX) {
+      writeMetadata(null);
+    }
+  }
+
+  /**
+   * Writes a waypoint.
+   *
+   * @param waypoint the waypoint
+   * @return the gpx stream writer
+   */
+  public GpxStreamWriter writeWaypoint(WptType waypoint) {
+    assertState("writeWaypoint", State.GPX, State.WAYPOINTS);
+    reserveBounds();
+    marshal("wpt", WptType.class, waypoint);
+    if (bounds != null && waypoint != null) {
+      bounds.add(waypoint);
+    }
+    state = State.WAYPOINTS;
+    return this;
+  }
+
+  /**
+   * Writes a route.
+   *
+   * @param route the route
+   * @return the gpx stream writer
+   */
+  public GpxStreamWriter writeRoute(RteType route) {
+    assertState("writeRoute", State.GPX, State.WAYPOINTS, State.ROUTES);
+    reserveBounds();
+    marshal("rte", RteType.class, route);
+    if (bounds != null && route != null) {
+      route.getRtepts().forEach(bounds::add);
+    }
+    state = State.ROUTES;
+    return this;
+  }
+
+  /**
+   * Writes a complete track.
+   *
+   * @param track the track
+   * @return the gpx stream writer
+   */
+  public GpxStreamWriter writeTrack(TrkType track) {
+    assertState("writeTrack", State.GPX, State.WAYPOINTS, State.ROUTES, State.TRACKS);
+    reserveBounds();
+    marshal("trk", TrkType.class, track);
+    if (bounds != null && track != null) {
+      for (TrksegType segment : track.getTrksegs()) {
+        segment.getTrkpts().forEach(bounds::add);
+      }
+    }
+    state = State.TRACKS;
+    return this;
+  }
+
+  /**
+   * Opens a track and writes all values of the given track except its segments. Segments can
+   * then be written with {@link #writeSegment(TrksegType)} or {@link #startSegment()}.
+   *
+   * @param track the track
+   * @return the gpx stream writer
+   */
+  public GpxStreamWriter startTrack(TrkType track) {
+    assertState("startTrack", State.GPX, State.WAYPOINTS, State.ROUTES, State.TRACKS);
+    reserveBounds();
+    try {
+      writer.writeStartElement(prefix, "trk", NAMESPACE);
+      writeText("name", track.getName());
+      writeText("cmt", track.getCmt());
+      writeText("desc", track.getDesc());
+      writeText("src", track.getSrc());
+      for (LinkType link : track.getLinks()) {
+        marshal("link", LinkType.class, link);
+      }
+      writeText("number", track.getNumber() != null ? track.getNumber().toString() : null);
+      writeText("type", track.getType());
+      if (track.getExtensions() != null) {
+        marshal("extensions", ExtensionsType.class, track.getExtensions());
+      }
+      state = State.TRACK;
+      return this;
+
+    } catch (XMLStreamException e) {
+      throw new GpxStreamException("Writing track start failed.", e);
+    }
+  }
+
+  /**
+   * Writes a complete segment into the open track.
+   *
+   * @param segment the segment
+   * @return the gpx stream writer
+   */
+  public GpxStreamWriter writeSegment(TrksegType segment) {
+    assertState("writeSegment", State.TRACK);
+    marshal("trkseg", TrksegType.class, segment);
+    if (bounds != null && segment != null) {
+      segment.getTrkpts().forEach(bounds::add);
+    }
+    return this;
+  }
+
+  /**
+   * Opens a segment in the open track.
+   *
+   * @return the gpx stream writer
+   */
+  public GpxStreamWriter startSegment() {
+    assertState("startSegment", State.TRACK);
+    try {
+      writer.writeStartElement(prefix, "trkseg", NAMESPACE);
+      state = State.SEGMENT;
+      return this;
+
+    } catch (XMLStreamException e) {
+      throw new GpxStreamException("Writing segment start failed.", e);
+    }
+  }
+
+  /**
+   * Writes a track point into the open segment.
+   *
+   * @param trackPoint the track point
+   * @return the gpx stream writer
+   */
+  public GpxStreamWriter writeTrackPoint(WptType trackPoint) {
+    assertState("writeTrackPoint", State.SEGMENT);
+    marshal("trkpt", WptType.class, trackPoint);
+    if (bounds != null && trackPoint != null) {
+      bounds.add(trackPoint);
+    }
+    return this;
+  }
+
+  /**
+   * Closes the open segment.
+   *
+   * @return the gpx stream writer
+   */
+  public GpxStreamWriter endSegment() {
+    return endSegment(null);
+  }
+
+  /**
+   * Closes the open segment and writes the given extensions of the segment before.
+   *
+   * @param extensions the extensions of the segment, may be {@code null}
+   * @return the gpx stream writer
+   */
+  public GpxStreamWriter endSegment(ExtensionsType extensions) {
+    assertState("endSegment", State.SEGMENT);
+    if (extensions != null) {
+      marshal("extensions", ExtensionsType.class, extensions);
+    }
+    writeEndElement();
+    state = State.TRACK;
+    return this;
+  }
+
+  /**
+   * Closes the open track (and the open segment, if there is one).
+   *
+   * @return the gpx stream writer
+   */
+  public GpxStreamWriter endTrack() {
+    if (state == State.SEGMENT) {
+      endSegment();
+    }
+    assertState("endTrack", State.TRACK);
+    writeEndElement();
+    state = State.TRACKS;
+    return this;
+  }
+
+  /**
+   * Closes the gpx element.
+   *
+   * @return the gpx stream writer
+   */
+  public GpxStreamWriter endGpx() {
+    return endGpx(null);
+  }
+
+  /**
+   * Closes the gpx element (and the open segment and track, if there are some) and writes the
+   * given extensions of the gpx before.
+   *
+   * @param extensions the extensions of the gpx, may be {@code null}
+   * @return the gpx stream writer
+   */
+  public GpxStreamWriter endGpx(ExtensionsType extensions) {
+    if (state == State.SEGMENT || state == State.TRACK) {
+      endTrack();
+    }
+    assertState("endGpx",
+        State.GPX, State.WAYPOINTS, State.ROUTES, State.TRACKS);
+    reserveBounds();
+    if (extensions != null) {
+      marshal("extensions", ExtensionsType.class, extensions);
+    }
+    try {
+      writer.flush();
+      sink.write(rootEndTag);
+      sink.flush();
+      if (bounds != null) {
+        writeBounds();
+      }
+      output.flush();
+      state = State.ENDED;
+      return this;
+
+    } catch (XMLStreamException | IOException e) {
+      throw new GpxStreamException("Writing gpx end element failed.", e);
+    }
+  }
+
+  /**
+   * Writes the computed bounds into the reserved space of the file channel or writes them into
+   * the output followed by the content of the spool file.
+   */
+  private void writeBounds() throws IOException {
+    String element = bounds.toElement(prefix);
+    if (channel != null) {
+      ByteBuffer buffer = ByteBuffer.allocate(boundsLength);
+      buffer.put(element.getBytes(StandardCharsets.UTF_8));
+      while (buffer.hasRemaining()) {
+        buffer.put((byte) ' ');
+      }
+      buffer.flip();
+      long position = boundsPosition;
+      while (buffer.hasRemaining()) {
+        position += channel.write(buffer, position);
+      }
+    } else {
+      SwitchableWriter switchable = (SwitchableWriter) sink;
+      switchable.delegate.close();
+      switchable.delegate = output;
+      output.write(element);
+      try (Reader reader = Files.newBufferedReader(spoolFile, StandardCharsets.UTF_8)) {
+        reader.transferTo(output);
+      }
+      Files.delete(spoolFile);
+      spoolFile = null;
+    }
+  }
+
+  /**
+   * Returns a handler, that writes everything it receives into this writer. This can be used to
+   * pipe a {@link GpxStreamReader} into this writer.
+   *
+   * @return the gpx stream handler
+   */
+  public GpxStreamHandler asHandler() {
+    return new GpxStreamHandler() {
+      @Override
+      public void startGpx(GpxType gpx) {
+        GpxStreamWriter.this.startGpx(gpx);
+      }
+
+      @Override
+      public void metadata(MetadataType metadata) {
+        writeMetadata(metadata);
+      }
+
+      @Override
+      public void waypoint(WptType waypoint, int index) {
+        writeWaypoint(waypoint);
+      }
+
+      @Override
+      public void route(RteType route, int index) {
+        writeRoute(route);
+      }
+
+      @Override
+      public void startTrack(TrkType track, int trackIndex) {
+        GpxStreamWriter.this.startTrack(track);
+      }
+
+      @Override
+      public void startSegment(int trackIndex, int segmentIndex) {
+        GpxStreamWriter.this.startSegment();
+      }
+
+      @Override
+      public void trackPoint(WptType trackPoint, int trackIndex, int segmentIndex,
+          int pointIndex) {
+        writeTrackPoint(trackPoint);
+      }
+
+      @Override
+      public void endSegment(TrksegType segment, int trackIndex, int segmentIndex) {
+        GpxStreamWriter.this.endSegment(segment.getExtensions());
+      }
+
+      @Override
+      public void endTrack(TrkType track, int trackIndex) {
+        GpxStreamWriter.this.endTrack();
+      }
+
+      @Override
+      public void endGpx(GpxType gpx, ExtensionsType extensions) {
+        GpxStreamWriter.this.endGpx(extensions);
+      }
+    };
+  }
+
+  private void assertState(String operation, State... allowed) {
+    for (State s : allowed) {
+      if (s == state) {
+        return;
+      }
+    }
+    throw new IllegalStateException("Operation '" + operation
+        + "' is not allowed in state " + state + ".");
+  }
+
+  private <T> void marshal(String localName, Class<T> type, T value) {
+    if (value == null) {
+      return;
+    }
+    try {
+      marshaller.marshal(new JAXBElement<>(new QName(NAMESPACE, localName), type, value), writer);
+    } catch (JAXBException e) {
+      throw new GpxStreamException("Writing element '" + localName + "' failed.", e);
+    }
+  }
+
+  private void writeText(String localName, String value) throws XMLStreamException {
+    if (value != null) {
+      writer.writeStartElement(prefix, localName, NAMESPACE);
+      writer.writeCharacters(value);
+      writer.writeEndElement();
+    }
+  }
+
+  private void writeEndElement() {
+    try {
+      writer.writeEndElement();
+    } catch (XMLStreamException e) {
+      throw new GpxStreamException("Writing end element failed.", e);
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    try {
+      if (writer != null) {
+        writer.flush();
+      }
+      sink.flush();
+      output.flush();
+    } catch (XMLStreamException e) {
+      throw new IOException("Flushing xml stream writer failed.", e);
+    }
+  }
+
+  /**
+   * Closes the gpx element, if it is open, and flushes the output. The underlying output is only
+   * closed, if this writer was created for a file.
+   *
+   * @throws IOException if an I/O error occurs
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      if (state != State.INITIAL && state != State.ENDED) {
+        endGpx();
+      }
+      flush();
+      if (writer != null) {
+        writer.close();
+      }
+    } catch (XMLStreamException e) {
+      throw new IOException("Closing xml stream writer failed.", e);
+    } finally {
+      try {
+        if (spoolFile != null) {
+          ((SwitchableWriter) sink).delegate.close();
+          Files.deleteIfExists(spoolFile);
+          spoolFile = null;
+        }
+      } finally {
+        if (target != null) {
+          target.close();
+        }
+      }
+    }
+  }
+
+  /**
+   * A writer, that writes into an exchangeable delegate.
+   */
+  private static class SwitchableWriter extends Writer {
+
+    private Writer delegate;
+
+    private SwitchableWriter(Writer delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+      delegate.write(c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+      delegate.write(cbuf, off, len);
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+      delegate.write(str, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      delegate.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      delegate.close();
+    }
+  }
+
+  /**
+   * Collects the minimum and maximum coordinates of the written points.
+   */
+  private static class BoundsCollector {
+
+    /**
+     * The maximum number of characters of a coordinate in the reserved space.
+     */
+    private static final int MAX_VALUE_LENGTH = 24;
+
+    private BigDecimal minLat;
+
+    private BigDecimal minLon;
+
+    private BigDecimal maxLat;
+
+    private BigDecimal maxLon;
+
+    private void add(WptType point) {
+      BigDecimal lat = point.getLat();
+      BigDecimal lon = point.getLon();
+      if (lat == null || lon == null) {
+        return;
+      }
+      if (minLat == null) {
+        minLat = maxLat = lat;
+        minLon = maxLon = lon;
+        return;
+      }
+      if (lat.compareTo(minLat) < 0) {
+        minLat = lat;
+      } else if (lat.compareTo(maxLat) > 0) {
+        maxLat = lat;
+      }
+      if (lon.compareTo(minLon) < 0) {
+        minLon = lon;
+      } else if (lon.compareTo(maxLon) > 0) {
+        maxLon = lon;
+      }
+    }
+
+    /**
+     * Gets the maximum number of bytes of the bounds element.
+     */
+    private int getMaxLength(String prefix) {
+      return element(prefix, "", "", "", "").getBytes(StandardCharsets.UTF_8).length
+          + 4 * MAX_VALUE_LENGTH;
+    }
+
+    /**
+     * Creates the bounds element; the coordinates are rounded outwards, if they are too long for
+     * the reserved space. If there are no points, an empty string is returned.
+     */
+    private String toElement(String prefix) {
+      if (minLat == null) {
+        return "";
+      }
+      return element(prefix,
+          format(minLat, RoundingMode.FLOOR),
+          format(minLon, RoundingMode.FLOOR),
+          format(maxLat, RoundingMode.CEILING),
+          format(maxLon, RoundingMode.CEILING));
+    }
+
+    private static String format(BigDecimal value, RoundingMode roundingMode) {
+      String text = value.toPlainString();
+      BigDecimal rounded = value;
+      while (text.length() > MAX_VALUE_LENGTH && rounded.scale() > 0) {
+        rounded = rounded.setScale(
+            Math.max(0, rounded.scale() - (text.length() - MAX_VALUE_LENGTH)), roundingMode);
+        text = rounded.toPlainString();
+      }
+      return text;
+    }
+
+    private static String element(
+        String prefix,
+        String minLat,
+        String minLon,
+        String maxLat,
+        String maxLon) {
+      return '<' + (prefix.isEmpty() ? "" : prefix + ':') + "bounds"
+          + " minlat=\"" + minLat + "\" minlon=\"" + minLon
+          + "\" maxlat=\"" + maxLat + "\" maxlon=\"" + maxLon + "\"/>";
+    }
+  }
+
+}
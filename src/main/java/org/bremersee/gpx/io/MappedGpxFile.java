@@ -0,0 +1,199 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A read only, memory mapped file. Files larger than the maximum size of a
+ * {@link MappedByteBuffer} are mapped in several windows.
+ *
+ * @author Christian Bremer
+ */
+class MappedGpxFile implements Closeable {
+
+  private static final int WINDOW_SHIFT = 30;
+
+  private static final long WINDOW_SIZE = 1L << WINDOW_SHIFT;
+
+  private static final long WINDOW_MASK = WINDOW_SIZE - 1;
+
+  private final FileChannel channel;
+
+  private final MappedByteBuffer[] windows;
+
+  private final long size;
+
+  /**
+   * Maps the given file.
+   *
+   * @param file the file
+   * @throws IOException if the file cannot be mapped
+   */
+  MappedGpxFile(Path file) throws IOException {
+    channel = FileChannel.open(file, StandardOpenOption.READ);
+    try {
+      size = channel.size();
+      int count = (int) ((size + WINDOW_SIZE - 1) >>> WINDOW_SHIFT);
+      windows = new MappedByteBuffer[count];
+      for (int i = 0; i < count; i++) {
+        long position = i * WINDOW_SIZE;
+        windows[i] = channel.map(MapMode.READ_ONLY, position,
+            Math.min(WINDOW_SIZE, size - position));
+      }
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Gets the size of the file.
+   *
+   * @return the size
+   */
+  long size() {
+    return size;
+  }
+
+  /**
+   * Gets the byte at the given position.
+   *
+   * @param position the position
+   * @return the byte
+   */
+  byte get(long position) {
+    return windows[(int) (position >>> WINDOW_SHIFT)].get((int) (position & WINDOW_MASK));
+  }
+
+  /**
+   * Gets the bytes of the given range.
+   *
+   * @param start the start (inclusive)
+   * @param end the end (exclusive)
+   * @return the bytes
+   */
+  byte[] getBytes(long start, long end) {
+    byte[] bytes = new byte[(int) (end - start)];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = get(start + i);
+    }
+    return bytes;
+  }
+
+  /**
+   * Gets the given range as byte buffers, that share their content with the mapped file.
+   *
+   * @param start the start (inclusive)
+   * @param end the end (exclusive)
+   * @return the byte buffers
+   */
+  List<ByteBuffer> slice(long start, long end) {
+    if (start >= end) {
+      return Collections.emptyList();
+    }
+    List<ByteBuffer> buffers = new ArrayList<>(2);
+    long position = start;
+    while (position < end) {
+      int window = (int) (position >>> WINDOW_SHIFT);
+      int offset = (int) (position & WINDOW_MASK);
+      int length = (int) Math.min(end - position, windows[window].limit() - offset);
+      buffers.add(windows[window].slice(offset, length));
+      position += length;
+    }
+    return buffers;
+  }
+
+  /**
+   * Creates an input stream, that reads the given byte arrays and file ranges one after another.
+   *
+   * @param parts the parts, either byte arrays or ranges of this file as {@code long[2]}
+   * @return the input stream
+   */
+  InputStream openStream(List<?> parts) {
+    List<InputStream> streams = new ArrayList<>();
+    for (Object part : parts) {
+      if (part instanceof byte[]) {
+        streams.add(new ByteBufferInputStream(ByteBuffer.wrap((byte[]) part)));
+      } else {
+        long[] range = (long[]) part;
+        for (ByteBuffer buffer : slice(range[0], range[1])) {
+          streams.add(new ByteBufferInputStream(buffer));
+        }
+      }
+    }
+    return new SequenceInputStream(Collections.enumeration(streams));
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  /**
+   * An input stream of a byte buffer.
+   */
+  static class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer buffer;
+
+    /**
+     * Instantiates a new byte buffer input stream.
+     *
+     * @param buffer the buffer
+     */
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int n = Math.min(len, buffer.remaining());
+      buffer.get(b, off, n);
+      return n;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+
+}
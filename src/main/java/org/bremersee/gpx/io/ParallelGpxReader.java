@@ -0,0 +1,276 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx.io;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Unmarshaller;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.bremersee.gpx.UnmarshallerPool;
+import org.bremersee.gpx.io.GpxFileScanner.Layout;
+import org.bremersee.gpx.io.GpxFileScanner.Segment;
+import org.bremersee.gpx.model.GpxType;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.TrksegType;
+import org.bremersee.gpx.model.WptType;
+
+/**
+ * A GPX reader, that parses huge files concurrently.
+ *
+ * <p>The file is memory mapped and a fast byte scan locates the top level waypoints and the
+ * track segments; large segments are split further at track point boundaries. These regions are
+ * parsed concurrently on a {@link ForkJoinPool}. Each region is wrapped into copies of the start
+ * tags of its enclosing elements (the root element and, for the parts of a track segment, the
+ * track and the segment), so all namespace declarations are in scope and extension elements
+ * resolve correctly. The rest of the document (metadata, routes and the values of the tracks) is
+ * parsed at the same time and the results are reassembled in document order.
+ *
+ * <p>The file must use an ASCII compatible encoding (like UTF-8 or ISO-8859-1) and must not
+ * declare entities in a DTD.
+ *
+ * @author Christian Bremer
+ */
+public class ParallelGpxReader {
+
+  /**
+   * The default minimum size of a chunk in bytes.
+   */
+  public static final long DEFAULT_CHUNK_SIZE = 4L * 1024L * 1024L;
+
+  private final JAXBContext jaxbContext;
+
+  private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+  private long chunkSize = DEFAULT_CHUNK_SIZE;
+
+  /**
+   * Instantiates a new parallel gpx reader.
+   *
+   * @param jaxbContext the jaxb context
+   */
+  protected ParallelGpxReader(JAXBContext jaxbContext) {
+    this.jaxbContext = Objects.requireNonNull(jaxbContext, "Jaxb context must be present.");
+  }
+
+  /**
+   * Creates a new parallel gpx reader.
+   *
+   * @param jaxbContext the jaxb context
+   * @return the parallel gpx reader
+   */
+  public static ParallelGpxReader newInstance(JAXBContext jaxbContext) {
+    return new ParallelGpxReader(jaxbContext);
+  }
+
+  /**
+   * Use the given fork join pool (default is the {@link ForkJoinPool#commonPool()}).
+   *
+   * @param pool the pool
+   * @return the parallel gpx reader
+   */
+  public ParallelGpxReader withPool(ForkJoinPool pool) {
+    if (pool != null) {
+      this.pool = pool;
+    }
+    return this;
+  }
+
+  /**
+   * Use the given minimum chunk size in bytes (default is {@link #DEFAULT_CHUNK_SIZE}). Track
+   * segments, that are larger, are split into several chunks.
+   *
+   * @param chunkSize the chunk size
+   * @return the parallel gpx reader
+   */
+  public ParallelGpxReader withChunkSize(long chunkSize) {
+    if (chunkSize > 0) {
+      this.chunkSize = chunkSize;
+    }
+    return this;
+  }
+
+  /**
+   * Reads the given file.
+   *
+   * @param file the file
+   * @return the gpx
+   */
+  public GpxType read(Path file) {
+    try (MappedGpxFile mappedFile = new MappedGpxFile(file)) {
+      Layout layout = new GpxFileScanner(mappedFile, chunkSize).scan();
+
+      List<ForkJoinTask<WptType>> waypoints = new ArrayList<>(layout.waypoints.size());
+      for (long[] range : layout.waypoints) {
+        waypoints.add(pool.submit(() -> parse(mappedFile, layout, WptType.class, 2,
+            List.of(layout.rootStartTag, range, layout.rootEndTag))));
+      }
+      List<List<ForkJoinTask<TrksegType>>> segments = new ArrayList<>(layout.segments.size());
+      for (Segment segment : layout.segments) {
+        segments.add(submitSegment(mappedFile, layout, segment));
+      }
+
+      GpxType gpx = parse(mappedFile, layout, GpxType.class, 1, layout.skeleton);
+      for (int i = 0; i < waypoints.size(); i++) {
+        gpx.getWpts().set(i, waypoints.get(i).join());
+      }
+      Iterator<List<ForkJoinTask<TrksegType>>> segmentIterator = segments.iterator();
+      for (TrkType track : gpx.getTrks()) {
+        List<TrksegType> trackSegments = track.getTrksegs();
+        for (int i = 0; i < trackSegments.size(); i++) {
+          trackSegments.set(i, join(segmentIterator.next()));
+        }
+      }
+      return gpx;
+
+    } catch (IOException e) {
+      throw new GpxStreamException("Reading file " + file + " failed.", e);
+    }
+  }
+
+  /**
+   * Reads the track segments of the given file. The segments are parsed concurrently, but the
+   * stream returns them in document order. The stream must be closed.
+   *
+   * @param file the file
+   * @return the stream of track segments
+   */
+  public Stream<TrksegType> segments(Path file) {
+    MappedGpxFile mappedFile;
+    try {
+      mappedFile = new MappedGpxFile(file);
+    } catch (IOException e) {
+      throw new GpxStreamException("Reading file " + file + " failed.", e);
+    }
+    Layout layout = new GpxFileScanner(mappedFile, chunkSize).scan();
+    int window = Math.max(2, pool.getParallelism() * 2);
+    Iterator<TrksegType> iterator = new Iterator<>() {
+
+      private final Iterator<Segment> source = layout.segments.iterator();
+
+      private final Deque<List<ForkJoinTask<TrksegType>>> pending = new ArrayDeque<>();
+
+      @Override
+      public boolean hasNext() {
+        while (pending.size() < window && source.hasNext()) {
+          pending.add(submitSegment(mappedFile, layout, source.next()));
+        }
+        return !pending.isEmpty();
+      }
+
+      @Override
+      public TrksegType next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return join(pending.poll());
+      }
+    };
+    return StreamSupport
+        .stream(Spliterators.spliterator(iterator, layout.segments.size(),
+            Spliterator.ORDERED | Spliterator.NONNULL), false)
+        .onClose(() -> {
+          try {
+            mappedFile.close();
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+  }
+
+  private List<ForkJoinTask<TrksegType>> submitSegment(
+      MappedGpxFile mappedFile,
+      Layout layout,
+      Segment segment) {
+
+    List<ForkJoinTask<TrksegType>> parts = new ArrayList<>(segment.parts.size());
+    long[] startTag = {segment.start, segment.contentStart};
+    for (long[] range : segment.parts) {
+      parts.add(pool.submit(() -> parse(mappedFile, layout, TrksegType.class, 3, List.of(
+          layout.rootStartTag, segment.trackStartTag, startTag, range, segment.endTag,
+          segment.trackEndTag, layout.rootEndTag))));
+    }
+    return parts;
+  }
+
+  private static TrksegType join(List<ForkJoinTask<TrksegType>> parts) {
+    TrksegType segment = parts.get(0).join();
+    for (int i = 1; i < parts.size(); i++) {
+      TrksegType part = parts.get(i).join();
+      segment.getTrkpts().addAll(part.getTrkpts());
+      if (part.getExtensions() != null) {
+        segment.setExtensions(part.getExtensions());
+      }
+    }
+    return segment;
+  }
+
+  /**
+   * Parses the first element at the given depth of the given parts; the root element has the
+   * depth 1.
+   */
+  private <T> T parse(
+      MappedGpxFile mappedFile,
+      Layout layout,
+      Class<T> type,
+      int depth,
+      List<?> parts) {
+
+    try (InputStream in = mappedFile.openStream(parts)) {
+      XMLStreamReader reader = GpxStreamReader.createXmlInputFactory()
+          .createXMLStreamReader(in, layout.encoding);
+      try {
+        int remaining = depth;
+        while (remaining > 0) {
+          if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+            remaining--;
+          }
+        }
+        UnmarshallerPool pool = UnmarshallerPool.defaultPool();
+        Unmarshaller unmarshaller = pool.borrow(jaxbContext);
+        try {
+          return unmarshaller.unmarshal(reader, type).getValue();
+        } finally {
+          pool.release(jaxbContext, unmarshaller);
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (IOException | XMLStreamException | JAXBException e) {
+      throw new GpxStreamException("Parsing " + type.getSimpleName() + " failed.", e);
+    }
+  }
+
+}
@@ -0,0 +1,730 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx.merge;
+
+import jakarta.xml.bind.JAXBContext;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import org.bremersee.gpx.GpxValueHelper;
+import org.bremersee.gpx.binary.GpxBinaryReader;
+import org.bremersee.gpx.binary.GpxBinaryWriter;
+import org.bremersee.gpx.io.GpxStreamEvent;
+import org.bremersee.gpx.io.GpxStreamException;
+import org.bremersee.gpx.io.GpxStreamHandler;
+import org.bremersee.gpx.io.GpxStreamReader;
+import org.bremersee.gpx.io.GpxStreamWriter;
+import org.bremersee.gpx.model.GpxType;
+import org.bremersee.gpx.model.MetadataType;
+import org.bremersee.gpx.model.RteType;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.TrksegType;
+import org.bremersee.gpx.model.WptType;
+
+/**
+ * Merges many GPX files into one GPX document without materializing any of them.
+ *
+ * <p>The inputs are read one after another with a {@link GpxStreamReader}. Because all waypoints
+ * of the output must be written before the routes and the tracks, only the waypoints are written
+ * directly; routes and track segments are spooled into a temporary file in the binary gpx format
+ * ({@link GpxBinaryWriter}) and are copied into the output after the last input. Each route and
+ * each segment is spooled as a separate binary document, so the segments of tracks with the same
+ * name can be collected from all inputs. The memory usage depends on the number of tracks and
+ * segments (and with de-duplication on the number of waypoints), but not on the number of points.
+ *
+ * <p>A merger can be used for many merges, but not concurrently.
+ *
+ * @author Christian Bremer
+ */
+public class GpxMerger {
+
+  private final JAXBContext jaxbContext;
+
+  private String creator;
+
+  private MetadataType metadata;
+
+  private TrackMode trackMode = TrackMode.CONCATENATE;
+
+  private boolean deduplicateWaypoints;
+
+  private boolean orderByFirstTime;
+
+  private boolean computeBounds;
+
+  private Path spoolDirectory;
+
+  /**
+   * The handling of the tracks of the inputs.
+   */
+  public enum TrackMode {
+
+    /**
+     * Every track of the inputs becomes a track of the output.
+     */
+    CONCATENATE,
+
+    /**
+     * The segments of all tracks with the same name become the segments of one track; the other
+     * values of this track are taken from the first track with this name. Tracks without a name
+     * are not merged.
+     */
+    MERGE_BY_NAME,
+
+    /**
+     * The segments of all tracks become the segments of one track; the other values of this
+     * track are taken from the first track.
+     */
+    SINGLE_TRACK
+  }
+
+  /**
+   * Instantiates a new gpx merger.
+   *
+   * @param jaxbContext the jaxb context
+   */
+  protected GpxMerger(JAXBContext jaxbContext) {
+    this.jaxbContext = Objects.requireNonNull(jaxbContext, "Jaxb context must be present.");
+  }
+
+  /**
+   * Creates a new gpx merger.
+   *
+   * @param jaxbContext the jaxb context
+   * @return the gpx merger
+   */
+  public static GpxMerger newInstance(JAXBContext jaxbContext) {
+    return new GpxMerger(jaxbContext);
+  }
+
+  /**
+   * Use the given creator in the output (default is the creator of the first input).
+   *
+   * @param creator the creator
+   * @return the gpx merger
+   */
+  public GpxMerger withCreator(String creator) {
+    this.creator = creator;
+    return this;
+  }
+
+  /**
+   * Use the given metadata in the output (default is no metadata). The metadata of the inputs
+   * is not merged.
+   *
+   * @param metadata the metadata
+   * @return the gpx merger
+   */
+  public GpxMerger withMetadata(MetadataType metadata) {
+    this.metadata = metadata;
+    return this;
+  }
+
+  /**
+   * Use the given track mode (default is {@link TrackMode#CONCATENATE}).
+   *
+   * @param trackMode the track mode
+   * @return the gpx merger
+   */
+  public GpxMerger withTrackMode(TrackMode trackMode) {
+    if (trackMode != null) {
+      this.trackMode = trackMode;
+    }
+    return this;
+  }
+
+  /**
+   * Specifies whether waypoints with the same name and the same position are written only once
+   * (default is {@code false}).
+   *
+   * @param deduplicateWaypoints {@code true} to de-duplicate the waypoints
+   * @return the gpx merger
+   */
+  public GpxMerger withWaypointDeduplication(boolean deduplicateWaypoints) {
+    this.deduplicateWaypoints = deduplicateWaypoints;
+    return this;
+  }
+
+  /**
+   * Specifies whether the inputs are ordered by the first time of a waypoint, route point or
+   * track point (default is {@code false}). Each input is read until such a time is found;
+   * inputs without any time of a point are ordered by the time of their metadata and inputs
+   * without any time are put at the end. Otherwise the inputs are merged in the given order.
+   *
+   * @param orderByFirstTime {@code true} to order the inputs by their first time
+   * @return the gpx merger
+   */
+  public GpxMerger withOrderByFirstTime(boolean orderByFirstTime) {
+    this.orderByFirstTime = orderByFirstTime;
+    return this;
+  }
+
+  /**
+   * Specifies whether the bounds of the metadata are computed from the merged points (default is
+   * {@code false}), see {@link GpxStreamWriter#withComputedBounds()}. This is only used, if the
+   * merger creates the gpx stream writer.
+   *
+   * @param computeBounds {@code true} to compute the bounds
+   * @return the gpx merger
+   */
+  public GpxMerger withComputedBounds(boolean computeBounds) {
+    this.computeBounds = computeBounds;
+    return this;
+  }
+
+  /**
+   * Use the given directory for the temporary files (default is the default temporary
+   * directory).
+   *
+   * @param spoolDirectory the spool directory
+   * @return the gpx merger
+   */
+  public GpxMerger withSpoolDirectory(Path spoolDirectory) {
+    this.spoolDirectory = spoolDirectory;
+    return this;
+  }
+
+  /**
+   * Merges the given files into the given file.
+   *
+   * @param inputs the input files
+   * @param output the output file
+   * @return the report
+   */
+  public Report merge(List<Path> inputs, Path output) {
+    try (GpxStreamWriter writer = GpxStreamWriter.newInstance(output, jaxbContext)) {
+      if (computeBounds) {
+        writer.withComputedBounds(spoolDirectory);
+      }
+      return merge(inputs, writer);
+    } catch (IOException e) {
+      throw new GpxStreamException("Closing output " + output + " failed.", e);
+    }
+  }
+
+  /**
+   * Merges the given files into the given output stream. The output stream will not be closed.
+   *
+   * @param inputs the input files
+   * @param output the output stream
+   * @return the report
+   */
+  public Report merge(List<Path> inputs, OutputStream output) {
+    try (GpxStreamWriter writer = GpxStreamWriter.newInstance(output, jaxbContext)) {
+      if (computeBounds) {
+        writer.withComputedBounds(spoolDirectory);
+      }
+      return merge(inputs, writer);
+    } catch (IOException e) {
+      throw new GpxStreamException("Closing output failed.", e);
+    }
+  }
+
+  /**
+   * Merges the given files into the given writer. The gpx element must not be opened yet; it
+   * is opened and closed by the merger, but the writer is not closed.
+   *
+   * @param inputs the input files
+   * @param writer the writer
+   * @return the report
+   */
+  public Report merge(List<Path> inputs, GpxStreamWriter writer) {
+    Objects.requireNonNull(inputs, "Inputs must be present.");
+    Objects.requireNonNull(writer, "Writer must be present.");
+    List<Path> files = orderByFirstTime ? orderByFirstTime(inputs) : inputs;
+    Path spoolFile = null;
+    try {
+      spoolFile = spoolDirectory != null
+          ? Files.createTempFile(spoolDirectory, "gpx-merge-", ".spool")
+          : Files.createTempFile("gpx-merge-", ".spool");
+      try (Merge merge = new Merge(writer, spoolFile)) {
+        for (Path file : files) {
+          merge.read(file);
+        }
+        return merge.finish();
+      }
+
+    } catch (IOException e) {
+      throw new GpxStreamException("Spooling gpx failed.", e);
+    } finally {
+      if (spoolFile != null) {
+        try {
+          Files.deleteIfExists(spoolFile);
+        } catch (IOException ignored) {
+          // the temporary file could not be deleted, it will be left in the spool directory
+        }
+      }
+    }
+  }
+
+  private List<Path> orderByFirstTime(List<Path> inputs) {
+    List<Path> files = new ArrayList<>(inputs);
+    Map<Path, Long> times = new LinkedHashMap<>();
+    for (Path file : files) {
+      times.put(file, readFirstTime(file));
+    }
+    // The sort is stable, so inputs with the same or without time keep their order.
+    files.sort(Comparator.comparing(file -> {
+      long time = times.get(file);
+      return time == GpxValueHelper.NO_TIME ? Long.MAX_VALUE : time;
+    }));
+    return files;
+  }
+
+  private long readFirstTime(Path file) {
+    long metadataTime = GpxValueHelper.NO_TIME;
+    try (GpxStreamReader reader = GpxStreamReader.newInstance(file, jaxbContext)) {
+      while (reader.hasNext()) {
+        GpxStreamEvent event = reader.next();
+        long time = GpxValueHelper.NO_TIME;
+        switch (event.getType()) {
+          case METADATA:
+            metadataTime = GpxValueHelper.toEpochMillis(event.getMetadata().getTime());
+            break;
+          case WAYPOINT:
+            time = GpxValueHelper.toEpochMillis(event.getWaypoint().getTime());
+            break;
+          case ROUTE:
+            for (WptType point : event.getRoute().getRtepts()) {
+              time = GpxValueHelper.toEpochMillis(point.getTime());
+              if (time != GpxValueHelper.NO_TIME) {
+                break;
+              }
+            }
+            break;
+          case TRACK_POINT:
+            time = GpxValueHelper.toEpochMillis(event.getTrackPoint().getTime());
+            break;
+          default:
+            break;
+        }
+        if (time != GpxValueHelper.NO_TIME) {
+          return time;
+        }
+      }
+      return metadataTime;
+
+    } catch (IOException e) {
+      throw new GpxStreamException("Closing input " + file + " failed.", e);
+    }
+  }
+
+  /**
+   * The report of a merge.
+   */
+  public static class Report {
+
+    private final int inputs;
+
+    private final long waypoints;
+
+    private final long duplicateWaypoints;
+
+    private final long routes;
+
+    private final long tracks;
+
+    private final long segments;
+
+    private final long trackPoints;
+
+    private final long spoolSize;
+
+    private Report(
+        int inputs,
+        long waypoints,
+        long duplicateWaypoints,
+        long routes,
+        long tracks,
+        long segments,
+        long trackPoints,
+        long spoolSize) {
+      this.inputs = inputs;
+      this.waypoints = waypoints;
+      this.duplicateWaypoints = duplicateWaypoints;
+      this.routes = routes;
+      this.tracks = tracks;
+      this.segments = segments;
+      this.trackPoints = trackPoints;
+      this.spoolSize = spoolSize;
+    }
+
+    /**
+     * Gets the number of inputs.
+     *
+     * @return the number of inputs
+     */
+    public int getInputs() {
+      return inputs;
+    }
+
+    /**
+     * Gets the number of written waypoints.
+     *
+     * @return the number of written waypoints
+     */
+    public long getWaypoints() {
+      return waypoints;
+    }
+
+    /**
+     * Gets the number of skipped duplicate waypoints.
+     *
+     * @return the number of skipped duplicate waypoints
+     */
+    public long getDuplicateWaypoints() {
+      return duplicateWaypoints;
+    }
+
+    /**
+     * Gets the number of written routes.
+     *
+     * @return the number of written routes
+     */
+    public long getRoutes() {
+      return routes;
+    }
+
+    /**
+     * Gets the number of written tracks.
+     *
+     * @return the number of written tracks
+     */
+    public long getTracks() {
+      return tracks;
+    }
+
+    /**
+     * Gets the number of written segments.
+     *
+     * @return the number of written segments
+     */
+    public long getSegments() {
+      return segments;
+    }
+
+    /**
+     * Gets the number of written track points.
+     *
+     * @return the number of written track points
+     */
+    public long getTrackPoints() {
+      return trackPoints;
+    }
+
+    /**
+     * Gets the size of the spool file in bytes.
+     *
+     * @return the size of the spool file
+     */
+    public long getSpoolSize() {
+      return spoolSize;
+    }
+
+    @Override
+    public String toString() {
+      return "Report {inputs=" + inputs
+          + ", waypoints=" + waypoints
+          + ", duplicateWaypoints=" + duplicateWaypoints
+          + ", routes=" + routes
+          + ", tracks=" + tracks
+          + ", segments=" + segments
+          + ", trackPoints=" + trackPoints
+          + ", spoolSize=" + spoolSize + '}';
+    }
+  }
+
+  /**
+   * The position of a spooled binary document in the spool file.
+   */
+  private static class Chunk {
+
+    private final long position;
+
+    private final long length;
+
+    private Chunk(long position, long length) {
+      this.position = position;
+      this.length = length;
+    }
+  }
+
+  /**
+   * A track of the output: the values of the first input track and the spooled segments.
+   */
+  private static class Track {
+
+    private final TrkType header;
+
+    private final List<Chunk> segments = new ArrayList<>();
+
+    private Track(TrkType header) {
+      this.header = header;
+    }
+  }
+
+  /**
+   * The state of one merge. The inputs are read into a handler, that writes the waypoints into
+   * the output and the routes and segments into the spool file.
+   */
+  private class Merge implements GpxStreamHandler, Closeable {
+
+    private final GpxStreamWriter writer;
+
+    private final Path spoolFile;
+
+    private final OutputStream spool;
+
+    private long spoolPosition;
+
+    private final Set<String> waypointKeys = new HashSet<>();
+
+    private final List<Chunk> routes = new ArrayList<>();
+
+    private final Map<Object, Track> tracks = new LinkedHashMap<>();
+
+    private Track track;
+
+    private GpxBinaryWriter segmentWriter;
+
+    private int inputs;
+
+    private long waypoints;
+
+    private long duplicateWaypoints;
+
+    private long segments;
+
+    private long trackPoints;
+
+    private Merge(GpxStreamWriter writer, Path spoolFile) throws IOException {
+      this.writer = writer;
+      this.spoolFile = spoolFile;
+      this.spool = new BufferedOutputStream(Files.newOutputStream(spoolFile), 64 * 1024);
+    }
+
+    private void read(Path file) {
+      try (GpxStreamReader reader = GpxStreamReader.newInstance(file, jaxbContext)) {
+        reader.read(this);
+        inputs++;
+      } catch (IOException e) {
+        throw new GpxStreamException("Closing input " + file + " failed.", e);
+      }
+    }
+
+    @Override
+    public void startGpx(GpxType gpx) {
+      if (inputs == 0) {
+        writer.startGpx(creator != null ? creator : gpx.getCreator());
+        if (metadata != null) {
+          writer.writeMetadata(metadata);
+        }
+      }
+    }
+
+    @Override
+    public void waypoint(WptType waypoint, int index) {
+      if (deduplicateWaypoints && !waypointKeys.add(key(waypoint))) {
+        duplicateWaypoints++;
+        return;
+      }
+      writer.writeWaypoint(waypoint);
+      waypoints++;
+    }
+
+    private String key(WptType waypoint) {
+      return waypoint.getName() + '|' + plain(waypoint.getLat()) + '|' + plain(waypoint.getLon());
+    }
+
+    private String plain(BigDecimal value) {
+      return value != null ? value.stripTrailingZeros().toPlainString() : null;
+    }
+
+    @Override
+    public void route(RteType route, int index) {
+      GpxBinaryWriter routeWriter = startChunk();
+      routeWriter.writeRoute(route);
+      routes.add(endChunk(routeWriter));
+    }
+
+    @Override
+    public void startTrack(TrkType header, int trackIndex) {
+      Object key;
+      if (trackMode == TrackMode.SINGLE_TRACK) {
+        key = trackMode;
+      } else if (trackMode == TrackMode.MERGE_BY_NAME && header.getName() != null) {
+        key = header.getName();
+      } else {
+        key = new Object();
+      }
+      track = tracks.computeIfAbsent(key, k -> new Track(header));
+    }
+
+    @Override
+    public void startSegment(int trackIndex, int segmentIndex) {
+      segmentWriter = startChunk().startTrack(new TrkType()).startSegment();
+    }
+
+    @Override
+    public void trackPoint(WptType trackPoint, int trackIndex, int segmentIndex,
+        int pointIndex) {
+      segmentWriter.writeTrackPoint(trackPoint);
+      trackPoints++;
+    }
+
+    @Override
+    public void endSegment(TrksegType segment, int trackIndex, int segmentIndex) {
+      segmentWriter.endSegment(segment.getExtensions()).endTrack();
+      track.segments.add(endChunk(segmentWriter));
+      segmentWriter = null;
+      segments++;
+    }
+
+    private GpxBinaryWriter startChunk() {
+      return GpxBinaryWriter.newInstance(spool).startGpx(new GpxType());
+    }
+
+    private Chunk endChunk(GpxBinaryWriter chunkWriter) {
+      try {
+        chunkWriter.close();
+      } catch (IOException e) {
+        throw new GpxStreamException("Writing spool file failed.", e);
+      }
+      Chunk chunk = new Chunk(spoolPosition, chunkWriter.getSize());
+      spoolPosition += chunk.length;
+      return chunk;
+    }
+
+    private Report finish() throws IOException {
+      spool.close();
+      if (inputs == 0) {
+        writer.startGpx(creator);
+        if (metadata != null) {
+          writer.writeMetadata(metadata);
+        }
+      }
+      try (FileChannel channel = FileChannel.open(spoolFile, StandardOpenOption.READ)) {
+        GpxStreamHandler routeCopier = new GpxStreamHandler() {
+          @Override
+          public void route(RteType route, int index) {
+            writer.writeRoute(route);
+          }
+        };
+        for (Chunk chunk : routes) {
+          copy(channel, chunk, routeCopier);
+        }
+        GpxStreamHandler segmentCopier = new GpxStreamHandler() {
+          @Override
+          public void startSegment(int trackIndex, int segmentIndex) {
+            writer.startSegment();
+          }
+
+          @Override
+          public void trackPoint(WptType trackPoint, int trackIndex, int segmentIndex,
+              int pointIndex) {
+            writer.writeTrackPoint(trackPoint);
+          }
+
+          @Override
+          public void endSegment(TrksegType segment, int trackIndex, int segmentIndex) {
+            writer.endSegment(segment.getExtensions());
+          }
+        };
+        for (Track outputTrack : tracks.values()) {
+          writer.startTrack(outputTrack.header);
+          for (Chunk chunk : outputTrack.segments) {
+            copy(channel, chunk, segmentCopier);
+          }
+          writer.endTrack();
+        }
+      }
+      writer.endGpx();
+      writer.flush();
+      return new Report(inputs, waypoints, duplicateWaypoints, routes.size(), tracks.size(),
+          segments, trackPoints, spoolPosition);
+    }
+
+    @Override
+    public void close() throws IOException {
+      spool.close();
+    }
+
+    private void copy(FileChannel channel, Chunk chunk, GpxStreamHandler handler)
+        throws IOException {
+      try (GpxBinaryReader reader = GpxBinaryReader
+          .newInstance(new ChunkInputStream(channel, chunk))) {
+        reader.read(handler);
+      }
+    }
+  }
+
+  /**
+   * An input stream of one chunk of the spool file, that reads with absolute positions, so the
+   * channel can be shared by all chunks.
+   */
+  private static class ChunkInputStream extends InputStream {
+
+    private final FileChannel channel;
+
+    private long position;
+
+    private final long end;
+
+    private ChunkInputStream(FileChannel channel, Chunk chunk) {
+      this.channel = channel;
+      this.position = chunk.position;
+      this.end = chunk.position + chunk.length;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (position >= end) {
+        return -1;
+      }
+      int n = (int) Math.min(len, end - position);
+      int read = channel.read(ByteBuffer.wrap(b, off, n), position);
+      if (read > 0) {
+        position += read;
+      }
+      return read;
+    }
+  }
+
+}
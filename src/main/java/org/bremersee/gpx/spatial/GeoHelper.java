@@ -0,0 +1,138 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx.spatial;
+
+/**
+ * Distances on a spherical earth. All coordinates are in degrees, all distances in meters.
+ *
+ * @author Christian Bremer
+ */
+public abstract class GeoHelper {
+
+  /**
+   * The mean earth radius in meters.
+   */
+  public static final double EARTH_RADIUS = 6_371_008.8;
+
+  private GeoHelper() {
+  }
+
+  /**
+   * Calculates the great circle distance between two points with the haversine formula.
+   *
+   * @param latitude1 the latitude of the first point
+   * @param longitude1 the longitude of the first point
+   * @param latitude2 the latitude of the second point
+   * @param longitude2 the longitude of the second point
+   * @return the distance in meters
+   */
+  public static double distance(
+      double latitude1,
+      double longitude1,
+      double latitude2,
+      double longitude2) {
+    return toDistance(haversine(latitude1, longitude1, latitude2, longitude2));
+  }
+
+  /**
+   * Calculates the great circle distance between two points with the haversine formula, using
+   * the given cosines of the latitudes. Callers walking along a line can compute the cosine of
+   * every point once and pass it to both of its segments.
+   *
+   * @param latitude1 the latitude of the first point
+   * @param longitude1 the longitude of the first point
+   * @param cosLatitude1 the cosine of the latitude of the first point
+   * @param latitude2 the latitude of the second point
+   * @param longitude2 the longitude of the second point
+   * @param cosLatitude2 the cosine of the latitude of the second point
+   * @return the distance in meters
+   */
+  public static double distance(
+      double latitude1,
+      double longitude1,
+      double cosLatitude1,
+      double latitude2,
+      double longitude2,
+      double cosLatitude2) {
+    return toDistance(haversine(
+        latitude1, longitude1, cosLatitude1, latitude2, longitude2, cosLatitude2));
+  }
+
+  /**
+   * Calculates the haversine of the central angle between two points. It grows monotonically
+   * with the distance, so it can be compared instead of the distance.
+   *
+   * @param latitude1 the latitude of the first point
+   * @param longitude1 the longitude of the first point
+   * @param latitude2 the latitude of the second point
+   * @param longitude2 the longitude of the second point
+   * @return the haversine between 0 and 1
+   */
+  static double haversine(
+      double latitude1,
+      double longitude1,
+      double latitude2,
+      double longitude2) {
+    return haversine(
+        latitude1, longitude1, Math.cos(Math.toRadians(latitude1)),
+        latitude2, longitude2, Math.cos(Math.toRadians(latitude2)));
+  }
+
+  private static double haversine(
+      double latitude1,
+      double longitude1,
+      double cosLatitude1,
+      double latitude2,
+      double longitude2,
+      double cosLatitude2) {
+    return haversine(Math.toRadians(latitude1 - latitude2))
+        + cosLatitude1 * cosLatitude2 * haversine(Math.toRadians(longitude1 - longitude2));
+  }
+
+  /**
+   * Calculates the haversine of the given angle.
+   *
+   * @param radians the angle in radians
+   * @return the haversine
+   */
+  static double haversine(double radians) {
+    double s = Math.sin(radians / 2.);
+    return s * s;
+  }
+
+  /**
+   * Converts a haversine into a distance.
+   *
+   * @param haversine the haversine
+   * @return the distance in meters
+   */
+  static double toDistance(double haversine) {
+    return 2. * EARTH_RADIUS * Math.asin(Math.sqrt(Math.min(1., Math.max(0., haversine))));
+  }
+
+  /**
+   * Converts a distance into a haversine.
+   *
+   * @param distance the distance in meters
+   * @return the haversine
+   */
+  static double toHaversine(double distance) {
+    return haversine(Math.min(Math.PI, Math.max(0., distance / EARTH_RADIUS)));
+  }
+
+}
@@ -0,0 +1,973 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx.spatial;
+
+import static org.bremersee.gpx.spatial.GeoHelper.haversine;
+import static org.bremersee.gpx.spatial.GeoHelper.toDistance;
+import static org.bremersee.gpx.spatial.GeoHelper.toHaversine;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.bremersee.gpx.io.GpxStreamHandler;
+import org.bremersee.gpx.model.ExtensionsType;
+import org.bremersee.gpx.model.GpxType;
+import org.bremersee.gpx.model.RteType;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.TrksegType;
+import org.bremersee.gpx.model.WptType;
+
+/**
+ * A static spatial index of the waypoints, route points and track points of gpx documents.
+ *
+ * <p>The index is a packed R-tree: the points are sorted along a Hilbert curve and grouped
+ * bottom up into nodes of a fixed size, so neighbouring points end up in the same nodes. The
+ * coordinates and the bounding boxes are stored in primitive arrays. The points are numbered in
+ * the order of the tree from {@code 0} to {@code size() - 1}; the queries return these numbers
+ * and the accessors give the coordinates and the origin of a point, i.e. the {@link WptType}
+ * and its position in the gpx document.
+ *
+ * <p>Bounding box queries treat a box with a minimum longitude greater than the maximum
+ * longitude as a box, that crosses the antimeridian. Radius and nearest neighbour queries use
+ * great circle distances, so they work across the antimeridian and near the poles, too.
+ *
+ * <p>The index is immutable and can be queried by many threads concurrently.
+ *
+ * @author Christian Bremer
+ */
+public class GpxSpatialIndex {
+
+  /**
+   * The default number of children of a node.
+   */
+  public static final int DEFAULT_NODE_SIZE = 16;
+
+  private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+  private static final int HILBERT_MAX = (1 << 15) - 1;
+
+  private static final Origin[] ORIGINS = Origin.values();
+
+  private final int size;
+
+  private final int nodeSize;
+
+  private final double[] latitudes;
+
+  private final double[] longitudes;
+
+  private final WptType[] points;
+
+  private final byte[] origins;
+
+  private final int[] containerIndices;
+
+  private final int[] segmentIndices;
+
+  private final int[] pointIndices;
+
+  private final int[] levelBounds;
+
+  private final double[] nodeBoxes;
+
+  private final int[] children;
+
+  private GpxSpatialIndex(Builder builder, int[] order) {
+    this.size = builder.size;
+    this.nodeSize = builder.nodeSize;
+    this.latitudes = new double[size];
+    this.longitudes = new double[size];
+    this.points = new WptType[size];
+    this.origins = new byte[size];
+    this.containerIndices = new int[size];
+    this.segmentIndices = new int[size];
+    this.pointIndices = new int[size];
+    forEach(builder.pool, size, i -> {
+      int j = order[i];
+      latitudes[i] = builder.latitudes[j];
+      longitudes[i] = builder.longitudes[j];
+      points[i] = builder.points[j];
+      origins[i] = builder.origins[j];
+      containerIndices[i] = builder.containerIndices[j];
+      segmentIndices[i] = builder.segmentIndices[j];
+      pointIndices[i] = builder.pointIndices[j];
+    });
+
+    int count = size;
+    int positions = size;
+    int[] bounds = new int[8];
+    int levels = 0;
+    bounds[levels++] = positions;
+    if (size > 0) {
+      do {
+        count = (count + nodeSize - 1) / nodeSize;
+        positions += count;
+        if (levels == bounds.length) {
+          bounds = Arrays.copyOf(bounds, levels * 2);
+        }
+        bounds[levels++] = positions;
+      } while (count != 1);
+    }
+    this.levelBounds = Arrays.copyOf(bounds, levels);
+    this.nodeBoxes = new double[(positions - size) * 4];
+    this.children = new int[positions - size];
+
+    int parent = size;
+    int levelStart = 0;
+    for (int level = 0; level < levelBounds.length - 1; level++) {
+      int levelEnd = levelBounds[level];
+      for (int start = levelStart; start < levelEnd; start += nodeSize) {
+        int end = Math.min(start + nodeSize, levelEnd);
+        double minLat = Double.POSITIVE_INFINITY;
+        double minLon = Double.POSITIVE_INFINITY;
+        double maxLat = Double.NEGATIVE_INFINITY;
+        double maxLon = Double.NEGATIVE_INFINITY;
+        for (int pos = start; pos < end; pos++) {
+          if (pos < size) {
+            minLat = Math.min(minLat, latitudes[pos]);
+            minLon = Math.min(minLon, longitudes[pos]);
+            maxLat = Math.max(maxLat, latitudes[pos]);
+            maxLon = Math.max(maxLon, longitudes[pos]);
+          } else {
+            int box = (pos - size) * 4;
+            minLat = Math.min(minLat, nodeBoxes[box]);
+            minLon = Math.min(minLon, nodeBoxes[box + 1]);
+            maxLat = Math.max(maxLat, nodeBoxes[box + 2]);
+            maxLon = Math.max(maxLon, nodeBoxes[box + 3]);
+          }
+        }
+        int box = (parent - size) * 4;
+        nodeBoxes[box] = minLat;
+        nodeBoxes[box + 1] = minLon;
+        nodeBoxes[box + 2] = maxLat;
+        nodeBoxes[box + 3] = maxLon;
+        children[parent - size] = start;
+        parent++;
+      }
+      levelStart = levelEnd;
+    }
+  }
+
+  /**
+   * Creates a spatial index of the waypoints, route points and track points of the given gpx.
+   *
+   * @param gpx the gpx
+   * @return the spatial index
+   */
+  public static GpxSpatialIndex of(GpxType gpx) {
+    return builder().add(gpx).build();
+  }
+
+  /**
+   * Creates a new builder.
+   *
+   * @return the builder
+   */
+  public static Builder builder() {
+    return new Builder(1024);
+  }
+
+  /**
+   * Creates a new builder with the given initial capacity of points.
+   *
+   * @param capacity the capacity
+   * @return the builder
+   */
+  public static Builder builder(int capacity) {
+    return new Builder(capacity);
+  }
+
+  /**
+   * Creates a gpx stream handler, that adds the waypoints, route points and track points of the
+   * stream to a builder and passes the spatial index to the given consumer at the end of the
+   * gpx.
+   *
+   * @param builder the builder
+   * @param consumer the consumer
+   * @return the gpx stream handler
+   */
+  public static GpxStreamHandler collector(Builder builder, Consumer<GpxSpatialIndex> consumer) {
+    Objects.requireNonNull(builder, "Builder must be present.");
+    Objects.requireNonNull(consumer, "Consumer must be present.");
+    return new GpxStreamHandler() {
+
+      @Override
+      public void waypoint(WptType waypoint, int index) {
+        builder.add(waypoint, Origin.WAYPOINT, -1, -1, index);
+      }
+
+      @Override
+      public void route(RteType route, int index) {
+        builder.add(route, index);
+      }
+
+      @Override
+      public void trackPoint(WptType trackPoint, int trackIndex, int segmentIndex,
+          int pointIndex) {
+        builder.add(trackPoint, Origin.TRACK_POINT, trackIndex, segmentIndex, pointIndex);
+      }
+
+      @Override
+      public void endGpx(GpxType gpx, ExtensionsType extensions) {
+        consumer.accept(builder.build());
+      }
+    };
+  }
+
+  /**
+   * Gets the number of points.
+   *
+   * @return the number of points
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Gets the latitude of the given point.
+   *
+   * @param id the number of the point
+   * @return the latitude
+   */
+  public double getLatitude(int id) {
+    return latitudes[id];
+  }
+
+  /**
+   * Gets the longitude of the given point.
+   *
+   * @param id the number of the point
+   * @return the longitude
+   */
+  public double getLongitude(int id) {
+    return longitudes[id];
+  }
+
+  /**
+   * Gets the original point.
+   *
+   * @param id the number of the point
+   * @return the original point or {@code null}, if the point was added by its coordinates
+   */
+  public WptType getPoint(int id) {
+    return points[id];
+  }
+
+  /**
+   * Gets the origin of the given point.
+   *
+   * @param id the number of the point
+   * @return the origin
+   */
+  public Origin getOrigin(int id) {
+    return ORIGINS[origins[id]];
+  }
+
+  /**
+   * Gets the index of the route or the track of the given point.
+   *
+   * @param id the number of the point
+   * @return the index of the route or the track or {@code -1}
+   */
+  public int getContainerIndex(int id) {
+    return containerIndices[id];
+  }
+
+  /**
+   * Gets the index of the track segment of the given point.
+   *
+   * @param id the number of the point
+   * @return the index of the track segment or {@code -1}
+   */
+  public int getSegmentIndex(int id) {
+    return segmentIndices[id];
+  }
+
+  /**
+   * Gets the index of the given point in its list of waypoints, route points or track points.
+   *
+   * @param id the number of the point
+   * @return the index or {@code -1}
+   */
+  public int getPointIndex(int id) {
+    return pointIndices[id];
+  }
+
+  /**
+   * Calculates the distance of the given point to the given coordinates.
+   *
+   * @param id the number of the point
+   * @param latitude the latitude
+   * @param longitude the longitude
+   * @return the distance in meters
+   */
+  public double getDistance(int id, double latitude, double longitude) {
+    return GeoHelper.distance(latitudes[id], longitudes[id], latitude, longitude);
+  }
+
+  /**
+   * Finds the points in the given bounding box.
+   *
+   * @param minLatitude the minimum latitude
+   * @param minLongitude the minimum longitude
+   * @param maxLatitude the maximum latitude
+   * @param maxLongitude the maximum longitude
+   * @return the numbers of the points in no particular order
+   */
+  public int[] search(
+      double minLatitude,
+      double minLongitude,
+      double maxLatitude,
+      double maxLongitude) {
+    IntList result = new IntList();
+    search(minLatitude, minLongitude, maxLatitude, maxLongitude, result);
+    return result.toArray();
+  }
+
+  /**
+   * Finds the points in the given bounding box.
+   *
+   * @param minLatitude the minimum latitude
+   * @param minLongitude the minimum longitude
+   * @param maxLatitude the maximum latitude
+   * @param maxLongitude the maximum longitude
+   * @param consumer the consumer of the numbers of the points
+   */
+  public void search(
+      double minLatitude,
+      double minLongitude,
+      double maxLatitude,
+      double maxLongitude,
+      IntConsumer consumer) {
+
+    if (minLongitude > maxLongitude) {
+      search(minLatitude, minLongitude, maxLatitude, 180., consumer);
+      search(minLatitude, -180., maxLatitude, maxLongitude, consumer);
+      return;
+    }
+    if (size == 0) {
+      return;
+    }
+    IntList stack = new IntList();
+    int nodeIndex = levelBounds[levelBounds.length - 1] - 1;
+    while (true) {
+      int end = Math.min(nodeIndex + nodeSize, upperBound(nodeIndex));
+      for (int pos = nodeIndex; pos < end; pos++) {
+        if (pos < size) {
+          if (latitudes[pos] >= minLatitude && latitudes[pos] <= maxLatitude
+              && longitudes[pos] >= minLongitude && longitudes[pos] <= maxLongitude) {
+            consumer.accept(pos);
+          }
+        } else {
+          int box = (pos - size) * 4;
+          if (nodeBoxes[box] <= maxLatitude && nodeBoxes[box + 1] <= maxLongitude
+              && nodeBoxes[box + 2] >= minLatitude && nodeBoxes[box + 3] >= minLongitude) {
+            stack.add(children[pos - size]);
+          }
+        }
+      }
+      if (stack.isEmpty()) {
+        return;
+      }
+      nodeIndex = stack.removeLast();
+    }
+  }
+
+  /**
+   * Finds the points within the given distance of the given coordinates.
+   *
+   * @param latitude the latitude
+   * @param longitude the longitude
+   * @param radius the radius in meters
+   * @return the numbers of the points in no particular order
+   */
+  public int[] within(double latitude, double longitude, double radius) {
+    IntList result = new IntList();
+    within(latitude, longitude, radius, result);
+    return result.toArray();
+  }
+
+  /**
+   * Finds the points within the given distance of the given coordinates.
+   *
+   * @param latitude the latitude
+   * @param longitude the longitude
+   * @param radius the radius in meters
+   * @param consumer the consumer of the numbers of the points
+   */
+  public void within(double latitude, double longitude, double radius, IntConsumer consumer) {
+    if (size == 0 || radius < 0.) {
+      return;
+    }
+    double maxHaversine = toHaversine(radius);
+    double cosLatitude = Math.cos(Math.toRadians(latitude));
+    IntList stack = new IntList();
+    int nodeIndex = levelBounds[levelBounds.length - 1] - 1;
+    while (true) {
+      int end = Math.min(nodeIndex + nodeSize, upperBound(nodeIndex));
+      for (int pos = nodeIndex; pos < end; pos++) {
+        if (pos < size) {
+          if (haversine(latitude, longitude, latitudes[pos], longitudes[pos]) <= maxHaversine) {
+            consumer.accept(pos);
+          }
+        } else if (boxHaversine(latitude, longitude, cosLatitude, pos) <= maxHaversine) {
+          stack.add(children[pos - size]);
+        }
+      }
+      if (stack.isEmpty()) {
+        return;
+      }
+      nodeIndex = stack.removeLast();
+    }
+  }
+
+  /**
+   * Finds the nearest points of the given coordinates.
+   *
+   * @param latitude the latitude
+   * @param longitude the longitude
+   * @param k the maximum number of points
+   * @return the numbers of the points ordered by the distance
+   */
+  public int[] nearest(double latitude, double longitude, int k) {
+    return nearest(latitude, longitude, k, Double.POSITIVE_INFINITY);
+  }
+
+  /**
+   * Finds the nearest points of the given coordinates, that are not farther away than the given
+   * distance.
+   *
+   * @param latitude the latitude
+   * @param longitude the longitude
+   * @param k the maximum number of points
+   * @param maxDistance the maximum distance in meters
+   * @return the numbers of the points ordered by the distance
+   */
+  public int[] nearest(double latitude, double longitude, int k, double maxDistance) {
+    IntList result = new IntList();
+    if (size == 0 || k < 1 || maxDistance < 0.) {
+      return result.toArray();
+    }
+    double maxHaversine = Double.isInfinite(maxDistance) ? 1. : toHaversine(maxDistance);
+    double cosLatitude = Math.cos(Math.toRadians(latitude));
+    MinHeap queue = new MinHeap();
+    int nodeIndex = levelBounds[levelBounds.length - 1] - 1;
+    while (true) {
+      int end = Math.min(nodeIndex + nodeSize, upperBound(nodeIndex));
+      for (int pos = nodeIndex; pos < end; pos++) {
+        if (pos < size) {
+          double h = haversine(latitude, longitude, latitudes[pos], longitudes[pos]);
+          if (h <= maxHaversine) {
+            // points are encoded as negative values, nodes as the position of their children
+            queue.push(h, -pos - 1);
+          }
+        } else {
+          double h = boxHaversine(latitude, longitude, cosLatitude, pos);
+          if (h <= maxHaversine) {
+            queue.push(h, children[pos - size]);
+          }
+        }
+      }
+      while (!queue.isEmpty() && queue.peekValue() < 0) {
+        result.add(-queue.pop() - 1);
+        if (result.size() == k) {
+          return result.toArray();
+        }
+      }
+      if (queue.isEmpty()) {
+        return result.toArray();
+      }
+      nodeIndex = queue.pop();
+    }
+  }
+
+  /**
+   * Finds the end of the level of the given position.
+   */
+  private int upperBound(int position) {
+    int low = 0;
+    int high = levelBounds.length - 1;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (levelBounds[mid] > position) {
+        high = mid;
+      } else {
+        low = mid + 1;
+      }
+    }
+    return levelBounds[low];
+  }
+
+  /**
+   * Calculates the minimum haversine between the given coordinates and the bounding box of the
+   * given node position. If the point lies west or east of the box, the nearest point of the
+   * box is on the nearest meridian of the box, but not necessarily at one of its corners,
+   * because great circles bend towards the poles.
+   */
+  private double boxHaversine(double latitude, double longitude, double cosLatitude, int pos) {
+    int box = (pos - size) * 4;
+    double minLat = nodeBoxes[box];
+    double minLon = nodeBoxes[box + 1];
+    double maxLat = nodeBoxes[box + 2];
+    double maxLon = nodeBoxes[box + 3];
+    if (longitude >= minLon && longitude <= maxLon) {
+      if (latitude < minLat) {
+        return haversine(Math.toRadians(minLat - latitude));
+      }
+      if (latitude > maxLat) {
+        return haversine(Math.toRadians(latitude - maxLat));
+      }
+      return 0.;
+    }
+    double haversineLon = Math.min(
+        haversine(Math.toRadians(longitude - minLon)),
+        haversine(Math.toRadians(longitude - maxLon)));
+    double extremumLat = vertexLatitude(latitude, haversineLon);
+    if (extremumLat > minLat && extremumLat < maxLat) {
+      return meridianHaversine(cosLatitude, latitude, extremumLat, haversineLon);
+    }
+    return Math.min(
+        meridianHaversine(cosLatitude, latitude, minLat, haversineLon),
+        meridianHaversine(cosLatitude, latitude, maxLat, haversineLon));
+  }
+
+  private static double meridianHaversine(
+      double cosLatitude1,
+      double latitude1,
+      double latitude2,
+      double haversineLon) {
+    return cosLatitude1 * Math.cos(Math.toRadians(latitude2)) * haversineLon
+        + haversine(Math.toRadians(latitude1 - latitude2));
+  }
+
+  /**
+   * Calculates the latitude, where the great circle from the given latitude to a meridian with
+   * the given longitude difference meets the meridian at a right angle.
+   */
+  private static double vertexLatitude(double latitude, double haversineLon) {
+    double cosLon = 1. - 2. * haversineLon;
+    if (cosLon <= 0.) {
+      return latitude > 0. ? 90. : -90.;
+    }
+    return Math.toDegrees(Math.atan(Math.tan(Math.toRadians(latitude)) / cosLon));
+  }
+
+  private static void forEach(ForkJoinPool pool, int size, IntConsumer action) {
+    if (pool == null || size < PARALLEL_THRESHOLD) {
+      for (int i = 0; i < size; i++) {
+        action.accept(i);
+      }
+    } else {
+      pool.submit(() -> IntStream.range(0, size).parallel().forEach(action)).join();
+    }
+  }
+
+  /**
+   * Calculates the position of the given cell on a Hilbert curve of order 15.
+   */
+  static long hilbert(int x, int y) {
+    long d = 0L;
+    for (int s = 1 << 14; s > 0; s >>= 1) {
+      int rx = (x & s) > 0 ? 1 : 0;
+      int ry = (y & s) > 0 ? 1 : 0;
+      d += (long) s * s * ((3 * rx) ^ ry);
+      if (ry == 0) {
+        if (rx == 1) {
+          x = HILBERT_MAX - x;
+          y = HILBERT_MAX - y;
+        }
+        int t = x;
+        x = y;
+        y = t;
+      }
+    }
+    return d;
+  }
+
+  /**
+   * The origin of a point.
+   */
+  public enum Origin {
+
+    /**
+     * A waypoint of the gpx.
+     */
+    WAYPOINT,
+
+    /**
+     * A point of a route.
+     */
+    ROUTE_POINT,
+
+    /**
+     * A point of a track segment.
+     */
+    TRACK_POINT,
+
+    /**
+     * A point, that was added without a position in a gpx document.
+     */
+    OTHER
+  }
+
+  /**
+   * The builder of a spatial index.
+   */
+  public static class Builder {
+
+    private int size;
+
+    private double[] latitudes;
+
+    private double[] longitudes;
+
+    private WptType[] points;
+
+    private byte[] origins;
+
+    private int[] containerIndices;
+
+    private int[] segmentIndices;
+
+    private int[] pointIndices;
+
+    private int nodeSize = DEFAULT_NODE_SIZE;
+
+    private ForkJoinPool pool;
+
+    private Builder(int capacity) {
+      int c = Math.max(16, capacity);
+      latitudes = new double[c];
+      longitudes = new double[c];
+      points = new WptType[c];
+      origins = new byte[c];
+      containerIndices = new int[c];
+      segmentIndices = new int[c];
+      pointIndices = new int[c];
+    }
+
+    /**
+     * Sets the number of children of a node (default is {@link #DEFAULT_NODE_SIZE}).
+     *
+     * @param nodeSize the node size
+     * @return the builder
+     */
+    public Builder nodeSize(int nodeSize) {
+      if (nodeSize < 2) {
+        throw new IllegalArgumentException("Node size must be greater than one.");
+      }
+      this.nodeSize = nodeSize;
+      return this;
+    }
+
+    /**
+     * Sort large inputs in parallel with the given pool.
+     *
+     * @param pool the pool, if {@code null}, the index is built sequentially
+     * @return the builder
+     */
+    public Builder parallel(ForkJoinPool pool) {
+      this.pool = pool;
+      return this;
+    }
+
+    /**
+     * Adds the waypoints, route points and track points of the given gpx.
+     *
+     * @param gpx the gpx
+     * @return the builder
+     */
+    public Builder add(GpxType gpx) {
+      if (gpx == null) {
+        return this;
+      }
+      List<WptType> waypoints = gpx.getWpts();
+      for (int i = 0; i < waypoints.size(); i++) {
+        add(waypoints.get(i), Origin.WAYPOINT, -1, -1, i);
+      }
+      List<RteType> routes = gpx.getRtes();
+      for (int i = 0; i < routes.size(); i++) {
+        add(routes.get(i), i);
+      }
+      List<TrkType> tracks = gpx.getTrks();
+      for (int t = 0; t < tracks.size(); t++) {
+        List<TrksegType> segments = tracks.get(t).getTrksegs();
+        for (int s = 0; s < segments.size(); s++) {
+          List<WptType> trackPoints = segments.get(s).getTrkpts();
+          for (int i = 0; i < trackPoints.size(); i++) {
+            add(trackPoints.get(i), Origin.TRACK_POINT, t, s, i);
+          }
+        }
+      }
+      return this;
+    }
+
+    private void add(RteType route, int routeIndex) {
+      if (route != null) {
+        List<WptType> routePoints = route.getRtepts();
+        for (int i = 0; i < routePoints.size(); i++) {
+          add(routePoints.get(i), Origin.ROUTE_POINT, routeIndex, -1, i);
+        }
+      }
+    }
+
+    /**
+     * Adds the given points.
+     *
+     * @param points the points
+     * @return the builder
+     */
+    public Builder addAll(Stream<? extends WptType> points) {
+      if (points != null) {
+        points.forEachOrdered(point -> add(point, Origin.OTHER, -1, -1, -1));
+      }
+      return this;
+    }
+
+    /**
+     * Adds the given point. Points without coordinates are ignored.
+     *
+     * @param point the point
+     * @param origin the origin of the point
+     * @param containerIndex the index of the route or track or {@code -1}
+     * @param segmentIndex the index of the track segment or {@code -1}
+     * @param pointIndex the index of the point or {@code -1}
+     * @return the builder
+     */
+    public Builder add(
+        WptType point,
+        Origin origin,
+        int containerIndex,
+        int segmentIndex,
+        int pointIndex) {
+
+      if (point != null && point.getLat() != null && point.getLon() != null) {
+        add(point.getLat(), point.getLon(), point, origin, containerIndex, segmentIndex,
+            pointIndex);
+      }
+      return this;
+    }
+
+    /**
+     * Adds a point, that has no {@link WptType}.
+     *
+     * @param latitude the latitude
+     * @param longitude the longitude
+     * @return the builder
+     */
+    public Builder add(double latitude, double longitude) {
+      if (!(latitude >= -90. && latitude <= 90.)
+          || !(longitude >= -180. && longitude <= 180.)) {
+        throw new IllegalArgumentException(
+            "Illegal coordinates (" + latitude + ", " + longitude + ").");
+      }
+      return append(latitude, longitude, null, Origin.OTHER, -1, -1, -1);
+    }
+
+    private void add(
+        BigDecimal latitude,
+        BigDecimal longitude,
+        WptType point,
+        Origin origin,
+        int containerIndex,
+        int segmentIndex,
+        int pointIndex) {
+      append(latitude.doubleValue(), longitude.doubleValue(), point,
+          Objects.requireNonNull(origin, "Origin must be present."),
+          containerIndex, segmentIndex, pointIndex);
+    }
+
+    private Builder append(
+        double latitude,
+        double longitude,
+        WptType point,
+        Origin origin,
+        int containerIndex,
+        int segmentIndex,
+        int pointIndex) {
+
+      if (size == latitudes.length) {
+        int capacity = size + (size >> 1);
+        latitudes = Arrays.copyOf(latitudes, capacity);
+        longitudes = Arrays.copyOf(longitudes, capacity);
+        points = Arrays.copyOf(points, capacity);
+        origins = Arrays.copyOf(origins, capacity);
+        containerIndices = Arrays.copyOf(containerIndices, capacity);
+        segmentIndices = Arrays.copyOf(segmentIndices, capacity);
+        pointIndices = Arrays.copyOf(pointIndices, capacity);
+      }
+      latitudes[size] = latitude;
+      longitudes[size] = longitude;
+      points[size] = point;
+      origins[size] = (byte) origin.ordinal();
+      containerIndices[size] = containerIndex;
+      segmentIndices[size] = segmentIndex;
+      pointIndices[size] = pointIndex;
+      size++;
+      return this;
+    }
+
+    /**
+     * Builds the spatial index. The builder can be used afterwards to build another index.
+     *
+     * @return the spatial index
+     */
+    public GpxSpatialIndex build() {
+      double minLat = Double.POSITIVE_INFINITY;
+      double minLon = Double.POSITIVE_INFINITY;
+      double maxLat = Double.NEGATIVE_INFINITY;
+      double maxLon = Double.NEGATIVE_INFINITY;
+      for (int i = 0; i < size; i++) {
+        minLat = Math.min(minLat, latitudes[i]);
+        minLon = Math.min(minLon, longitudes[i]);
+        maxLat = Math.max(maxLat, latitudes[i]);
+        maxLon = Math.max(maxLon, longitudes[i]);
+      }
+      final double lat0 = minLat;
+      final double lon0 = minLon;
+      final double latScale = maxLat > minLat ? HILBERT_MAX / (maxLat - minLat) : 0.;
+      final double lonScale = maxLon > minLon ? HILBERT_MAX / (maxLon - minLon) : 0.;
+
+      // the hilbert value (30 bits) and the index are sorted together as one positive long
+      long[] keys = new long[size];
+      forEach(pool, size, i -> {
+        int x = (int) ((longitudes[i] - lon0) * lonScale);
+        int y = (int) ((latitudes[i] - lat0) * latScale);
+        keys[i] = (hilbert(x, y) << 32) | i;
+      });
+      if (pool == null || size < PARALLEL_THRESHOLD) {
+        Arrays.sort(keys);
+      } else {
+        pool.submit(() -> Arrays.parallelSort(keys)).join();
+      }
+      int[] order = new int[size];
+      forEach(pool, size, i -> order[i] = (int) keys[i]);
+      return new GpxSpatialIndex(this, order);
+    }
+  }
+
+  /**
+   * A growable list of primitive ints.
+   */
+  private static class IntList implements IntConsumer {
+
+    private int[] values = new int[16];
+
+    private int size;
+
+    @Override
+    public void accept(int value) {
+      add(value);
+    }
+
+    void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    int removeLast() {
+      return values[--size];
+    }
+
+    int size() {
+      return size;
+    }
+
+    boolean isEmpty() {
+      return size == 0;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(values, size);
+    }
+  }
+
+  /**
+   * A binary min heap of int values with double keys.
+   */
+  private static class MinHeap {
+
+    private double[] keys = new double[64];
+
+    private int[] values = new int[64];
+
+    private int size;
+
+    void push(double key, int value) {
+      if (size == keys.length) {
+        keys = Arrays.copyOf(keys, size * 2);
+        values = Arrays.copyOf(values, size * 2);
+      }
+      int pos = size++;
+      while (pos > 0) {
+        int parent = (pos - 1) >>> 1;
+        if (keys[parent] <= key) {
+          break;
+        }
+        keys[pos] = keys[parent];
+        values[pos] = values[parent];
+        pos = parent;
+      }
+      keys[pos] = key;
+      values[pos] = value;
+    }
+
+    int peekValue() {
+      return values[0];
+    }
+
+    int pop() {
+      int top = values[0];
+      size--;
+      if (size > 0) {
+        double key = keys[size];
+        int value = values[size];
+        int pos = 0;
+        int half = size >>> 1;
+        while (pos < half) {
+          int child = 2 * pos + 1;
+          if (child + 1 < size && keys[child + 1] < keys[child]) {
+            child++;
+          }
+          if (keys[child] >= key) {
+            break;
+          }
+          keys[pos] = keys[child];
+          values[pos] = values[child];
+          pos = child;
+        }
+        keys[pos] = key;
+        values[pos] = value;
+      }
+      return top;
+    }
+
+    boolean isEmpty() {
+      return size == 0;
+    }
+  }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx.track;
+
+import java.util.Arrays;
+
+/**
+ * A sparse column of values, that are appended in ascending index order.
+ *
+ * @param <T> the type of the values
+ * @author Christian Bremer
+ */
+class SparseColumn<T> {
+
+  private int[] indices = new int[0];
+
+  private Object[] values = new Object[0];
+
+  private int size;
+
+  /**
+   * Appends a value. The index must be greater than all indices, that were added before.
+   *
+   * @param index the index
+   * @param value the value, if it is {@code null}, nothing is added
+   */
+  void add(int index, T value) {
+    if (value == null) {
+      return;
+    }
+    if (size > 0 && indices[size - 1] >= index) {
+      throw new IllegalArgumentException("Index " + index + " is not ascending.");
+    }
+    if (size == indices.length) {
+      int capacity = Math.max(8, size * 2);
+      indices = Arrays.copyOf(indices, capacity);
+      values = Arrays.copyOf(values, capacity);
+    }
+    indices[size] = index;
+    values[size] = value;
+    size++;
+  }
+
+  /**
+   * Gets the value of the given index.
+   *
+   * @param index the index
+   * @return the value or {@code null}
+   */
+  T get(int index) {
+    int i = Arrays.binarySearch(indices, 0, size, index);
+    //noinspection unchecked
+    return i >= 0 ? (T) values[i] : null;
+  }
+
+  /**
+   * Gets the number of values.
+   *
+   * @return the number of values
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Creates a copy with a capacity, that is equal to the size.
+   *
+   * @return the copy
+   */
+  SparseColumn<T> copy() {
+    SparseColumn<T> copy = new SparseColumn<>();
+    copy.indices = Arrays.copyOf(indices, size);
+    copy.values = Arrays.copyOf(values, size);
+    copy.size = size;
+    return copy;
+  }
+
+}
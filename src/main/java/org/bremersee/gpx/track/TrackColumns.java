@@ -0,0 +1,770 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx.track;
+
+import static org.bremersee.gpx.GpxValueHelper.isDoubleExact;
+import static org.bremersee.gpx.GpxValueHelper.isEpochMillisExact;
+import static org.bremersee.gpx.GpxValueHelper.toBigDecimal;
+import static org.bremersee.gpx.GpxValueHelper.toDouble;
+import static org.bremersee.gpx.GpxValueHelper.toEpochMillis;
+import static org.bremersee.gpx.GpxValueHelper.toXmlGregorianCalendar;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Consumer;
+import org.bremersee.gpx.GpxValueHelper;
+import org.bremersee.gpx.io.GpxStreamHandler;
+import org.bremersee.gpx.model.ExtensionsType;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.TrksegType;
+import org.bremersee.gpx.model.WptType;
+
+/**
+ * A columnar representation of a track. The coordinates, elevations, times and dilutions of
+ * precision of all points are stored in parallel primitive arrays; the segments are stored as
+ * start indices into these arrays.
+ *
+ * <p>Everything, that does not fit into the primitive columns (extensions, names, links and the
+ * like, and decimals or times, that cannot be represented exactly by a double or by
+ * milliseconds since epoch), is kept in sparse side columns, so that the conversion back into
+ * the JAXB model is lossless.
+ *
+ * <p>The scales of the decimals are kept in byte columns, that are only created, if a scale
+ * differs from the scale of {@code BigDecimal.valueOf(double)}, so that {@code 35} or
+ * {@code 53.1234560} do not need a residual value.
+ *
+ * <p>Missing elevations and dilutions of precision are {@link Double#NaN} or
+ * {@link Float#NaN}, missing times are {@link #NO_TIME}.
+ *
+ * @author Christian Bremer
+ */
+public class TrackColumns {
+
+  /**
+   * The value of a missing time.
+   */
+  public static final long NO_TIME = GpxValueHelper.NO_TIME;
+
+  private static final byte DEFAULT_SCALE = Byte.MIN_VALUE;
+
+  private static final int LAT = 0;
+
+  private static final int LON = 1;
+
+  private static final int ELE = 2;
+
+  private static final int HDOP = 3;
+
+  private static final int VDOP = 4;
+
+  private final TrkType header;
+
+  private final int size;
+
+  private final double[] latitudes;
+
+  private final double[] longitudes;
+
+  private final double[] elevations;
+
+  private final long[] times;
+
+  private final float[] hdops;
+
+  private final float[] vdops;
+
+  private final byte[][] scales;
+
+  private final int[] segmentStarts;
+
+  private final ExtensionsType[] segmentExtensions;
+
+  private final SparseColumn<ExtensionsType> extensions;
+
+  private final SparseColumn<WptType> residuals;
+
+  private TrackColumns(Builder builder) {
+    this.header = builder.header;
+    this.size = builder.size;
+    this.latitudes = Arrays.copyOf(builder.latitudes, size);
+    this.longitudes = Arrays.copyOf(builder.longitudes, size);
+    this.elevations = Arrays.copyOf(builder.elevations, size);
+    this.times = Arrays.copyOf(builder.times, size);
+    this.hdops = builder.hdops != null ? Arrays.copyOf(builder.hdops, size) : null;
+    this.vdops = builder.vdops != null ? Arrays.copyOf(builder.vdops, size) : null;
+    this.scales = new byte[builder.scales.length][];
+    for (int i = 0; i < scales.length; i++) {
+      scales[i] = builder.scales[i] != null ? Arrays.copyOf(builder.scales[i], size) : null;
+    }
+    this.segmentStarts = Arrays.copyOf(builder.segmentStarts, builder.segmentCount);
+    this.segmentExtensions = Arrays.copyOf(builder.segmentExtensions, builder.segmentCount);
+    this.extensions = builder.extensions.copy();
+    this.residuals = builder.residuals.copy();
+  }
+
+  /**
+   * Creates track columns of the given track.
+   *
+   * @param track the track
+   * @return the track columns
+   */
+  public static TrackColumns of(TrkType track) {
+    Builder builder = builder().header(track);
+    for (TrksegType segment : track.getTrksegs()) {
+      builder.addSegment(segment);
+    }
+    return builder.build();
+  }
+
+  /**
+   * Creates track columns of the given segment.
+   *
+   * @param segment the segment
+   * @return the track columns
+   */
+  public static TrackColumns of(TrksegType segment) {
+    return builder().addSegment(segment).build();
+  }
+
+  /**
+   * Creates a new builder.
+   *
+   * @return the builder
+   */
+  public static Builder builder() {
+    return new Builder(1024);
+  }
+
+  /**
+   * Creates a new builder with the given initial capacity of points.
+   *
+   * @param capacity the capacity
+   * @return the builder
+   */
+  public static Builder builder(int capacity) {
+    return new Builder(capacity);
+  }
+
+  /**
+   * Creates a handler for a {@link org.bremersee.gpx.io.GpxStreamReader}, that collects the
+   * points of each track directly into track columns and passes them to the given consumer at
+   * the end of the track.
+   *
+   * @param consumer the consumer
+   * @return the gpx stream handler
+   */
+  public static GpxStreamHandler collector(Consumer<TrackColumns> consumer) {
+    Objects.requireNonNull(consumer, "Consumer must be present.");
+    return new GpxStreamHandler() {
+
+      private Builder builder;
+
+      @Override
+      public void startTrack(TrkType track, int trackIndex) {
+        builder = builder().header(track);
+      }
+
+      @Override
+      public void startSegment(int trackIndex, int segmentIndex) {
+        builder.startSegment();
+      }
+
+      @Override
+      public void trackPoint(WptType trackPoint, int trackIndex, int segmentIndex,
+          int pointIndex) {
+        builder.add(trackPoint);
+      }
+
+      @Override
+      public void endSegment(TrksegType segment, int trackIndex, int segmentIndex) {
+        builder.endSegment(segment.getExtensions());
+      }
+
+      @Override
+      public void endTrack(TrkType track, int trackIndex) {
+        consumer.accept(builder.build());
+        builder = null;
+      }
+    };
+  }
+
+  /**
+   * Gets the number of points.
+   *
+   * @return the number of points
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Gets the number of segments.
+   *
+   * @return the number of segments
+   */
+  public int getSegmentCount() {
+    return segmentStarts.length;
+  }
+
+  /**
+   * Gets the index of the first point of the given segment.
+   *
+   * @param segment the segment
+   * @return the index of the first point
+   */
+  public int getSegmentStart(int segment) {
+    return segmentStarts[segment];
+  }
+
+  /**
+   * Gets the index after the last point of the given segment.
+   *
+   * @param segment the segment
+   * @return the index after the last point
+   */
+  public int getSegmentEnd(int segment) {
+    return segment + 1 < segmentStarts.length ? segmentStarts[segment + 1] : size;
+  }
+
+  /**
+   * Gets the latitudes. The returned array is the column itself and must not be modified.
+   *
+   * @return the latitudes
+   */
+  public double[] getLatitudes() {
+    return latitudes;
+  }
+
+  /**
+   * Gets the longitudes. The returned array is the column itself and must not be modified.
+   *
+   * @return the longitudes
+   */
+  public double[] getLongitudes() {
+    return longitudes;
+  }
+
+  /**
+   * Gets the elevations ({@link Double#NaN} if missing). The returned array is the column itself
+   * and must not be modified.
+   *
+   * @return the elevations
+   */
+  public double[] getElevations() {
+    return elevations;
+  }
+
+  /**
+   * Gets the times in milliseconds since epoch ({@link #NO_TIME} if missing). The returned array
+   * is the column itself and must not be modified.
+   *
+   * @return the times
+   */
+  public long[] getTimes() {
+    return times;
+  }
+
+  /**
+   * Gets the horizontal dilutions of precision ({@link Float#NaN} if missing). The returned
+   * array is the column itself and must not be modified.
+   *
+   * @return the horizontal dilutions of precision or {@code null}, if no point has one
+   */
+  public float[] getHdops() {
+    return hdops;
+  }
+
+  /**
+   * Gets the vertical dilutions of precision ({@link Float#NaN} if missing). The returned array
+   * is the column itself and must not be modified.
+   *
+   * @return the vertical dilutions of precision or {@code null}, if no point has one
+   */
+  public float[] getVdops() {
+    return vdops;
+  }
+
+  /**
+   * Gets the extensions of the given point.
+   *
+   * @param index the index of the point
+   * @return the extensions or {@code null}
+   */
+  public ExtensionsType getExtensions(int index) {
+    return extensions.get(index);
+  }
+
+  /**
+   * Gets the extensions of the given segment.
+   *
+   * @param segment the segment
+   * @return the extensions or {@code null}
+   */
+  public ExtensionsType getSegmentExtensions(int segment) {
+    return segmentExtensions[segment];
+  }
+
+  /**
+   * Gets the track values (without segments), this columns were built from.
+   *
+   * @return the track values or {@code null}
+   */
+  public TrkType getHeader() {
+    return header;
+  }
+
+  /**
+   * Converts the given point back into the JAXB model.
+   *
+   * @param index the index of the point
+   * @return the point
+   */
+  public WptType toWptType(int index) {
+    WptType wpt = new WptType();
+    wpt.setLat(withScale(toBigDecimal(latitudes[index]), LAT, index));
+    wpt.setLon(withScale(toBigDecimal(longitudes[index]), LON, index));
+    wpt.setEle(withScale(toBigDecimal(elevations[index]), ELE, index));
+    wpt.setTime(toXmlGregorianCalendar(times[index]));
+    if (hdops != null && !Float.isNaN(hdops[index])) {
+      wpt.setHdop(withScale(WptValues.toBigDecimal(hdops[index]), HDOP, index));
+    }
+    if (vdops != null && !Float.isNaN(vdops[index])) {
+      wpt.setVdop(withScale(WptValues.toBigDecimal(vdops[index]), VDOP, index));
+    }
+    wpt.setExtensions(extensions.get(index));
+    WptType residual = residuals.get(index);
+    if (residual != null) {
+      WptValues.copy(residual, wpt);
+    }
+    return wpt;
+  }
+
+  private BigDecimal withScale(BigDecimal value, int column, int index) {
+    byte[] columnScales = scales[column];
+    if (value == null || columnScales == null || columnScales[index] == DEFAULT_SCALE) {
+      return value;
+    }
+    // the numeric value is exact, so it can always be represented with the original scale
+    return value.setScale(columnScales[index], RoundingMode.UNNECESSARY);
+  }
+
+  /**
+   * Converts the given segment back into the JAXB model.
+   *
+   * @param segment the segment
+   * @return the segment
+   */
+  public TrksegType toTrksegType(int segment) {
+    TrksegType trkseg = new TrksegType();
+    int end = getSegmentEnd(segment);
+    for (int i = getSegmentStart(segment); i < end; i++) {
+      trkseg.getTrkpts().add(toWptType(i));
+    }
+    trkseg.setExtensions(segmentExtensions[segment]);
+    return trkseg;
+  }
+
+  /**
+   * Converts these columns back into the JAXB model.
+   *
+   * @return the track
+   */
+  public TrkType toTrkType() {
+    TrkType trk = new TrkType();
+    if (header != null) {
+      WptValues.copyHeader(header, trk);
+    }
+    for (int s = 0; s < segmentStarts.length; s++) {
+      trk.getTrksegs().add(toTrksegType(s));
+    }
+    return trk;
+  }
+
+  /**
+   * The builder of track columns.
+   */
+  public static class Builder {
+
+    private TrkType header;
+
+    private int size;
+
+    private double[] latitudes;
+
+    private double[] longitudes;
+
+    private double[] elevations;
+
+    private long[] times;
+
+    private float[] hdops;
+
+    private float[] vdops;
+
+    private int segmentCount;
+
+    private int[] segmentStarts = new int[4];
+
+    private ExtensionsType[] segmentExtensions = new ExtensionsType[4];
+
+    private boolean segmentOpen;
+
+    private final byte[][] scales = new byte[5][];
+
+    private final SparseColumn<ExtensionsType> extensions = new SparseColumn<>();
+
+    private final SparseColumn<WptType> residuals = new SparseColumn<>();
+
+    private Builder(int capacity) {
+      int c = Math.max(16, capacity);
+      latitudes = new double[c];
+      longitudes = new double[c];
+      elevations = new double[c];
+      times = new long[c];
+    }
+
+    /**
+     * Sets the values of the track. The segments of the given track are ignored.
+     *
+     * @param track the track
+     * @return the builder
+     */
+    public Builder header(TrkType track) {
+      if (track != null) {
+        header = new TrkType();
+        WptValues.copyHeader(track, header);
+      }
+      return this;
+    }
+
+    /**
+     * Starts a new segment.
+     *
+     * @return the builder
+     */
+    public Builder startSegment() {
+      if (segmentCount == segmentStarts.length) {
+        segmentStarts = Arrays.copyOf(segmentStarts, segmentCount * 2);
+        segmentExtensions = Arrays.copyOf(segmentExtensions, segmentCount * 2);
+      }
+      segmentStarts[segmentCount++] = size;
+      segmentOpen = true;
+      return this;
+    }
+
+    /**
+     * Ends the current segment.
+     *
+     * @param extensions the extensions of the segment, may be {@code null}
+     * @return the builder
+     */
+    public Builder endSegment(ExtensionsType extensions) {
+      if (segmentCount > 0) {
+        segmentExtensions[segmentCount - 1] = extensions;
+      }
+      segmentOpen = false;
+      return this;
+    }
+
+    /**
+     * Adds all points of the given segment as a new segment.
+     *
+     * @param segment the segment
+     * @return the builder
+     */
+    public Builder addSegment(TrksegType segment) {
+      startSegment();
+      for (WptType wpt : segment.getTrkpts()) {
+        add(wpt);
+      }
+      return endSegment(segment.getExtensions());
+    }
+
+    /**
+     * Adds a point to the current segment.
+     *
+     * @param latitude the latitude
+     * @param longitude the longitude
+     * @param elevation the elevation or {@link Double#NaN}
+     * @param time the time in milliseconds since epoch or {@link #NO_TIME}
+     * @return the builder
+     */
+    public Builder add(double latitude, double longitude, double elevation, long time) {
+      ensureSegment();
+      ensureCapacity();
+      latitudes[size] = latitude;
+      longitudes[size] = longitude;
+      elevations[size] = elevation;
+      times[size] = time;
+      if (hdops != null) {
+        hdops[size] = Float.NaN;
+      }
+      if (vdops != null) {
+        vdops[size] = Float.NaN;
+      }
+      size++;
+      return this;
+    }
+
+    /**
+     * Adds a point to the current segment.
+     *
+     * @param wpt the point
+     * @return the builder
+     */
+    public Builder add(WptType wpt) {
+      int index = size;
+      add(toDouble(wpt.getLat()), toDouble(wpt.getLon()), toDouble(wpt.getEle()),
+          toEpochMillis(wpt.getTime()));
+      if (wpt.getHdop() != null) {
+        hdops = ensureColumn(hdops);
+        hdops[index] = wpt.getHdop().floatValue();
+      }
+      if (wpt.getVdop() != null) {
+        vdops = ensureColumn(vdops);
+        vdops[index] = wpt.getVdop().floatValue();
+      }
+      addScale(LAT, index, wpt.getLat(), toBigDecimal(latitudes[index]));
+      addScale(LON, index, wpt.getLon(), toBigDecimal(longitudes[index]));
+      addScale(ELE, index, wpt.getEle(), toBigDecimal(elevations[index]));
+      if (wpt.getHdop() != null) {
+        addScale(HDOP, index, wpt.getHdop(), WptValues.toBigDecimal(hdops[index]));
+      }
+      if (wpt.getVdop() != null) {
+        addScale(VDOP, index, wpt.getVdop(), WptValues.toBigDecimal(vdops[index]));
+      }
+      extensions.add(index, wpt.getExtensions());
+      residuals.add(index, WptValues.residual(wpt));
+      return this;
+    }
+
+    private void addScale(int column, int index, BigDecimal value, BigDecimal restored) {
+      if (value == null || value.scale() == restored.scale()
+          || !WptValues.isByteScale(value)) {
+        return;
+      }
+      if (scales[column] == null) {
+        scales[column] = new byte[latitudes.length];
+        Arrays.fill(scales[column], DEFAULT_SCALE);
+      }
+      scales[column][index] = (byte) value.scale();
+    }
+
+    private void ensureSegment() {
+      if (!segmentOpen) {
+        startSegment();
+      }
+    }
+
+    private void ensureCapacity() {
+      if (size == latitudes.length) {
+        int capacity = size * 2;
+        latitudes = Arrays.copyOf(latitudes, capacity);
+        longitudes = Arrays.copyOf(longitudes, capacity);
+        elevations = Arrays.copyOf(elevations, capacity);
+        times = Arrays.copyOf(times, capacity);
+        if (hdops != null) {
+          hdops = Arrays.copyOf(hdops, capacity);
+        }
+        if (vdops != null) {
+          vdops = Arrays.copyOf(vdops, capacity);
+        }
+        for (int i = 0; i < scales.length; i++) {
+          if (scales[i] != null) {
+            scales[i] = Arrays.copyOf(scales[i], capacity);
+            Arrays.fill(scales[i], size, capacity, DEFAULT_SCALE);
+          }
+        }
+      }
+    }
+
+    private float[] ensureColumn(float[] column) {
+      if (column != null) {
+        return column;
+      }
+      float[] newColumn = new float[latitudes.length];
+      Arrays.fill(newColumn, Float.NaN);
+      return newColumn;
+    }
+
+    /**
+     * Builds the track columns.
+     *
+     * @return the track columns
+     */
+    public TrackColumns build() {
+      return new TrackColumns(this);
+    }
+  }
+
+  /**
+   * Helper to split a point into the values of the primitive columns and the residual values.
+   */
+  static final class WptValues {
+
+    private WptValues() {
+    }
+
+    /**
+     * Creates a point with all values, that are not exactly represented by the primitive
+     * columns or the extensions column.
+     *
+     * @param wpt the point
+     * @return the residual point or {@code null}, if there are no residual values
+     */
+    static WptType residual(WptType wpt) {
+      WptType r = new WptType();
+      boolean empty = true;
+      if (!isDoubleColumnExact(wpt.getLat())) {
+        r.setLat(wpt.getLat());
+        empty = false;
+      }
+      if (!isDoubleColumnExact(wpt.getLon())) {
+        r.setLon(wpt.getLon());
+        empty = false;
+      }
+      if (!isDoubleColumnExact(wpt.getEle())) {
+        r.setEle(wpt.getEle());
+        empty = false;
+      }
+      if (!isEpochMillisExact(wpt.getTime())) {
+        r.setTime(wpt.getTime());
+        empty = false;
+      }
+      if (!isFloatExact(wpt.getHdop())) {
+        r.setHdop(wpt.getHdop());
+        empty = false;
+      }
+      if (!isFloatExact(wpt.getVdop())) {
+        r.setVdop(wpt.getVdop());
+        empty = false;
+      }
+      if (wpt.getMagvar() != null || wpt.getGeoidheight() != null || wpt.getName() != null
+          || wpt.getCmt() != null || wpt.getDesc() != null || wpt.getSrc() != null
+          || !wpt.getLinks().isEmpty() || wpt.getSym() != null || wpt.getType() != null
+          || wpt.getFix() != null || wpt.getSat() != null || wpt.getPdop() != null
+          || wpt.getAgeofdgpsdata() != null || wpt.getDgpsid() != null) {
+        r.setMagvar(wpt.getMagvar());
+        r.setGeoidheight(wpt.getGeoidheight());
+        r.setName(wpt.getName());
+        r.setCmt(wpt.getCmt());
+        r.setDesc(wpt.getDesc());
+        r.setSrc(wpt.getSrc());
+        r.getLinks().addAll(wpt.getLinks());
+        r.setSym(wpt.getSym());
+        r.setType(wpt.getType());
+        r.setFix(wpt.getFix());
+        r.setSat(wpt.getSat());
+        r.setPdop(wpt.getPdop());
+        r.setAgeofdgpsdata(wpt.getAgeofdgpsdata());
+        r.setDgpsid(wpt.getDgpsid());
+        empty = false;
+      }
+      return empty ? null : r;
+    }
+
+    private static boolean isDoubleColumnExact(BigDecimal value) {
+      return value == null || (isDoubleExact(value) && isByteScale(value));
+    }
+
+    private static boolean isFloatExact(BigDecimal value) {
+      return value == null
+          || (value.compareTo(toBigDecimal(value.floatValue())) == 0 && isByteScale(value));
+    }
+
+    /**
+     * Determines whether the scale of the given decimal can be stored in a scale column.
+     *
+     * @param value the value
+     * @return {@code true} if the scale can be stored, otherwise {@code false}
+     */
+    static boolean isByteScale(BigDecimal value) {
+      return value.scale() > DEFAULT_SCALE && value.scale() <= Byte.MAX_VALUE;
+    }
+
+    /**
+     * Converts the given float into a decimal with the shortest representation of the float.
+     *
+     * @param value the value
+     * @return the decimal
+     */
+    static BigDecimal toBigDecimal(float value) {
+      return new BigDecimal(Float.toString(value));
+    }
+
+    /**
+     * Copies all present values of the source into the target.
+     *
+     * @param source the source
+     * @param target the target
+     */
+    static void copy(WptType source, WptType target) {
+      if (source.getLat() != null) {
+        target.setLat(source.getLat());
+      }
+      if (source.getLon() != null) {
+        target.setLon(source.getLon());
+      }
+      if (source.getEle() != null) {
+        target.setEle(source.getEle());
+      }
+      if (source.getTime() != null) {
+        target.setTime(source.getTime());
+      }
+      if (source.getHdop() != null) {
+        target.setHdop(source.getHdop());
+      }
+      if (source.getVdop() != null) {
+        target.setVdop(source.getVdop());
+      }
+      target.setMagvar(source.getMagvar());
+      target.setGeoidheight(source.getGeoidheight());
+      target.setName(source.getName());
+      target.setCmt(source.getCmt());
+      target.setDesc(source.getDesc());
+      target.setSrc(source.getSrc());
+      target.getLinks().addAll(source.getLinks());
+      target.setSym(source.getSym());
+      target.setType(source.getType());
+      target.setFix(source.getFix());
+      target.setSat(source.getSat());
+      target.setPdop(source.getPdop());
+      target.setAgeofdgpsdata(source.getAgeofdgpsdata());
+      target.setDgpsid(source.getDgpsid());
+    }
+
+    /**
+     * Copies the values of the source track except the segments into the target track.
+     *
+     * @param source the source
+     * @param target the target
+     */
+    static void copyHeader(TrkType source, TrkType target) {
+      target.setName(source.getName());
+      target.setCmt(source.getCmt());
+      target.setDesc(source.getDesc());
+      target.setSrc(source.getSrc());
+      target.getLinks().addAll(source.getLinks());
+      target.setNumber(source.getNumber());
+      target.setType(source.getType());
+      target.setExtensions(source.getExtensions());
+    }
+  }
+
+}
@@ -0,0 +1,585 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx.track;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import org.bremersee.gpx.io.GpxStreamHandler;
+import org.bremersee.gpx.model.ExtensionsType;
+import org.bremersee.gpx.model.GpxType;
+import org.bremersee.gpx.model.MetadataType;
+import org.bremersee.gpx.model.RteType;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.TrksegType;
+import org.bremersee.gpx.model.WptType;
+import org.bremersee.gpx.spatial.GeoHelper;
+
+/**
+ * Simplifies track segments by removing points, that hardly change the shape of the segment.
+ * The first and the last point of a segment are always kept. The simplified segments contain
+ * the original {@link WptType} instances, so all values and extensions of the kept points are
+ * preserved.
+ *
+ * <p>Two algorithms are supported:
+ * <ul>
+ *   <li>Douglas-Peucker keeps every point, that is farther away than the tolerance from the
+ *   simplified line. It is implemented with an explicit stack, so it does not depend on the
+ *   recursion depth. It usually runs in {@code O(n log n)}, but in the worst case, when the
+ *   farthest point is always next to the end of the line, it needs {@code O(n^2)}.</li>
+ *   <li>Visvalingam-Whyatt removes the point with the smallest effective area, until all
+ *   remaining points have an effective area greater than the square of the tolerance. It uses
+ *   an indexed heap and runs in {@code O(n log n)}.</li>
+ * </ul>
+ *
+ * <p>Only Douglas-Peucker simplifies segments with millions of points in well under a second.
+ * Visvalingam-Whyatt removes the points in the global order of their areas, so nearly every heap
+ * operation and every removal accesses another part of the memory. In the
+ * {@code TrackSimplifierBenchmark} it needs between one and two seconds for a segment with two
+ * million points, if most of the points are removed, while Douglas-Peucker needs less than a
+ * third of a second. So Visvalingam-Whyatt should only be used for large segments, if its
+ * results are preferred over the time.
+ *
+ * <p>The distances are calculated in meters on a local equirectangular projection of each
+ * segment. Points without coordinates are removed.
+ *
+ * @author Christian Bremer
+ */
+public class TrackSimplifier {
+
+  private final Algorithm algorithm;
+
+  private final double tolerance;
+
+  private ForkJoinPool pool;
+
+  /**
+   * Instantiates a new track simplifier.
+   *
+   * @param algorithm the algorithm
+   * @param tolerance the tolerance in meters
+   */
+  protected TrackSimplifier(Algorithm algorithm, double tolerance) {
+    this.algorithm = Objects.requireNonNull(algorithm, "Algorithm must be present.");
+    if (!(tolerance >= 0.)) {
+      throw new IllegalArgumentException("Tolerance must not be negative.");
+    }
+    this.tolerance = tolerance;
+  }
+
+  /**
+   * Creates a new track simplifier.
+   *
+   * @param algorithm the algorithm
+   * @param tolerance the tolerance in meters
+   * @return the track simplifier
+   */
+  public static TrackSimplifier newInstance(Algorithm algorithm, double tolerance) {
+    return new TrackSimplifier(algorithm, tolerance);
+  }
+
+  /**
+   * Creates a new track simplifier, that uses the Douglas-Peucker algorithm.
+   *
+   * @param tolerance the tolerance in meters
+   * @return the track simplifier
+   */
+  public static TrackSimplifier douglasPeucker(double tolerance) {
+    return new TrackSimplifier(Algorithm.DOUGLAS_PEUCKER, tolerance);
+  }
+
+  /**
+   * Creates a new track simplifier, that uses the Visvalingam-Whyatt algorithm.
+   *
+   * @param tolerance the tolerance in meters
+   * @return the track simplifier
+   */
+  public static TrackSimplifier visvalingamWhyatt(double tolerance) {
+    return new TrackSimplifier(Algorithm.VISVALINGAM_WHYATT, tolerance);
+  }
+
+  /**
+   * Simplify the segments of a track in parallel with the given pool.
+   *
+   * @param pool the pool, if {@code null}, the segments are simplified sequentially
+   * @return the track simplifier
+   */
+  public TrackSimplifier withPool(ForkJoinPool pool) {
+    this.pool = pool;
+    return this;
+  }
+
+  /**
+   * Simplifies the given track. The values of the track are copied into the new track.
+   *
+   * @param track the track
+   * @return the simplified track
+   */
+  public TrkType simplify(TrkType track) {
+    TrkType result = new TrkType();
+    TrackColumns.WptValues.copyHeader(track, result);
+    List<TrksegType> segments = track.getTrksegs();
+    if (pool == null || segments.size() < 2) {
+      for (TrksegType segment : segments) {
+        result.getTrksegs().add(simplify(segment));
+      }
+    } else {
+      result.getTrksegs().addAll(pool
+          .submit(() -> segments.parallelStream()
+              .map(this::simplify)
+              .collect(Collectors.toList()))
+          .join());
+    }
+    return result;
+  }
+
+  /**
+   * Simplifies the given segment.
+   *
+   * @param segment the segment
+   * @return the simplified segment with the extensions of the given segment
+   */
+  public TrksegType simplify(TrksegType segment) {
+    List<WptType> trackPoints = segment.getTrkpts();
+    WptType[] points = new WptType[trackPoints.size()];
+    double[] latitudes = new double[points.length];
+    double[] longitudes = new double[points.length];
+    int size = 0;
+    for (WptType point : trackPoints) {
+      if (point != null && point.getLat() != null && point.getLon() != null) {
+        points[size] = point;
+        latitudes[size] = point.getLat().doubleValue();
+        longitudes[size] = point.getLon().doubleValue();
+        size++;
+      }
+    }
+    int[] kept = simplify(latitudes, longitudes, size);
+    TrksegType result = new TrksegType();
+    List<WptType> resultPoints = new ArrayList<>(kept.length);
+    for (int index : kept) {
+      resultPoints.add(points[index]);
+    }
+    result.getTrkpts().addAll(resultPoints);
+    result.setExtensions(segment.getExtensions());
+    return result;
+  }
+
+  /**
+   * Simplifies the line of the given coordinates.
+   *
+   * @param latitudes the latitudes
+   * @param longitudes the longitudes
+   * @param size the number of points
+   * @return the ascending indices of the kept points
+   */
+  public int[] simplify(double[] latitudes, double[] longitudes, int size) {
+    if (size <= 2) {
+      int[] all = new int[size];
+      Arrays.setAll(all, i -> i);
+      return all;
+    }
+    double[] x = new double[size];
+    double[] y = new double[size];
+    project(latitudes, longitudes, size, x, y);
+    boolean[] keep = algorithm == Algorithm.DOUGLAS_PEUCKER
+        ? douglasPeucker(x, y, size, tolerance * tolerance)
+        : visvalingamWhyatt(x, y, size, tolerance * tolerance);
+    int count = 0;
+    for (int i = 0; i < size; i++) {
+      if (keep[i]) {
+        count++;
+      }
+    }
+    int[] kept = new int[count];
+    for (int i = 0, j = 0; i < size; i++) {
+      if (keep[i]) {
+        kept[j++] = i;
+      }
+    }
+    return kept;
+  }
+
+  /**
+   * Creates a gpx stream handler, that simplifies the track segments of the stream and passes
+   * all events to the given handler. The points of a segment are buffered and passed to the
+   * given handler at the end of the segment.
+   *
+   * @param handler the handler of the simplified stream
+   * @return the gpx stream handler
+   */
+  public GpxStreamHandler handler(GpxStreamHandler handler) {
+    Objects.requireNonNull(handler, "Handler must be present.");
+    return new SimplifyingHandler(handler);
+  }
+
+  /**
+   * Projects the coordinates onto a plane in meters. The longitudes are unwrapped, so a segment
+   * may cross the antimeridian.
+   */
+  private static void project(
+      double[] latitudes,
+      double[] longitudes,
+      int size,
+      double[] x,
+      double[] y) {
+    double sum = 0.;
+    for (int i = 0; i < size; i++) {
+      sum += latitudes[i];
+    }
+    double scaleX = GeoHelper.EARTH_RADIUS * Math.cos(Math.toRadians(sum / size));
+    double offset = 0.;
+    for (int i = 0; i < size; i++) {
+      if (i > 0) {
+        double delta = longitudes[i] - longitudes[i - 1];
+        if (delta > 180.) {
+          offset -= 360.;
+        } else if (delta < -180.) {
+          offset += 360.;
+        }
+      }
+      x[i] = Math.toRadians(longitudes[i] + offset) * scaleX;
+      y[i] = Math.toRadians(latitudes[i]) * GeoHelper.EARTH_RADIUS;
+    }
+  }
+
+  private static boolean[] douglasPeucker(double[] x, double[] y, int size, double tolerance2) {
+    boolean[] keep = new boolean[size];
+    keep[0] = true;
+    keep[size - 1] = true;
+    int[] stack = new int[64];
+    int top = 0;
+    stack[top++] = 0;
+    stack[top++] = size - 1;
+    while (top > 0) {
+      int last = stack[--top];
+      int first = stack[--top];
+      double dx = x[last] - x[first];
+      double dy = y[last] - y[first];
+      double length2 = dx * dx + dy * dy;
+      double max = tolerance2;
+      int index = -1;
+      for (int i = first + 1; i < last; i++) {
+        double px = x[i] - x[first];
+        double py = y[i] - y[first];
+        double t = length2 > 0. ? (px * dx + py * dy) / length2 : 0.;
+        if (t > 1.) {
+          px = x[i] - x[last];
+          py = y[i] - y[last];
+        } else if (t > 0.) {
+          px -= t * dx;
+          py -= t * dy;
+        }
+        double distance2 = px * px + py * py;
+        if (distance2 > max) {
+          max = distance2;
+          index = i;
+        }
+      }
+      if (index >= 0) {
+        keep[index] = true;
+        if (top + 4 > stack.length) {
+          stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        if (index - first > 1) {
+          stack[top++] = first;
+          stack[top++] = index;
+        }
+        if (last - index > 1) {
+          stack[top++] = index;
+          stack[top++] = last;
+        }
+      }
+    }
+    return keep;
+  }
+
+  private static boolean[] visvalingamWhyatt(
+      double[] x,
+      double[] y,
+      int size,
+      double maxArea) {
+
+    int[] previous = new int[size];
+    int[] next = new int[size];
+    double[] areas = new double[size];
+    boolean[] keep = new boolean[size];
+    Arrays.fill(keep, true);
+    for (int i = 0; i < size; i++) {
+      previous[i] = i - 1;
+      next[i] = i + 1;
+    }
+    for (int i = 1; i < size - 1; i++) {
+      areas[i] = area(x, y, i - 1, i, i + 1);
+    }
+    AreaHeap heap = new AreaHeap(areas, 1, size - 1, maxArea);
+    while (!heap.isEmpty()) {
+      int index = heap.peek();
+      double area = areas[index];
+      if (area > maxArea) {
+        break;
+      }
+      heap.pop();
+      keep[index] = false;
+      int p = previous[index];
+      int n = next[index];
+      next[p] = n;
+      previous[n] = p;
+      // the effective area of a neighbour is at least the area of the removed point
+      if (p > 0) {
+        areas[p] = Math.max(area, area(x, y, previous[p], p, n));
+        heap.update(p);
+      }
+      if (n < size - 1) {
+        areas[n] = Math.max(area, area(x, y, p, n, next[n]));
+        heap.update(n);
+      }
+    }
+    return keep;
+  }
+
+  private static double area(double[] x, double[] y, int a, int b, int c) {
+    return Math.abs((x[b] - x[a]) * (y[c] - y[a]) - (x[c] - x[a]) * (y[b] - y[a])) / 2.;
+  }
+
+  /**
+   * The simplification algorithm.
+   */
+  public enum Algorithm {
+
+    /**
+     * The Douglas-Peucker algorithm.
+     */
+    DOUGLAS_PEUCKER,
+
+    /**
+     * The Visvalingam-Whyatt algorithm.
+     */
+    VISVALINGAM_WHYATT
+  }
+
+  /**
+   * A 4-ary min heap of point indices, that are ordered by their areas. Only the indices with an
+   * area not greater than the maximum area are candidates for removal, so the other indices are
+   * added later, if their area drops. The heap knows the position of each index, so the area of
+   * an index can be changed in place. The areas are stored in heap order, too, so sifting does
+   * not jump around in memory.
+   */
+  private static class AreaHeap {
+
+    private final double[] areas;
+
+    private final double maxArea;
+
+    private final double[] keys;
+
+    private final int[] heap;
+
+    private final int[] positions;
+
+    private int size;
+
+    private AreaHeap(double[] areas, int from, int to, double maxArea) {
+      this.areas = areas;
+      this.maxArea = maxArea;
+      this.keys = new double[Math.max(0, to - from)];
+      this.heap = new int[keys.length];
+      this.positions = new int[areas.length];
+      Arrays.fill(positions, -1);
+      for (int index = from; index < to; index++) {
+        if (areas[index] <= maxArea) {
+          move(index, areas[index], size++);
+        }
+      }
+      for (int pos = (size - 2) >> 2; pos >= 0; pos--) {
+        siftDown(pos);
+      }
+    }
+
+    int peek() {
+      return heap[0];
+    }
+
+    void pop() {
+      positions[heap[0]] = -1;
+      size--;
+      if (size > 0) {
+        move(heap[size], keys[size], 0);
+        siftDown(0);
+      }
+    }
+
+    void update(int index) {
+      int pos = positions[index];
+      if (pos < 0) {
+        if (areas[index] <= maxArea) {
+          move(index, areas[index], size);
+          siftUp(size++);
+        }
+        return;
+      }
+      keys[pos] = areas[index];
+      if (pos > 0 && keys[(pos - 1) >>> 2] > keys[pos]) {
+        siftUp(pos);
+      } else {
+        siftDown(pos);
+      }
+    }
+
+    boolean isEmpty() {
+      return size == 0;
+    }
+
+    private void siftUp(int pos) {
+      int index = heap[pos];
+      double key = keys[pos];
+      while (pos > 0) {
+        int parent = (pos - 1) >>> 2;
+        if (keys[parent] <= key) {
+          break;
+        }
+        move(heap[parent], keys[parent], pos);
+        pos = parent;
+      }
+      move(index, key, pos);
+    }
+
+    private void siftDown(int pos) {
+      int index = heap[pos];
+      double key = keys[pos];
+      while (true) {
+        int first = 4 * pos + 1;
+        if (first >= size) {
+          break;
+        }
+        int child = first;
+        int last = Math.min(first + 4, size);
+        for (int c = first + 1; c < last; c++) {
+          if (keys[c] < keys[child]) {
+            child = c;
+          }
+        }
+        if (keys[child] >= key) {
+          break;
+        }
+        move(heap[child], keys[child], pos);
+        pos = child;
+      }
+      move(index, key, pos);
+    }
+
+    private void move(int index, double key, int pos) {
+      heap[pos] = index;
+      keys[pos] = key;
+      positions[index] = pos;
+    }
+  }
+
+  /**
+   * The gpx stream handler, that buffers and simplifies the points of a segment.
+   */
+  private class SimplifyingHandler implements GpxStreamHandler {
+
+    private final GpxStreamHandler handler;
+
+    private WptType[] points = new WptType[1024];
+
+    private double[] latitudes = new double[1024];
+
+    private double[] longitudes = new double[1024];
+
+    private int size;
+
+    private SimplifyingHandler(GpxStreamHandler handler) {
+      this.handler = handler;
+    }
+
+    @Override
+    public void startGpx(GpxType gpx) {
+      handler.startGpx(gpx);
+    }
+
+    @Override
+    public void metadata(MetadataType metadata) {
+      handler.metadata(metadata);
+    }
+
+    @Override
+    public void waypoint(WptType waypoint, int index) {
+      handler.waypoint(waypoint, index);
+    }
+
+    @Override
+    public void route(RteType route, int index) {
+      handler.route(route, index);
+    }
+
+    @Override
+    public void startTrack(TrkType track, int trackIndex) {
+      handler.startTrack(track, trackIndex);
+    }
+
+    @Override
+    public void startSegment(int trackIndex, int segmentIndex) {
+      size = 0;
+      handler.startSegment(trackIndex, segmentIndex);
+    }
+
+    @Override
+    public void trackPoint(WptType trackPoint, int trackIndex, int segmentIndex,
+        int pointIndex) {
+      if (trackPoint.getLat() == null || trackPoint.getLon() == null) {
+        return;
+      }
+      if (size == points.length) {
+        int capacity = size * 2;
+        points = Arrays.copyOf(points, capacity);
+        latitudes = Arrays.copyOf(latitudes, capacity);
+        longitudes = Arrays.copyOf(longitudes, capacity);
+      }
+      points[size] = trackPoint;
+      latitudes[size] = trackPoint.getLat().doubleValue();
+      longitudes[size] = trackPoint.getLon().doubleValue();
+      size++;
+    }
+
+    @Override
+    public void endSegment(TrksegType segment, int trackIndex, int segmentIndex) {
+      int[] kept = simplify(latitudes, longitudes, size);
+      for (int i = 0; i < kept.length; i++) {
+        handler.trackPoint(points[kept[i]], trackIndex, segmentIndex, i);
+      }
+      Arrays.fill(points, 0, size, null);
+      size = 0;
+      handler.endSegment(segment, trackIndex, segmentIndex);
+    }
+
+    @Override
+    public void endTrack(TrkType track, int trackIndex) {
+      handler.endTrack(track, trackIndex);
+    }
+
+    @Override
+    public void endGpx(GpxType gpx, ExtensionsType extensions) {
+      handler.endGpx(gpx, extensions);
+    }
+  }
+
+}
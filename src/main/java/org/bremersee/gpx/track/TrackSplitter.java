@@ -0,0 +1,557 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx.track;
+
+import jakarta.xml.bind.JAXBContext;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.IntFunction;
+import org.bremersee.gpx.GpxValueHelper;
+import org.bremersee.gpx.io.GpxStreamException;
+import org.bremersee.gpx.io.GpxStreamHandler;
+import org.bremersee.gpx.io.GpxStreamReader;
+import org.bremersee.gpx.io.GpxStreamWriter;
+import org.bremersee.gpx.model.ExtensionsType;
+import org.bremersee.gpx.model.GpxType;
+import org.bremersee.gpx.model.MetadataType;
+import org.bremersee.gpx.model.RteType;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.TrksegType;
+import org.bremersee.gpx.model.WptType;
+import org.bremersee.gpx.spatial.GeoHelper;
+
+/**
+ * Splits tracks into several tracks, when a limit is reached: the number of points, the
+ * duration, the distance, the calendar day or a time gap between two points. The limits are
+ * checked before each point; if a limit would be exceeded by the point, the current track is
+ * ended and the point is the first point of a new track. Every new track gets the values of the
+ * original track (name, comment, description, source, links, number, type and extensions).
+ *
+ * <p>The splitter works on gpx streams (see {@link #handler(GpxStreamHandler)}), so the tracks
+ * are never materialized. The split tracks can be written into separate files
+ * ({@link #split(Path, JAXBContext, IntFunction)}) or emitted as segments
+ * ({@link #chunks(BiConsumer)}).
+ *
+ * <p>Points without time are not checked against the time limits; the distance is not counted
+ * between segments. The extensions of a segment, that is split, are only kept in the last part
+ * of the segment, because they are read after the points.
+ *
+ * @author Christian Bremer
+ */
+public class TrackSplitter {
+
+  private int maxPoints;
+
+  private long maxDuration;
+
+  private double maxDistance;
+
+  private ZoneId zone;
+
+  private long maxGap;
+
+  /**
+   * Instantiates a new track splitter.
+   */
+  protected TrackSplitter() {
+  }
+
+  /**
+   * Creates a new track splitter without limits.
+   *
+   * @return the track splitter
+   */
+  public static TrackSplitter newInstance() {
+    return new TrackSplitter();
+  }
+
+  /**
+   * Split tracks, that have more than the given number of points.
+   *
+   * @param maxPoints the maximum number of points of a track, zero means no limit
+   * @return the track splitter
+   */
+  public TrackSplitter withMaxPoints(int maxPoints) {
+    if (maxPoints < 0) {
+      throw new IllegalArgumentException("Max points must not be negative.");
+    }
+    this.maxPoints = maxPoints;
+    return this;
+  }
+
+  /**
+   * Split tracks, that last longer than the given duration.
+   *
+   * @param maxDuration the maximum duration of a track, {@code null} means no limit
+   * @return the track splitter
+   */
+  public TrackSplitter withMaxDuration(Duration maxDuration) {
+    this.maxDuration = toMillis(maxDuration, "Max duration");
+    return this;
+  }
+
+  /**
+   * Split tracks, that are longer than the given distance.
+   *
+   * @param maxDistance the maximum distance of a track in meters, zero means no limit
+   * @return the track splitter
+   */
+  public TrackSplitter withMaxDistance(double maxDistance) {
+    if (!(maxDistance >= 0.)) {
+      throw new IllegalArgumentException("Max distance must not be negative.");
+    }
+    this.maxDistance = maxDistance;
+    return this;
+  }
+
+  /**
+   * Split tracks at midnight of the given time zone.
+   *
+   * @param zone the time zone, {@code null} means no split at midnight
+   * @return the track splitter
+   */
+  public TrackSplitter withDayBoundaries(ZoneId zone) {
+    this.zone = zone;
+    return this;
+  }
+
+  /**
+   * Split tracks, where the time between two points is greater than the given gap.
+   *
+   * @param maxGap the maximum gap, {@code null} means no limit
+   * @return the track splitter
+   */
+  public TrackSplitter withMaxGap(Duration maxGap) {
+    this.maxGap = toMillis(maxGap, "Max gap");
+    return this;
+  }
+
+  private static long toMillis(Duration duration, String name) {
+    if (duration == null) {
+      return 0L;
+    }
+    if (duration.isNegative()) {
+      throw new IllegalArgumentException(name + " must not be negative.");
+    }
+    return duration.toMillis();
+  }
+
+  /**
+   * Creates a gpx stream handler, that splits the tracks and passes everything to the given
+   * handler. The handler gets the split tracks with new track, segment and point indexes.
+   *
+   * @param handler the handler
+   * @return the gpx stream handler
+   */
+  public GpxStreamHandler handler(GpxStreamHandler handler) {
+    return new SplittingHandler(Objects.requireNonNull(handler, "Handler must be present."));
+  }
+
+  /**
+   * Creates a gpx stream handler, that splits the tracks and passes each segment of a split
+   * track together with the split track (without segments) to the given consumer. Only the
+   * points of one segment are kept in memory.
+   *
+   * @param consumer the consumer
+   * @return the gpx stream handler
+   */
+  public GpxStreamHandler chunks(BiConsumer<TrkType, TrksegType> consumer) {
+    Objects.requireNonNull(consumer, "Consumer must be present.");
+    return handler(new GpxStreamHandler() {
+
+      private TrkType track;
+
+      private TrksegType segment;
+
+      @Override
+      public void startTrack(TrkType track, int trackIndex) {
+        this.track = track;
+      }
+
+      @Override
+      public void startSegment(int trackIndex, int segmentIndex) {
+        segment = new TrksegType();
+      }
+
+      @Override
+      public void trackPoint(WptType trackPoint, int trackIndex, int segmentIndex,
+          int pointIndex) {
+        segment.getTrkpts().add(trackPoint);
+      }
+
+      @Override
+      public void endSegment(TrksegType end, int trackIndex, int segmentIndex) {
+        segment.setExtensions(end.getExtensions());
+        consumer.accept(track, segment);
+        segment = null;
+      }
+    });
+  }
+
+  /**
+   * Splits the given track.
+   *
+   * @param track the track
+   * @return the split tracks
+   */
+  public List<TrkType> split(TrkType track) {
+    List<TrkType> tracks = new ArrayList<>();
+    GpxStreamHandler handler = handler(new GpxStreamHandler() {
+
+      private TrksegType segment;
+
+      @Override
+      public void startTrack(TrkType track, int trackIndex) {
+        tracks.add(track);
+      }
+
+      @Override
+      public void startSegment(int trackIndex, int segmentIndex) {
+        segment = new TrksegType();
+        tracks.get(trackIndex).getTrksegs().add(segment);
+      }
+
+      @Override
+      public void trackPoint(WptType trackPoint, int trackIndex, int segmentIndex,
+          int pointIndex) {
+        segment.getTrkpts().add(trackPoint);
+      }
+
+      @Override
+      public void endSegment(TrksegType end, int trackIndex, int segmentIndex) {
+        segment.setExtensions(end.getExtensions());
+      }
+    });
+    handler.startTrack(track, 0);
+    for (int s = 0; s < track.getTrksegs().size(); s++) {
+      TrksegType segment = track.getTrksegs().get(s);
+      handler.startSegment(0, s);
+      for (int p = 0; p < segment.getTrkpts().size(); p++) {
+        handler.trackPoint(segment.getTrkpts().get(p), 0, s, p);
+      }
+      handler.endSegment(segment, 0, s);
+    }
+    handler.endTrack(track, 0);
+    return tracks;
+  }
+
+  /**
+   * Splits the tracks of the given gpx file and writes each split track into a new file. The
+   * first file also gets the waypoints and the routes, every file gets the metadata of the input;
+   * if the metadata has bounds, the bounds of each file are computed from its points.
+   *
+   * @param input the input file
+   * @param jaxbContext the jaxb context
+   * @param outputs the function, that returns the path of the n-th output file (starting with
+   *     zero)
+   * @return the written files
+   */
+  public List<Path> split(Path input, JAXBContext jaxbContext, IntFunction<Path> outputs) {
+    Objects.requireNonNull(jaxbContext, "Jaxb context must be present.");
+    Objects.requireNonNull(outputs, "Outputs must be present.");
+    try (GpxStreamReader reader = GpxStreamReader.newInstance(input, jaxbContext);
+        FileSink sink = new FileSink(jaxbContext, outputs)) {
+      reader.read(handler(sink));
+      return sink.files;
+    } catch (IOException e) {
+      throw new GpxStreamException("Splitting gpx file " + input + " failed.", e);
+    }
+  }
+
+  /**
+   * The gpx stream handler, that splits the tracks.
+   */
+  private class SplittingHandler implements GpxStreamHandler {
+
+    private final GpxStreamHandler handler;
+
+    private TrkType track;
+
+    private TrkType part;
+
+    private int partIndex = -1;
+
+    private int segmentIndex;
+
+    private int pointIndex;
+
+    private long points;
+
+    private double distance;
+
+    private long startTime;
+
+    private long dayStart;
+
+    private long dayEnd;
+
+    private long lastTime;
+
+    private boolean hasLastPosition;
+
+    private double lastLat;
+
+    private double lastLon;
+
+    private SplittingHandler(GpxStreamHandler handler) {
+      this.handler = handler;
+    }
+
+    @Override
+    public void startGpx(GpxType gpx) {
+      handler.startGpx(gpx);
+    }
+
+    @Override
+    public void metadata(MetadataType metadata) {
+      handler.metadata(metadata);
+    }
+
+    @Override
+    public void waypoint(WptType waypoint, int index) {
+      handler.waypoint(waypoint, index);
+    }
+
+    @Override
+    public void route(RteType route, int index) {
+      handler.route(route, index);
+    }
+
+    @Override
+    public void startTrack(TrkType track, int trackIndex) {
+      this.track = track;
+      lastTime = GpxValueHelper.NO_TIME;
+      startPart();
+    }
+
+    private void startPart() {
+      part = new TrkType();
+      TrackColumns.WptValues.copyHeader(track, part);
+      segmentIndex = -1;
+      points = 0L;
+      distance = 0.;
+      startTime = GpxValueHelper.NO_TIME;
+      handler.startTrack(part, ++partIndex);
+    }
+
+    @Override
+    public void startSegment(int trackIndex, int segmentIndex) {
+      startPartSegment();
+      hasLastPosition = false;
+    }
+
+    private void startPartSegment() {
+      pointIndex = -1;
+      handler.startSegment(partIndex, ++segmentIndex);
+    }
+
+    @Override
+    public void trackPoint(WptType trackPoint, int trackIndex, int segmentIndex,
+        int pointIndex) {
+      long time = GpxValueHelper.toEpochMillis(trackPoint.getTime());
+      boolean hasPosition = trackPoint.getLat() != null && trackPoint.getLon() != null;
+      double lat = hasPosition ? trackPoint.getLat().doubleValue() : 0.;
+      double lon = hasPosition ? trackPoint.getLon().doubleValue() : 0.;
+      double step = hasPosition && hasLastPosition
+          ? GeoHelper.distance(lastLat, lastLon, lat, lon)
+          : 0.;
+      if (points > 0L && isLimitReached(time, step)) {
+        handler.endSegment(new TrksegType(), partIndex, this.segmentIndex);
+        handler.endTrack(part, partIndex);
+        startPart();
+        startPartSegment();
+        step = 0.;
+      }
+      points++;
+      distance += step;
+      if (time != GpxValueHelper.NO_TIME) {
+        if (startTime == GpxValueHelper.NO_TIME) {
+          startTime = time;
+          if (zone != null) {
+            LocalDate day = Instant.ofEpochMilli(time).atZone(zone).toLocalDate();
+            dayStart = day.atStartOfDay(zone).toInstant().toEpochMilli();
+            dayEnd = day.plusDays(1L).atStartOfDay(zone).toInstant().toEpochMilli();
+          }
+        }
+        lastTime = time;
+      }
+      if (hasPosition) {
+        hasLastPosition = true;
+        lastLat = lat;
+        lastLon = lon;
+      }
+      handler.trackPoint(trackPoint, partIndex, this.segmentIndex, ++this.pointIndex);
+    }
+
+    private boolean isLimitReached(long time, double step) {
+      if (maxPoints > 0 && points >= maxPoints) {
+        return true;
+      }
+      if (maxDistance > 0. && distance + step > maxDistance) {
+        return true;
+      }
+      if (time == GpxValueHelper.NO_TIME) {
+        return false;
+      }
+      if (maxGap > 0L && lastTime != GpxValueHelper.NO_TIME && time - lastTime > maxGap) {
+        return true;
+      }
+      if (startTime == GpxValueHelper.NO_TIME) {
+        return false;
+      }
+      return (maxDuration > 0L && time - startTime > maxDuration)
+          || (zone != null && (time < dayStart || time >= dayEnd));
+    }
+
+    @Override
+    public void endSegment(TrksegType segment, int trackIndex, int segmentIndex) {
+      handler.endSegment(segment, partIndex, this.segmentIndex);
+    }
+
+    @Override
+    public void endTrack(TrkType track, int trackIndex) {
+      handler.endTrack(part, partIndex);
+      part = null;
+    }
+
+    @Override
+    public void endGpx(GpxType gpx, ExtensionsType extensions) {
+      handler.endGpx(gpx, extensions);
+    }
+  }
+
+  /**
+   * The gpx stream handler, that writes each track into a new file.
+   */
+  private static class FileSink implements GpxStreamHandler, Closeable {
+
+    private final JAXBContext jaxbContext;
+
+    private final IntFunction<Path> outputs;
+
+    private final List<Path> files = new ArrayList<>();
+
+    private GpxType gpx;
+
+    private MetadataType metadata;
+
+    private GpxStreamWriter writer;
+
+    private boolean hasTrack;
+
+    private FileSink(JAXBContext jaxbContext, IntFunction<Path> outputs) {
+      this.jaxbContext = jaxbContext;
+      this.outputs = outputs;
+    }
+
+    private GpxStreamWriter writer() {
+      if (writer == null) {
+        Path file = outputs.apply(files.size());
+        writer = GpxStreamWriter.newInstance(file, jaxbContext);
+        files.add(file);
+        if (metadata != null && metadata.getBounds() != null) {
+          writer.withComputedBounds();
+        }
+        writer.startGpx(gpx);
+        if (metadata != null) {
+          writer.writeMetadata(metadata);
+        }
+      }
+      return writer;
+    }
+
+    @Override
+    public void startGpx(GpxType gpx) {
+      this.gpx = gpx;
+    }
+
+    @Override
+    public void metadata(MetadataType metadata) {
+      this.metadata = metadata;
+    }
+
+    @Override
+    public void waypoint(WptType waypoint, int index) {
+      writer().writeWaypoint(waypoint);
+    }
+
+    @Override
+    public void route(RteType route, int index) {
+      writer().writeRoute(route);
+    }
+
+    @Override
+    public void startTrack(TrkType track, int trackIndex) {
+      if (hasTrack) {
+        close();
+      }
+      writer().startTrack(track);
+      hasTrack = true;
+    }
+
+    @Override
+    public void startSegment(int trackIndex, int segmentIndex) {
+      writer.startSegment();
+    }
+
+    @Override
+    public void trackPoint(WptType trackPoint, int trackIndex, int segmentIndex,
+        int pointIndex) {
+      writer.writeTrackPoint(trackPoint);
+    }
+
+    @Override
+    public void endSegment(TrksegType segment, int trackIndex, int segmentIndex) {
+      writer.endSegment(segment.getExtensions());
+    }
+
+    @Override
+    public void endTrack(TrkType track, int trackIndex) {
+      writer.endTrack();
+    }
+
+    @Override
+    public void endGpx(GpxType gpx, ExtensionsType extensions) {
+      writer().endGpx(extensions);
+    }
+
+    @Override
+    public void close() {
+      if (writer != null) {
+        try {
+          writer.close();
+        } catch (IOException e) {
+          throw new GpxStreamException("Closing output file failed.", e);
+        } finally {
+          writer = null;
+          hasTrack = false;
+        }
+      }
+    }
+  }
+
+}
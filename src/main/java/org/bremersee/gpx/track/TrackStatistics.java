@@ -0,0 +1,727 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx.track;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import org.bremersee.gpx.GpxValueHelper;
+import org.bremersee.gpx.io.GpxStreamHandler;
+import org.bremersee.gpx.model.GpxType;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.TrksegType;
+import org.bremersee.gpx.model.WptType;
+import org.bremersee.gpx.spatial.GeoHelper;
+
+/**
+ * The statistics of track segments: distance, elevation gain and loss, moving time, maximum
+ * speed and bounds.
+ *
+ * <p>The statistics of a segment are calculated in one pass over its points with primitive
+ * arithmetic (see {@link Calculator}). The statistics of several segments are combined with
+ * {@link #merge(TrackStatistics)}; the distances and durations between segments are not counted,
+ * because the segments of a track are not connected. The merge is associative and commutative,
+ * so segments can be calculated in any order and in parallel.
+ *
+ * @author Christian Bremer
+ */
+public class TrackStatistics {
+
+  /**
+   * The value of a missing time.
+   */
+  public static final long NO_TIME = GpxValueHelper.NO_TIME;
+
+  /**
+   * The statistics without any point.
+   */
+  public static final TrackStatistics EMPTY = new TrackStatistics(0L, 0., 0., 0., 0L, 0L, 0.,
+      Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, NO_TIME, NO_TIME);
+
+  private final long points;
+
+  private final double distance;
+
+  private final double elevationGain;
+
+  private final double elevationLoss;
+
+  private final long movingMillis;
+
+  private final long elapsedMillis;
+
+  private final double maxSpeed;
+
+  private final double minLatitude;
+
+  private final double minLongitude;
+
+  private final double maxLatitude;
+
+  private final double maxLongitude;
+
+  private final double minElevation;
+
+  private final double maxElevation;
+
+  private final long startTime;
+
+  private final long endTime;
+
+  private TrackStatistics(
+      long points,
+      double distance,
+      double elevationGain,
+      double elevationLoss,
+      long movingMillis,
+      long elapsedMillis,
+      double maxSpeed,
+      double minLatitude,
+      double minLongitude,
+      double maxLatitude,
+      double maxLongitude,
+      double minElevation,
+      double maxElevation,
+      long startTime,
+      long endTime) {
+    this.points = points;
+    this.distance = distance;
+    this.elevationGain = elevationGain;
+    this.elevationLoss = elevationLoss;
+    this.movingMillis = movingMillis;
+    this.elapsedMillis = elapsedMillis;
+    this.maxSpeed = maxSpeed;
+    this.minLatitude = minLatitude;
+    this.minLongitude = minLongitude;
+    this.maxLatitude = maxLatitude;
+    this.maxLongitude = maxLongitude;
+    this.minElevation = minElevation;
+    this.maxElevation = maxElevation;
+    this.startTime = startTime;
+    this.endTime = endTime;
+  }
+
+  /**
+   * Creates a new calculator with default settings.
+   *
+   * @return the calculator
+   */
+  public static Calculator calculator() {
+    return new Calculator();
+  }
+
+  /**
+   * Combines these statistics with the given statistics of other segments.
+   *
+   * @param other the other statistics
+   * @return the combined statistics
+   */
+  public TrackStatistics merge(TrackStatistics other) {
+    if (other == null || other.points == 0L) {
+      return this;
+    }
+    if (points == 0L) {
+      return other;
+    }
+    return new TrackStatistics(
+        points + other.points,
+        distance + other.distance,
+        elevationGain + other.elevationGain,
+        elevationLoss + other.elevationLoss,
+        movingMillis + other.movingMillis,
+        elapsedMillis + other.elapsedMillis,
+        Math.max(maxSpeed, other.maxSpeed),
+        Math.min(minLatitude, other.minLatitude),
+        Math.min(minLongitude, other.minLongitude),
+        Math.max(maxLatitude, other.maxLatitude),
+        Math.max(maxLongitude, other.maxLongitude),
+        minOf(minElevation, other.minElevation),
+        maxOf(maxElevation, other.maxElevation),
+        startTime == NO_TIME ? other.startTime
+            : other.startTime == NO_TIME ? startTime : Math.min(startTime, other.startTime),
+        Math.max(endTime, other.endTime));
+  }
+
+  private static double minOf(double a, double b) {
+    return Double.isNaN(a) ? b : Double.isNaN(b) ? a : Math.min(a, b);
+  }
+
+  private static double maxOf(double a, double b) {
+    return Double.isNaN(a) ? b : Double.isNaN(b) ? a : Math.max(a, b);
+  }
+
+  /**
+   * Gets the number of points with coordinates.
+   *
+   * @return the number of points
+   */
+  public long getPoints() {
+    return points;
+  }
+
+  /**
+   * Gets the distance in meters.
+   *
+   * @return the distance
+   */
+  public double getDistance() {
+    return distance;
+  }
+
+  /**
+   * Gets the elevation gain in meters.
+   *
+   * @return the elevation gain
+   */
+  public double getElevationGain() {
+    return elevationGain;
+  }
+
+  /**
+   * Gets the elevation loss in meters (a positive value).
+   *
+   * @return the elevation loss
+   */
+  public double getElevationLoss() {
+    return elevationLoss;
+  }
+
+  /**
+   * Gets the time, in which the speed was at least the minimum moving speed of the calculator.
+   *
+   * @return the moving time
+   */
+  public Duration getMovingTime() {
+    return Duration.ofMillis(movingMillis);
+  }
+
+  /**
+   * Gets the sum of the durations of the segments, i.e. the time between the first and the last
+   * point with a time of each segment.
+   *
+   * @return the elapsed time
+   */
+  public Duration getElapsedTime() {
+    return Duration.ofMillis(elapsedMillis);
+  }
+
+  /**
+   * Gets the maximum speed between two consecutive points.
+   *
+   * @return the maximum speed in meters per second
+   */
+  public double getMaxSpeed() {
+    return maxSpeed;
+  }
+
+  /**
+   * Gets the average speed while moving.
+   *
+   * @return the average moving speed in meters per second
+   */
+  public double getAverageMovingSpeed() {
+    return movingMillis > 0L ? distance * 1000. / movingMillis : 0.;
+  }
+
+  /**
+   * Gets the minimum latitude.
+   *
+   * @return the minimum latitude or {@link Double#NaN}, if there are no points
+   */
+  public double getMinLatitude() {
+    return minLatitude;
+  }
+
+  /**
+   * Gets the minimum longitude.
+   *
+   * @return the minimum longitude or {@link Double#NaN}, if there are no points
+   */
+  public double getMinLongitude() {
+    return minLongitude;
+  }
+
+  /**
+   * Gets the maximum latitude.
+   *
+   * @return the maximum latitude or {@link Double#NaN}, if there are no points
+   */
+  public double getMaxLatitude() {
+    return maxLatitude;
+  }
+
+  /**
+   * Gets the maximum longitude.
+   *
+   * @return the maximum longitude or {@link Double#NaN}, if there are no points
+   */
+  public double getMaxLongitude() {
+    return maxLongitude;
+  }
+
+  /**
+   * Gets the minimum elevation.
+   *
+   * @return the minimum elevation or {@link Double#NaN}, if there are no elevations
+   */
+  public double getMinElevation() {
+    return minElevation;
+  }
+
+  /**
+   * Gets the maximum elevation.
+   *
+   * @return the maximum elevation or {@link Double#NaN}, if there are no elevations
+   */
+  public double getMaxElevation() {
+    return maxElevation;
+  }
+
+  /**
+   * Gets the earliest time.
+   *
+   * @return the earliest time in milliseconds since epoch or {@link #NO_TIME}
+   */
+  public long getStartTime() {
+    return startTime;
+  }
+
+  /**
+   * Gets the latest time.
+   *
+   * @return the latest time in milliseconds since epoch or {@link #NO_TIME}
+   */
+  public long getEndTime() {
+    return endTime;
+  }
+
+  @Override
+  public String toString() {
+    return "TrackStatistics {points=" + points
+        + ", distance=" + distance
+        + ", elevationGain=" + elevationGain
+        + ", elevationLoss=" + elevationLoss
+        + ", movingTime=" + getMovingTime()
+        + ", elapsedTime=" + getElapsedTime()
+        + ", maxSpeed=" + maxSpeed
+        + ", bounds=[" + minLatitude + ", " + minLongitude + ", " + maxLatitude + ", "
+        + maxLongitude + "]"
+        + ", elevation=[" + minElevation + ", " + maxElevation + "]"
+        + ", startTime=" + startTime
+        + ", endTime=" + endTime + '}';
+  }
+
+  /**
+   * Calculates track statistics. The calculator can be used by many threads concurrently, but
+   * it must not be configured while it is used.
+   */
+  public static class Calculator {
+
+    private double minMovingSpeed = .5;
+
+    private double elevationThreshold;
+
+    private ForkJoinPool pool;
+
+    private Map<TrksegType, CacheEntry> cache;
+
+    private Calculator() {
+    }
+
+    /**
+     * Sets the minimum speed, that counts as moving (default is 0.5 m/s).
+     *
+     * @param minMovingSpeed the minimum moving speed in meters per second
+     * @return the calculator
+     */
+    public Calculator withMinMovingSpeed(double minMovingSpeed) {
+      if (!(minMovingSpeed >= 0.)) {
+        throw new IllegalArgumentException("Min moving speed must not be negative.");
+      }
+      this.minMovingSpeed = minMovingSpeed;
+      clearCache();
+      return this;
+    }
+
+    /**
+     * Sets the elevation threshold (default is zero). A change of the elevation is only counted
+     * as gain or loss, when it reaches the threshold, so that the noise of the elevations is
+     * smoothed.
+     *
+     * @param elevationThreshold the elevation threshold in meters
+     * @return the calculator
+     */
+    public Calculator withElevationThreshold(double elevationThreshold) {
+      if (!(elevationThreshold >= 0.)) {
+        throw new IllegalArgumentException("Elevation threshold must not be negative.");
+      }
+      this.elevationThreshold = elevationThreshold;
+      clearCache();
+      return this;
+    }
+
+    /**
+     * Calculate the segments of a track in parallel with the given pool.
+     *
+     * @param pool the pool, if {@code null}, the segments are calculated sequentially
+     * @return the calculator
+     */
+    public Calculator withPool(ForkJoinPool pool) {
+      this.pool = pool;
+      return this;
+    }
+
+    /**
+     * Specifies whether the statistics of the segments are cached. The cache is keyed by the
+     * identity of the segment, which is weakly referenced. An entry is invalid, if the first or
+     * the last point of the segment or the number of points have changed; other changes are not
+     * detected, in this case the entries of the track must be removed with
+     * {@link #invalidate(TrkType)}.
+     *
+     * @param cached {@code true} to cache the statistics of the segments
+     * @return the calculator
+     */
+    public Calculator withCache(boolean cached) {
+      this.cache = cached ? new WeakHashMap<>() : null;
+      return this;
+    }
+
+    /**
+     * Removes the cached statistics of the segments of the given track.
+     *
+     * @param track the track
+     */
+    public void invalidate(TrkType track) {
+      Map<TrksegType, CacheEntry> entries = cache;
+      if (entries != null && track != null) {
+        synchronized (entries) {
+          for (TrksegType segment : track.getTrksegs()) {
+            entries.remove(segment);
+          }
+        }
+      }
+    }
+
+    /**
+     * Removes all cached statistics.
+     */
+    public void clearCache() {
+      Map<TrksegType, CacheEntry> entries = cache;
+      if (entries != null) {
+        synchronized (entries) {
+          entries.clear();
+        }
+      }
+    }
+
+    /**
+     * Calculates the statistics of all tracks of the given gpx.
+     *
+     * @param gpx the gpx
+     * @return the statistics
+     */
+    public TrackStatistics of(GpxType gpx) {
+      TrackStatistics statistics = EMPTY;
+      for (TrkType track : gpx.getTrks()) {
+        statistics = statistics.merge(of(track));
+      }
+      return statistics;
+    }
+
+    /**
+     * Calculates the statistics of the given track.
+     *
+     * @param track the track
+     * @return the statistics
+     */
+    public TrackStatistics of(TrkType track) {
+      List<TrksegType> segments = track.getTrksegs();
+      if (pool == null || segments.size() < 2) {
+        TrackStatistics statistics = EMPTY;
+        for (TrksegType segment : segments) {
+          statistics = statistics.merge(of(segment));
+        }
+        return statistics;
+      }
+      return pool
+          .submit(() -> segments.parallelStream()
+              .map(this::of)
+              .reduce(EMPTY, TrackStatistics::merge))
+          .join();
+    }
+
+    /**
+     * Calculates the statistics of the given segment.
+     *
+     * @param segment the segment
+     * @return the statistics
+     */
+    public TrackStatistics of(TrksegType segment) {
+      Map<TrksegType, CacheEntry> entries = cache;
+      List<WptType> points = segment.getTrkpts();
+      if (entries != null) {
+        CacheEntry entry;
+        synchronized (entries) {
+          entry = entries.get(segment);
+        }
+        if (entry != null && entry.isValid(points)) {
+          return entry.statistics;
+        }
+      }
+      Accumulator accumulator = new Accumulator(this);
+      for (WptType point : points) {
+        accumulator.add(point);
+      }
+      TrackStatistics statistics = accumulator.toStatistics();
+      if (entries != null) {
+        CacheEntry entry = new CacheEntry(points, statistics);
+        synchronized (entries) {
+          entries.put(segment, entry);
+        }
+      }
+      return statistics;
+    }
+
+    /**
+     * Calculates the statistics of the given track columns.
+     *
+     * @param columns the track columns
+     * @return the statistics
+     */
+    public TrackStatistics of(TrackColumns columns) {
+      double[] latitudes = columns.getLatitudes();
+      double[] longitudes = columns.getLongitudes();
+      double[] elevations = columns.getElevations();
+      long[] times = columns.getTimes();
+      TrackStatistics statistics = EMPTY;
+      for (int segment = 0; segment < columns.getSegmentCount(); segment++) {
+        Accumulator accumulator = new Accumulator(this);
+        int end = columns.getSegmentEnd(segment);
+        for (int i = columns.getSegmentStart(segment); i < end; i++) {
+          accumulator.add(latitudes[i], longitudes[i], elevations[i], times[i]);
+        }
+        statistics = statistics.merge(accumulator.toStatistics());
+      }
+      return statistics;
+    }
+
+    /**
+     * Creates a gpx stream handler, that calculates the statistics of each track of the stream
+     * and passes them together with the track (without segments) to the given consumer at the
+     * end of the track. The points are not kept.
+     *
+     * @param consumer the consumer
+     * @return the gpx stream handler
+     */
+    public GpxStreamHandler collector(BiConsumer<TrkType, TrackStatistics> consumer) {
+      Objects.requireNonNull(consumer, "Consumer must be present.");
+      return new GpxStreamHandler() {
+
+        private TrackStatistics statistics;
+
+        private Accumulator accumulator;
+
+        @Override
+        public void startTrack(TrkType track, int trackIndex) {
+          statistics = EMPTY;
+        }
+
+        @Override
+        public void startSegment(int trackIndex, int segmentIndex) {
+          accumulator = new Accumulator(Calculator.this);
+        }
+
+        @Override
+        public void trackPoint(WptType trackPoint, int trackIndex, int segmentIndex,
+            int pointIndex) {
+          accumulator.add(trackPoint);
+        }
+
+        @Override
+        public void endSegment(TrksegType segment, int trackIndex, int segmentIndex) {
+          statistics = statistics.merge(accumulator.toStatistics());
+          accumulator = null;
+        }
+
+        @Override
+        public void endTrack(TrkType track, int trackIndex) {
+          consumer.accept(track, statistics);
+          statistics = null;
+        }
+      };
+    }
+  }
+
+  /**
+   * A cached statistics of a segment with a snapshot of its points.
+   */
+  private static class CacheEntry {
+
+    private final int size;
+
+    private final WptType first;
+
+    private final WptType last;
+
+    private final TrackStatistics statistics;
+
+    private CacheEntry(List<WptType> points, TrackStatistics statistics) {
+      this.size = points.size();
+      this.first = size > 0 ? points.get(0) : null;
+      this.last = size > 0 ? points.get(size - 1) : null;
+      this.statistics = statistics;
+    }
+
+    private boolean isValid(List<WptType> points) {
+      int currentSize = points.size();
+      return currentSize == size
+          && (size == 0 || points.get(0) == first && points.get(size - 1) == last);
+    }
+  }
+
+  /**
+   * Accumulates the statistics of the points of one segment.
+   */
+  private static class Accumulator {
+
+    private final double minMovingSpeed;
+
+    private final double elevationThreshold;
+
+    private long points;
+
+    private double distance;
+
+    private double elevationGain;
+
+    private double elevationLoss;
+
+    private long movingMillis;
+
+    private double maxSpeed;
+
+    private double minLatitude = Double.POSITIVE_INFINITY;
+
+    private double minLongitude = Double.POSITIVE_INFINITY;
+
+    private double maxLatitude = Double.NEGATIVE_INFINITY;
+
+    private double maxLongitude = Double.NEGATIVE_INFINITY;
+
+    private double minElevation = Double.NaN;
+
+    private double maxElevation = Double.NaN;
+
+    private long startTime = NO_TIME;
+
+    private long endTime = NO_TIME;
+
+    private double lastLatitude;
+
+    private double lastLongitude;
+
+    private double lastCosLatitude;
+
+    private double referenceElevation = Double.NaN;
+
+    private long lastTime = NO_TIME;
+
+    private double distanceSinceLastTime;
+
+    private Accumulator(Calculator calculator) {
+      this.minMovingSpeed = calculator.minMovingSpeed;
+      this.elevationThreshold = calculator.elevationThreshold;
+    }
+
+    private void add(WptType point) {
+      if (point != null && point.getLat() != null && point.getLon() != null) {
+        add(point.getLat().doubleValue(),
+            point.getLon().doubleValue(),
+            GpxValueHelper.toDouble(point.getEle()),
+            GpxValueHelper.toEpochMillis(point.getTime()));
+      }
+    }
+
+    private void add(double latitude, double longitude, double elevation, long time) {
+      double cosLatitude = Math.cos(Math.toRadians(latitude));
+      if (points > 0L) {
+        double d = GeoHelper.distance(
+            lastLatitude, lastLongitude, lastCosLatitude, latitude, longitude, cosLatitude);
+        distance += d;
+        distanceSinceLastTime += d;
+      }
+      points++;
+      lastLatitude = latitude;
+      lastLongitude = longitude;
+      lastCosLatitude = cosLatitude;
+      minLatitude = Math.min(minLatitude, latitude);
+      minLongitude = Math.min(minLongitude, longitude);
+      maxLatitude = Math.max(maxLatitude, latitude);
+      maxLongitude = Math.max(maxLongitude, longitude);
+
+      if (!Double.isNaN(elevation)) {
+        minElevation = minOf(minElevation, elevation);
+        maxElevation = maxOf(maxElevation, elevation);
+        if (Double.isNaN(referenceElevation)) {
+          referenceElevation = elevation;
+        } else {
+          double delta = elevation - referenceElevation;
+          if (delta > 0. && delta >= elevationThreshold) {
+            elevationGain += delta;
+            referenceElevation = elevation;
+          } else if (delta < 0. && -delta >= elevationThreshold) {
+            elevationLoss -= delta;
+            referenceElevation = elevation;
+          }
+        }
+      }
+
+      if (time != NO_TIME) {
+        if (startTime == NO_TIME) {
+          startTime = time;
+        }
+        endTime = Math.max(endTime, time);
+        long millis = lastTime != NO_TIME ? time - lastTime : 0L;
+        if (millis > 0L) {
+          double speed = distanceSinceLastTime * 1000. / millis;
+          maxSpeed = Math.max(maxSpeed, speed);
+          if (speed >= minMovingSpeed) {
+            movingMillis += millis;
+          }
+        }
+        lastTime = time;
+        distanceSinceLastTime = 0.;
+      }
+    }
+
+    private TrackStatistics toStatistics() {
+      if (points == 0L) {
+        return EMPTY;
+      }
+      return new TrackStatistics(points, distance, elevationGain, elevationLoss, movingMillis,
+          startTime != NO_TIME ? endTime - startTime : 0L, maxSpeed,
+          minLatitude, minLongitude, maxLatitude, maxLongitude, minElevation, maxElevation,
+          startTime, endTime);
+    }
+  }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.ForkJoinPool;
+import org.assertj.core.api.SoftAssertions;
+import org.assertj.core.api.junit.jupiter.SoftAssertionsExtension;
+import org.bremersee.garmin.gpx.v3.model.ext.CategoriesT;
+import org.bremersee.garmin.gpx.v3.model.ext.WaypointExtension;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.TrksegType;
+import org.bremersee.gpx.model.WptType;
+import org.bremersee.xml.JaxbContextBuilder;
+import org.bremersee.xml.JaxbContextDataProvider;
+import org.bremersee.xml.SchemaMode;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+/**
+ * The bulk extensions builder test.
+ */
+@ExtendWith(SoftAssertionsExtension.class)
+class BulkExtensionsBuilderTest {
+
+  private static JaxbContextBuilder jaxbContextBuilder;
+
+  /**
+   * Create jaxb context builder.
+   */
+  @BeforeAll
+  static void createJaxbContextBuilder() {
+    jaxbContextBuilder = JaxbContextBuilder.newInstance()
+        .withSchemaMode(SchemaMode.NEVER)
+        .processAll(ServiceLoader.load(JaxbContextDataProvider.class))
+        .initJaxbContext();
+  }
+
+  private static TrkType createTrack(int segments, int points) {
+    TrkType track = new TrkType();
+    for (int s = 0; s < segments; s++) {
+      TrksegType segment = new TrksegType();
+      for (int i = 0; i < points; i++) {
+        WptType wpt = new WptType();
+        wpt.setLat(BigDecimal.valueOf(52L + i, 2));
+        wpt.setLon(BigDecimal.valueOf(8L + i, 2));
+        segment.getTrkpts().add(wpt);
+      }
+      track.getTrksegs().add(segment);
+    }
+    return track;
+  }
+
+  private static WaypointExtension createExtension(WptType wpt) {
+    CategoriesT categories = new CategoriesT();
+    categories.getCategories().add(wpt.getLat().toPlainString());
+    WaypointExtension waypointExtension = new WaypointExtension();
+    waypointExtension.setCategories(categories);
+    return waypointExtension;
+  }
+
+  /**
+   * Apply to track in parallel.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void applyToTrackInParallel(SoftAssertions softly) {
+    TrkType track = createTrack(3, 50);
+    BulkExtensionsBuilder.newInstance(jaxbContextBuilder.buildJaxbContext())
+        .parallel(ForkJoinPool.commonPool())
+        .apply(track, BulkExtensionsBuilderTest::createExtension);
+
+    for (TrksegType segment : track.getTrksegs()) {
+      for (WptType wpt : segment.getTrkpts()) {
+        softly.assertThat(GpxJaxbContextHelper
+                .findFirstExtension(WaypointExtension.class, false, wpt.getExtensions(),
+                    jaxbContextBuilder.buildJaxbContext()))
+            .map(ext -> ext.getCategories().getCategories().get(0))
+            .hasValue(wpt.getLat().toPlainString());
+      }
+    }
+  }
+
+  /**
+   * Append and replace.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void appendAndReplace(SoftAssertions softly) {
+    TrksegType segment = createTrack(1, 3).getTrksegs().get(0);
+    BulkExtensionsBuilder builder = BulkExtensionsBuilder
+        .newInstance(jaxbContextBuilder.buildJaxbContext());
+
+    builder.apply(segment, wpt -> List.of(createExtension(wpt), createExtension(wpt)));
+    builder.apply(segment, BulkExtensionsBuilderTest::createExtension);
+    softly.assertThat(segment.getTrkpts())
+        .allMatch(wpt -> wpt.getExtensions().getAnies().size() == 3);
+
+    builder.append(false).apply(segment, BulkExtensionsBuilderTest::createExtension);
+    softly.assertThat(segment.getTrkpts())
+        .allMatch(wpt -> wpt.getExtensions().getAnies().size() == 1);
+
+    builder.apply(segment, wpt -> null);
+    softly.assertThat(segment.getTrkpts())
+        .allMatch(wpt -> wpt.getExtensions() == null);
+  }
+
+}
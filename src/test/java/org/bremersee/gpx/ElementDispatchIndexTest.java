@@ -0,0 +1,122 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx;
+
+import jakarta.xml.bind.JAXBContext;
+import java.io.StringReader;
+import java.util.Map;
+import java.util.ServiceLoader;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.assertj.core.api.SoftAssertions;
+import org.assertj.core.api.junit.jupiter.SoftAssertionsExtension;
+import org.bremersee.gpx.ElementDispatchIndex.DefaultIndex;
+import org.bremersee.gpx.ElementDispatchIndex.DispatchPath;
+import org.bremersee.gpx.model.Gpx;
+import org.bremersee.xml.JaxbContextBuilder;
+import org.bremersee.xml.JaxbContextDataProvider;
+import org.bremersee.xml.SchemaMode;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
+
+/**
+ * The element dispatch index test.
+ */
+@ExtendWith(SoftAssertionsExtension.class)
+class ElementDispatchIndexTest {
+
+  private static JaxbContextBuilder jaxbContextBuilder;
+
+  private static Element known;
+
+  private static Element unknown;
+
+  /**
+   * Create jaxb context builder and elements.
+   *
+   * @throws Exception the exception
+   */
+  @BeforeAll
+  static void setup() throws Exception {
+    jaxbContextBuilder = JaxbContextBuilder.newInstance()
+        .withSchemaMode(SchemaMode.NEVER)
+        .processAll(ServiceLoader.load(JaxbContextDataProvider.class))
+        .initJaxbContext();
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setNamespaceAware(true);
+    Document document = factory.newDocumentBuilder().parse(new InputSource(new StringReader(
+        "<root>"
+            + "<gpx xmlns=\"http://www.topografix.com/GPX/1/1\" version=\"1.1\" creator=\"test\"/>"
+            + "<vendor xmlns=\"urn:unknown\"/>"
+            + "</root>")));
+    known = (Element) document.getDocumentElement().getFirstChild();
+    unknown = (Element) known.getNextSibling();
+  }
+
+  /**
+   * Derived index.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void derivedIndex(SoftAssertions softly) {
+    JAXBContext jaxbContext = jaxbContextBuilder.buildJaxbContext();
+    ElementDispatchIndex index = new DefaultIndex(DefaultIndex.findRootElements(jaxbContext));
+
+    softly.assertThat(index.isCandidate(known)).isTrue();
+    softly.assertThat(index.isCandidate(unknown)).isFalse();
+    softly.assertThat(index.decode(known, jaxbContextBuilder.buildUnmarshaller()))
+        .isInstanceOf(Gpx.class);
+    softly.assertThat(index.decode(unknown, null)).isSameAs(unknown);
+
+    Map<DispatchPath, Long> statistics = index.getStatistics();
+    softly.assertThat(statistics.get(DispatchPath.DECODED)).isEqualTo(1L);
+    softly.assertThat(statistics.get(DispatchPath.SKIPPED)).isEqualTo(1L);
+    softly.assertThat(statistics.get(DispatchPath.FAILED)).isEqualTo(0L);
+  }
+
+  /**
+   * Learning index.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void learningIndex(SoftAssertions softly) {
+    ElementDispatchIndex index = new DefaultIndex(null);
+
+    softly.assertThat(index.isCandidate(unknown)).isTrue();
+    softly.assertThat(index.decode(unknown, jaxbContextBuilder.buildUnmarshaller()))
+        .isSameAs(unknown);
+    softly.assertThat(index.isCandidate(unknown)).isFalse();
+    softly.assertThat(index.decode(unknown, jaxbContextBuilder.buildUnmarshaller()))
+        .isSameAs(unknown);
+    softly.assertThat(index.decode(known, jaxbContextBuilder.buildUnmarshaller()))
+        .isInstanceOf(Gpx.class);
+    softly.assertThat(index.decode(known, jaxbContextBuilder.buildUnmarshaller()))
+        .isInstanceOf(Gpx.class);
+
+    Map<DispatchPath, Long> statistics = index.getStatistics();
+    softly.assertThat(statistics.get(DispatchPath.FAILED)).isEqualTo(1L);
+    softly.assertThat(statistics.get(DispatchPath.SKIPPED)).isEqualTo(1L);
+    softly.assertThat(statistics.get(DispatchPath.PROBED)).isEqualTo(1L);
+    softly.assertThat(statistics.get(DispatchPath.DECODED)).isEqualTo(1L);
+  }
+
+}
@@ -18,6 +18,8 @@ package org.bremersee.gpx;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.Marshaller;
 import java.util.List;
 import java.util.ServiceLoader;
 import org.assertj.core.api.SoftAssertions;
@@ -33,6 +35,7 @@ import org.bremersee.xml.XmlDocumentBuilder;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
 /**
@@ -246,4 +249,76 @@ class ExtensionsTypeBuilderTest {
     softly.assertThat(actual.getAnies()).isNotEmpty();
   }
 
-}
\ No newline at end of file
+  /**
+   * Add elements with shared document.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void addElementsWithSharedDocument(SoftAssertions softly) {
+    CategoriesT categories = new CategoriesT();
+    categories.getCategories().add("JUNIT");
+
+    WaypointExtension waypointExtension = new WaypointExtension();
+    waypointExtension.setCategories(categories);
+
+    Document document = documentBuilder.buildDocument();
+    ExtensionsType actual = ExtensionsTypeBuilder.newInstance()
+        .useSharedDocument(document)
+        .addElement(waypointExtension, jaxbContextBuilder.buildJaxbContext())
+        .addElement(waypointExtension, jaxbContextBuilder.buildMarshaller())
+        .build(true);
+
+    softly.assertThat(actual).isNotNull();
+    softly.assertThat(actual.getAnies())
+        .hasSize(2)
+        .allMatch(element -> element.getOwnerDocument() == document)
+        .allMatch(element -> element.getParentNode() == null)
+        .allMatch(element -> "WaypointExtension".equals(element.getLocalName()));
+    softly.assertThat(GpxJaxbContextHelper
+            .findExtensions(WaypointExtension.class, false, actual,
+                jaxbContextBuilder.buildJaxbContext()))
+        .hasSize(2);
+  }
+
+  /**
+   * Implementations, that were written before the shared document and the cache were added,
+   * inherit the default methods.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void defaultMethods(SoftAssertions softly) {
+    ExtensionsTypeBuilder builder = new ExtensionsTypeBuilder() {
+      @Override
+      public ExtensionsTypeBuilder use(XmlDocumentBuilder documentBuilder) {
+        return this;
+      }
+
+      @Override
+      public ExtensionsTypeBuilder addElement(Element extensionElement) {
+        return this;
+      }
+
+      @Override
+      public ExtensionsTypeBuilder addElement(Object extensionElement, JAXBContext jaxbContext) {
+        return this;
+      }
+
+      @Override
+      public ExtensionsTypeBuilder addElement(Object extensionElement, Marshaller marshaller) {
+        return this;
+      }
+
+      @Override
+      public ExtensionsType build(boolean returnNullIfEmpty) {
+        return null;
+      }
+    };
+    softly.assertThat(builder.useSharedDocument()).isSameAs(builder);
+    softly.assertThat(builder.useSharedDocument(documentBuilder.buildDocument()))
+        .isSameAs(builder);
+    softly.assertThat(builder.use(MarshalledElementCache.newInstance(1))).isSameAs(builder);
+  }
+
+}
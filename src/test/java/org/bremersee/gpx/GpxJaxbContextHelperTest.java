@@ -28,6 +28,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.ServiceLoader;
+import javax.xml.parsers.DocumentBuilderFactory;
 import org.assertj.core.api.SoftAssertions;
 import org.assertj.core.api.junit.jupiter.SoftAssertionsExtension;
 import org.bremersee.garmin.gpx.v3.model.ext.AddressT;
@@ -41,6 +42,7 @@ import org.bremersee.xml.SchemaMode;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
@@ -141,6 +143,69 @@ class GpxJaxbContextHelperTest {
         .allMatch(entry -> Element.class.isAssignableFrom(entry.getKey()));
   }
 
+  /**
+   * Parse extensions with and without cache.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void parseExtensionsCached(SoftAssertions softly) {
+    WaypointExtension waypointExtension = new WaypointExtension();
+    waypointExtension.setAddress(new AddressT());
+    JAXBContext jaxbContext = jaxbContextBuilder.buildJaxbContext();
+    ExtensionsType extensions = ExtensionsTypeBuilder.newInstance()
+        .addElement(waypointExtension, jaxbContext)
+        .build(false);
+
+    Object first = GpxJaxbContextHelper.parseExtensions(extensions, jaxbContext)
+        .get(WaypointExtension.class).get(0);
+    Object second = GpxJaxbContextHelper.parseExtensions(extensions, jaxbContext)
+        .get(WaypointExtension.class).get(0);
+    softly.assertThat(second).isNotSameAs(first);
+
+    Map<Class<?>, List<Object>> cached = GpxJaxbContextHelper
+        .parseExtensionsCached(extensions, jaxbContext);
+    softly.assertThat(GpxJaxbContextHelper.parseExtensionsCached(extensions, jaxbContext))
+        .isSameAs(cached);
+    softly.assertThat(cached.get(WaypointExtension.class)).hasSize(1);
+    softly.assertThatThrownBy(() -> cached.get(WaypointExtension.class).clear())
+        .isInstanceOf(UnsupportedOperationException.class);
+    softly.assertThat(GpxJaxbContextHelper.parseExtensions(extensions, jaxbContext)
+            .get(WaypointExtension.class).get(0))
+        .isNotSameAs(cached.get(WaypointExtension.class).get(0));
+    ParsedExtensionsCache.defaultCache().invalidate(extensions);
+  }
+
+  /**
+   * Find extensions cached.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void findExtensionsCached(SoftAssertions softly) {
+    WaypointExtension waypointExtension = new WaypointExtension();
+    waypointExtension.setAddress(new AddressT());
+    JAXBContext jaxbContext = jaxbContextBuilder.buildJaxbContext();
+    ExtensionsType extensions = ExtensionsTypeBuilder.newInstance()
+        .addElement(waypointExtension, jaxbContext)
+        .build(false);
+
+    ParsedExtensionsCache cache = ParsedExtensionsCache.defaultCache();
+    long hits = cache.getStatistics().getHits();
+    long misses = cache.getStatistics().getMisses();
+
+    List<WaypointExtension> first = GpxJaxbContextHelper
+        .findExtensionsCached(WaypointExtension.class, false, extensions, jaxbContext);
+    Optional<CommonWaypointExtension> second = GpxJaxbContextHelper
+        .findFirstExtensionCached(CommonWaypointExtension.class, true, extensions, jaxbContext);
+
+    softly.assertThat(first).hasSize(1);
+    softly.assertThat(second).containsSame(first.get(0));
+    softly.assertThat(cache.getStatistics().getMisses()).isEqualTo(misses + 1L);
+    softly.assertThat(cache.getStatistics().getHits()).isEqualTo(hits + 1L);
+    cache.invalidate(extensions);
+  }
+
   /**
    * Parse extensions with unmarshaller and empty extensions.
    *
@@ -442,4 +507,46 @@ class GpxJaxbContextHelperTest {
 
     softly.assertThat(actual).isPresent();
   }
-}
\ No newline at end of file
+
+  /**
+   * Stream extensions with jaxb context.
+   *
+   * @param softly the soft assertions
+   * @throws Exception the exception
+   */
+  @Test
+  void streamExtensionsWithJaxbContext(SoftAssertions softly) throws Exception {
+    CategoriesT categories = new CategoriesT();
+    categories.getCategories().add("JUNIT");
+
+    WaypointExtension waypointExtension = new WaypointExtension();
+    waypointExtension.setCategories(categories);
+
+    Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+    Element unknown = document.createElementNS("urn:unknown", "vendor");
+
+    ExtensionsType extensions = ExtensionsTypeBuilder.newInstance()
+        .addElement(unknown)
+        .addElement(waypointExtension, jaxbContextBuilder.buildJaxbContext())
+        .addElement(waypointExtension, jaxbContextBuilder.buildJaxbContext())
+        .build(false);
+
+    softly.assertThat(GpxJaxbContextHelper
+            .streamExtensions(WaypointExtension.class, false, extensions,
+                jaxbContextBuilder.buildJaxbContext())
+            .count())
+        .isEqualTo(2L);
+    softly.assertThat(GpxJaxbContextHelper
+            .streamExtensions(AddressT.class, false, extensions,
+                jaxbContextBuilder.buildJaxbContext())
+            .count())
+        .isEqualTo(0L);
+    softly.assertThat(GpxJaxbContextHelper
+            .findFirstExtension(Element.class, true, extensions,
+                jaxbContextBuilder.buildJaxbContext()))
+        .hasValue(unknown);
+    softly.assertThat(GpxJaxbContextHelper
+            .streamExtensions(null, false, extensions, jaxbContextBuilder.buildJaxbContext()))
+        .isEmpty();
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx;
+
+import jakarta.xml.bind.JAXBContext;
+import java.io.InputStream;
+import javax.xml.transform.stream.StreamSource;
+import org.assertj.core.api.SoftAssertions;
+import org.assertj.core.api.junit.jupiter.SoftAssertionsExtension;
+import org.bremersee.gpx.model.Gpx;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.ResourceLoader;
+
+/**
+ * The gpx jaxb context holder test.
+ */
+@ExtendWith(SoftAssertionsExtension.class)
+class GpxJaxbContextHolderTest {
+
+  private static final ResourceLoader RESOURCE_LOADER = new DefaultResourceLoader();
+
+  /**
+   * Bootstrap and warm up.
+   *
+   * @param softly the soft assertions
+   * @throws Exception the exception
+   */
+  @Test
+  void bootstrapAndWarmUp(SoftAssertions softly) throws Exception {
+    JAXBContext jaxbContext = GpxJaxbContextHolder.bootstrap()
+        .thenApply(context -> {
+          GpxJaxbContextHolder.warmUp();
+          return context;
+        })
+        .get();
+
+    softly.assertThat(GpxJaxbContextHolder.isInitialized()).isTrue();
+    softly.assertThat(GpxJaxbContextHolder.getJaxbContext()).isSameAs(jaxbContext);
+    softly.assertThat(GpxJaxbContextHolder.bootstrap().get()).isSameAs(jaxbContext);
+    softly.assertThat(GpxJaxbContextHolder.getTiming().getContextCreation()).isNotNull();
+    softly.assertThat(GpxJaxbContextHolder.getTiming().getSchemaCompilation()).isNotNull();
+    softly.assertThat(GpxJaxbContextHolder.getTiming().getWarmUp()).isNotNull();
+
+    try (InputStream in = RESOURCE_LOADER.getResource("classpath:Track.GPX").getInputStream()) {
+      Object gpx = jaxbContext.createUnmarshaller().unmarshal(in);
+      softly.assertThat(gpx).isInstanceOf(Gpx.class);
+    }
+  }
+
+  /**
+   * Validate with bundled schema.
+   *
+   * @param softly the soft assertions
+   * @throws Exception the exception
+   */
+  @Test
+  void validateWithBundledSchema(SoftAssertions softly) throws Exception {
+    try (InputStream in = RESOURCE_LOADER.getResource("classpath:Adresse.GPX").getInputStream()) {
+      softly.assertThatCode(() -> GpxJaxbContextHolder.getSchema().newValidator()
+              .validate(new StreamSource(in)))
+          .doesNotThrowAnyException();
+    }
+  }
+
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ServiceLoader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+import org.assertj.core.api.SoftAssertions;
+import org.assertj.core.api.junit.jupiter.SoftAssertionsExtension;
+import org.bremersee.gpx.GpxValidator.ValidationResult;
+import org.bremersee.gpx.model.Gpx;
+import org.bremersee.gpx.model.WptType;
+import org.bremersee.xml.JaxbContextDataProvider;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.ResourceLoader;
+
+/**
+ * The gpx validator test.
+ */
+@ExtendWith(SoftAssertionsExtension.class)
+class GpxValidatorTest {
+
+  private static final ResourceLoader RESOURCE_LOADER = new DefaultResourceLoader();
+
+  private static final String INVALID_GPX = "<gpx xmlns=\"http://www.topografix.com/GPX/1/1\" "
+      + "version=\"1.1\" creator=\"test\">"
+      + "<wpt lon=\"1\"/>"
+      + "<wpt lat=\"999\" lon=\"1\"/>"
+      + "<wpt lon=\"2\"/>"
+      + "</gpx>";
+
+  private static InputStream invalidGpx() {
+    return new ByteArrayInputStream(INVALID_GPX.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Validate valid files.
+   *
+   * @param file the file
+   * @param softly the soft assertions
+   * @throws Exception the exception
+   */
+  @ParameterizedTest
+  @ValueSource(strings = {"Adresse.GPX", "Bild.GPX", "Route.GPX", "Track.GPX"})
+  void validateValidFiles(String file, SoftAssertions softly) throws Exception {
+    try (InputStream in = RESOURCE_LOADER.getResource("classpath:" + file).getInputStream()) {
+      ValidationResult result = GpxValidator.defaultValidator().validate(in);
+      softly.assertThat(result.isValid()).isTrue();
+      softly.assertThat(result.isStopped()).isFalse();
+      softly.assertThat(result.getErrors()).isEmpty();
+      softly.assertThat(result.getDuration()).isNotNull();
+    }
+  }
+
+  /**
+   * Validate invalid document.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void validateInvalidDocument(SoftAssertions softly) {
+    ValidationResult result = GpxValidator.defaultValidator().validate(invalidGpx());
+    softly.assertThat(result.isValid()).isFalse();
+    softly.assertThat(result.isStopped()).isFalse();
+    softly.assertThat(result.getErrors()).hasSizeGreaterThan(2);
+  }
+
+  /**
+   * Validate fail fast and max errors.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void validateFailFastAndMaxErrors(SoftAssertions softly) {
+    ValidationResult result = GpxValidator.builder()
+        .failFast(true)
+        .build()
+        .validate(invalidGpx());
+    softly.assertThat(result.isValid()).isFalse();
+    softly.assertThat(result.isStopped()).isTrue();
+    softly.assertThat(result.getErrors()).hasSize(1);
+
+    result = GpxValidator.builder()
+        .maxErrors(2)
+        .build()
+        .validate(invalidGpx());
+    softly.assertThat(result.isStopped()).isTrue();
+    softly.assertThat(result.getErrors()).hasSize(2);
+  }
+
+  /**
+   * Validate not well formed document.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void validateNotWellFormedDocument(SoftAssertions softly) {
+    ValidationResult result = GpxValidator.defaultValidator()
+        .validate(new ByteArrayInputStream("<gpx".getBytes(StandardCharsets.UTF_8)));
+    softly.assertThat(result.isValid()).isFalse();
+    softly.assertThat(result.isStopped()).isTrue();
+  }
+
+  /**
+   * Validate stream reader.
+   *
+   * @param softly the soft assertions
+   * @throws Exception the exception
+   */
+  @Test
+  void validateStreamReader(SoftAssertions softly) throws Exception {
+    XMLStreamReader reader = XMLInputFactory.newFactory()
+        .createXMLStreamReader(new StringReader(INVALID_GPX));
+    ValidationResult result = GpxValidator.defaultValidator().validate(reader);
+    softly.assertThat(result.isValid()).isFalse();
+    softly.assertThat(result.getErrors()).isNotEmpty();
+  }
+
+  /**
+   * Validate jaxb element.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void validateJaxbElement(SoftAssertions softly) {
+    WptType wpt = new WptType();
+    wpt.setLat(BigDecimal.ONE);
+    wpt.setLon(BigDecimal.TEN);
+    Gpx gpx = new Gpx();
+    gpx.setVersion("1.1");
+    gpx.setCreator("test");
+    gpx.getWpts().add(wpt);
+
+    GpxValidator validator = GpxValidator.defaultValidator();
+    softly.assertThat(validator.validate(gpx, GpxJaxbContextHolder.getJaxbContext()).isValid())
+        .isTrue();
+
+    wpt.setLat(null);
+    softly.assertThat(validator.validate(gpx, GpxJaxbContextHolder.getJaxbContext()).isValid())
+        .isFalse();
+  }
+
+  /**
+   * Validate with generated extension schemas.
+   *
+   * @param softly the soft assertions
+   * @throws Exception the exception
+   */
+  @Test
+  void validateWithGeneratedSchemas(SoftAssertions softly) throws Exception {
+    GpxValidator validator = GpxValidator.builder()
+        .addSchemas(ServiceLoader.load(JaxbContextDataProvider.class))
+        .maxIdle(1)
+        .build();
+    softly.assertThat(validator.getSchema()).isNotSameAs(GpxJaxbContextHolder.getSchema());
+
+    String track;
+    try (InputStream in = RESOURCE_LOADER.getResource("classpath:Track.GPX").getInputStream()) {
+      track = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+    softly.assertThat(track).contains("<gpxx:DisplayColor>Cyan</gpxx:DisplayColor>");
+    softly.assertThat(validator.validate(toInputStream(track)).isValid()).isTrue();
+
+    // the extension of the track has an element, that is not declared by the garmin schema
+    String brokenTrack = track.replace(
+        "<gpxx:DisplayColor>Cyan</gpxx:DisplayColor>",
+        "<gpxx:DisplayColour>Cyan</gpxx:DisplayColour>");
+    ValidationResult result = validator.validate(toInputStream(brokenTrack));
+    softly.assertThat(result.isValid()).isFalse();
+    softly.assertThat(result.getErrors())
+        .anySatisfy(error -> softly.assertThat(error.getMessage()).contains("DisplayColour"));
+
+    // without the garmin schemas, the extension is not validated at all (lax)
+    softly.assertThat(GpxValidator.defaultValidator().validate(toInputStream(brokenTrack))
+        .isValid()).isTrue();
+
+    GpxValidator.Statistics statistics = validator.getStatistics();
+    softly.assertThat(statistics.getValidations()).isEqualTo(2L);
+    softly.assertThat(statistics.getInvalid()).isEqualTo(1L);
+    softly.assertThat(statistics.getCreations()).isEqualTo(1L);
+    softly.assertThat(statistics.getSize()).isEqualTo(1);
+    softly.assertThat(statistics.getMaxDuration()).isNotNull();
+  }
+
+  private static InputStream toInputStream(String xml) {
+    return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+  }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx;
+
+import java.math.BigDecimal;
+import java.util.ServiceLoader;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.assertj.core.api.SoftAssertions;
+import org.assertj.core.api.junit.jupiter.SoftAssertionsExtension;
+import org.bremersee.garmin.gpx.v3.model.ext.CategoriesT;
+import org.bremersee.garmin.gpx.v3.model.ext.WaypointExtension;
+import org.bremersee.gpx.model.ExtensionsType;
+import org.bremersee.gpx.model.TrksegType;
+import org.bremersee.gpx.model.WptType;
+import org.bremersee.xml.JaxbContextBuilder;
+import org.bremersee.xml.JaxbContextDataProvider;
+import org.bremersee.xml.SchemaMode;
+import org.bremersee.xml.XmlDocumentBuilder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * The marshalled element cache test.
+ */
+@ExtendWith(SoftAssertionsExtension.class)
+class MarshalledElementCacheTest {
+
+  private static JaxbContextBuilder jaxbContextBuilder;
+
+  /**
+   * Create jaxb context builder.
+   */
+  @BeforeAll
+  static void createJaxbContextBuilder() {
+    jaxbContextBuilder = JaxbContextBuilder.newInstance()
+        .withSchemaMode(SchemaMode.NEVER)
+        .processAll(ServiceLoader.load(JaxbContextDataProvider.class))
+        .initJaxbContext();
+  }
+
+  private static WaypointExtension createExtension(String category) {
+    CategoriesT categories = new CategoriesT();
+    categories.getCategories().add(category);
+    WaypointExtension waypointExtension = new WaypointExtension();
+    waypointExtension.setCategories(categories);
+    return waypointExtension;
+  }
+
+  private static Object categoryOf(Object extensionObject) {
+    return ((WaypointExtension) extensionObject).getCategories().getCategories().get(0);
+  }
+
+  /**
+   * Get or marshal.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void getOrMarshal(SoftAssertions softly) {
+    Document document = XmlDocumentBuilder.newInstance().buildDocument();
+    AtomicInteger calls = new AtomicInteger();
+    MarshalledElementCache cache = MarshalledElementCache.newInstance(
+        10, MarshalledElementCacheTest::categoryOf);
+
+    Element first = cache.getOrMarshal(createExtension("a"), document, obj -> {
+      calls.incrementAndGet();
+      return document.createElementNS("http://example.org", "a");
+    });
+    Element second = cache.getOrMarshal(createExtension("a"), document, obj -> {
+      calls.incrementAndGet();
+      return document.createElementNS("http://example.org", "a");
+    });
+
+    softly.assertThat(calls).hasValue(1);
+    softly.assertThat(second).isNotSameAs(first);
+    softly.assertThat(second.getOwnerDocument()).isSameAs(document);
+    softly.assertThat(second.isEqualNode(first)).isTrue();
+    softly.assertThat(cache.getStatistics().getHits()).isEqualTo(1L);
+    softly.assertThat(cache.getStatistics().getMisses()).isEqualTo(1L);
+    softly.assertThat(cache.getStatistics().getHitRate()).isEqualTo(0.5);
+    softly.assertThat(cache.getStatistics().getSize()).isEqualTo(1);
+
+    second.setAttribute("changed", "true");
+    Element third = cache.getOrMarshal(createExtension("a"), document, obj -> null);
+    softly.assertThat(third.hasAttribute("changed")).isFalse();
+
+    cache.clear();
+    softly.assertThat(cache.getStatistics().getSize()).isZero();
+  }
+
+  /**
+   * Least recently used entries are evicted.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void evictLeastRecentlyUsed(SoftAssertions softly) {
+    Document document = XmlDocumentBuilder.newInstance().buildDocument();
+    AtomicInteger calls = new AtomicInteger();
+    MarshalledElementCache cache = MarshalledElementCache.newInstance(2, obj -> obj);
+    for (String key : new String[]{"a", "b", "a", "c", "a", "b"}) {
+      cache.getOrMarshal(key, document, obj -> {
+        calls.incrementAndGet();
+        return document.createElement((String) obj);
+      });
+    }
+    // a, b, c and b again are marshalled; b was evicted by c
+    softly.assertThat(calls).hasValue(4);
+    softly.assertThat(cache.getStatistics().getHits()).isEqualTo(2L);
+    softly.assertThat(cache.getStatistics().getSize()).isEqualTo(2);
+  }
+
+  /**
+   * Use cache with extensions type builder and bulk extensions builder.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void useWithBuilders(SoftAssertions softly) {
+    MarshalledElementCache cache = MarshalledElementCache.newInstance(
+        10, MarshalledElementCacheTest::categoryOf);
+
+    ExtensionsType extensions = ExtensionsTypeBuilder.newInstance()
+        .use(cache)
+        .addElement(createExtension("x"), jaxbContextBuilder.buildJaxbContext())
+        .addElement(createExtension("x"), jaxbContextBuilder.buildJaxbContext())
+        .build(false);
+    softly.assertThat(extensions.getAnies()).hasSize(2);
+    softly.assertThat(cache.getStatistics().getHits()).isEqualTo(1L);
+    softly.assertThat(GpxJaxbContextHelper
+            .findExtensions(WaypointExtension.class, false, extensions,
+                jaxbContextBuilder.buildJaxbContext()))
+        .allMatch(ext -> "x".equals(ext.getCategories().getCategories().get(0)));
+
+    TrksegType segment = new TrksegType();
+    for (int i = 0; i < 10; i++) {
+      WptType wpt = new WptType();
+      wpt.setLat(BigDecimal.valueOf(52L));
+      wpt.setLon(BigDecimal.valueOf(8L));
+      segment.getTrkpts().add(wpt);
+    }
+    BulkExtensionsBuilder.newInstance(jaxbContextBuilder.buildJaxbContext())
+        .use(cache)
+        .apply(segment, wpt -> createExtension("x"));
+    softly.assertThat(cache.getStatistics().getHits()).isEqualTo(11L);
+    softly.assertThat(segment.getTrkpts())
+        .allMatch(wpt -> wpt.getExtensions().getAnies().size() == 1);
+  }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.Unmarshaller;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.assertj.core.api.SoftAssertions;
+import org.assertj.core.api.junit.jupiter.SoftAssertionsExtension;
+import org.bremersee.gpx.model.ExtensionsType;
+import org.bremersee.xml.JaxbContextBuilder;
+import org.bremersee.xml.JaxbContextDataProvider;
+import org.bremersee.xml.SchemaMode;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.w3c.dom.Document;
+
+/**
+ * The parsed extensions cache test.
+ */
+@ExtendWith(SoftAssertionsExtension.class)
+class ParsedExtensionsCacheTest {
+
+  private static JAXBContext jaxbContext;
+
+  private static Document document;
+
+  /**
+   * Create jaxb context.
+   *
+   * @throws Exception the exception
+   */
+  @BeforeAll
+  static void createJaxbContext() throws Exception {
+    jaxbContext = JaxbContextBuilder.newInstance()
+        .withSchemaMode(SchemaMode.NEVER)
+        .processAll(ServiceLoader.load(JaxbContextDataProvider.class))
+        .buildJaxbContext();
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setNamespaceAware(true);
+    document = factory.newDocumentBuilder().newDocument();
+  }
+
+  private static ExtensionsType newExtensions() {
+    ExtensionsType extensions = new ExtensionsType();
+    extensions.getAnies().add(document.createElementNS("urn:test", "test"));
+    return extensions;
+  }
+
+  /**
+   * Compute if absent.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void computeIfAbsent(SoftAssertions softly) {
+    ParsedExtensionsCache cache = ParsedExtensionsCache.newInstance(10);
+    AtomicInteger calls = new AtomicInteger();
+    BiFunction<ExtensionsType, JAXBContext, Map<Class<?>, List<Object>>> parser = (e, c) -> {
+      calls.incrementAndGet();
+      return GpxJaxbContextHelper.parseExtensions(e, (Unmarshaller) null);
+    };
+    ExtensionsType extensions = newExtensions();
+
+    Map<Class<?>, List<Object>> first = cache.computeIfAbsent(extensions, jaxbContext, parser);
+    Map<Class<?>, List<Object>> second = cache.computeIfAbsent(extensions, jaxbContext, parser);
+    softly.assertThat(second).isSameAs(first);
+    softly.assertThat(calls.get()).isEqualTo(1);
+
+    extensions.getAnies().add(document.createElementNS("urn:test", "other"));
+    Map<Class<?>, List<Object>> third = cache.computeIfAbsent(extensions, jaxbContext, parser);
+    softly.assertThat(third).isNotSameAs(first);
+    softly.assertThat(calls.get()).isEqualTo(2);
+
+    cache.invalidate(extensions);
+    cache.computeIfAbsent(extensions, jaxbContext, parser);
+    softly.assertThat(calls.get()).isEqualTo(3);
+
+    softly.assertThat(cache.getStatistics().getHits()).isEqualTo(1L);
+    softly.assertThat(cache.getStatistics().getMisses()).isEqualTo(3L);
+    softly.assertThat(cache.getStatistics().getSize()).isEqualTo(1);
+
+    cache.clear();
+    softly.assertThat(cache.getStatistics().getSize()).isEqualTo(0);
+  }
+
+  /**
+   * Bounded and disabled cache.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void boundedAndDisabled(SoftAssertions softly) {
+    ParsedExtensionsCache cache = ParsedExtensionsCache.newInstance(2);
+    AtomicInteger calls = new AtomicInteger();
+    BiFunction<ExtensionsType, JAXBContext, Map<Class<?>, List<Object>>> parser = (e, c) -> {
+      calls.incrementAndGet();
+      return Map.of();
+    };
+    List<ExtensionsType> all = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      ExtensionsType extensions = newExtensions();
+      all.add(extensions);
+      cache.computeIfAbsent(extensions, jaxbContext, parser);
+      if (i > 0) {
+        // keeps the first one the most recently used
+        cache.computeIfAbsent(all.get(0), jaxbContext, parser);
+      }
+    }
+    softly.assertThat(calls.get()).isEqualTo(5);
+    softly.assertThat(cache.getStatistics().getSize()).isEqualTo(2);
+    softly.assertThat(cache.getIfPresent(all.get(0), jaxbContext)).isNotNull();
+    softly.assertThat(cache.getIfPresent(all.get(4), jaxbContext)).isNotNull();
+    softly.assertThat(cache.getIfPresent(all.get(3), jaxbContext)).isNull();
+
+    cache.setMaxSize(jaxbContext, 1);
+    softly.assertThat(cache.getStatistics().getSize()).isEqualTo(1);
+    softly.assertThat(cache.getIfPresent(all.get(4), jaxbContext)).isNotNull();
+
+    cache.setMaxSize(jaxbContext, 0);
+    ExtensionsType extensions = newExtensions();
+    cache.computeIfAbsent(extensions, jaxbContext, parser);
+    cache.computeIfAbsent(extensions, jaxbContext, parser);
+    softly.assertThat(calls.get()).isEqualTo(7);
+    softly.assertThat(cache.getStatistics().getSize()).isEqualTo(0);
+  }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.Unmarshaller;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.assertj.core.api.SoftAssertions;
+import org.assertj.core.api.junit.jupiter.SoftAssertionsExtension;
+import org.bremersee.xml.JaxbContextBuilder;
+import org.bremersee.xml.JaxbContextDataProvider;
+import org.bremersee.xml.SchemaMode;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+/**
+ * The unmarshaller pool test.
+ */
+@ExtendWith(SoftAssertionsExtension.class)
+class UnmarshallerPoolTest {
+
+  private static JAXBContext jaxbContext;
+
+  /**
+   * Create jaxb context.
+   */
+  @BeforeAll
+  static void createJaxbContext() {
+    jaxbContext = JaxbContextBuilder.newInstance()
+        .withSchemaMode(SchemaMode.NEVER)
+        .processAll(ServiceLoader.load(JaxbContextDataProvider.class))
+        .buildJaxbContext();
+  }
+
+  /**
+   * Borrow and release.
+   *
+   * @param softly the soft assertions
+   * @throws Exception the exception
+   */
+  @Test
+  void borrowAndRelease(SoftAssertions softly) throws Exception {
+    UnmarshallerPool pool = UnmarshallerPool.newInstance(2);
+    Unmarshaller first = pool.borrow(jaxbContext);
+    Unmarshaller second = pool.borrow(jaxbContext);
+    Unmarshaller third = pool.borrow(jaxbContext);
+    pool.release(jaxbContext, first);
+    pool.release(jaxbContext, second);
+    pool.release(jaxbContext, third);
+
+    softly.assertThat(pool.getStatistics().getCreations()).isEqualTo(3L);
+    softly.assertThat(pool.getStatistics().getSize()).isEqualTo(2);
+    softly.assertThat(pool.getStatistics().getContexts()).isEqualTo(1);
+
+    softly.assertThat(pool.borrow(jaxbContext)).isSameAs(second);
+    softly.assertThat(pool.getStatistics().getHits()).isEqualTo(1L);
+    softly.assertThat(pool.getStatistics().getSize()).isEqualTo(1);
+
+    pool.clear();
+    softly.assertThat(pool.getStatistics().getSize()).isEqualTo(0);
+    softly.assertThat(pool.getStatistics().getContexts()).isEqualTo(0);
+  }
+
+  /**
+   * Concurrent use.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void concurrentUse() throws Exception {
+    UnmarshallerPool pool = UnmarshallerPool.newInstance(8);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Callable<Boolean>> tasks = new ArrayList<>();
+      for (int i = 0; i < 64; i++) {
+        tasks.add(() -> {
+          for (int n = 0; n < 100; n++) {
+            Unmarshaller unmarshaller = pool.borrow(jaxbContext);
+            pool.release(jaxbContext, unmarshaller);
+          }
+          return true;
+        });
+      }
+      for (Future<Boolean> future : executor.invokeAll(tasks)) {
+        assertThat(future.get()).isTrue();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    UnmarshallerPool.Statistics statistics = pool.getStatistics();
+    assertThat(statistics.getHits() + statistics.getCreations()).isEqualTo(6400L);
+    assertThat(statistics.getCreations()).isLessThan(640L);
+    assertThat(statistics.getSize()).isBetween(1, 8);
+  }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx.adapter;
+
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import org.assertj.core.api.SoftAssertions;
+import org.assertj.core.api.junit.jupiter.SoftAssertionsExtension;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+/**
+ * The decimal double adapter test.
+ */
+@ExtendWith(SoftAssertionsExtension.class)
+class DecimalDoubleAdapterTest {
+
+  private final DecimalDoubleAdapter adapter = new DecimalDoubleAdapter();
+
+  /**
+   * Unmarshal.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void unmarshal(SoftAssertions softly) {
+    softly.assertThat(adapter.unmarshal("52.1")).isEqualTo(52.1);
+    softly.assertThat(adapter.unmarshal(" -8.25 ")).isEqualTo(-8.25);
+    softly.assertThat(adapter.unmarshal("")).isNull();
+    softly.assertThat(adapter.unmarshal(null)).isNull();
+  }
+
+  /**
+   * Marshal.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void marshal(SoftAssertions softly) {
+    softly.assertThat(adapter.marshal(52.1)).isEqualTo("52.1");
+    softly.assertThat(adapter.marshal(0.00001)).isEqualTo("0.000010");
+    softly.assertThat(adapter.marshal(1.0E5)).isEqualTo("100000.0");
+    softly.assertThat(adapter.marshal(null)).isNull();
+  }
+
+  /**
+   * Marshal not a number.
+   */
+  @Test
+  void marshalNotANumber() {
+    assertThatIllegalArgumentException().isThrownBy(() -> adapter.marshal(Double.NaN));
+  }
+
+}
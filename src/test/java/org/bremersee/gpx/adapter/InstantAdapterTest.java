@@ -0,0 +1,61 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx.adapter;
+
+import java.time.Instant;
+import org.assertj.core.api.SoftAssertions;
+import org.assertj.core.api.junit.jupiter.SoftAssertionsExtension;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+/**
+ * The instant adapter test.
+ */
+@ExtendWith(SoftAssertionsExtension.class)
+class InstantAdapterTest {
+
+  private final InstantAdapter adapter = new InstantAdapter();
+
+  /**
+   * Unmarshal.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void unmarshal(SoftAssertions softly) {
+    Instant expected = Instant.parse("2018-08-12T09:59:27Z");
+    softly.assertThat(adapter.unmarshal("2018-08-12T09:59:27Z")).isEqualTo(expected);
+    softly.assertThat(adapter.unmarshal("2018-08-12T11:59:27+02:00")).isEqualTo(expected);
+    softly.assertThat(adapter.unmarshal("2018-08-12T09:59:27")).isEqualTo(expected);
+    softly.assertThat(adapter.unmarshal("2018-08-12T24:00:00Z"))
+        .isEqualTo(Instant.parse("2018-08-13T00:00:00Z"));
+    softly.assertThat(adapter.unmarshal(" ")).isNull();
+  }
+
+  /**
+   * Marshal.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void marshal(SoftAssertions softly) {
+    softly.assertThat(adapter.marshal(Instant.parse("2018-08-12T09:59:27.123Z")))
+        .isEqualTo("2018-08-12T09:59:27.123Z");
+    softly.assertThat(adapter.marshal(null)).isNull();
+  }
+
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx.binary;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.ServiceLoader;
+import java.util.zip.GZIPOutputStream;
+import javax.xml.datatype.DatatypeFactory;
+import org.assertj.core.api.SoftAssertions;
+import org.assertj.core.api.junit.jupiter.SoftAssertionsExtension;
+import org.bremersee.gpx.model.Gpx;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.TrksegType;
+import org.bremersee.gpx.model.WptType;
+import org.bremersee.xml.JaxbContextBuilder;
+import org.bremersee.xml.JaxbContextDataProvider;
+import org.bremersee.xml.SchemaMode;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.ResourceLoader;
+
+/**
+ * The gpx binary codec test.
+ */
+@ExtendWith(SoftAssertionsExtension.class)
+class GpxBinaryCodecTest {
+
+  private static final ResourceLoader RESOURCE_LOADER = new DefaultResourceLoader();
+
+  private static JaxbContextBuilder jaxbContextBuilder;
+
+  /**
+   * Create jaxb context builder.
+   */
+  @BeforeAll
+  static void createJaxbContextBuilder() {
+    jaxbContextBuilder = JaxbContextBuilder.newInstance()
+        .withSchemaMode(SchemaMode.NEVER)
+        .processAll(ServiceLoader.load(JaxbContextDataProvider.class))
+        .initJaxbContext();
+  }
+
+  private static Gpx read(String resource) throws Exception {
+    try (InputStream in = RESOURCE_LOADER.getResource("classpath:" + resource).getInputStream()) {
+      return (Gpx) jaxbContextBuilder.buildUnmarshaller().unmarshal(in);
+    }
+  }
+
+  private static String marshal(Gpx gpx) throws Exception {
+    StringWriter xml = new StringWriter();
+    jaxbContextBuilder.buildMarshaller().marshal(gpx, xml);
+    return xml.toString();
+  }
+
+  /**
+   * Round trip of the test files.
+   *
+   * @param resource the resource
+   * @param softly the soft assertions
+   * @throws Exception the exception
+   */
+  @ParameterizedTest
+  @ValueSource(strings = {"Track.GPX", "Route.GPX", "Adresse.GPX", "Bild.GPX"})
+  void roundTrip(String resource, SoftAssertions softly) throws Exception {
+    Gpx expected = read(resource);
+    byte[] bytes = GpxBinaryCodec.toBytes(expected);
+    softly.assertThat(GpxBinaryCodec.isBinaryGpx(bytes)).isTrue();
+
+    Gpx actual = GpxBinaryCodec.fromBytes(bytes);
+    softly.assertThat(marshal(actual)).isEqualTo(marshal(expected));
+  }
+
+  /**
+   * The binary format of a track is smaller than gzipped xml.
+   *
+   * @param softly the soft assertions
+   * @throws Exception the exception
+   */
+  @Test
+  void smallerThanGzippedXml(SoftAssertions softly) throws Exception {
+    Gpx gpx = read("Track.GPX");
+    String xml = marshal(gpx);
+    ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+    try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+      out.write(xml.getBytes());
+    }
+    byte[] bytes = GpxBinaryCodec.toBytes(gpx);
+    softly.assertThat(bytes.length).isLessThan(xml.length() / 5);
+    softly.assertThat(bytes.length).isLessThan(gzipped.size());
+  }
+
+  /**
+   * Values, that cannot be written as differences, are escaped.
+   *
+   * @param softly the soft assertions
+   * @throws Exception the exception
+   */
+  @Test
+  void escapedValues(SoftAssertions softly) throws Exception {
+    DatatypeFactory datatypeFactory = DatatypeFactory.newInstance();
+    String[][] values = {
+        {"52.10", "2018-08-12T09:59:27Z"},
+        {"52.1", "2018-08-12T09:59:28.500Z"},
+        {"52.100000000000000000000000001", "2018-08-12T11:59:29+02:00"},
+        {"-52.2", "2018-08-12T09:59:30.0Z"},
+        {"9223372036854775807", "2018-08-12T09:59:31Z"},
+        {"-9223372036854775808", "1970-01-01T00:00:00Z"},
+        {"1E+3", "2018-08-12T09:59:32"}
+    };
+    TrksegType segment = new TrksegType();
+    for (String[] value : values) {
+      WptType wpt = new WptType();
+      wpt.setLat(new BigDecimal(value[0]));
+      wpt.setLon(new BigDecimal(value[0]));
+      wpt.setTime(datatypeFactory.newXMLGregorianCalendar(value[1]));
+      segment.getTrkpts().add(wpt);
+    }
+    TrkType track = new TrkType();
+    track.getTrksegs().add(segment);
+    Gpx gpx = new Gpx();
+    gpx.setVersion("1.1");
+    gpx.setCreator("junit");
+    gpx.getTrks().add(track);
+
+    Gpx actual = GpxBinaryCodec.fromBytes(GpxBinaryCodec.toBytes(gpx));
+    softly.assertThat(marshal(actual)).isEqualTo(marshal(gpx));
+    softly.assertThat(actual.getTrks().get(0).getTrksegs().get(0).getTrkpts())
+        .extracting(WptType::getLat)
+        .extracting(BigDecimal::toString)
+        .containsExactly(segment.getTrkpts().stream()
+            .map(wpt -> wpt.getLat().toString())
+            .toArray(String[]::new));
+  }
+
+  /**
+   * Is binary gpx.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void isBinaryGpx(SoftAssertions softly) {
+    softly.assertThat(GpxBinaryCodec.isBinaryGpx(null)).isFalse();
+    softly.assertThat(GpxBinaryCodec.isBinaryGpx("GPX".getBytes())).isFalse();
+    softly.assertThat(GpxBinaryCodec.isBinaryGpx("<?xml".getBytes())).isFalse();
+    softly.assertThat(GpxBinaryCodec.isBinaryGpx("GPXB".getBytes())).isTrue();
+  }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx.binary;
+
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import org.assertj.core.api.SoftAssertions;
+import org.assertj.core.api.junit.jupiter.SoftAssertionsExtension;
+import org.bremersee.gpx.io.GpxStreamException;
+import org.bremersee.gpx.io.GpxStreamHandler;
+import org.bremersee.gpx.io.GpxStreamReader;
+import org.bremersee.gpx.model.Gpx;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.WptType;
+import org.bremersee.xml.JaxbContextBuilder;
+import org.bremersee.xml.JaxbContextDataProvider;
+import org.bremersee.xml.SchemaMode;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.ResourceLoader;
+
+/**
+ * The gpx binary writer and reader test.
+ */
+@ExtendWith(SoftAssertionsExtension.class)
+class GpxBinaryWriterTest {
+
+  private static final ResourceLoader RESOURCE_LOADER = new DefaultResourceLoader();
+
+  private static JaxbContextBuilder jaxbContextBuilder;
+
+  /**
+   * Create jaxb context builder.
+   */
+  @BeforeAll
+  static void createJaxbContextBuilder() {
+    jaxbContextBuilder = JaxbContextBuilder.newInstance()
+        .withSchemaMode(SchemaMode.NEVER)
+        .processAll(ServiceLoader.load(JaxbContextDataProvider.class))
+        .initJaxbContext();
+  }
+
+  private static WptType point(String lat, String lon) {
+    WptType wpt = new WptType();
+    wpt.setLat(new BigDecimal(lat));
+    wpt.setLon(new BigDecimal(lon));
+    return wpt;
+  }
+
+  /**
+   * Write and read points incrementally.
+   *
+   * @param softly the soft assertions
+   * @throws Exception the exception
+   */
+  @Test
+  void writeAndReadPointsIncrementally(SoftAssertions softly) throws Exception {
+    TrkType track = new TrkType();
+    track.setName("Junit & Track");
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GpxBinaryWriter writer = GpxBinaryWriter.newInstance(out)) {
+      writer.startGpx(new Gpx())
+          .writeWaypoint(point("52.1", "10.1"))
+          .startTrack(track)
+          .startSegment()
+          .writeTrackPoint(point("52.2", "10.2"))
+          .writeTrackPoint(point("52.3", "10.3"))
+          .endSegment()
+          .startSegment()
+          .writeTrackPoint(point("52.4", "10.4"));
+    }
+
+    List<String> events = new ArrayList<>();
+    try (GpxBinaryReader reader = GpxBinaryReader
+        .newInstance(new ByteArrayInputStream(out.toByteArray()))) {
+      reader.read(new GpxStreamHandler() {
+        @Override
+        public void waypoint(WptType waypoint, int index) {
+          events.add("wpt " + index + " " + waypoint.getLat());
+        }
+
+        @Override
+        public void startTrack(TrkType track, int trackIndex) {
+          events.add("trk " + trackIndex + " " + track.getName());
+        }
+
+        @Override
+        public void trackPoint(WptType trackPoint, int trackIndex, int segmentIndex,
+            int pointIndex) {
+          events.add("trkpt " + segmentIndex + " " + pointIndex + " " + trackPoint.getLat());
+        }
+      });
+    }
+    softly.assertThat(events).containsExactly(
+        "wpt 0 52.1",
+        "trk 0 Junit & Track",
+        "trkpt 0 0 52.2",
+        "trkpt 0 1 52.3",
+        "trkpt 1 0 52.4");
+  }
+
+  /**
+   * Convert a gpx stream into the binary format.
+   *
+   * @param softly the soft assertions
+   * @throws Exception the exception
+   */
+  @Test
+  void convertGpxStream(SoftAssertions softly) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (InputStream in = RESOURCE_LOADER.getResource("classpath:Track.GPX").getInputStream();
+        GpxStreamReader reader = GpxStreamReader
+            .newInstance(in, jaxbContextBuilder.buildJaxbContext());
+        GpxBinaryWriter writer = GpxBinaryWriter.newInstance(out)) {
+      reader.read(writer.asHandler());
+      softly.assertThat(writer.getSize()).isPositive();
+    }
+
+    Gpx expected;
+    try (InputStream in = RESOURCE_LOADER.getResource("classpath:Track.GPX").getInputStream()) {
+      expected = (Gpx) jaxbContextBuilder.buildUnmarshaller().unmarshal(in);
+    }
+    Gpx actual = GpxBinaryCodec.fromBytes(out.toByteArray());
+    softly.assertThat(actual.getCreator()).isEqualTo(expected.getCreator());
+    softly.assertThat(actual.getMetadata().getName()).isEqualTo(expected.getMetadata().getName());
+    softly.assertThat(actual.getTrks().get(0).getTrksegs().get(0).getTrkpts())
+        .extracting(WptType::getTime)
+        .containsExactlyElementsOf(expected.getTrks().get(0).getTrksegs().get(0).getTrkpts()
+            .stream()
+            .map(WptType::getTime)
+            .toList());
+  }
+
+  /**
+   * Illegal state and illegal input.
+   */
+  @Test
+  void illegalStateAndInput() {
+    GpxBinaryWriter writer = GpxBinaryWriter.newInstance(new ByteArrayOutputStream());
+    assertThatExceptionOfType(IllegalStateException.class)
+        .isThrownBy(() -> writer.writeTrackPoint(point("52.1", "10.1")));
+
+    GpxBinaryReader reader = GpxBinaryReader
+        .newInstance(new ByteArrayInputStream("<?xml version=\"1.0\"?>".getBytes()));
+    assertThatExceptionOfType(GpxStreamException.class)
+        .isThrownBy(reader::readGpx);
+  }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bremersee.gpx.io;
+
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.assertj.core.api.SoftAssertions;
+import org.assertj.core.api.junit.jupiter.SoftAssertionsExtension;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+/**
+ * The compression pool test.
+ */
+@ExtendWith(SoftAssertionsExtension.class)
+class CompressionPoolTest {
+
+  /**
+   * Borrow and release inflaters.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void borrowAndReleaseInflaters(SoftAssertions softly) {
+    CompressionPool pool = CompressionPool.newInstance(2, 1024);
+    Inflater first = pool.borrowInflater();
+    Inflater second = pool.borrowInflater();
+    Inflater third = pool.borrowInflater();
+    pool.release(first);
+    pool.release(second);
+    pool.release(third);
+
+    softly.assertThat(pool.getStatistics().getCreations()).isEqualTo(3L);
+    softly.assertThat(pool.getStatistics().getSize()).isEqualTo(2);
+    softly.assertThat(pool.borrowInflater()).isSameAs(second);
+    softly.assertThat(pool.getStatistics().getHits()).isEqualTo(1L);
+    softly.assertThat(pool.getStatistics().getSize()).isEqualTo(1);
+
+    third.end();
+    pool.release(third);
+    softly.assertThat(pool.getStatistics().getSize()).isEqualTo(1);
+  }
+
+  /**
+   * Borrow and release deflaters.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void borrowAndReleaseDeflaters(SoftAssertions softly) {
+    CompressionPool pool = CompressionPool.newInstance(2, 1024);
+    Deflater deflater = pool.borrowDeflater(Deflater.BEST_SPEED);
+    deflater.setInput(new byte[]{1, 2, 3});
+    pool.release(deflater);
+
+    Deflater actual = pool.borrowDeflater(Deflater.BEST_COMPRESSION);
+    softly.assertThat(actual).isSameAs(deflater);
+    softly.assertThat(actual.needsInput()).isTrue();
+    softly.assertThat(actual.getBytesRead()).isZero();
+    softly.assertThat(pool.getStatistics().getHits()).isEqualTo(1L);
+    softly.assertThat(pool.getStatistics().getCreations()).isEqualTo(1L);
+  }
+
+  /**
+   * Borrow and release buffers.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void borrowAndReleaseBuffers(SoftAssertions softly) {
+    CompressionPool pool = CompressionPool.newInstance(2, 1024);
+    ByteBuffer buffer = pool.borrowBuffer();
+    softly.assertThat(buffer.isDirect()).isTrue();
+    softly.assertThat(buffer.capacity()).isEqualTo(1024);
+    buffer.put((byte) 1).flip();
+    pool.release(buffer);
+    pool.release(ByteBuffer.allocate(1024));
+    pool.release(ByteBuffer.allocateDirect(512));
+    softly.assertThat(pool.getStatistics().getSize()).isEqualTo(1);
+
+    ByteBuffer actual = pool.borrowBuffer();
+    softly.assertThat(actual).isSameAs(buffer);
+    softly.assertThat(actual.position()).isZero();
+    softly.assertThat(actual.limit()).isEqualTo(1024);
+
+    pool.release(actual);
+    pool.release(pool.borrowInflater());
+    pool.clear();
+    softly.assertThat(pool.getStatistics().getSize()).isZero();
+  }
+
+  /**
+   * Create with illegal arguments.
+   */
+  @Test
+  void createWithIllegalArguments() {
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> CompressionPool.newInstance(-1, 1024));
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> CompressionPool.newInstance(1, 16));
+  }
+
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx.io;
+
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.ServiceLoader;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.assertj.core.api.SoftAssertions;
+import org.assertj.core.api.junit.jupiter.SoftAssertionsExtension;
+import org.bremersee.gpx.GpxValidator;
+import org.bremersee.gpx.GpxValidator.ValidationResult;
+import org.bremersee.gpx.io.GpxAppender.SyncPolicy;
+import org.bremersee.gpx.model.ExtensionsType;
+import org.bremersee.gpx.model.Gpx;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.TrksegType;
+import org.bremersee.gpx.model.WptType;
+import org.bremersee.xml.JaxbContextBuilder;
+import org.bremersee.xml.JaxbContextDataProvider;
+import org.bremersee.xml.SchemaMode;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.ResourceLoader;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * The gpx appender test.
+ */
+@ExtendWith(SoftAssertionsExtension.class)
+class GpxAppenderTest {
+
+  private static final ResourceLoader RESOURCE_LOADER = new DefaultResourceLoader();
+
+  private static JaxbContextBuilder jaxbContextBuilder;
+
+  /**
+   * Create jaxb context builder.
+   */
+  @BeforeAll
+  static void createJaxbContextBuilder() {
+    jaxbContextBuilder = JaxbContextBuilder.newInstance()
+        .withSchemaMode(SchemaMode.NEVER)
+        .processAll(ServiceLoader.load(JaxbContextDataProvider.class))
+        .initJaxbContext();
+  }
+
+  private static WptType point(String lat, String lon) {
+    WptType wpt = new WptType();
+    wpt.setLat(new BigDecimal(lat));
+    wpt.setLon(new BigDecimal(lon));
+    return wpt;
+  }
+
+  private static Path copy(String resource, Path directory) throws Exception {
+    Path file = directory.resolve(resource);
+    try (InputStream in = RESOURCE_LOADER.getResource("classpath:" + resource).getInputStream()) {
+      Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+    return file;
+  }
+
+  private static Gpx read(Path file) throws Exception {
+    return (Gpx) jaxbContextBuilder.buildUnmarshaller().unmarshal(file.toFile());
+  }
+
+  private static void assertValid(SoftAssertions softly, Path file) throws Exception {
+    try (InputStream in = Files.newInputStream(file)) {
+      ValidationResult result = GpxValidator.defaultValidator().validate(in);
+      softly.assertThat(result.isValid())
+          .as("Validation of %s: %s", Files.readString(file), result.getErrors())
+          .isTrue();
+    }
+  }
+
+  private static List<TrksegType> lastSegments(Gpx gpx) {
+    List<TrkType> tracks = gpx.getTrks();
+    return tracks.get(tracks.size() - 1).getTrksegs();
+  }
+
+  /**
+   * Append track points.
+   *
+   * @param softly the soft assertions
+   * @param directory the directory
+   * @throws Exception the exception
+   */
+  @Test
+  void appendTrackPoints(SoftAssertions softly, @TempDir Path directory) throws Exception {
+    Path file = copy("Track.GPX", directory);
+    int expectedPoints = lastSegments(read(file)).get(0).getTrkpts().size() + 3;
+
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setNamespaceAware(true);
+    Document document = factory.newDocumentBuilder().newDocument();
+    Element heartRate = document.createElementNS("urn:test", "test:hr");
+    heartRate.setTextContent("120");
+    WptType withExtensions = point("52.5", "10.5");
+    withExtensions.setExtensions(new ExtensionsType());
+    withExtensions.getExtensions().getAnies().add(heartRate);
+
+    try (GpxAppender appender = GpxAppender
+        .newInstance(file, jaxbContextBuilder.buildJaxbContext())
+        .withSyncPolicy(SyncPolicy.EVERY_APPEND)) {
+      appender.appendTrackPoint(point("52.1", "10.1"));
+      assertValid(softly, file);
+      appender.appendTrackPoints(List.of(point("52.2", "10.2"), withExtensions));
+      assertValid(softly, file);
+      softly.assertThat(appender.getAppendedPoints()).isEqualTo(3L);
+      softly.assertThat(appender.getSize()).isEqualTo(Files.size(file));
+    }
+
+    List<TrksegType> segments = lastSegments(read(file));
+    softly.assertThat(segments).hasSize(1);
+    List<WptType> points = segments.get(0).getTrkpts();
+    softly.assertThat(points).hasSize(expectedPoints);
+    WptType last = points.get(points.size() - 1);
+    softly.assertThat(last.getLat()).isEqualByComparingTo("52.5");
+    softly.assertThat(last.getExtensions()).isNotNull();
+    softly.assertThat(last.getExtensions().getAnies())
+        .extracting(Element::getTextContent)
+        .containsExactly("120");
+
+    try (GpxAppender appender = GpxAppender
+        .newInstance(file, jaxbContextBuilder.buildJaxbContext())) {
+      appender.appendTrackPoint(point("52.6", "10.6"));
+    }
+    assertValid(softly, file);
+    points = lastSegments(read(file)).get(0).getTrkpts();
+    softly.assertThat(points).hasSize(expectedPoints + 1);
+    softly.assertThat(points.get(points.size() - 1).getLat()).isEqualByComparingTo("52.6");
+  }
+
+  /**
+   * Append track points to a file without tracks.
+   *
+   * @param softly the soft assertions
+   * @param directory the directory
+   * @throws Exception the exception
+   */
+  @Test
+  void appendTrackPointsWithoutTracks(SoftAssertions softly, @TempDir Path directory)
+      throws Exception {
+    Path file = copy("Adresse.GPX", directory);
+    Gpx expected = read(file);
+    softly.assertThat(expected.getTrks()).isEmpty();
+
+    try (GpxAppender appender = GpxAppender
+        .newInstance(file, jaxbContextBuilder.buildJaxbContext())) {
+      appender.appendTrackPoints(List.of(point("52.1", "10.1"), point("52.2", "10.2")));
+      assertValid(softly, file);
+    }
+
+    Gpx actual = read(file);
+    softly.assertThat(actual.getWpts()).hasSameSizeAs(expected.getWpts());
+    softly.assertThat(actual.getTrks()).hasSize(1);
+    softly.assertThat(lastSegments(actual)).hasSize(1);
+    softly.assertThat(lastSegments(actual).get(0).getTrkpts()).hasSize(2);
+  }
+
+  /**
+   * Start segment.
+   *
+   * @param softly the soft assertions
+   * @param directory the directory
+   * @throws Exception the exception
+   */
+  @Test
+  void startSegment(SoftAssertions softly, @TempDir Path directory) throws Exception {
+    Path file = directory.resolve("segments.gpx");
+    Files.writeString(file, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<gpx xmlns=\"http://www.topografix.com/GPX/1/1\" version=\"1.1\" creator=\"test\">\n"
+        + "  <trk>\n"
+        + "    <trkseg>\n"
+        + "      <trkpt lat=\"52.0\" lon=\"10.0\"/>\n"
+        + "      <extensions><test:a xmlns:test=\"urn:test\"/></extensions>\n"
+        + "    </trkseg>\n"
+        + "  </trk>\n"
+        + "  <!-- the end -->\n"
+        + "  <extensions><test:b xmlns:test=\"urn:test\"/></extensions>\n"
+        + "</gpx>\n");
+
+    try (GpxAppender appender = GpxAppender
+        .newInstance(file, jaxbContextBuilder.buildJaxbContext())
+        .withSyncPolicy(SyncPolicy.NEVER)) {
+      appender.appendTrackPoint(point("52.1", "10.1"));
+      assertValid(softly, file);
+      appender.startSegment();
+      appender.startSegment();
+      appender.appendTrackPoints(List.of(point("52.2", "10.2"), point("52.3", "10.3")));
+      assertValid(softly, file);
+    }
+
+    Gpx actual = read(file);
+    softly.assertThat(actual.getExtensions()).isNotNull();
+    List<TrksegType> segments = lastSegments(actual);
+    softly.assertThat(segments).hasSize(2);
+    softly.assertThat(segments.get(0).getTrkpts()).hasSize(2);
+    softly.assertThat(segments.get(0).getExtensions()).isNotNull();
+    softly.assertThat(segments.get(1).getTrkpts()).hasSize(2);
+  }
+
+  /**
+   * Append track points to files, that end with empty or without tracks and segments or with
+   * extensions.
+   *
+   * @param end the end of the file after the gpx start tag
+   * @param softly the soft assertions
+   * @param directory the directory
+   * @throws Exception the exception
+   */
+  @ParameterizedTest
+  @ValueSource(strings = {
+      "",
+      "<trk/></gpx>",
+      "<trk><trkseg/></trk></gpx>",
+      "<trk><name>a</name><extensions><test:a xmlns:test=\"urn:test\"/></extensions></trk>"
+          + "<extensions><test:b xmlns:test=\"urn:test\"/></extensions></gpx>",
+      "<metadata><name>b</name></metadata><wpt lat=\"52.0\" lon=\"10.0\"/>"
+          + "<extensions><test:b xmlns:test=\"urn:test\"/></extensions></gpx>",
+      "<trk><trkseg><trkpt lat=\"52.0\" lon=\"10.0\"/>"
+          + "<extensions><test:a xmlns:test=\"urn:test\"/></extensions></trkseg></trk></gpx>"
+  })
+  void appendTrackPointsToEnd(String end, SoftAssertions softly, @TempDir Path directory)
+      throws Exception {
+    Path file = directory.resolve("end.gpx");
+    String start = "<gpx xmlns=\"http://www.topografix.com/GPX/1/1\" version=\"1.1\""
+        + " creator=\"test\"";
+    Files.writeString(file, end.isEmpty() ? start + "/>" : start + ">" + end);
+    assertValid(softly, file);
+    int expectedPoints = read(file).getTrks().stream()
+        .flatMap(track -> track.getTrksegs().stream())
+        .mapToInt(segment -> segment.getTrkpts().size())
+        .sum() + 4;
+
+    try (GpxAppender appender = GpxAppender
+        .newInstance(file, jaxbContextBuilder.buildJaxbContext())) {
+      appender.appendTrackPoints(List.of(point("52.1", "10.1"), point("52.2", "10.2")));
+      assertValid(softly, file);
+      appender.startSegment();
+      appender.appendTrackPoint(point("52.3", "10.3"));
+      assertValid(softly, file);
+    }
+    try (GpxAppender appender = GpxAppender
+        .newInstance(file, jaxbContextBuilder.buildJaxbContext())) {
+      appender.appendTrackPoint(point("52.4", "10.4"));
+      assertValid(softly, file);
+    }
+
+    Gpx actual = read(file);
+    softly.assertThat(actual.getTrks()).hasSize(1);
+    softly.assertThat(lastSegments(actual).get(lastSegments(actual).size() - 1).getTrkpts())
+        .hasSize(2);
+    softly.assertThat(actual.getTrks().get(0).getTrksegs().stream()
+            .mapToInt(segment -> segment.getTrkpts().size())
+            .sum())
+        .isEqualTo(expectedPoints);
+  }
+
+  /**
+   * Open file with unsupported end.
+   *
+   * @param directory the directory
+   * @throws Exception the exception
+   */
+  @Test
+  void openFileWithUnsupportedEnd(@TempDir Path directory) throws Exception {
+    Path file = directory.resolve("unsupported.gpx");
+    Files.writeString(file,
+        "<gpx xmlns=\"http://www.topografix.com/GPX/1/1\" version=\"1.1\" creator=\"test\">");
+    assertThatExceptionOfType(GpxStreamException.class)
+        .isThrownBy(() -> GpxAppender.newInstance(file, jaxbContextBuilder.buildJaxbContext()));
+  }
+
+}
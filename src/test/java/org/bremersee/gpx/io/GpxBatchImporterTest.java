@@ -0,0 +1,284 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx.io;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Unmarshaller;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import org.assertj.core.api.SoftAssertions;
+import org.assertj.core.api.junit.jupiter.SoftAssertionsExtension;
+import org.bremersee.gpx.UnmarshallerPool;
+import org.bremersee.gpx.io.GpxBatchImporter.ImportedFile;
+import org.bremersee.gpx.io.GpxBatchImporter.Report;
+import org.bremersee.xml.JaxbContextBuilder;
+import org.bremersee.xml.JaxbContextDataProvider;
+import org.bremersee.xml.SchemaMode;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.ResourceLoader;
+
+/**
+ * The gpx batch importer test.
+ */
+@ExtendWith(SoftAssertionsExtension.class)
+class GpxBatchImporterTest {
+
+  private static final ResourceLoader RESOURCE_LOADER = new DefaultResourceLoader();
+
+  private static JaxbContextBuilder jaxbContextBuilder;
+
+  /**
+   * Create jaxb context builder.
+   */
+  @BeforeAll
+  static void createJaxbContextBuilder() {
+    jaxbContextBuilder = JaxbContextBuilder.newInstance()
+        .withSchemaMode(SchemaMode.NEVER)
+        .processAll(ServiceLoader.load(JaxbContextDataProvider.class))
+        .initJaxbContext();
+  }
+
+  private static void copy(String resource, Path target) throws Exception {
+    try (InputStream in = RESOURCE_LOADER.getResource("classpath:" + resource).getInputStream()) {
+      Files.copy(in, target);
+    }
+  }
+
+  /**
+   * Import directory.
+   *
+   * @param softly the soft assertions
+   * @param directory the directory
+   * @throws Exception the exception
+   */
+  @Test
+  void importDirectory(SoftAssertions softly, @TempDir Path directory) throws Exception {
+    Path sub = Files.createDirectory(directory.resolve("sub"));
+    for (int i = 0; i < 5; i++) {
+      copy("Adresse.GPX", directory.resolve("adresse" + i + ".gpx"));
+      copy("Bild.GPX", sub.resolve("bild" + i + ".GPX"));
+    }
+    Files.write(directory.resolve("broken.gpx"), "<gpx".getBytes(StandardCharsets.UTF_8));
+    Files.write(directory.resolve("readme.txt"), "ignored".getBytes(StandardCharsets.UTF_8));
+
+    Thread caller = Thread.currentThread();
+    List<ImportedFile> importedFiles = new ArrayList<>();
+    Report report = GpxBatchImporter.newInstance(jaxbContextBuilder.buildJaxbContext())
+        .withMaxInFlight(2)
+        .importDirectory(directory, file -> {
+          softly.assertThat(Thread.currentThread()).isSameAs(caller);
+          importedFiles.add(file);
+        });
+
+    softly.assertThat(report.getImported()).isEqualTo(10);
+    softly.assertThat(importedFiles).hasSize(10);
+    softly.assertThat(importedFiles)
+        .allSatisfy(file -> softly.assertThat(file.getGpx()).isNotNull());
+    softly.assertThat(report.getErrors()).hasSize(1);
+    softly.assertThat(report.getErrors().get(0).getFile())
+        .isEqualTo(directory.resolve("broken.gpx"));
+    softly.assertThat(report.getBytes()).isPositive();
+    softly.assertThat(report.getLatency(50.)).isLessThanOrEqualTo(report.getLatency(99.));
+    softly.assertThat(report.getLatency(100.)).isGreaterThan(Duration.ZERO);
+  }
+
+  /**
+   * Import files with executor.
+   *
+   * @param softly the soft assertions
+   * @param directory the directory
+   * @throws Exception the exception
+   */
+  @Test
+  void importFilesWithExecutor(SoftAssertions softly, @TempDir Path directory) throws Exception {
+    Path track = directory.resolve("track.gpx");
+    copy("Track.GPX", track);
+    Path missing = directory.resolve("missing.gpx");
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      List<ImportedFile> importedFiles = new ArrayList<>();
+      Report report = GpxBatchImporter.newInstance(jaxbContextBuilder.buildJaxbContext())
+          .withExecutor(executor)
+          .importFiles(Stream.of(track, missing), importedFiles::add);
+
+      softly.assertThat(executor.isShutdown()).isFalse();
+      softly.assertThat(importedFiles).extracting(ImportedFile::getFile).containsExactly(track);
+      softly.assertThat(importedFiles.get(0).getGpx().getTrks()).hasSize(1);
+      softly.assertThat(report.getErrors()).hasSize(1);
+      softly.assertThat(report.getErrors().get(0).getFile()).isEqualTo(missing);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Import compressed files.
+   *
+   * @param softly the soft assertions
+   * @param directory the directory
+   * @throws Exception the exception
+   */
+  @Test
+  void importCompressedFiles(SoftAssertions softly, @TempDir Path directory) throws Exception {
+    copy("Adresse.GPX", directory.resolve("adresse.gpx"));
+    try (InputStream in = RESOURCE_LOADER.getResource("classpath:Track.GPX").getInputStream();
+        OutputStream out = new GZIPOutputStream(
+            Files.newOutputStream(directory.resolve("track.gpx.gz")))) {
+      in.transferTo(out);
+    }
+
+    List<ImportedFile> importedFiles = new ArrayList<>();
+    Report report = GpxBatchImporter.newInstance(jaxbContextBuilder.buildJaxbContext())
+        .importDirectory(directory, importedFiles::add);
+
+    softly.assertThat(report.getImported()).isEqualTo(2);
+    softly.assertThat(report.getErrors()).isEmpty();
+    softly.assertThat(importedFiles)
+        .filteredOn(file -> file.getFile().endsWith("track.gpx.gz"))
+        .singleElement()
+        .satisfies(file -> softly.assertThat(file.getGpx().getTrks()).hasSize(1));
+  }
+
+  /**
+   * Import with failing consumer.
+   *
+   * @param softly the soft assertions
+   * @param directory the directory
+   * @throws Exception the exception
+   */
+  @Test
+  void importWithFailingConsumer(SoftAssertions softly, @TempDir Path directory)
+      throws Exception {
+    copy("Adresse.GPX", directory.resolve("adresse.gpx"));
+
+    softly.assertThatThrownBy(() -> GpxBatchImporter
+            .newInstance(jaxbContextBuilder.buildJaxbContext())
+            .importDirectory(directory, file -> {
+              throw new IllegalStateException("Consumer failed.");
+            }))
+        .isInstanceOf(IllegalStateException.class);
+  }
+
+  /**
+   * Import a file, that fails with an error.
+   *
+   * @param softly the soft assertions
+   * @param directory the directory
+   * @throws Exception the exception
+   */
+  @Test
+  void importWithError(SoftAssertions softly, @TempDir Path directory) throws Exception {
+    Path failing = directory.resolve("failing.gpx");
+    Path adresse = directory.resolve("adresse.gpx");
+    copy("Adresse.GPX", failing);
+    copy("Adresse.GPX", adresse);
+    UnmarshallerPool pool = UnmarshallerPool.newInstance(1);
+    AtomicBoolean failed = new AtomicBoolean();
+    UnmarshallerPool failingPool = new UnmarshallerPool() {
+      @Override
+      public Unmarshaller borrow(JAXBContext jaxbContext) throws JAXBException {
+        if (failed.compareAndSet(false, true)) {
+          throw new StackOverflowError("Thrown for testing");
+        }
+        return pool.borrow(jaxbContext);
+      }
+
+      @Override
+      public void release(JAXBContext jaxbContext, Unmarshaller unmarshaller) {
+        pool.release(jaxbContext, unmarshaller);
+      }
+
+      @Override
+      public void clear() {
+        pool.clear();
+      }
+
+      @Override
+      public Statistics getStatistics() {
+        return pool.getStatistics();
+      }
+    };
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Report report = GpxBatchImporter.newInstance(jaxbContextBuilder.buildJaxbContext())
+          .withExecutor(executor)
+          .withUnmarshallerPool(failingPool)
+          .importFiles(Stream.of(failing, adresse), file -> {
+          });
+
+      softly.assertThat(report.getImported()).isEqualTo(1);
+      softly.assertThat(report.getErrors()).hasSize(1);
+      softly.assertThat(report.getErrors().get(0).getFile()).isEqualTo(failing);
+      softly.assertThat(report.getErrors().get(0).getError())
+          .isInstanceOf(GpxStreamException.class)
+          .hasCauseInstanceOf(StackOverflowError.class);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Import with an executor, that discards files.
+   *
+   * @param softly the soft assertions
+   * @param directory the directory
+   * @throws Exception the exception
+   */
+  @Test
+  void importWithDiscardingExecutor(SoftAssertions softly, @TempDir Path directory)
+      throws Exception {
+    for (int i = 0; i < 8; i++) {
+      copy("Adresse.GPX", directory.resolve("adresse" + i + ".gpx"));
+    }
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(1), new ThreadPoolExecutor.DiscardPolicy());
+    try {
+      softly.assertThatThrownBy(() -> GpxBatchImporter
+              .newInstance(jaxbContextBuilder.buildJaxbContext())
+              .withExecutor(executor)
+              .withMaxInFlight(8)
+              .importDirectory(directory, file -> {
+              }))
+          .isInstanceOf(GpxStreamException.class);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+}
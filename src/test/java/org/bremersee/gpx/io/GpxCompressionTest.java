@@ -0,0 +1,186 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bremersee.gpx.io;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+import org.assertj.core.api.SoftAssertions;
+import org.assertj.core.api.junit.jupiter.SoftAssertionsExtension;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.ResourceLoader;
+
+/**
+ * The gpx compression test.
+ */
+@ExtendWith(SoftAssertionsExtension.class)
+class GpxCompressionTest {
+
+  private static final ResourceLoader RESOURCE_LOADER = new DefaultResourceLoader();
+
+  private static byte[] xml;
+
+  /**
+   * Read xml.
+   *
+   * @throws Exception the exception
+   */
+  @BeforeAll
+  static void readXml() throws Exception {
+    try (InputStream in = RESOURCE_LOADER.getResource("classpath:Track.GPX").getInputStream()) {
+      xml = in.readAllBytes();
+    }
+  }
+
+  private static byte[] gzip(byte[] bytes) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (OutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(bytes);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Detect.
+   *
+   * @param softly the soft assertions
+   * @throws Exception the exception
+   */
+  @Test
+  void detect(SoftAssertions softly) throws Exception {
+    ByteArrayOutputStream zlib = new ByteArrayOutputStream();
+    try (OutputStream out = new DeflaterOutputStream(zlib)) {
+      out.write(xml);
+    }
+    softly.assertThat(GpxCompression.detect(gzip(xml))).isEqualTo(GpxCompression.GZIP);
+    softly.assertThat(GpxCompression.detect(zlib.toByteArray())).isEqualTo(GpxCompression.ZLIB);
+    softly.assertThat(GpxCompression.detect(xml)).isEqualTo(GpxCompression.NONE);
+    softly.assertThat(GpxCompression.detect(new byte[]{0x1f})).isEqualTo(GpxCompression.NONE);
+
+    InputStream in = new BufferedInputStream(new ByteArrayInputStream(gzip(xml)));
+    softly.assertThat(GpxCompression.detect(in)).isEqualTo(GpxCompression.GZIP);
+    softly.assertThat(in.read()).isEqualTo(0x1f);
+
+    softly.assertThat(GpxCompression.forFileName(Path.of("track.gpx.GZ")))
+        .isEqualTo(GpxCompression.GZIP);
+    softly.assertThat(GpxCompression.forFileName(Path.of("track.gpx.zz")))
+        .isEqualTo(GpxCompression.ZLIB);
+    softly.assertThat(GpxCompression.forFileName(Path.of("track.gpx")))
+        .isEqualTo(GpxCompression.NONE);
+  }
+
+  /**
+   * Compress and decompress with small buffers.
+   *
+   * @param level the compression level
+   * @throws Exception the exception
+   */
+  @ParameterizedTest
+  @ValueSource(ints = {Deflater.DEFAULT_COMPRESSION, 0, 1, 9})
+  void compressAndDecompress(int level) throws Exception {
+    CompressionPool pool = CompressionPool.newInstance(1, 512);
+    for (GpxCompression compression : GpxCompression.values()) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try (OutputStream compressed = compression.compress(out, level, pool)) {
+        for (int offset = 0; offset < xml.length; offset += 1000) {
+          compressed.write(xml, offset, Math.min(1000, xml.length - offset));
+        }
+        compressed.write('\n');
+      }
+      byte[] expected = Arrays.copyOf(xml, xml.length + 1);
+      expected[xml.length] = '\n';
+      byte[] bytes = out.toByteArray();
+      assertThat(GpxCompression.detect(bytes)).isEqualTo(compression);
+
+      try (InputStream in = GpxCompression.decompress(new ByteArrayInputStream(bytes), pool)) {
+        assertThat(in.readAllBytes()).isEqualTo(expected);
+      }
+      InputStream jdk = new ByteArrayInputStream(bytes);
+      if (compression == GpxCompression.GZIP) {
+        jdk = new GZIPInputStream(jdk);
+      } else if (compression == GpxCompression.ZLIB) {
+        jdk = new InflaterInputStream(jdk);
+      }
+      assertThat(jdk.readAllBytes()).isEqualTo(expected);
+    }
+    assertThat(pool.getStatistics().getHits()).isPositive();
+  }
+
+  /**
+   * Decompress concatenated gzip members.
+   *
+   * @param directory the directory
+   * @throws Exception the exception
+   */
+  @Test
+  void decompressConcatenatedMembers(@TempDir Path directory) throws Exception {
+    Path file = directory.resolve("track.gpx.gz");
+    byte[] member = gzip(xml);
+    byte[] members = Arrays.copyOf(member, 2 * member.length);
+    System.arraycopy(member, 0, members, member.length, member.length);
+    Files.write(file, members);
+
+    byte[] expected = Arrays.copyOf(xml, 2 * xml.length);
+    System.arraycopy(xml, 0, expected, xml.length, xml.length);
+    try (InputStream in = GpxCompression.decompress(file)) {
+      assertThat(in.readAllBytes()).isEqualTo(expected);
+    }
+  }
+
+  /**
+   * Decompress corrupt data.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void decompressCorruptData() throws Exception {
+    byte[] bytes = gzip(xml);
+    bytes[bytes.length - 6] ^= 1;
+    assertThatExceptionOfType(ZipException.class).isThrownBy(() -> {
+      try (InputStream in = GpxCompression.decompress(new ByteArrayInputStream(bytes))) {
+        in.readAllBytes();
+      }
+    });
+    byte[] truncated = Arrays.copyOf(bytes, bytes.length / 2);
+    assertThatExceptionOfType(EOFException.class).isThrownBy(() -> {
+      try (InputStream in = GpxCompression.decompress(new ByteArrayInputStream(truncated))) {
+        in.readAllBytes();
+      }
+    });
+  }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bremersee.gpx.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ServiceLoader;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import org.assertj.core.api.SoftAssertions;
+import org.assertj.core.api.junit.jupiter.SoftAssertionsExtension;
+import org.bremersee.gpx.model.GpxType;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.xml.JaxbContextBuilder;
+import org.bremersee.xml.JaxbContextDataProvider;
+import org.bremersee.xml.SchemaMode;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.ResourceLoader;
+
+/**
+ * The gpx files test.
+ */
+@ExtendWith(SoftAssertionsExtension.class)
+class GpxFilesTest {
+
+  private static final ResourceLoader RESOURCE_LOADER = new DefaultResourceLoader();
+
+  private static JaxbContextBuilder jaxbContextBuilder;
+
+  private static GpxType gpx;
+
+  /**
+   * Create jaxb context builder and read the gpx.
+   *
+   * @throws Exception the exception
+   */
+  @BeforeAll
+  static void createJaxbContextBuilder() throws Exception {
+    jaxbContextBuilder = JaxbContextBuilder.newInstance()
+        .withSchemaMode(SchemaMode.NEVER)
+        .processAll(ServiceLoader.load(JaxbContextDataProvider.class))
+        .initJaxbContext();
+    try (InputStream in = RESOURCE_LOADER.getResource("classpath:Track.GPX").getInputStream()) {
+      gpx = GpxFiles.read(in, jaxbContextBuilder.buildJaxbContext());
+    }
+  }
+
+  private static int countPoints(GpxType gpx) {
+    return gpx.getTrks().stream()
+        .flatMap(track -> track.getTrksegs().stream())
+        .mapToInt(segment -> segment.getTrkpts().size())
+        .sum();
+  }
+
+  /**
+   * Write and read files.
+   *
+   * @param softly the soft assertions
+   * @param directory the directory
+   * @param fileName the file name
+   * @throws Exception the exception
+   */
+  @ParameterizedTest
+  @ValueSource(strings = {"track.gpx", "track.gpx.gz", "track.gpx.zz"})
+  void writeAndRead(SoftAssertions softly, @TempDir Path directory, String fileName)
+      throws Exception {
+    Path file = directory.resolve(fileName);
+    GpxFiles.write(gpx, file, jaxbContextBuilder.buildJaxbContext());
+
+    softly.assertThat(GpxCompression.detect(Files.readAllBytes(file)))
+        .isEqualTo(GpxCompression.forFileName(file));
+    GpxType actual = GpxFiles.read(file, jaxbContextBuilder.buildJaxbContext());
+    softly.assertThat(countPoints(actual)).isEqualTo(countPoints(gpx));
+
+    int points = 0;
+    try (GpxStreamReader reader = GpxStreamReader
+        .newInstance(file, jaxbContextBuilder.buildJaxbContext())) {
+      while (reader.hasNext()) {
+        if (reader.next().getType() == GpxStreamEvent.Type.TRACK_POINT) {
+          points++;
+        }
+      }
+    }
+    softly.assertThat(points).isEqualTo(countPoints(gpx));
+  }
+
+  /**
+   * Write compressed stream.
+   *
+   * @param softly the soft assertions
+   * @throws Exception the exception
+   */
+  @Test
+  void writeCompressedStream(SoftAssertions softly) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    GpxFiles.write(gpx, out, GpxCompression.GZIP, jaxbContextBuilder.buildJaxbContext());
+    out.write(new byte[]{1, 2, 3});
+
+    byte[] bytes = out.toByteArray();
+    softly.assertThat(GpxCompression.detect(bytes)).isEqualTo(GpxCompression.GZIP);
+    GpxType actual = (GpxType) jaxbContextBuilder.buildUnmarshaller()
+        .unmarshal(new GZIPInputStream(new ByteArrayInputStream(bytes)));
+    softly.assertThat(countPoints(actual)).isEqualTo(countPoints(gpx));
+  }
+
+  /**
+   * Write compressed file with the stream writer.
+   *
+   * @param softly the soft assertions
+   * @param directory the directory
+   * @throws Exception the exception
+   */
+  @Test
+  void writeCompressedFileWithStreamWriter(SoftAssertions softly, @TempDir Path directory)
+      throws Exception {
+    Path file = directory.resolve("track.gpx.gz");
+    try (GpxStreamWriter writer = GpxStreamWriter
+        .newInstance(file, jaxbContextBuilder.buildJaxbContext())
+        .withComputedBounds(directory)) {
+      writer.startGpx("test");
+      for (TrkType track : gpx.getTrks()) {
+        writer.writeTrack(track);
+      }
+    }
+
+    softly.assertThat(GpxCompression.detect(Files.readAllBytes(file)))
+        .isEqualTo(GpxCompression.GZIP);
+    GpxType actual = GpxFiles.read(file, jaxbContextBuilder.buildJaxbContext());
+    softly.assertThat(countPoints(actual)).isEqualTo(countPoints(gpx));
+    softly.assertThat(actual.getMetadata().getBounds()).isNotNull();
+    try (Stream<Path> files = Files.list(directory)) {
+      softly.assertThat(files).containsExactly(file);
+    }
+  }
+
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx.io;
+
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import org.assertj.core.api.SoftAssertions;
+import org.assertj.core.api.junit.jupiter.SoftAssertionsExtension;
+import org.bremersee.gpx.io.GpxStreamEvent.Type;
+import org.bremersee.gpx.model.Gpx;
+import org.bremersee.gpx.model.RteType;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.TrksegType;
+import org.bremersee.gpx.model.WptType;
+import org.bremersee.xml.JaxbContextBuilder;
+import org.bremersee.xml.JaxbContextDataProvider;
+import org.bremersee.xml.SchemaMode;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.ResourceLoader;
+
+/**
+ * The gpx stream reader test.
+ */
+@ExtendWith(SoftAssertionsExtension.class)
+class GpxStreamReaderTest {
+
+  private static final ResourceLoader RESOURCE_LOADER = new DefaultResourceLoader();
+
+  private static JaxbContextBuilder jaxbContextBuilder;
+
+  /**
+   * Create jaxb context builder.
+   */
+  @BeforeAll
+  static void createJaxbContextBuilder() {
+    jaxbContextBuilder = JaxbContextBuilder.newInstance()
+        .withSchemaMode(SchemaMode.NEVER)
+        .processAll(ServiceLoader.load(JaxbContextDataProvider.class))
+        .initJaxbContext();
+  }
+
+  /**
+   * Read track.
+   *
+   * @param softly the soft assertions
+   * @throws Exception the exception
+   */
+  @Test
+  void readTrack(SoftAssertions softly) throws Exception {
+    Gpx expected;
+    try (InputStream in = RESOURCE_LOADER.getResource("classpath:Track.GPX").getInputStream()) {
+      expected = (Gpx) jaxbContextBuilder.buildUnmarshaller().unmarshal(in);
+    }
+    TrkType expectedTrack = expected.getTrks().get(0);
+    TrksegType expectedSegment = expectedTrack.getTrksegs().get(0);
+
+    List<Type> types = new ArrayList<>();
+    List<WptType> trackPoints = new ArrayList<>();
+    try (InputStream in = RESOURCE_LOADER.getResource("classpath:Track.GPX").getInputStream();
+        GpxStreamReader reader = GpxStreamReader
+            .newInstance(in, jaxbContextBuilder.buildJaxbContext())) {
+
+      while (reader.hasNext()) {
+        GpxStreamEvent event = reader.next();
+        types.add(event.getType());
+        if (event.getType() == Type.START_GPX) {
+          softly.assertThat(event.getGpx().getCreator()).isEqualTo(expected.getCreator());
+        } else if (event.getType() == Type.START_TRACK) {
+          softly.assertThat(event.getTrack().getName()).isEqualTo(expectedTrack.getName());
+          softly.assertThat(event.getTrack().getExtensions()).isNotNull();
+          softly.assertThat(event.getTrack().getTrksegs()).isEmpty();
+        } else if (event.getType() == Type.TRACK_POINT) {
+          softly.assertThat(event.getTrackIndex()).isZero();
+          softly.assertThat(event.getSegmentIndex()).isZero();
+          softly.assertThat(event.getPointIndex()).isEqualTo(trackPoints.size());
+          trackPoints.add(event.getTrackPoint());
+        }
+      }
+    }
+
+    softly.assertThat(types).startsWith(Type.START_GPX, Type.METADATA, Type.START_TRACK,
+        Type.START_SEGMENT, Type.TRACK_POINT);
+    softly.assertThat(types).endsWith(Type.TRACK_POINT, Type.END_SEGMENT, Type.END_TRACK,
+        Type.END_GPX);
+    softly.assertThat(trackPoints).hasSameSizeAs(expectedSegment.getTrkpts());
+    softly.assertThat(trackPoints.get(trackPoints.size() - 1).getLat())
+        .isEqualTo(expectedSegment.getTrkpts().get(trackPoints.size() - 1).getLat());
+    softly.assertThat(trackPoints.get(trackPoints.size() - 1).getTime())
+        .isEqualTo(expectedSegment.getTrkpts().get(trackPoints.size() - 1).getTime());
+  }
+
+  /**
+   * Read route and waypoints with handler.
+   *
+   * @param softly the soft assertions
+   * @throws Exception the exception
+   */
+  @Test
+  void readWithHandler(SoftAssertions softly) throws Exception {
+    List<Object> values = new ArrayList<>();
+    GpxStreamHandler handler = new GpxStreamHandler() {
+      @Override
+      public void waypoint(WptType waypoint, int index) {
+        values.add(waypoint);
+      }
+
+      @Override
+      public void route(RteType route, int index) {
+        values.add(route);
+      }
+    };
+    for (String resource : List.of("classpath:Route.GPX", "classpath:Adresse.GPX")) {
+      try (InputStream in = RESOURCE_LOADER.getResource(resource).getInputStream();
+          GpxStreamReader reader = GpxStreamReader
+              .newInstance(in, jaxbContextBuilder.buildJaxbContext())) {
+        reader.read(handler);
+      }
+    }
+    softly.assertThat(values).hasSize(2);
+    softly.assertThat(values.get(0))
+        .isInstanceOf(RteType.class);
+    softly.assertThat(values.get(1)).isInstanceOf(WptType.class);
+    softly.assertThat(((WptType) values.get(1)).getExtensions()).isNotNull();
+  }
+
+  /**
+   * Read segment extensions and skip unknown elements.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void readSegmentExtensionsAndSkipUnknownElements(SoftAssertions softly) {
+    String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+        + "<gpx xmlns=\"http://www.topografix.com/GPX/1/1\" xmlns:x=\"urn:x\" "
+        + "version=\"1.1\" creator=\"junit\">"
+        + "<x:unknown><trk><name>ignored</name></trk></x:unknown>"
+        + "<trk><name>t0</name><trkseg>"
+        + "<trkpt lat=\"52.1\" lon=\"10.1\"><ele>12.5</ele></trkpt>"
+        + "<trkpt lat=\"52.2\" lon=\"10.2\"/>"
+        + "<extensions><x:seg>1</x:seg></extensions>"
+        + "</trkseg><trkseg/></trk>"
+        + "<extensions><x:gpx>2</x:gpx></extensions>"
+        + "</gpx>";
+
+    List<GpxStreamEvent> events = new ArrayList<>();
+    GpxStreamReader reader = GpxStreamReader
+        .newInstance(new StringReader(xml), jaxbContextBuilder.buildJaxbContext());
+    while (reader.hasNext()) {
+      events.add(reader.next());
+    }
+
+    softly.assertThat(events).extracting(GpxStreamEvent::getType).containsExactly(
+        Type.START_GPX, Type.START_TRACK, Type.START_SEGMENT, Type.TRACK_POINT,
+        Type.TRACK_POINT, Type.END_SEGMENT, Type.START_SEGMENT, Type.END_SEGMENT,
+        Type.END_TRACK, Type.END_GPX);
+    softly.assertThat(events.get(1).getTrack().getName()).isEqualTo("t0");
+    softly.assertThat(events.get(3).getTrackPoint().getEle()).isEqualByComparingTo("12.5");
+    softly.assertThat(events.get(5).getExtensions().getAnies()).hasSize(1);
+    softly.assertThat(events.get(7).getSegmentIndex()).isEqualTo(1);
+    softly.assertThat(events.get(9).getExtensions().getAnies()).hasSize(1);
+  }
+
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx.io;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ServiceLoader;
+import org.assertj.core.api.SoftAssertions;
+import org.assertj.core.api.junit.jupiter.SoftAssertionsExtension;
+import org.bremersee.gpx.model.BoundsType;
+import org.bremersee.gpx.model.Gpx;
+import org.bremersee.gpx.model.MetadataType;
+import org.bremersee.gpx.model.RteType;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.TrksegType;
+import org.bremersee.gpx.model.WptType;
+import org.bremersee.xml.JaxbContextBuilder;
+import org.bremersee.xml.JaxbContextDataProvider;
+import org.bremersee.xml.SchemaMode;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.ResourceLoader;
+
+/**
+ * The gpx stream writer test.
+ */
+@ExtendWith(SoftAssertionsExtension.class)
+class GpxStreamWriterTest {
+
+  private static final ResourceLoader RESOURCE_LOADER = new DefaultResourceLoader();
+
+  private static JaxbContextBuilder jaxbContextBuilder;
+
+  /**
+   * Create jaxb context builder.
+   */
+  @BeforeAll
+  static void createJaxbContextBuilder() {
+    jaxbContextBuilder = JaxbContextBuilder.newInstance()
+        .withSchemaMode(SchemaMode.NEVER)
+        .processAll(ServiceLoader.load(JaxbContextDataProvider.class))
+        .initJaxbContext();
+  }
+
+  private static WptType point(String lat, String lon) {
+    WptType wpt = new WptType();
+    wpt.setLat(new BigDecimal(lat));
+    wpt.setLon(new BigDecimal(lon));
+    return wpt;
+  }
+
+  /**
+   * Write points incrementally.
+   *
+   * @param softly the soft assertions
+   * @throws Exception the exception
+   */
+  @Test
+  void writePointsIncrementally(SoftAssertions softly) throws Exception {
+    TrkType track = new TrkType();
+    track.setName("Junit & Track");
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GpxStreamWriter writer = GpxStreamWriter
+        .newInstance(out, jaxbContextBuilder.buildJaxbContext())) {
+      writer.startGpx("junit")
+          .writeWaypoint(point("52.1", "10.1"))
+          .startTrack(track)
+          .startSegment()
+          .writeTrackPoint(point("52.2", "10.2"))
+          .writeTrackPoint(point("52.3", "10.3"))
+          .endSegment()
+          .startSegment()
+          .writeTrackPoint(point("52.4", "10.4"));
+    }
+    String xml = out.toString(StandardCharsets.UTF_8);
+    softly.assertThat(xml).startsWith("<?xml");
+    softly.assertThat(xml).endsWith("</gpx>");
+
+    Gpx actual = (Gpx) jaxbContextBuilder.buildUnmarshaller()
+        .unmarshal(new StringReader(xml));
+    softly.assertThat(actual.getCreator()).isEqualTo("junit");
+    softly.assertThat(actual.getWpts()).hasSize(1);
+    softly.assertThat(actual.getTrks()).hasSize(1);
+    TrkType actualTrack = actual.getTrks().get(0);
+    softly.assertThat(actualTrack.getName()).isEqualTo("Junit & Track");
+    softly.assertThat(actualTrack.getTrksegs()).hasSize(2);
+    softly.assertThat(actualTrack.getTrksegs().get(0).getTrkpts()).hasSize(2);
+    softly.assertThat(actualTrack.getTrksegs().get(1).getTrkpts())
+        .extracting(WptType::getLat)
+        .containsExactly(new BigDecimal("52.4"));
+  }
+
+  /**
+   * Write same document as jaxb.
+   *
+   * @param softly the soft assertions
+   * @throws Exception the exception
+   */
+  @Test
+  void writeSameDocumentAsJaxb(SoftAssertions softly) throws Exception {
+    Gpx gpx;
+    try (InputStream in = RESOURCE_LOADER.getResource("classpath:Track.GPX").getInputStream()) {
+      gpx = (Gpx) jaxbContextBuilder.buildUnmarshaller().unmarshal(in);
+    }
+
+    StringWriter out = new StringWriter();
+    try (GpxStreamWriter writer = GpxStreamWriter
+        .newInstance(out, jaxbContextBuilder.buildJaxbContext())) {
+      writer.startGpx(gpx).writeMetadata(gpx.getMetadata());
+      for (TrkType track : gpx.getTrks()) {
+        writer.startTrack(track);
+        for (TrksegType segment : track.getTrksegs()) {
+          writer.startSegment();
+          segment.getTrkpts().forEach(writer::writeTrackPoint);
+          writer.endSegment(segment.getExtensions());
+        }
+        writer.endTrack();
+      }
+      writer.endGpx(gpx.getExtensions());
+    }
+
+    Gpx actual = (Gpx) jaxbContextBuilder.buildUnmarshaller()
+        .unmarshal(new StringReader(out.toString()));
+    StringWriter actualXml = new StringWriter();
+    jaxbContextBuilder.buildMarshaller().marshal(actual, actualXml);
+
+    StringWriter expectedXml = new StringWriter();
+    jaxbContextBuilder.buildMarshaller().marshal(gpx, expectedXml);
+    Gpx expected = (Gpx) jaxbContextBuilder.buildUnmarshaller()
+        .unmarshal(new StringReader(expectedXml.toString()));
+    expectedXml = new StringWriter();
+    jaxbContextBuilder.buildMarshaller().marshal(expected, expectedXml);
+
+    softly.assertThat(actual.getTrks().get(0).getTrksegs().get(0).getTrkpts())
+        .hasSameSizeAs(gpx.getTrks().get(0).getTrksegs().get(0).getTrkpts());
+    softly.assertThat(actual.getTrks().get(0).getExtensions().getAnies())
+        .hasSameSizeAs(gpx.getTrks().get(0).getExtensions().getAnies());
+    softly.assertThat(actualXml.toString())
+        .isEqualTo(expectedXml.toString());
+  }
+
+  /**
+   * Write in wrong order.
+   */
+  @Test
+  void writeInWrongOrder() {
+    GpxStreamWriter writer = GpxStreamWriter
+        .newInstance(new StringWriter(), jaxbContextBuilder.buildJaxbContext());
+    assertThatExceptionOfType(IllegalStateException.class)
+        .isThrownBy(() -> writer.writeTrackPoint(point("1", "1")));
+    writer.startGpx("junit").writeRoute(new RteType());
+    assertThatExceptionOfType(IllegalStateException.class)
+        .isThrownBy(() -> writer.writeWaypoint(point("1", "1")));
+  }
+
+  /**
+   * Write points with computed bounds into the given writer.
+   */
+  private static void writeWithComputedBounds(GpxStreamWriter writer) {
+    MetadataType metadata = new MetadataType();
+    metadata.setName("Junit");
+    BoundsType wrongBounds = new BoundsType();
+    wrongBounds.setMinlat(BigDecimal.ZERO);
+    wrongBounds.setMinlon(BigDecimal.ZERO);
+    wrongBounds.setMaxlat(BigDecimal.ZERO);
+    wrongBounds.setMaxlon(BigDecimal.ZERO);
+    metadata.setBounds(wrongBounds);
+    RteType route = new RteType();
+    route.getRtepts().add(point("-33.5", "151.25"));
+    writer.startGpx("junit")
+        .writeMetadata(metadata)
+        .writeWaypoint(point("52.1", "10.1"))
+        .writeRoute(route)
+        .startTrack(new TrkType())
+        .startSegment()
+        .writeTrackPoint(point("60.75", "-0.125"))
+        .writeTrackPoint(point("52.3", "10.3"));
+  }
+
+  private static void assertComputedBounds(SoftAssertions softly, String xml) throws Exception {
+    Gpx actual = (Gpx) jaxbContextBuilder.buildUnmarshaller()
+        .unmarshal(new StringReader(xml));
+    softly.assertThat(actual.getMetadata().getName()).isEqualTo("Junit");
+    BoundsType bounds = actual.getMetadata().getBounds();
+    softly.assertThat(bounds).isNotNull();
+    if (bounds != null) {
+      softly.assertThat(bounds.getMinlat()).isEqualTo(new BigDecimal("-33.5"));
+      softly.assertThat(bounds.getMinlon()).isEqualTo(new BigDecimal("-0.125"));
+      softly.assertThat(bounds.getMaxlat()).isEqualTo(new BigDecimal("60.75"));
+      softly.assertThat(bounds.getMaxlon()).isEqualTo(new BigDecimal("151.25"));
+    }
+    softly.assertThat(actual.getTrks().get(0).getTrksegs().get(0).getTrkpts()).hasSize(2);
+  }
+
+  /**
+   * Write computed bounds into file.
+   *
+   * @param softly the soft assertions
+   * @param directory the directory
+   * @throws Exception the exception
+   */
+  @Test
+  void writeComputedBoundsIntoFile(SoftAssertions softly, @TempDir Path directory)
+      throws Exception {
+    Path file = directory.resolve("bounds.gpx");
+    try (GpxStreamWriter writer = GpxStreamWriter
+        .newInstance(file, jaxbContextBuilder.buildJaxbContext())
+        .withComputedBounds()) {
+      writeWithComputedBounds(writer);
+    }
+    assertComputedBounds(softly, Files.readString(file));
+  }
+
+  /**
+   * Write computed bounds into stream.
+   *
+   * @param softly the soft assertions
+   * @param directory the directory
+   * @throws Exception the exception
+   */
+  @Test
+  void writeComputedBoundsIntoStream(SoftAssertions softly, @TempDir Path directory)
+      throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GpxStreamWriter writer = GpxStreamWriter
+        .newInstance(out, jaxbContextBuilder.buildJaxbContext())
+        .withComputedBounds(directory)) {
+      writeWithComputedBounds(writer);
+    }
+    assertComputedBounds(softly, out.toString(StandardCharsets.UTF_8));
+    try (var files = Files.list(directory)) {
+      softly.assertThat(files).isEmpty();
+    }
+  }
+
+  /**
+   * Write computed bounds without points.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  void writeComputedBoundsWithoutPoints() throws Exception {
+    StringWriter out = new StringWriter();
+    try (GpxStreamWriter writer = GpxStreamWriter
+        .newInstance(out, jaxbContextBuilder.buildJaxbContext())
+        .withComputedBounds()) {
+      writer.startGpx("junit");
+    }
+    Gpx actual = (Gpx) jaxbContextBuilder.buildUnmarshaller()
+        .unmarshal(new StringReader(out.toString()));
+    assertThat(actual.getMetadata()).isNotNull();
+    assertThat(actual.getMetadata().getBounds()).isNull();
+  }
+
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx.io;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.assertj.core.api.SoftAssertions;
+import org.assertj.core.api.junit.jupiter.SoftAssertionsExtension;
+import org.bremersee.gpx.model.Gpx;
+import org.bremersee.gpx.model.GpxType;
+import org.bremersee.gpx.model.TrksegType;
+import org.bremersee.gpx.model.WptType;
+import org.bremersee.xml.JaxbContextBuilder;
+import org.bremersee.xml.JaxbContextDataProvider;
+import org.bremersee.xml.SchemaMode;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.ResourceLoader;
+
+/**
+ * The parallel gpx reader test.
+ */
+@ExtendWith(SoftAssertionsExtension.class)
+class ParallelGpxReaderTest {
+
+  private static final ResourceLoader RESOURCE_LOADER = new DefaultResourceLoader();
+
+  private static JaxbContextBuilder jaxbContextBuilder;
+
+  /**
+   * Create jaxb context builder.
+   */
+  @BeforeAll
+  static void createJaxbContextBuilder() {
+    jaxbContextBuilder = JaxbContextBuilder.newInstance()
+        .withSchemaMode(SchemaMode.NEVER)
+        .processAll(ServiceLoader.load(JaxbContextDataProvider.class))
+        .initJaxbContext();
+  }
+
+  /**
+   * Read track.
+   *
+   * @param softly the soft assertions
+   * @throws Exception the exception
+   */
+  @Test
+  void readTrack(SoftAssertions softly) throws Exception {
+    Path file = RESOURCE_LOADER.getResource("classpath:Track.GPX").getFile().toPath();
+    Gpx expected = (Gpx) jaxbContextBuilder.buildUnmarshaller().unmarshal(file.toFile());
+
+    ForkJoinPool pool = new ForkJoinPool(4);
+    GpxType actual;
+    try {
+      actual = ParallelGpxReader.newInstance(jaxbContextBuilder.buildJaxbContext())
+          .withPool(pool)
+          .withChunkSize(16 * 1024)
+          .read(file);
+    } finally {
+      pool.shutdown();
+    }
+
+    softly.assertThat(actual.getMetadata().getTime())
+        .isEqualTo(expected.getMetadata().getTime());
+    softly.assertThat(actual.getTrks()).hasSize(1);
+    softly.assertThat(actual.getTrks().get(0).getName())
+        .isEqualTo(expected.getTrks().get(0).getName());
+    List<WptType> expectedPoints = expected.getTrks().get(0).getTrksegs().get(0).getTrkpts();
+    List<WptType> actualPoints = actual.getTrks().get(0).getTrksegs().get(0).getTrkpts();
+    softly.assertThat(actualPoints).hasSameSizeAs(expectedPoints);
+    softly.assertThat(actualPoints).extracting(WptType::getLat)
+        .containsExactlyElementsOf(expectedPoints.stream()
+            .map(WptType::getLat)
+            .collect(Collectors.toList()));
+    softly.assertThat(actualPoints.get(0).getExtensions().getAnies())
+        .hasSameSizeAs(expectedPoints.get(0).getExtensions().getAnies());
+  }
+
+  /**
+   * Read prefixed document with comments.
+   *
+   * @param tempDir the temp dir
+   * @param softly the soft assertions
+   * @throws Exception the exception
+   */
+  @Test
+  void readPrefixedDocumentWithComments(@TempDir Path tempDir, SoftAssertions softly)
+      throws Exception {
+    String xml = "<?xml version='1.0' encoding='UTF-8'?><!-- <trkseg> -->"
+        + "<g:gpx xmlns:g='http://www.topografix.com/GPX/1/1' xmlns:x='urn:x' "
+        + "version='1.1' creator='a>b'>"
+        + "<g:wpt lat='1' lon='2'/>"
+        + "<g:wpt lat='3' lon='4'><g:name><![CDATA[</g:wpt>]]></g:name></g:wpt>"
+        + "<g:trk><g:name>t</g:name><g:trkseg/><g:trkseg>"
+        + "<g:trkpt lat='1' lon='1'/><!-- </g:trkseg> -->"
+        + "<g:trkpt lat='2' lon='2'><g:ele>5</g:ele></g:trkpt>"
+        + "<g:extensions><x:value>1</x:value></g:extensions>"
+        + "</g:trkseg></g:trk></g:gpx>";
+    Path file = tempDir.resolve("prefixed.gpx");
+    Files.write(file, xml.getBytes(StandardCharsets.UTF_8));
+
+    GpxType actual = ParallelGpxReader.newInstance(jaxbContextBuilder.buildJaxbContext())
+        .withChunkSize(1)
+        .read(file);
+
+    softly.assertThat(actual.getCreator()).isEqualTo("a>b");
+    softly.assertThat(actual.getWpts()).hasSize(2);
+    softly.assertThat(actual.getWpts().get(1).getName()).isEqualTo("</g:wpt>");
+    softly.assertThat(actual.getTrks().get(0).getTrksegs()).hasSize(2);
+    TrksegType segment = actual.getTrks().get(0).getTrksegs().get(1);
+    softly.assertThat(segment.getTrkpts()).hasSize(2);
+    softly.assertThat(segment.getExtensions().getAnies()).hasSize(1);
+    softly.assertThat(segment.getExtensions().getAnies().get(0).getNamespaceURI())
+        .isEqualTo("urn:x");
+
+    try (Stream<TrksegType> segments = ParallelGpxReader
+        .newInstance(jaxbContextBuilder.buildJaxbContext())
+        .segments(file)) {
+      softly.assertThat(segments.map(s -> s.getTrkpts().size()).collect(Collectors.toList()))
+          .containsExactly(0, 2);
+    }
+  }
+
+  /**
+   * Read namespaces of tracks and segments.
+   *
+   * @param tempDir the temp dir
+   * @param softly the soft assertions
+   * @throws Exception the exception
+   */
+  @Test
+  void readNamespacesOfTracksAndSegments(@TempDir Path tempDir, SoftAssertions softly)
+      throws Exception {
+    String xml = "<?xml version='1.0' encoding='UTF-8'?>"
+        + "<gpx xmlns='http://www.topografix.com/GPX/1/1' version='1.1' creator='test'>"
+        + "<wpt lat='1' lon='2' xmlns:w='urn:w'><name>w</name>"
+        + "<extensions><w:value>1</w:value></extensions></wpt>"
+        + "<trk xmlns:x='urn:x'><name>t</name>"
+        + "<g:trkseg xmlns:g='http://www.topografix.com/GPX/1/1' xmlns:y='urn:y'>"
+        + "<g:trkpt lat='1' lon='1'><g:extensions><x:value>1</x:value></g:extensions>"
+        + "</g:trkpt>"
+        + "<g:trkpt lat='2' lon='2'><g:extensions><y:value>2</y:value></g:extensions>"
+        + "</g:trkpt>"
+        + "</g:trkseg>"
+        + "<trkseg xmlns='urn:other'/>"
+        + "<trkseg><trkpt lat='3' lon='3'/></trkseg>"
+        + "</trk></gpx>";
+    Path file = tempDir.resolve("namespaces.gpx");
+    Files.write(file, xml.getBytes(StandardCharsets.UTF_8));
+
+    GpxType actual = ParallelGpxReader.newInstance(jaxbContextBuilder.buildJaxbContext())
+        .withChunkSize(1)
+        .read(file);
+
+    softly.assertThat(actual.getWpts()).hasSize(1);
+    softly.assertThat(actual.getWpts().get(0).getExtensions().getAnies().get(0)
+        .getNamespaceURI()).isEqualTo("urn:w");
+    softly.assertThat(actual.getTrks().get(0).getName()).isEqualTo("t");
+    List<TrksegType> segments = actual.getTrks().get(0).getTrksegs();
+    softly.assertThat(segments).extracting(s -> s.getTrkpts().size())
+        .containsExactly(2, 1);
+    List<WptType> points = segments.get(0).getTrkpts();
+    softly.assertThat(points.get(0).getExtensions().getAnies().get(0).getNamespaceURI())
+        .isEqualTo("urn:x");
+    softly.assertThat(points.get(1).getExtensions().getAnies().get(0).getNamespaceURI())
+        .isEqualTo("urn:y");
+
+    try (Stream<TrksegType> stream = ParallelGpxReader
+        .newInstance(jaxbContextBuilder.buildJaxbContext())
+        .segments(file)) {
+      softly.assertThat(stream.map(s -> s.getTrkpts().size()).collect(Collectors.toList()))
+          .containsExactly(2, 1);
+    }
+  }
+
+}
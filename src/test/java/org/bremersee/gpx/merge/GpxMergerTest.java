@@ -0,0 +1,224 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx.merge;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.stream.Stream;
+import org.assertj.core.api.SoftAssertions;
+import org.assertj.core.api.junit.jupiter.SoftAssertionsExtension;
+import org.bremersee.gpx.merge.GpxMerger.Report;
+import org.bremersee.gpx.merge.GpxMerger.TrackMode;
+import org.bremersee.gpx.model.Gpx;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.TrksegType;
+import org.bremersee.gpx.model.WptType;
+import org.bremersee.xml.JaxbContextBuilder;
+import org.bremersee.xml.JaxbContextDataProvider;
+import org.bremersee.xml.SchemaMode;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.ResourceLoader;
+
+/**
+ * The gpx merger test.
+ */
+@ExtendWith(SoftAssertionsExtension.class)
+class GpxMergerTest {
+
+  private static final ResourceLoader RESOURCE_LOADER = new DefaultResourceLoader();
+
+  private static JaxbContextBuilder jaxbContextBuilder;
+
+  /**
+   * Create jaxb context builder.
+   */
+  @BeforeAll
+  static void createJaxbContextBuilder() {
+    jaxbContextBuilder = JaxbContextBuilder.newInstance()
+        .withSchemaMode(SchemaMode.NEVER)
+        .processAll(ServiceLoader.load(JaxbContextDataProvider.class))
+        .initJaxbContext();
+  }
+
+  private static Path copy(String resource, Path directory, String name) throws Exception {
+    Path file = directory.resolve(name);
+    try (InputStream in = RESOURCE_LOADER.getResource("classpath:" + resource).getInputStream()) {
+      Files.copy(in, file);
+    }
+    return file;
+  }
+
+  /**
+   * Creates the inputs: the track twice and the address twice, so there are tracks with the
+   * same name and duplicate waypoints. The picture waypoint has the earliest time.
+   */
+  private static List<Path> createInputs(Path directory) throws Exception {
+    return List.of(
+        copy("Track.GPX", directory, "1.gpx"),
+        copy("Route.GPX", directory, "2.gpx"),
+        copy("Adresse.GPX", directory, "3.gpx"),
+        copy("Bild.GPX", directory, "4.gpx"),
+        copy("Track.GPX", directory, "5.gpx"),
+        copy("Adresse.GPX", directory, "6.gpx"));
+  }
+
+  private static Gpx read(Path file) throws Exception {
+    return (Gpx) jaxbContextBuilder.buildUnmarshaller().unmarshal(file.toFile());
+  }
+
+  private static int countPoints(Gpx gpx) {
+    return gpx.getTrks().stream()
+        .flatMap(track -> track.getTrksegs().stream())
+        .mapToInt(segment -> segment.getTrkpts().size())
+        .sum();
+  }
+
+  /**
+   * Merge files.
+   *
+   * @param trackMode the track mode
+   * @param softly the soft assertions
+   * @param directory the directory
+   * @throws Exception the exception
+   */
+  @ParameterizedTest
+  @EnumSource(TrackMode.class)
+  void merge(TrackMode trackMode, SoftAssertions softly, @TempDir Path directory)
+      throws Exception {
+    List<Path> inputs = createInputs(directory);
+    Gpx track = read(inputs.get(0));
+    Path spoolDirectory = Files.createDirectory(directory.resolve("spool"));
+    Path output = directory.resolve("merged.gpx");
+
+    Report report = GpxMerger.newInstance(jaxbContextBuilder.buildJaxbContext())
+        .withTrackMode(trackMode)
+        .withWaypointDeduplication(true)
+        .withComputedBounds(true)
+        .withSpoolDirectory(spoolDirectory)
+        .merge(inputs, output);
+
+    Gpx actual = read(output);
+    softly.assertThat(report.getInputs()).isEqualTo(6);
+    softly.assertThat(report.getWaypoints()).isEqualTo(2L);
+    softly.assertThat(report.getDuplicateWaypoints()).isEqualTo(1L);
+    softly.assertThat(report.getSegments()).isEqualTo(2L);
+    softly.assertThat(report.getTrackPoints()).isEqualTo(2L * countPoints(track));
+    softly.assertThat(actual.getCreator()).isEqualTo(track.getCreator());
+    softly.assertThat(actual.getWpts()).hasSize(2);
+    softly.assertThat(actual.getRtes()).hasSize(1);
+    softly.assertThat(countPoints(actual)).isEqualTo(2 * countPoints(track));
+    softly.assertThat(actual.getMetadata().getBounds()).isNotNull();
+    if (trackMode == TrackMode.CONCATENATE) {
+      softly.assertThat(actual.getTrks()).hasSize(2);
+      softly.assertThat(report.getTracks()).isEqualTo(2L);
+    } else {
+      softly.assertThat(actual.getTrks()).hasSize(1);
+      softly.assertThat(actual.getTrks().get(0).getTrksegs()).hasSize(2);
+      softly.assertThat(actual.getTrks().get(0).getName())
+          .isEqualTo(track.getTrks().get(0).getName());
+    }
+    try (Stream<Path> files = Files.list(spoolDirectory)) {
+      softly.assertThat(files).isEmpty();
+    }
+  }
+
+  /**
+   * Merge files ordered by first time.
+   *
+   * @param softly the soft assertions
+   * @param directory the directory
+   * @throws Exception the exception
+   */
+  @Test
+  void mergeOrderedByFirstTime(SoftAssertions softly, @TempDir Path directory)
+      throws Exception {
+    List<Path> inputs = createInputs(directory);
+    Gpx picture = read(inputs.get(3));
+    Gpx address = read(inputs.get(2));
+    Gpx track = read(inputs.get(0));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Report report = GpxMerger.newInstance(jaxbContextBuilder.buildJaxbContext())
+        .withCreator("junit")
+        .withOrderByFirstTime(true)
+        .merge(inputs, out);
+
+    Gpx actual = (Gpx) jaxbContextBuilder.buildUnmarshaller()
+        .unmarshal(new ByteArrayInputStream(out.toByteArray()));
+    softly.assertThat(report.getWaypoints()).isEqualTo(3L);
+    softly.assertThat(report.getDuplicateWaypoints()).isZero();
+    softly.assertThat(actual.getCreator()).isEqualTo("junit");
+    softly.assertThat(actual.getMetadata()).isNull();
+    softly.assertThat(actual.getWpts())
+        .extracting(WptType::getTime)
+        .containsExactly(
+            picture.getWpts().get(0).getTime(),
+            address.getWpts().get(0).getTime(),
+            address.getWpts().get(0).getTime());
+
+    TrkType expectedTrack = track.getTrks().get(0);
+    softly.assertThat(actual.getTrks()).hasSize(2);
+    softly.assertThat(actual.getTrks())
+        .extracting(TrkType::getName)
+        .containsOnly(expectedTrack.getName());
+    TrksegType actualSegment = actual.getTrks().get(1).getTrksegs().get(0);
+    TrksegType expectedSegment = expectedTrack.getTrksegs().get(0);
+    softly.assertThat(actualSegment.getTrkpts())
+        .extracting(WptType::getTime)
+        .containsExactlyElementsOf(expectedSegment.getTrkpts().stream()
+            .map(WptType::getTime)
+            .toList());
+    softly.assertThat(actualSegment.getTrkpts())
+        .extracting(WptType::getEle)
+        .containsExactlyElementsOf(expectedSegment.getTrkpts().stream()
+            .map(WptType::getEle)
+            .toList());
+  }
+
+  /**
+   * Merge nothing.
+   *
+   * @param softly the soft assertions
+   * @throws Exception the exception
+   */
+  @Test
+  void mergeNothing(SoftAssertions softly) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Report report = GpxMerger.newInstance(jaxbContextBuilder.buildJaxbContext())
+        .withCreator("junit")
+        .merge(List.of(), out);
+
+    Gpx actual = (Gpx) jaxbContextBuilder.buildUnmarshaller()
+        .unmarshal(new ByteArrayInputStream(out.toByteArray()));
+    softly.assertThat(report.getInputs()).isZero();
+    softly.assertThat(actual.getCreator()).isEqualTo("junit");
+    softly.assertThat(actual.getTrks()).isEmpty();
+  }
+
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx.spatial;
+
+import static org.assertj.core.api.Assertions.within;
+
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.ServiceLoader;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+import org.assertj.core.api.SoftAssertions;
+import org.assertj.core.api.junit.jupiter.SoftAssertionsExtension;
+import org.bremersee.gpx.io.GpxStreamReader;
+import org.bremersee.gpx.model.Gpx;
+import org.bremersee.gpx.model.RteType;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.TrksegType;
+import org.bremersee.gpx.model.WptType;
+import org.bremersee.gpx.spatial.GpxSpatialIndex.Origin;
+import org.bremersee.xml.JaxbContextBuilder;
+import org.bremersee.xml.JaxbContextDataProvider;
+import org.bremersee.xml.SchemaMode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.ResourceLoader;
+
+/**
+ * The gpx spatial index test.
+ */
+@ExtendWith(SoftAssertionsExtension.class)
+class GpxSpatialIndexTest {
+
+  private static final ResourceLoader RESOURCE_LOADER = new DefaultResourceLoader();
+
+  private static WptType wpt(double lat, double lon) {
+    WptType wpt = new WptType();
+    wpt.setLat(BigDecimal.valueOf(lat));
+    wpt.setLon(BigDecimal.valueOf(lon));
+    return wpt;
+  }
+
+  private static Gpx createGpx() {
+    Gpx gpx = new Gpx();
+    gpx.getWpts().add(wpt(52.52, 13.40));
+    gpx.getWpts().add(wpt(48.14, 11.58));
+    RteType route = new RteType();
+    route.getRtepts().add(wpt(53.55, 9.99));
+    route.getRtepts().add(wpt(0.0, 179.9));
+    gpx.getRtes().add(route);
+    TrkType track = new TrkType();
+    TrksegType segment = new TrksegType();
+    segment.getTrkpts().add(wpt(0.0, -179.9));
+    segment.getTrkpts().add(wpt(52.53, 13.41));
+    track.getTrksegs().add(new TrksegType());
+    track.getTrksegs().add(segment);
+    gpx.getTrks().add(track);
+    return gpx;
+  }
+
+  private static int find(GpxSpatialIndex index, WptType point) {
+    return IntStream.range(0, index.size())
+        .filter(id -> index.getPoint(id) == point)
+        .findFirst()
+        .orElse(-1);
+  }
+
+  /**
+   * Build of gpx and find references.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void ofGpx(SoftAssertions softly) {
+    Gpx gpx = createGpx();
+    GpxSpatialIndex index = GpxSpatialIndex.of(gpx);
+    softly.assertThat(index.size()).isEqualTo(6);
+
+    WptType trackPoint = gpx.getTrks().get(0).getTrksegs().get(1).getTrkpts().get(1);
+    int id = find(index, trackPoint);
+    softly.assertThat(index.getOrigin(id)).isEqualTo(Origin.TRACK_POINT);
+    softly.assertThat(index.getContainerIndex(id)).isEqualTo(0);
+    softly.assertThat(index.getSegmentIndex(id)).isEqualTo(1);
+    softly.assertThat(index.getPointIndex(id)).isEqualTo(1);
+
+    WptType routePoint = gpx.getRtes().get(0).getRtepts().get(0);
+    id = find(index, routePoint);
+    softly.assertThat(index.getOrigin(id)).isEqualTo(Origin.ROUTE_POINT);
+    softly.assertThat(index.getContainerIndex(id)).isEqualTo(0);
+    softly.assertThat(index.getSegmentIndex(id)).isEqualTo(-1);
+    softly.assertThat(index.getPointIndex(id)).isEqualTo(0);
+
+    id = find(index, gpx.getWpts().get(1));
+    softly.assertThat(index.getOrigin(id)).isEqualTo(Origin.WAYPOINT);
+    softly.assertThat(index.getPointIndex(id)).isEqualTo(1);
+  }
+
+  /**
+   * Search bounding box, radius and nearest.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void queries(SoftAssertions softly) {
+    Gpx gpx = createGpx();
+    GpxSpatialIndex index = GpxSpatialIndex.of(gpx);
+    WptType berlin = gpx.getWpts().get(0);
+    WptType berlinTrack = gpx.getTrks().get(0).getTrksegs().get(1).getTrkpts().get(1);
+
+    softly.assertThat(Arrays.stream(index.search(52., 13., 53., 14.))
+            .mapToObj(index::getPoint))
+        .containsExactlyInAnyOrder(berlin, berlinTrack);
+    softly.assertThat(index.search(-1., 179., 1., -179.)).hasSize(2);
+
+    softly.assertThat(Arrays.stream(index.within(52.52, 13.40, 2000.))
+            .mapToObj(index::getPoint))
+        .containsExactlyInAnyOrder(berlin, berlinTrack);
+    softly.assertThat(index.within(0.0, 180.0, 20_000.)).hasSize(2);
+
+    int[] nearest = index.nearest(52.52, 13.40, 3);
+    softly.assertThat(nearest).hasSize(3);
+    softly.assertThat(index.getPoint(nearest[0])).isSameAs(berlin);
+    softly.assertThat(index.getPoint(nearest[1])).isSameAs(berlinTrack);
+    softly.assertThat(index.getPoint(nearest[2])).isSameAs(gpx.getRtes().get(0).getRtepts().get(0));
+    softly.assertThat(index.nearest(52.52, 13.40, 10, 5000.)).hasSize(2);
+    softly.assertThat(index.getDistance(nearest[1], 52.52, 13.40))
+        .isBetween(1000., 1500.);
+  }
+
+  /**
+   * Compare with brute force on random points, built sequential and in parallel.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void randomPoints(SoftAssertions softly) {
+    int n = 100_000;
+    Random random = new Random(42L);
+    double[] latitudes = new double[n];
+    double[] longitudes = new double[n];
+    GpxSpatialIndex.Builder builder = GpxSpatialIndex.builder(n);
+    for (int i = 0; i < n; i++) {
+      latitudes[i] = random.nextDouble() * 180. - 90.;
+      longitudes[i] = random.nextDouble() * 360. - 180.;
+      builder.add(latitudes[i], longitudes[i]);
+    }
+    GpxSpatialIndex sequential = builder.build();
+    GpxSpatialIndex parallel = builder.parallel(new ForkJoinPool(4)).build();
+    softly.assertThat(parallel.size()).isEqualTo(n);
+
+    double[][] queries = {{52.5, 13.4}, {0., 179.99}, {89.9, 0.}, {-89.95, 100.}};
+    for (double[] query : queries) {
+      double[] distances = new double[n];
+      long expectedWithin = 0L;
+      for (int i = 0; i < n; i++) {
+        distances[i] = GeoHelper.distance(query[0], query[1], latitudes[i], longitudes[i]);
+        if (distances[i] <= 500_000.) {
+          expectedWithin++;
+        }
+      }
+      Arrays.sort(distances);
+      for (GpxSpatialIndex index : new GpxSpatialIndex[]{sequential, parallel}) {
+        softly.assertThat(index.within(query[0], query[1], 500_000.)).hasSize((int) expectedWithin);
+        int[] nearest = index.nearest(query[0], query[1], 10);
+        softly.assertThat(Arrays.stream(nearest)
+                .mapToDouble(id -> index.getDistance(id, query[0], query[1])).toArray())
+            .containsExactly(Arrays.copyOf(distances, 10), within(1e-6));
+      }
+    }
+  }
+
+  /**
+   * Collect from gpx stream.
+   *
+   * @param softly the soft assertions
+   * @throws Exception the exception
+   */
+  @Test
+  void collector(SoftAssertions softly) throws Exception {
+    JaxbContextBuilder jaxbContextBuilder = JaxbContextBuilder.newInstance()
+        .withSchemaMode(SchemaMode.NEVER)
+        .processAll(ServiceLoader.load(JaxbContextDataProvider.class))
+        .initJaxbContext();
+    AtomicReference<GpxSpatialIndex> actual = new AtomicReference<>();
+    try (InputStream in = RESOURCE_LOADER.getResource("classpath:Track.GPX").getInputStream();
+        GpxStreamReader reader = GpxStreamReader
+            .newInstance(in, jaxbContextBuilder.buildJaxbContext())) {
+      reader.read(GpxSpatialIndex.collector(GpxSpatialIndex.builder(), actual::set));
+    }
+    Gpx expected;
+    try (InputStream in = RESOURCE_LOADER.getResource("classpath:Track.GPX").getInputStream()) {
+      expected = (Gpx) jaxbContextBuilder.buildUnmarshaller().unmarshal(in);
+    }
+    softly.assertThat(actual.get()).isNotNull();
+    softly.assertThat(actual.get().size()).isEqualTo(GpxSpatialIndex.of(expected).size());
+    softly.assertThat(actual.get().size()).isPositive();
+  }
+
+  /**
+   * Empty index.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void emptyIndex(SoftAssertions softly) {
+    GpxSpatialIndex index = GpxSpatialIndex.builder().build();
+    softly.assertThat(index.size()).isZero();
+    softly.assertThat(index.search(-90., -180., 90., 180.)).isEmpty();
+    softly.assertThat(index.within(0., 0., 1000.)).isEmpty();
+    softly.assertThat(index.nearest(0., 0., 5)).isEmpty();
+  }
+
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.gpx.track;
+
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import javax.xml.datatype.DatatypeFactory;
+import org.assertj.core.api.SoftAssertions;
+import org.assertj.core.api.junit.jupiter.SoftAssertionsExtension;
+import org.bremersee.gpx.io.GpxStreamReader;
+import org.bremersee.gpx.model.Gpx;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.WptType;
+import org.bremersee.xml.JaxbContextBuilder;
+import org.bremersee.xml.JaxbContextDataProvider;
+import org.bremersee.xml.SchemaMode;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.ResourceLoader;
+
+/**
+ * The track columns test.
+ */
+@ExtendWith(SoftAssertionsExtension.class)
+class TrackColumnsTest {
+
+  private static final ResourceLoader RESOURCE_LOADER = new DefaultResourceLoader();
+
+  private static JaxbContextBuilder jaxbContextBuilder;
+
+  /**
+   * Create jaxb context builder.
+   */
+  @BeforeAll
+  static void createJaxbContextBuilder() {
+    jaxbContextBuilder = JaxbContextBuilder.newInstance()
+        .withSchemaMode(SchemaMode.NEVER)
+        .processAll(ServiceLoader.load(JaxbContextDataProvider.class))
+        .initJaxbContext();
+  }
+
+  private static Gpx readTrackFile() throws Exception {
+    try (InputStream in = RESOURCE_LOADER.getResource("classpath:Track.GPX").getInputStream()) {
+      return (Gpx) jaxbContextBuilder.buildUnmarshaller().unmarshal(in);
+    }
+  }
+
+  private static String marshal(TrkType track) throws Exception {
+    Gpx gpx = new Gpx();
+    gpx.setVersion("1.1");
+    gpx.setCreator("test");
+    gpx.getTrks().add(track);
+    StringWriter writer = new StringWriter();
+    jaxbContextBuilder.buildMarshaller().marshal(gpx, writer);
+    return writer.toString();
+  }
+
+  /**
+   * Of track.
+   *
+   * @param softly the soft assertions
+   * @throws Exception the exception
+   */
+  @Test
+  void ofTrack(SoftAssertions softly) throws Exception {
+    TrkType expected = readTrackFile().getTrks().get(0);
+    TrackColumns columns = TrackColumns.of(expected);
+
+    softly.assertThat(columns.size())
+        .isEqualTo(expected.getTrksegs().get(0).getTrkpts().size());
+    softly.assertThat(columns.getSegmentCount()).isEqualTo(expected.getTrksegs().size());
+    softly.assertThat(columns.getLatitudes()[0])
+        .isEqualTo(expected.getTrksegs().get(0).getTrkpts().get(0).getLat().doubleValue());
+    softly.assertThat(columns.getTimes()[0]).isNotEqualTo(TrackColumns.NO_TIME);
+    softly.assertThat(columns.getHeader().getName()).isEqualTo(expected.getName());
+    softly.assertThat(marshal(columns.toTrkType())).isEqualTo(marshal(expected));
+  }
+
+  /**
+   * Decimals with another scale than the scale of doubles need no residual values.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void scalesWithoutResiduals(SoftAssertions softly) {
+    List<WptType> points = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      WptType wpt = new WptType();
+      wpt.setLat(new BigDecimal("53.123456" + i + "0"));
+      wpt.setLon(new BigDecimal("8.5000000"));
+      wpt.setEle(new BigDecimal(35 + i));
+      wpt.setHdop(new BigDecimal("2"));
+      points.add(wpt);
+    }
+    softly.assertThat(points)
+        .allSatisfy(wpt -> softly.assertThat(TrackColumns.WptValues.residual(wpt)).isNull());
+
+    TrackColumns.Builder builder = TrackColumns.builder();
+    points.forEach(builder::add);
+    TrackColumns columns = builder.add(52.5, 8.25, Double.NaN, TrackColumns.NO_TIME).build();
+    for (int i = 0; i < points.size(); i++) {
+      WptType actual = columns.toWptType(i);
+      // BigDecimal.equals compares the scale, too
+      softly.assertThat(actual.getLat()).isEqualTo(points.get(i).getLat());
+      softly.assertThat(actual.getLon()).isEqualTo(points.get(i).getLon());
+      softly.assertThat(actual.getEle()).isEqualTo(points.get(i).getEle());
+      softly.assertThat(actual.getHdop()).isEqualTo(points.get(i).getHdop());
+    }
+    softly.assertThat(columns.toWptType(3).getLat()).isEqualTo(new BigDecimal("52.5"));
+    softly.assertThat(columns.toWptType(3).getHdop()).isNull();
+  }
+
+  /**
+   * Residual values.
+   *
+   * @param softly the soft assertions
+   * @throws Exception the exception
+   */
+  @Test
+  void residualValues(SoftAssertions softly) throws Exception {
+    WptType wpt = new WptType();
+    wpt.setLat(new BigDecimal("52.10"));
+    wpt.setLon(new BigDecimal("8.5"));
+    wpt.setHdop(new BigDecimal("0.1234567891"));
+    wpt.setTime(DatatypeFactory.newInstance()
+        .newXMLGregorianCalendar("2020-01-01T10:00:00.123456+02:00"));
+    wpt.setName("Point");
+
+    TrackColumns columns = TrackColumns.builder()
+        .add(wpt)
+        .add(52.2, 8.6, Double.NaN, TrackColumns.NO_TIME)
+        .build();
+    softly.assertThat(columns.size()).isEqualTo(2);
+    softly.assertThat(columns.getSegmentCount()).isEqualTo(1);
+
+    WptType actual = columns.toWptType(0);
+    softly.assertThat(actual.getLat()).isEqualTo(wpt.getLat());
+    softly.assertThat(actual.getLon()).isEqualTo(wpt.getLon());
+    softly.assertThat(actual.getHdop()).isEqualTo(wpt.getHdop());
+    softly.assertThat(actual.getTime()).isEqualTo(wpt.getTime());
+    softly.assertThat(actual.getName()).isEqualTo(wpt.getName());
+
+    WptType second = columns.toWptType(1);
+    softly.assertThat(second.getEle()).isNull();
+    softly.assertThat(second.getTime()).isNull();
+    softly.assertThat(second.getName()).isNull();
+  }
+
+  /**
+   * Times without time zone are utc.
+   *
+   * @param softly the soft assertions
+   * @throws Exception the exception
+   */
+  @Test
+  void timesWithoutTimeZone(SoftAssertions softly) throws Exception {
+    DatatypeFactory datatypeFactory = DatatypeFactory.newInstance();
+    WptType dateTime = new WptType();
+    dateTime.setTime(datatypeFactory.newXMLGregorianCalendar("2020-01-01T10:00:00"));
+    WptType date = new WptType();
+    date.setTime(datatypeFactory.newXMLGregorianCalendar("2020-01-01"));
+
+    TrackColumns columns = TrackColumns.builder()
+        .add(dateTime)
+        .add(date)
+        .build();
+    softly.assertThat(columns.getTimes()[0]).isEqualTo(1577872800000L);
+    softly.assertThat(columns.getTimes()[1]).isEqualTo(1577836800000L);
+  }
+
+  /**
+   * Build twice.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void buildTwice(SoftAssertions softly) {
+    WptType first = new WptType();
+    first.setLat(new BigDecimal("52.1"));
+    first.setLon(new BigDecimal("8.5"));
+    first.setName("First");
+    TrackColumns.Builder builder = TrackColumns.builder().add(first);
+    TrackColumns columns = builder.build();
+
+    WptType second = new WptType();
+    second.setLat(new BigDecimal("52.2"));
+    second.setLon(new BigDecimal("8.6"));
+    second.setName("Second");
+    TrackColumns moreColumns = builder.add(second).build();
+
+    softly.assertThat(columns.size()).isEqualTo(1);
+    softly.assertThat(columns.toWptType(0).getName()).isEqualTo("First");
+    softly.assertThat(moreColumns.size()).isEqualTo(2);
+    softly.assertThat(moreColumns.toWptType(1).getName()).isEqualTo("Second");
+  }
+
+  /**
+   * Collector.
+   *
+   * @param softly the soft assertions
+   * @throws Exception the exception
+   */
+  @Test
+  void collector(SoftAssertions softly) throws Exception {
+    TrkType expected = readTrackFile().getTrks().get(0);
+    List<TrackColumns> tracks = new ArrayList<>();
+    try (InputStream in = RESOURCE_LOADER.getResource("classpath:Track.GPX").getInputStream();
+        GpxStreamReader reader = GpxStreamReader
+            .newInstance(in, jaxbContextBuilder.buildJaxbContext())) {
+      reader.read(TrackColumns.collector(tracks::add));
+    }
+    softly.assertThat(tracks).hasSize(1);
+    softly.assertThat(marshal(tracks.get(0).toTrkType())).isEqualTo(marshal(expected));
+  }
+
+}
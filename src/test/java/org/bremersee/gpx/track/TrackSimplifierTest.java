@@ -0,0 +1,232 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx.track;
+
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.ForkJoinPool;
+import org.assertj.core.api.SoftAssertions;
+import org.assertj.core.api.junit.jupiter.SoftAssertionsExtension;
+import org.bremersee.gpx.io.GpxStreamHandler;
+import org.bremersee.gpx.io.GpxStreamReader;
+import org.bremersee.gpx.model.ExtensionsType;
+import org.bremersee.gpx.model.Gpx;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.TrksegType;
+import org.bremersee.gpx.model.WptType;
+import org.bremersee.xml.JaxbContextBuilder;
+import org.bremersee.xml.JaxbContextDataProvider;
+import org.bremersee.xml.SchemaMode;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.ResourceLoader;
+
+/**
+ * The track simplifier test.
+ */
+@ExtendWith(SoftAssertionsExtension.class)
+class TrackSimplifierTest {
+
+  private static final ResourceLoader RESOURCE_LOADER = new DefaultResourceLoader();
+
+  private static JaxbContextBuilder jaxbContextBuilder;
+
+  /**
+   * Create jaxb context builder.
+   */
+  @BeforeAll
+  static void createJaxbContextBuilder() {
+    jaxbContextBuilder = JaxbContextBuilder.newInstance()
+        .withSchemaMode(SchemaMode.NEVER)
+        .processAll(ServiceLoader.load(JaxbContextDataProvider.class))
+        .initJaxbContext();
+  }
+
+  private static WptType wpt(double lat, double lon) {
+    WptType wpt = new WptType();
+    wpt.setLat(BigDecimal.valueOf(lat));
+    wpt.setLon(BigDecimal.valueOf(lon));
+    return wpt;
+  }
+
+  /**
+   * Creates a segment along the equator with a peak of about 111 m in the middle. The points
+   * are about 11 m apart and deviate about 1 m from the line.
+   */
+  private static TrksegType createSegment() {
+    TrksegType segment = new TrksegType();
+    for (int i = 0; i <= 100; i++) {
+      double lat = i == 50 ? .001 : (i % 2) * .00001;
+      segment.getTrkpts().add(wpt(lat, i * .0001));
+    }
+    segment.setExtensions(new ExtensionsType());
+    return segment;
+  }
+
+  /**
+   * Simplify segment.
+   *
+   * @param algorithm the algorithm
+   * @param softly the soft assertions
+   */
+  @ParameterizedTest
+  @EnumSource(TrackSimplifier.Algorithm.class)
+  void simplifySegment(TrackSimplifier.Algorithm algorithm, SoftAssertions softly) {
+    TrksegType segment = createSegment();
+    List<WptType> points = segment.getTrkpts();
+
+    TrksegType actual = TrackSimplifier.newInstance(algorithm, 10.).simplify(segment);
+    if (algorithm == TrackSimplifier.Algorithm.DOUGLAS_PEUCKER) {
+      softly.assertThat(actual.getTrkpts())
+          .containsExactly(points.get(0), points.get(49), points.get(50), points.get(51),
+              points.get(100));
+    } else {
+      softly.assertThat(actual.getTrkpts())
+          .containsSubsequence(points.get(0), points.get(49), points.get(50), points.get(51),
+              points.get(100));
+      softly.assertThat(actual.getTrkpts()).hasSizeLessThan(15);
+    }
+    softly.assertThat(actual.getExtensions()).isSameAs(segment.getExtensions());
+    softly.assertThat(segment.getTrkpts()).hasSize(101);
+
+    actual = TrackSimplifier.newInstance(algorithm, .1).simplify(segment);
+    softly.assertThat(actual.getTrkpts()).containsExactlyElementsOf(points);
+  }
+
+  /**
+   * Simplify collinear points.
+   *
+   * @param algorithm the algorithm
+   * @param softly the soft assertions
+   */
+  @ParameterizedTest
+  @EnumSource(TrackSimplifier.Algorithm.class)
+  void simplifyCollinear(TrackSimplifier.Algorithm algorithm, SoftAssertions softly) {
+    int[] kept = TrackSimplifier.newInstance(algorithm, 0.)
+        .simplify(new double[]{0., 0., 0., 1.}, new double[]{0., 1., 2., 2.}, 4);
+    softly.assertThat(kept).containsExactly(0, 2, 3);
+
+    kept = TrackSimplifier.newInstance(algorithm, 100.)
+        .simplify(new double[]{1., 2.}, new double[]{1., 2.}, 2);
+    softly.assertThat(kept).containsExactly(0, 1);
+  }
+
+  /**
+   * Simplify across the antimeridian.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void simplifyAcrossAntimeridian(SoftAssertions softly) {
+    int[] kept = TrackSimplifier.douglasPeucker(1.)
+        .simplify(new double[]{0., 0., 0.}, new double[]{179.9999, 180., -179.9999}, 3);
+    softly.assertThat(kept).containsExactly(0, 2);
+  }
+
+  /**
+   * Simplify a zigzag, that keeps all points. Douglas-Peucker splits the line next to its end
+   * each time, so a recursive implementation would need a call depth of the number of points.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void simplifyLongZigzag(SoftAssertions softly) {
+    int n = 20_000;
+    double[] latitudes = new double[n];
+    double[] longitudes = new double[n];
+    for (int i = 0; i < n; i++) {
+      latitudes[i] = (i % 2) * .001;
+      longitudes[i] = i * .0001;
+    }
+    softly.assertThat(TrackSimplifier.douglasPeucker(1.).simplify(latitudes, longitudes, n))
+        .hasSize(n);
+    softly.assertThat(TrackSimplifier.visvalingamWhyatt(1.).simplify(latitudes, longitudes, n))
+        .hasSize(n);
+  }
+
+  /**
+   * Simplify track in parallel.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void simplifyTrack(SoftAssertions softly) {
+    TrkType track = new TrkType();
+    track.setName("Zigzag");
+    for (int i = 0; i < 4; i++) {
+      track.getTrksegs().add(createSegment());
+    }
+    TrkType actual = TrackSimplifier.visvalingamWhyatt(10.)
+        .withPool(new ForkJoinPool(2))
+        .simplify(track);
+    softly.assertThat(actual.getName()).isEqualTo("Zigzag");
+    softly.assertThat(actual.getTrksegs()).hasSize(4);
+    for (int i = 0; i < 4; i++) {
+      softly.assertThat(actual.getTrksegs().get(i).getTrkpts()).hasSizeLessThan(15);
+      softly.assertThat(actual.getTrksegs().get(i).getTrkpts().get(0))
+          .isSameAs(track.getTrksegs().get(i).getTrkpts().get(0));
+    }
+  }
+
+  /**
+   * Simplify stream.
+   *
+   * @param softly the soft assertions
+   * @throws Exception the exception
+   */
+  @Test
+  void simplifyStream(SoftAssertions softly) throws Exception {
+    Gpx gpx;
+    try (InputStream in = RESOURCE_LOADER.getResource("classpath:Track.GPX").getInputStream()) {
+      gpx = (Gpx) jaxbContextBuilder.buildUnmarshaller().unmarshal(in);
+    }
+    TrackSimplifier simplifier = TrackSimplifier.douglasPeucker(5.);
+    TrksegType expected = simplifier.simplify(gpx.getTrks().get(0).getTrksegs().get(0));
+
+    List<WptType> actual = new ArrayList<>();
+    List<Integer> indices = new ArrayList<>();
+    try (InputStream in = RESOURCE_LOADER.getResource("classpath:Track.GPX").getInputStream();
+        GpxStreamReader reader = GpxStreamReader
+            .newInstance(in, jaxbContextBuilder.buildJaxbContext())) {
+      reader.read(simplifier.handler(new GpxStreamHandler() {
+        @Override
+        public void trackPoint(WptType trackPoint, int trackIndex, int segmentIndex,
+            int pointIndex) {
+          if (trackIndex == 0 && segmentIndex == 0) {
+            actual.add(trackPoint);
+            indices.add(pointIndex);
+          }
+        }
+      }));
+    }
+    softly.assertThat(actual).hasSameSizeAs(expected.getTrkpts());
+    softly.assertThat(actual.size())
+        .isLessThan(gpx.getTrks().get(0).getTrksegs().get(0).getTrkpts().size());
+    softly.assertThat(actual).extracting(WptType::getTime)
+        .containsExactlyElementsOf(expected.getTrkpts().stream().map(WptType::getTime).toList());
+    softly.assertThat(indices.get(indices.size() - 1)).isEqualTo(actual.size() - 1);
+  }
+
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx.track;
+
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import org.assertj.core.api.SoftAssertions;
+import org.assertj.core.api.junit.jupiter.SoftAssertionsExtension;
+import org.bremersee.gpx.GpxValueHelper;
+import org.bremersee.gpx.io.GpxStreamReader;
+import org.bremersee.gpx.model.ExtensionsType;
+import org.bremersee.gpx.model.Gpx;
+import org.bremersee.gpx.model.LinkType;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.TrksegType;
+import org.bremersee.gpx.model.WptType;
+import org.bremersee.xml.JaxbContextBuilder;
+import org.bremersee.xml.JaxbContextDataProvider;
+import org.bremersee.xml.SchemaMode;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.ResourceLoader;
+
+/**
+ * The track splitter test.
+ */
+@ExtendWith(SoftAssertionsExtension.class)
+class TrackSplitterTest {
+
+  private static final ResourceLoader RESOURCE_LOADER = new DefaultResourceLoader();
+
+  private static final long START = Instant.parse("2020-01-01T22:00:00Z").toEpochMilli();
+
+  private static JaxbContextBuilder jaxbContextBuilder;
+
+  /**
+   * Create jaxb context builder.
+   */
+  @BeforeAll
+  static void createJaxbContextBuilder() {
+    jaxbContextBuilder = JaxbContextBuilder.newInstance()
+        .withSchemaMode(SchemaMode.NEVER)
+        .processAll(ServiceLoader.load(JaxbContextDataProvider.class))
+        .initJaxbContext();
+  }
+
+  private static WptType wpt(double lon, long time) {
+    WptType wpt = new WptType();
+    wpt.setLat(BigDecimal.ZERO);
+    wpt.setLon(BigDecimal.valueOf(lon));
+    wpt.setTime(GpxValueHelper.toXmlGregorianCalendar(time));
+    return wpt;
+  }
+
+  /**
+   * Creates a track along the equator with two segments. The first segment has 200 points, that
+   * are 0.001 degrees (about 111 m) and one minute apart, starting two hours before midnight
+   * (UTC). The second segment starts two hours after the first segment with 100 points.
+   */
+  private static TrkType createTrack() {
+    TrkType track = new TrkType();
+    track.setName("Junit");
+    track.setDesc("Split me");
+    track.setSrc("Test");
+    LinkType link = new LinkType();
+    link.setHref("https://bremersee.org");
+    track.getLinks().add(link);
+    track.setExtensions(new ExtensionsType());
+    TrksegType first = new TrksegType();
+    for (int i = 0; i < 200; i++) {
+      first.getTrkpts().add(wpt(i * .001, START + i * 60_000L));
+    }
+    first.setExtensions(new ExtensionsType());
+    TrksegType second = new TrksegType();
+    long secondStart = START + 199 * 60_000L + 7_200_000L;
+    for (int i = 0; i < 100; i++) {
+      second.getTrkpts().add(wpt(1. + i * .001, secondStart + i * 60_000L));
+    }
+    track.getTrksegs().add(first);
+    track.getTrksegs().add(second);
+    return track;
+  }
+
+  private static List<Integer> sizes(List<TrkType> tracks) {
+    List<Integer> sizes = new ArrayList<>();
+    for (TrkType track : tracks) {
+      sizes.add(track.getTrksegs().stream().mapToInt(s -> s.getTrkpts().size()).sum());
+    }
+    return sizes;
+  }
+
+  /**
+   * Split by points.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void splitByPoints(SoftAssertions softly) {
+    TrkType track = createTrack();
+    List<TrkType> tracks = TrackSplitter.newInstance().withMaxPoints(120).split(track);
+
+    softly.assertThat(sizes(tracks)).containsExactly(120, 120, 60);
+    softly.assertThat(tracks.get(1).getTrksegs())
+        .extracting(segment -> segment.getTrkpts().size())
+        .containsExactly(80, 40);
+    softly.assertThat(tracks.get(0).getTrksegs().get(0).getExtensions()).isNull();
+    softly.assertThat(tracks.get(1).getTrksegs().get(0).getExtensions())
+        .isSameAs(track.getTrksegs().get(0).getExtensions());
+    for (TrkType part : tracks) {
+      softly.assertThat(part).isNotSameAs(track);
+      softly.assertThat(part.getName()).isEqualTo("Junit");
+      softly.assertThat(part.getDesc()).isEqualTo("Split me");
+      softly.assertThat(part.getSrc()).isEqualTo("Test");
+      softly.assertThat(part.getLinks()).containsExactlyElementsOf(track.getLinks());
+      softly.assertThat(part.getExtensions()).isSameAs(track.getExtensions());
+    }
+  }
+
+  /**
+   * Split by time.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void splitByTime(SoftAssertions softly) {
+    TrkType track = createTrack();
+    softly.assertThat(sizes(TrackSplitter.newInstance()
+            .withDayBoundaries(ZoneOffset.UTC)
+            .split(track)))
+        .containsExactly(120, 180);
+    softly.assertThat(sizes(TrackSplitter.newInstance()
+            .withMaxGap(Duration.ofHours(1L))
+            .split(track)))
+        .containsExactly(200, 100);
+    softly.assertThat(sizes(TrackSplitter.newInstance()
+            .withMaxDuration(Duration.ofHours(1L))
+            .split(track)))
+        .containsExactly(61, 61, 61, 17, 61, 39);
+    softly.assertThat(sizes(TrackSplitter.newInstance()
+            .split(track)))
+        .containsExactly(300);
+  }
+
+  /**
+   * Split by distance. The distance between the segments is not counted.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void splitByDistance(SoftAssertions softly) {
+    TrkType track = createTrack();
+    List<TrkType> tracks = TrackSplitter.newInstance().withMaxDistance(10_000.).split(track);
+    softly.assertThat(sizes(tracks)).containsExactly(90, 90, 91, 29);
+    TrackStatistics.Calculator calculator = TrackStatistics.calculator();
+    for (TrkType part : tracks) {
+      softly.assertThat(calculator.of(part).getDistance()).isLessThanOrEqualTo(10_000.);
+    }
+  }
+
+  /**
+   * Split stream into files and chunks.
+   *
+   * @param softly the soft assertions
+   * @param directory the directory
+   * @throws Exception the exception
+   */
+  @Test
+  void splitStream(SoftAssertions softly, @TempDir Path directory) throws Exception {
+    Path input = directory.resolve("track.gpx");
+    try (InputStream in = RESOURCE_LOADER.getResource("classpath:Track.GPX").getInputStream()) {
+      Files.copy(in, input);
+    }
+    Gpx gpx = (Gpx) jaxbContextBuilder.buildUnmarshaller().unmarshal(input.toFile());
+    TrkType track = gpx.getTrks().get(0);
+    int size = track.getTrksegs().get(0).getTrkpts().size();
+    TrackSplitter splitter = TrackSplitter.newInstance().withMaxPoints(size / 2 + 1);
+
+    List<Path> files = splitter.split(input, jaxbContextBuilder.buildJaxbContext(),
+        index -> directory.resolve("part-" + index + ".gpx"));
+    softly.assertThat(files).hasSize(2);
+    List<Integer> fileSizes = new ArrayList<>();
+    for (Path file : files) {
+      Gpx part = (Gpx) jaxbContextBuilder.buildUnmarshaller().unmarshal(file.toFile());
+      softly.assertThat(part.getCreator()).isEqualTo(gpx.getCreator());
+      softly.assertThat(part.getMetadata()).isNotNull();
+      softly.assertThat(part.getTrks()).hasSize(1);
+      softly.assertThat(part.getTrks().get(0).getName()).isEqualTo(track.getName());
+      softly.assertThat(part.getTrks().get(0).getExtensions()).isNotNull();
+      fileSizes.addAll(sizes(part.getTrks()));
+    }
+    softly.assertThat(fileSizes).containsExactly(size / 2 + 1, size - size / 2 - 1);
+
+    List<Integer> chunkSizes = new ArrayList<>();
+    try (GpxStreamReader reader = GpxStreamReader
+        .newInstance(input, jaxbContextBuilder.buildJaxbContext())) {
+      reader.read(splitter.chunks((part, segment) -> {
+        softly.assertThat(part.getName()).isEqualTo(track.getName());
+        chunkSizes.add(segment.getTrkpts().size());
+      }));
+    }
+    softly.assertThat(chunkSizes).isEqualTo(fileSizes);
+  }
+
+}
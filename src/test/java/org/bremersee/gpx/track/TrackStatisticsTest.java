@@ -0,0 +1,235 @@
+/*
+ * Copyright 2019-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.bremersee.gpx.track;
+
+import static org.assertj.core.api.Assertions.within;
+
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.ForkJoinPool;
+import org.assertj.core.api.SoftAssertions;
+import org.assertj.core.api.junit.jupiter.SoftAssertionsExtension;
+import org.bremersee.gpx.GpxValueHelper;
+import org.bremersee.gpx.io.GpxStreamReader;
+import org.bremersee.gpx.model.Gpx;
+import org.bremersee.gpx.model.TrkType;
+import org.bremersee.gpx.model.TrksegType;
+import org.bremersee.gpx.model.WptType;
+import org.bremersee.xml.JaxbContextBuilder;
+import org.bremersee.xml.JaxbContextDataProvider;
+import org.bremersee.xml.SchemaMode;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.ResourceLoader;
+
+/**
+ * The track statistics test.
+ */
+@ExtendWith(SoftAssertionsExtension.class)
+class TrackStatisticsTest {
+
+  private static final ResourceLoader RESOURCE_LOADER = new DefaultResourceLoader();
+
+  private static JaxbContextBuilder jaxbContextBuilder;
+
+  /**
+   * Create jaxb context builder.
+   */
+  @BeforeAll
+  static void createJaxbContextBuilder() {
+    jaxbContextBuilder = JaxbContextBuilder.newInstance()
+        .withSchemaMode(SchemaMode.NEVER)
+        .processAll(ServiceLoader.load(JaxbContextDataProvider.class))
+        .initJaxbContext();
+  }
+
+  private static WptType wpt(double lat, double lon, double ele, long time) {
+    WptType wpt = new WptType();
+    wpt.setLat(BigDecimal.valueOf(lat));
+    wpt.setLon(BigDecimal.valueOf(lon));
+    wpt.setEle(BigDecimal.valueOf(ele));
+    wpt.setTime(GpxValueHelper.toXmlGregorianCalendar(time));
+    return wpt;
+  }
+
+  /**
+   * Creates a segment along the equator. The points are 0.001 degrees (about 111 m) apart and
+   * 10 seconds in time; between the third and the fourth point is a pause of 10 minutes.
+   */
+  private static TrksegType createSegment(long start, double... elevations) {
+    TrksegType segment = new TrksegType();
+    long time = start;
+    for (int i = 0; i < elevations.length; i++) {
+      time += i == 3 ? 600_000L : 10_000L;
+      segment.getTrkpts().add(wpt(0., i * .001, elevations[i], time));
+    }
+    return segment;
+  }
+
+  private static Gpx readGpx() throws Exception {
+    try (InputStream in = RESOURCE_LOADER.getResource("classpath:Track.GPX").getInputStream()) {
+      return (Gpx) jaxbContextBuilder.buildUnmarshaller().unmarshal(in);
+    }
+  }
+
+  /**
+   * Calculate segment.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void calculateSegment(SoftAssertions softly) {
+    TrksegType segment = createSegment(0L, 10., 12., 11., 15., 9.);
+    TrackStatistics statistics = TrackStatistics.calculator().of(segment);
+    double step = 2. * Math.PI * 6_371_008.8 / 360. * .001;
+
+    softly.assertThat(statistics.getPoints()).isEqualTo(5L);
+    softly.assertThat(statistics.getDistance()).isCloseTo(4 * step, within(.01));
+    softly.assertThat(statistics.getElevationGain()).isCloseTo(6., within(1e-9));
+    softly.assertThat(statistics.getElevationLoss()).isCloseTo(7., within(1e-9));
+    softly.assertThat(statistics.getMovingTime()).isEqualTo(Duration.ofSeconds(30L));
+    softly.assertThat(statistics.getElapsedTime()).isEqualTo(Duration.ofSeconds(630L));
+    softly.assertThat(statistics.getMaxSpeed()).isCloseTo(step / 10., within(1e-6));
+    softly.assertThat(statistics.getAverageMovingSpeed()).isCloseTo(step / 7.5, within(1e-6));
+    softly.assertThat(statistics.getMinLatitude()).isEqualTo(0.);
+    softly.assertThat(statistics.getMinLongitude()).isEqualTo(0.);
+    softly.assertThat(statistics.getMaxLongitude()).isCloseTo(.004, within(1e-12));
+    softly.assertThat(statistics.getMinElevation()).isEqualTo(9.);
+    softly.assertThat(statistics.getMaxElevation()).isEqualTo(15.);
+    softly.assertThat(statistics.getStartTime()).isEqualTo(10_000L);
+    softly.assertThat(statistics.getEndTime()).isEqualTo(640_000L);
+
+    TrackStatistics smoothed = TrackStatistics.calculator()
+        .withElevationThreshold(3.)
+        .of(segment);
+    softly.assertThat(smoothed.getElevationGain()).isCloseTo(5., within(1e-9));
+    softly.assertThat(smoothed.getElevationLoss()).isCloseTo(6., within(1e-9));
+  }
+
+  /**
+   * Calculate empty segment.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void calculateEmptySegment(SoftAssertions softly) {
+    TrackStatistics statistics = TrackStatistics.calculator().of(new TrksegType());
+    softly.assertThat(statistics).isSameAs(TrackStatistics.EMPTY);
+    softly.assertThat(statistics.getPoints()).isZero();
+    softly.assertThat(statistics.getMinLatitude()).isNaN();
+    softly.assertThat(statistics.getStartTime()).isEqualTo(TrackStatistics.NO_TIME);
+  }
+
+  /**
+   * Merge segments.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void mergeSegments(SoftAssertions softly) {
+    TrackStatistics.Calculator calculator = TrackStatistics.calculator();
+    TrkType track = new TrkType();
+    track.getTrksegs().add(createSegment(1_000_000L, 100., 120., 110., 130., 90.));
+    track.getTrksegs().add(createSegment(0L, 10., 12., 11., 15., 9.));
+    track.getTrksegs().add(new TrksegType());
+    TrackStatistics first = calculator.of(track.getTrksegs().get(0));
+    TrackStatistics second = calculator.of(track.getTrksegs().get(1));
+
+    TrackStatistics statistics = calculator.of(track);
+    softly.assertThat(statistics.getPoints()).isEqualTo(10L);
+    softly.assertThat(statistics.getDistance())
+        .isCloseTo(first.getDistance() + second.getDistance(), within(1e-9));
+    softly.assertThat(statistics.getElevationGain()).isCloseTo(46., within(1e-9));
+    softly.assertThat(statistics.getMovingTime()).isEqualTo(Duration.ofSeconds(60L));
+    softly.assertThat(statistics.getElapsedTime()).isEqualTo(Duration.ofSeconds(1260L));
+    softly.assertThat(statistics.getMinElevation()).isEqualTo(9.);
+    softly.assertThat(statistics.getMaxElevation()).isEqualTo(130.);
+    softly.assertThat(statistics.getStartTime()).isEqualTo(10_000L);
+    softly.assertThat(statistics.getEndTime()).isEqualTo(1_640_000L);
+    softly.assertThat(second.merge(first).toString()).isEqualTo(statistics.toString());
+    softly.assertThat(TrackStatistics.EMPTY.merge(first)).isSameAs(first);
+
+    TrackStatistics parallel = TrackStatistics.calculator()
+        .withPool(ForkJoinPool.commonPool())
+        .of(track);
+    softly.assertThat(parallel.toString()).isEqualTo(statistics.toString());
+  }
+
+  /**
+   * Calculate with cache.
+   *
+   * @param softly the soft assertions
+   */
+  @Test
+  void calculateWithCache(SoftAssertions softly) {
+    TrackStatistics.Calculator calculator = TrackStatistics.calculator().withCache(true);
+    TrkType track = new TrkType();
+    track.getTrksegs().add(createSegment(0L, 10., 12., 11., 15., 9.));
+    TrackStatistics statistics = calculator.of(track);
+    softly.assertThat(calculator.of(track)).isSameAs(statistics);
+
+    track.getTrksegs().get(0).getTrkpts().add(wpt(0., .005, 9., 700_000L));
+    TrackStatistics changed = calculator.of(track);
+    softly.assertThat(changed.getPoints()).isEqualTo(6L);
+
+    track.getTrksegs().get(0).getTrkpts().get(1).setEle(BigDecimal.valueOf(20.));
+    softly.assertThat(calculator.of(track)).isSameAs(changed);
+    calculator.invalidate(track);
+    softly.assertThat(calculator.of(track).getMaxElevation()).isEqualTo(20.);
+  }
+
+  /**
+   * Calculate track columns and stream.
+   *
+   * @param softly the soft assertions
+   * @throws Exception the exception
+   */
+  @Test
+  void calculateColumnsAndStream(SoftAssertions softly) throws Exception {
+    Gpx gpx = readGpx();
+    TrackStatistics.Calculator calculator = TrackStatistics.calculator();
+    TrkType track = gpx.getTrks().get(0);
+    TrackStatistics expected = calculator.of(track);
+    softly.assertThat(expected.getPoints()).isGreaterThan(1L);
+    softly.assertThat(expected.getDistance()).isGreaterThan(0.);
+    softly.assertThat(calculator.of(gpx).getPoints()).isGreaterThanOrEqualTo(expected.getPoints());
+    softly.assertThat(calculator.of(TrackColumns.of(track)).toString())
+        .isEqualTo(expected.toString());
+
+    List<TrackStatistics> actual = new ArrayList<>();
+    List<TrkType> tracks = new ArrayList<>();
+    try (InputStream in = RESOURCE_LOADER.getResource("classpath:Track.GPX").getInputStream();
+        GpxStreamReader reader = GpxStreamReader
+            .newInstance(in, jaxbContextBuilder.buildJaxbContext())) {
+      reader.read(calculator.collector((trk, statistics) -> {
+        tracks.add(trk);
+        actual.add(statistics);
+      }));
+    }
+    softly.assertThat(actual).hasSameSizeAs(gpx.getTrks());
+    softly.assertThat(actual.get(0).toString()).isEqualTo(expected.toString());
+    softly.assertThat(tracks.get(0).getName()).isEqualTo(track.getName());
+  }
+
+}